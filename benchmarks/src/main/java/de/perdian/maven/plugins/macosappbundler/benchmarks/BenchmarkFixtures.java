@@ -0,0 +1,153 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.model.Build;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+
+/**
+ * Creates the synthetic files and projects used by the benchmarks. All content is derived from a fixed seed, so that
+ * every run of a benchmark works on exactly the same input.
+ */
+
+class BenchmarkFixtures {
+
+    private static final int FILES_PER_DIRECTORY = 50;
+
+    /**
+     * Creates a tree of files spread across nested directories with at most {@value #FILES_PER_DIRECTORY} files each.
+     */
+    static void createTree(Path directory, int fileCount, int fileSize) throws IOException {
+        Random random = new Random(fileCount);
+        byte[] fileContent = new byte[fileSize];
+        for (int i = 0; i < fileCount; i++) {
+            Path fileDirectory = directory.resolve("d" + (i / (FILES_PER_DIRECTORY * FILES_PER_DIRECTORY))).resolve("d" + (i / FILES_PER_DIRECTORY));
+            random.nextBytes(fileContent);
+            Files.createDirectories(fileDirectory);
+            Files.write(fileDirectory.resolve("file" + i + ".bin"), fileContent);
+        }
+    }
+
+    /**
+     * Creates a directory with the layout of a JDK, containing executables, native libraries, a modules file and
+     * configuration files, with {@code fileCount} files in total.
+     */
+    static void createJdk(Path directory, int fileCount) throws IOException {
+        Random random = new Random(fileCount);
+        Files.createDirectories(directory.resolve("bin"));
+        Files.createDirectories(directory.resolve("lib/server"));
+        Files.write(directory.resolve("release"), "JAVA_VERSION=\"17\"\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("lib/modules"), BenchmarkFixtures.createContent(random, 8 * 1024 * 1024));
+        Files.write(directory.resolve("lib/server/libjvm.dylib"), BenchmarkFixtures.createContent(random, 2 * 1024 * 1024));
+        for (int i = 4; i < fileCount; i++) {
+            if (i % 20 == 0) {
+                Files.write(directory.resolve("bin/tool" + i), BenchmarkFixtures.createContent(random, 32 * 1024));
+            } else if (i % 5 == 0) {
+                Files.write(directory.resolve("lib/lib" + i + ".dylib"), BenchmarkFixtures.createContent(random, 64 * 1024));
+            } else {
+                Path legalDirectory = Files.createDirectories(directory.resolve("legal/module" + (i / 25)));
+                Files.write(legalDirectory.resolve("LICENSE" + i), BenchmarkFixtures.createContent(random, 2 * 1024));
+            }
+        }
+        Files.createSymbolicLink(directory.resolve("lib/libjvm.dylib"), Paths.get("server/libjvm.dylib"));
+    }
+
+    /**
+     * Creates a JAR file containing {@code entryCount} class files of a few kilobytes each.
+     */
+    static void createJar(Path jarFile, String packageName, int entryCount) throws IOException {
+        Random random = new Random(jarFile.getFileName().toString().hashCode());
+        Files.createDirectories(jarFile.getParent());
+        try (OutputStream jarStream = Files.newOutputStream(jarFile); JarOutputStream jarOutputStream = new JarOutputStream(jarStream)) {
+            for (int i = 0; i < entryCount; i++) {
+                jarOutputStream.putNextEntry(new JarEntry(packageName.replace('.', '/') + "/Class" + i + ".class"));
+                jarOutputStream.write(BenchmarkFixtures.createContent(random, 1024 + random.nextInt(4096)));
+                jarOutputStream.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Creates a classpath based project whose dependencies are {@code jarCount} synthetic JAR files inside a
+     * repository below the given directory.
+     */
+    static MavenProject createProject(Path directory, int jarCount) throws IOException {
+        Build build = new Build();
+        build.setDirectory(directory.resolve("target").toString());
+        build.setFinalName("benchmark");
+        MavenProject project = new MavenProject();
+        project.setBuild(build);
+        project.setFile(directory.resolve("pom.xml").toFile());
+        project.setArtifact(BenchmarkFixtures.createArtifact(directory.resolve("repository"), "benchmark", 50));
+        Set<Artifact> artifacts = new LinkedHashSet<>();
+        for (int i = 0; i < jarCount; i++) {
+            artifacts.add(BenchmarkFixtures.createArtifact(directory.resolve("repository"), "dependency" + i, 20));
+        }
+        project.setArtifacts(artifacts);
+        return project;
+    }
+
+    private static Artifact createArtifact(Path repositoryDirectory, String artifactId, int entryCount) throws IOException {
+        Path jarFile = repositoryDirectory.resolve("de/perdian/benchmark/" + artifactId + "/1.0/" + artifactId + "-1.0.jar");
+        BenchmarkFixtures.createJar(jarFile, "de.perdian.benchmark." + artifactId, entryCount);
+        DefaultArtifact artifact = new DefaultArtifact("de.perdian.benchmark", artifactId, "1.0", Artifact.SCOPE_RUNTIME, "jar", null, new DefaultArtifactHandler("jar"));
+        artifact.setFile(jarFile.toFile());
+        return artifact;
+    }
+
+    private static byte[] createContent(Random random, int size) {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        return content;
+    }
+
+    /**
+     * @return a log discarding all messages, so that the output of the plugin doesn't distort the measurements
+     */
+    static Log createLog() {
+        return new DefaultLog(new ConsoleLogger(Logger.LEVEL_DISABLED, "benchmark"));
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    static Path createTemporaryDirectory() throws IOException {
+        return Files.createTempDirectory("macosappbundler-benchmark-");
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks just like the JMH main class, but writes the results as JSON into
+ * {@code target/benchmarks-results.json} unless another result file or format has been given, so that the results of
+ * different versions can be compared.
+ */
+
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_RESULT_FILE = "target/benchmarks-results.json";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+        } else if (commandLineOptions.shouldList() || commandLineOptions.shouldListWithParams() || commandLineOptions.shouldListProfilers() || commandLineOptions.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+        } else {
+            ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+            if (!commandLineOptions.getResultFormat().hasValue() && !commandLineOptions.getResult().hasValue()) {
+                Files.createDirectories(Paths.get(DEFAULT_RESULT_FILE).toAbsolutePath().getParent());
+                options.resultFormat(ResultFormatType.JSON).result(DEFAULT_RESULT_FILE);
+            }
+            new Runner(options.build()).run();
+        }
+    }
+
+}
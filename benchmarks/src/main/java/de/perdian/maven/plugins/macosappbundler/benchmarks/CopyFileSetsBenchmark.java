@@ -0,0 +1,107 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.benchmarks;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.shared.model.fileset.FileSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.IO;
+
+/**
+ * Copies a synthetic tree of files as used for the {@code additionalResources} of the app and the DMG, both into an
+ * empty directory and incrementally into the directory created by a previous copy, in which case all files are
+ * unchanged.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CopyFileSetsBenchmark {
+
+    private static final int COPY_THREADS = Runtime.getRuntime().availableProcessors();
+
+    @Param({ "100", "1000" })
+    public int fileCount = 0;
+
+    private Path workDirectory = null;
+    private File targetDirectory = null;
+    private Path recordFile = null;
+    private List<FileSet> fileSets = null;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.workDirectory = BenchmarkFixtures.createTemporaryDirectory();
+        BenchmarkFixtures.createTree(this.workDirectory.resolve("source"), this.fileCount, 16 * 1024);
+        FileSet fileSet = new FileSet();
+        fileSet.setDirectory(this.workDirectory.resolve("source").toString());
+        fileSet.setOutputDirectory("Contents/Resources");
+        this.fileSets = Collections.singletonList(fileSet);
+        this.targetDirectory = this.workDirectory.resolve("target").toFile();
+        this.recordFile = this.workDirectory.resolve("target.resources");
+        IO.copyFileSets(this.targetDirectory, this.fileSets, COPY_THREADS, this.recordFile, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkFixtures.deleteDirectory(this.workDirectory);
+    }
+
+    @Benchmark
+    public List<File> copyFileSets(EmptyTargetDirectory emptyTargetDirectory) throws Exception {
+        return IO.copyFileSets(this.targetDirectory, this.fileSets, COPY_THREADS, null, null).getCopiedFiles();
+    }
+
+    @Benchmark
+    public List<File> copyFileSetsUnchanged() throws Exception {
+        return IO.copyFileSets(this.targetDirectory, this.fileSets, COPY_THREADS, this.recordFile, null).getCopiedFiles();
+    }
+
+    /**
+     * Removes the files copied by the previous invocation, so that all files have to be copied again.
+     */
+    @State(Scope.Thread)
+    public static class EmptyTargetDirectory {
+
+        @Setup(Level.Invocation)
+        public void setup(CopyFileSetsBenchmark benchmark) throws Exception {
+            BenchmarkFixtures.deleteDirectory(benchmark.targetDirectory.toPath());
+        }
+
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.benchmarks;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.commons.lang3.StringUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.model.CFBundleDocumentTypesConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.PlistConfiguration;
+
+/**
+ * The DOM and {@code Transformer} based serialization that was used by {@code PlistConfiguration} before the
+ * streaming writer was introduced. It is only kept as reference for the benchmarks.
+ */
+
+class DomPlistReference {
+
+    static String toXmlString(PlistConfiguration plist, Map<String, String> additionalValues) throws Exception {
+
+        TransformerFactory transformerFactory = TransformerFactory.newInstance();
+        Transformer transformer = transformerFactory.newTransformer();
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+
+        StringWriter writer = new StringWriter();
+        writer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.append("<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n");
+        transformer.transform(new DOMSource(toXmlDocument(plist, additionalValues)), new StreamResult(writer));
+        return writer.toString();
+
+    }
+
+    private static Document toXmlDocument(PlistConfiguration plist, Map<String, String> additionalValues) throws Exception {
+        DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        Document document = documentBuilder.newDocument();
+        document.appendChild(document.getImplementation().createDocumentType("plist", "-//Apple//DTD PLIST 1.0//EN", "http://www.apple.com/DTDs/PropertyList-1.0.dtd"));
+        Element dictElement = document.createElement("dict");
+        appendKeyWithString(dictElement, document, "CFBundleDisplayName", plist.CFBundleDisplayName);
+        appendKeyWithString(dictElement, document, "CFBundleExecutable", plist.CFBundleExecutable);
+        appendKeyWithString(dictElement, document, "CFBundleIdentifier", plist.CFBundleIdentifier);
+        appendKeyWithString(dictElement, document, "CFBundleName", plist.CFBundleName);
+        appendKeyWithString(dictElement, document, "CFBundleShortVersionString", plist.CFBundleShortVersionString);
+        appendKeyWithString(dictElement, document, "CFBundleDevelopmentRegion", plist.CFBundleDevelopmentRegion);
+        appendKeyWithString(dictElement, document, "CFBundlePackageType", plist.CFBundlePackageType);
+        appendCFBundleDocumentTypes(dictElement, document, plist.CFBundleDocumentTypes);
+        appendCFBundleURLTypes(dictElement, document, plist.CFBundleURLTypes);
+        appendKeyWithArrayOfStrings(dictElement, document, "JVMArguments", plist.JVMArguments);
+        appendKeyWithString(dictElement, document, "JVMMainClassName", plist.JVMMainClassName);
+        appendKeyWithString(dictElement, document, "JVMMainModuleName", plist.JVMMainModuleName);
+        appendKeyWithArrayOfStrings(dictElement, document, "JVMOptions", plist.JVMOptions);
+        appendKeyWithString(dictElement, document, "JVMRuntimePath", plist.JVMRuntimePath);
+        appendKeyWithString(dictElement, document, "JVMVersion", plist.JVMVersion);
+        appendKeyWithString(dictElement, document, "JVMLogLevel", plist.JVMLogLevel);
+        appendKeyWithBoolean(dictElement, document, "NSHighResolutionCapable", plist.NSHighResolutionCapable);
+        appendKeyWithString(dictElement, document, "LSUIElement", plist.LSUIElement == null ? null : plist.LSUIElement.toString());
+        appendKeyWithBoolean(dictElement, document, "NSSupportsAutomaticGraphicsSwitching", plist.NSSupportsAutomaticGraphicsSwitching);
+        appendKeyWithString(dictElement, document, "NSMicrophoneUsageDescription", plist.NSMicrophoneUsageDescription);
+        appendKeyWithString(dictElement, document, "NSCameraUsageDescription", plist.NSCameraUsageDescription);
+        appendKeyWithString(dictElement, document, "NSHumanReadableCopyright", plist.NSHumanReadableCopyright);
+        appendKeyWithBoolean(dictElement, document, "NSAppSleepDisabled", plist.NSAppSleepDisabled);
+        appendKeyWithString(dictElement, document, "NSAppleMusicUsageDescription", plist.NSAppleMusicUsageDescription);
+        for (Map.Entry<String, String> additionalValue : additionalValues.entrySet()) {
+            appendKeyWithString(dictElement, document, additionalValue.getKey(), additionalValue.getValue());
+        }
+        Element plistElement = document.createElement("plist");
+        plistElement.setAttribute("version", "1.0");
+        plistElement.appendChild(dictElement);
+        document.appendChild(plistElement);
+        return document;
+    }
+
+    private static void appendKeyWithString(Element dictElement, Document document, String key, String value) {
+        if (StringUtils.isNotEmpty(value)) {
+            Element keyElement = document.createElement("key");
+            keyElement.setTextContent(key);
+            dictElement.appendChild(keyElement);
+            Element stringElement = document.createElement("string");
+            stringElement.setTextContent(value);
+            dictElement.appendChild(stringElement);
+        }
+    }
+
+    private static void appendKeyWithArrayOfStrings(Element dictElement, Document document, String key, List<String> value) {
+        if (value != null && !value.isEmpty()) {
+            Element keyElement = document.createElement("key");
+            keyElement.setTextContent(key);
+            dictElement.appendChild(keyElement);
+            Element arrayElement = document.createElement("array");
+            for (String valueItem : value) {
+                if (!StringUtils.isEmpty(valueItem)) {
+                    Element stringElement = document.createElement("string");
+                    stringElement.setTextContent(valueItem);
+                    arrayElement.appendChild(stringElement);
+                }
+            }
+            dictElement.appendChild(arrayElement);
+        }
+    }
+
+    private static void appendKeyWithBoolean(Element dictElement, Document document, String key, Boolean value) {
+        if (value != null) {
+            Element keyElement = document.createElement("key");
+            keyElement.setTextContent(key);
+            dictElement.appendChild(keyElement);
+            dictElement.appendChild(document.createElement(value.toString()));
+        }
+    }
+
+    private static void appendCFBundleURLTypes(Element dictElement, Document document, List<String> value) {
+        if (value != null && !value.isEmpty()) {
+            Element keyElement = document.createElement("key");
+            keyElement.setTextContent("CFBundleURLTypes");
+            dictElement.appendChild(keyElement);
+            Element arrayElement = document.createElement("array");
+            Element arrayDictElement = document.createElement("dict");
+            appendKeyWithArrayOfStrings(arrayDictElement, document, "CFBundleURLSchemes", value);
+            arrayElement.appendChild(arrayDictElement);
+            dictElement.appendChild(arrayElement);
+        }
+    }
+
+    private static void appendCFBundleDocumentTypes(Element dictElement, Document document, List<CFBundleDocumentTypesConfiguration> value) {
+        if (value != null && !value.isEmpty()) {
+            Element keyElement = document.createElement("key");
+            keyElement.setTextContent("CFBundleDocumentTypes");
+            dictElement.appendChild(keyElement);
+            Element arrayElement = document.createElement("array");
+            for (CFBundleDocumentTypesConfiguration valueItem : value) {
+                Element itemDictElement = document.createElement("dict");
+                appendKeyWithArrayOfStrings(itemDictElement, document, "CFBundleTypeExtensions", valueItem.CFBundleTypeExtensions);
+                appendKeyWithString(itemDictElement, document, "CFBundleTypeName", valueItem.CFBundleTypeName);
+                appendKeyWithArrayOfStrings(itemDictElement, document, "CFBundleTypeOSTypes", valueItem.CFBundleTypeOSTypes);
+                appendKeyWithString(itemDictElement, document, "CFBundleTypeRole", valueItem.CFBundleTypeRole);
+                arrayElement.appendChild(itemDictElement);
+            }
+            dictElement.appendChild(arrayElement);
+        }
+    }
+
+}
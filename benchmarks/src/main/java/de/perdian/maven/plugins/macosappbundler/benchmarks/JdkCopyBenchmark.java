@@ -0,0 +1,96 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.benchmarks;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.AppGenerator;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.AppConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.LinkStrategy;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.PlistConfiguration;
+
+/**
+ * Generates an app including a synthetic JDK consisting of 1,000 files, using the different link strategies.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JdkCopyBenchmark {
+
+    @Param({ "COPY", "HARDLINK" })
+    public LinkStrategy linkStrategy = null;
+
+    private Path workDirectory = null;
+    private Path jdkDirectory = null;
+    private MavenProject project = null;
+    private File appDirectory = null;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.workDirectory = BenchmarkFixtures.createTemporaryDirectory();
+        this.jdkDirectory = this.workDirectory.resolve("jdk");
+        BenchmarkFixtures.createJdk(this.jdkDirectory, 1000);
+        this.project = BenchmarkFixtures.createProject(this.workDirectory, 0);
+        this.appDirectory = this.workDirectory.resolve("target/Benchmark.app").toFile();
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteAppDirectory() throws Exception {
+        BenchmarkFixtures.deleteDirectory(this.appDirectory.toPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkFixtures.deleteDirectory(this.workDirectory);
+    }
+
+    @Benchmark
+    public void copyJdk() throws Exception {
+        PlistConfiguration plist = new PlistConfiguration();
+        plist.CFBundleName = "Benchmark";
+        plist.CFBundleIdentifier = "de.perdian.benchmark";
+        plist.CFBundleExecutable = "JavaLauncher";
+        plist.JVMMainClassName = "de.perdian.benchmark.Main";
+        AppGenerator appGenerator = new AppGenerator(plist, new AppConfiguration(), BenchmarkFixtures.createLog());
+        appGenerator.setIncludeJdk(true);
+        appGenerator.setJdkLocation(this.jdkDirectory.toString());
+        appGenerator.setLinkStrategy(this.linkStrategy);
+        appGenerator.generateApp(this.project, this.appDirectory);
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.XmlPlistWriter;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.CFBundleDocumentTypesConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.PlistConfiguration;
+
+/**
+ * Compares the streaming plist writer with the DOM and {@code Transformer} based serialization it replaced, for a
+ * small table of document types as used by most applications and a large one as used by editors and viewers.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlistBenchmark {
+
+    @Param({ "5", "500" })
+    public int documentTypeCount = 0;
+
+    private PlistConfiguration plist = null;
+    private Map<String, String> additionalValues = null;
+
+    @Setup
+    public void setup() {
+        this.plist = new PlistConfiguration();
+        this.plist.CFBundleDisplayName = "Benchmark application";
+        this.plist.CFBundleName = "Benchmark";
+        this.plist.CFBundleIdentifier = "de.perdian.benchmark";
+        this.plist.CFBundleShortVersionString = "1.0.0";
+        this.plist.CFBundleExecutable = "JavaLauncher";
+        this.plist.CFBundleDevelopmentRegion = "English";
+        this.plist.CFBundlePackageType = "APPL";
+        this.plist.JVMMainClassName = "de.perdian.benchmark.Main";
+        this.plist.JVMVersion = "17+";
+        this.plist.JVMOptions = Arrays.asList("-Xmx2g", "-Dapple.laf.useScreenMenuBar=true", "-Xdock:name=Benchmark & Co");
+        this.plist.JVMArguments = Arrays.asList("--mode", "<production>");
+        this.plist.CFBundleURLTypes = Arrays.asList("benchmark", "bench");
+        List<CFBundleDocumentTypesConfiguration> documentTypes = new ArrayList<>();
+        for (int i = 0; i < this.documentTypeCount; i++) {
+            CFBundleDocumentTypesConfiguration documentType = new CFBundleDocumentTypesConfiguration();
+            documentType.CFBundleTypeName = "Document type " + i;
+            documentType.CFBundleTypeRole = "Editor";
+            documentType.CFBundleTypeExtensions = Arrays.asList("doc" + i, "docx" + i);
+            documentType.CFBundleTypeOSTypes = Arrays.asList("DOC" + i);
+            documentTypes.add(documentType);
+        }
+        this.plist.CFBundleDocumentTypes = documentTypes;
+        this.additionalValues = new LinkedHashMap<>();
+        this.additionalValues.put("CFBundleIconFile", "benchmark.icns");
+    }
+
+    @Benchmark
+    public String domToString() throws Exception {
+        return DomPlistReference.toXmlString(this.plist, this.additionalValues);
+    }
+
+    @Benchmark
+    public String streamingToString() throws IOException {
+        return this.plist.toXmlString(this.additionalValues);
+    }
+
+    @Benchmark
+    public void streamingToOutputStream() throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(NullOutputStream.NULL_OUTPUT_STREAM, StandardCharsets.UTF_8))) {
+            this.plist.write(new XmlPlistWriter(writer), this.additionalValues);
+        }
+    }
+
+}
@@ -19,6 +19,20 @@ package de.perdian.maven.plugins.macosappbundler.mojo;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -34,12 +48,19 @@ import org.apache.maven.project.MavenProject;
 import de.perdian.maven.plugins.macosappbundler.mojo.impl.AppGenerator;
 import de.perdian.maven.plugins.macosappbundler.mojo.impl.DmgGenerator;
 import de.perdian.maven.plugins.macosappbundler.mojo.impl.SignatureGenerator;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.VariantGenerator;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.BuildMetrics;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.IO;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.AppCdsConfiguration;
 import de.perdian.maven.plugins.macosappbundler.mojo.model.AppConfiguration;
 import de.perdian.maven.plugins.macosappbundler.mojo.model.CodesignConfiguration;
 import de.perdian.maven.plugins.macosappbundler.mojo.model.DmgConfiguration;
 import de.perdian.maven.plugins.macosappbundler.mojo.model.JdkConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.LinkStrategy;
 import de.perdian.maven.plugins.macosappbundler.mojo.model.NativeBinaryType;
 import de.perdian.maven.plugins.macosappbundler.mojo.model.PlistConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.PlistFormat;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.VariantConfiguration;
 
 /**
  * Create all artifacts to publish a Java application as macOS application bundle.
@@ -69,6 +90,21 @@ public class BundleMojo extends AbstractMojo {
     @Parameter
     private CodesignConfiguration codesign = new CodesignConfiguration();
 
+    @Parameter
+    private AppCdsConfiguration appCds = new AppCdsConfiguration();
+
+    @Parameter
+    private LinkStrategy linkStrategy = LinkStrategy.COPY;
+
+    @Parameter
+    private PlistFormat plistFormat = PlistFormat.XML;
+
+    @Parameter
+    private List<VariantConfiguration> variants = null;
+
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    private String outputTimestamp = null;
+
     @Override
     public void execute() throws MojoExecutionException {
         Validate.notNull(this.getProject(), "MavenProject cannot be null");
@@ -86,6 +122,11 @@ public class BundleMojo extends AbstractMojo {
             this.plist.CFBundleExecutable = StringUtils.defaultIfEmpty(this.plist.CFBundleExecutable, "JavaLauncher");
             this.plist.CFBundlePackageType = StringUtils.defaultIfEmpty(this.plist.CFBundlePackageType, "APPL");
 
+            if (this.variants != null && !this.variants.isEmpty()) {
+                this.validateVariants();
+            }
+
+            Instant outputInstant = this.parseOutputTimestamp();
             String appName = StringUtils.defaultString(this.plist.CFBundleName, this.project.getBuild().getFinalName());
             File targetDirectory = new File(this.project.getBuild().getDirectory());
             File appDirectory = new File(targetDirectory, appName + ".app");
@@ -93,33 +134,194 @@ public class BundleMojo extends AbstractMojo {
                 this.getLog().info("Creating app directory at: " + appDirectory.getAbsolutePath());
                 appDirectory.mkdirs();
             }
-            AppGenerator appGenerator = new AppGenerator(this.plist, this.app, this.getLog());
-            appGenerator.setIncludeJdk(this.jdk.include);
-            appGenerator.setJdkLocation(this.jdk.location);
-            appGenerator.setNativeBinaryType(this.nativeBinary);
-            appGenerator.generateApp(this.project, appDirectory);
-
-            if (this.codesign.enable && StringUtils.isNotEmpty(this.codesign.identity)) {
-                SignatureGenerator signatureGenerator = new SignatureGenerator(this.codesign, this.getLog());
-                signatureGenerator.sign(appDirectory);
+            BuildMetrics buildMetrics = new BuildMetrics();
+            try {
+                this.generateBundle(appName, appDirectory, targetDirectory, outputInstant, buildMetrics);
+            } finally {
+                this.writeMetrics(buildMetrics, new File(targetDirectory, "macosappbundler-metrics.json"));
+            }
+
+        }
+    }
+
+    private void generateBundle(String appName, File appDirectory, File targetDirectory, Instant outputInstant, BuildMetrics buildMetrics) throws MojoExecutionException {
+        AppGenerator appGenerator = new AppGenerator(this.plist, this.app, this.getLog());
+        appGenerator.setIncludeJdk(this.jdk.include);
+        appGenerator.setJdkLocation(this.jdk.location);
+        appGenerator.setJlinkConfiguration(this.jdk.jlink);
+        if (this.jdk.cache) {
+            appGenerator.setRuntimeCacheDirectory(this.jdk.cacheDirectory);
+            appGenerator.setRuntimeCacheMaximumSize(this.jdk.cacheMaximumSize * 1024 * 1024);
+        }
+        appGenerator.setNativeBinaryType(this.nativeBinary);
+        appGenerator.setLinkStrategy(this.linkStrategy);
+        appGenerator.setAppCdsConfiguration(this.appCds);
+        appGenerator.setPlistFormat(this.plistFormat);
+        appGenerator.setOutputTimestamp(outputInstant);
+        appGenerator.setBuildMetrics(buildMetrics);
+        appGenerator.generateApp(this.project, appDirectory);
+
+        if (this.variants == null || this.variants.isEmpty()) {
+            File codesignDirectory = new File(targetDirectory, "macosappbundler/codesign/" + appDirectory.getName());
+            File dmgWorkDirectory = new File(targetDirectory, "macosappbundler/dmg/" + appDirectory.getName());
+            File dmgFile = new File(targetDirectory, this.createDmgFileName(appName, null));
+            this.completeBundle(appName, appDirectory, codesignDirectory, dmgWorkDirectory, new File(targetDirectory, "bundle"), dmgFile, outputInstant, buildMetrics);
+        } else {
+            this.generateVariants(appName, appDirectory, targetDirectory, outputInstant, buildMetrics);
+        }
+    }
+
+    /**
+     * Signs the app and packages it into a DMG archive, as far as configured.
+     */
+    private void completeBundle(String appName, File appDirectory, File codesignDirectory, File dmgWorkDirectory, File bundleDirectory, File dmgFile, Instant outputInstant, BuildMetrics buildMetrics) throws MojoExecutionException {
+        if (this.codesign.enable && StringUtils.isNotEmpty(this.codesign.identity)) {
+            SignatureGenerator signatureGenerator = new SignatureGenerator(this.codesign.copy(), this.getLog());
+            signatureGenerator.setBuildMetrics(buildMetrics);
+            signatureGenerator.sign(appDirectory, codesignDirectory);
+        }
+        if (outputInstant != null) {
+            this.normalizeApp(appDirectory, outputInstant);
+        }
+
+        if (this.dmg.generate) {
+            DmgGenerator dmgGenerator = new DmgGenerator(this.dmg.copy(), appName, this.getLog());
+            dmgGenerator.setCopyThreads(this.app.copyThreads);
+            dmgGenerator.setWorkDirectory(this.app.incremental ? dmgWorkDirectory : null);
+            dmgGenerator.setOutputTimestamp(outputInstant);
+            dmgGenerator.setBuildMetrics(buildMetrics);
+            dmgGenerator.generateDmg(this.project, appDirectory, bundleDirectory, dmgFile);
+            try {
+                FileUtils.deleteDirectory(bundleDirectory);
+            } catch (IOException e) {
+                this.getLog().debug("Cannot delete bundle directory at: " + bundleDirectory.getAbsolutePath(), e);
             }
+        }
+    }
 
-            if (this.dmg.generate) {
-                File bundleDirectory = new File(targetDirectory, "bundle");
-                File dmgFile = new File(targetDirectory, this.createDmgFileName(appName));
-                DmgGenerator dmgGenerator = new DmgGenerator(this.dmg, appName, this.getLog());
-                dmgGenerator.generateDmg(this.project, appDirectory, bundleDirectory, dmgFile);
+    /**
+     * Creates all variants from the app that has just been generated, which has been built using all shared inputs
+     * like dependencies and runtime. Copying, signing and packaging the variants is done concurrently.
+     */
+    private void generateVariants(String appName, File sourceAppDirectory, File targetDirectory, Instant outputInstant, BuildMetrics buildMetrics) throws MojoExecutionException {
+        // Most of the time is spent on I/O and external processes like codesign, so every variant gets its own thread
+        this.getLog().info("Creating " + this.variants.size() + " variants");
+        List<Throwable> variantFailures = new ArrayList<>();
+        ExecutorService executorService = Executors.newFixedThreadPool(this.variants.size());
+        try {
+            Map<String, Future<?>> variantFutures = new LinkedHashMap<>();
+            for (VariantConfiguration variant : this.variants) {
+                variantFutures.put(variant.getName(), executorService.submit(() -> {
+                    this.generateVariant(variant, appName, sourceAppDirectory, targetDirectory, outputInstant, buildMetrics);
+                    return null;
+                }));
+            }
+            for (Map.Entry<String, Future<?>> variantFuture : variantFutures.entrySet()) {
                 try {
-                    FileUtils.deleteDirectory(bundleDirectory);
-                } catch (IOException e) {
-                    this.getLog().debug("Cannot delete bundle directory at: " + bundleDirectory.getAbsolutePath(), e);
+                    variantFuture.getValue().get();
+                } catch (ExecutionException e) {
+                    this.getLog().error("Cannot create variant '" + variantFuture.getKey() + "'", e.getCause());
+                    variantFailures.add(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Interrupted while creating variants", e);
                 }
             }
+        } finally {
+            executorService.shutdownNow();
+        }
+        if (!variantFailures.isEmpty()) {
+            MojoExecutionException variantException = new MojoExecutionException("Cannot create " + variantFailures.size() + " of " + this.variants.size() + " variants: " + variantFailures.get(0).getMessage(), variantFailures.get(0));
+            variantFailures.subList(1, variantFailures.size()).forEach(variantException::addSuppressed);
+            throw variantException;
+        }
+    }
+
+    private void generateVariant(VariantConfiguration variant, String appName, File sourceAppDirectory, File targetDirectory, Instant outputInstant, BuildMetrics buildMetrics) throws MojoExecutionException {
+        String variantName = variant.getName();
+        BuildMetrics variantMetrics = buildMetrics.withStagePrefix(variantName + "/");
+        File variantDirectory = new File(targetDirectory, variantName);
+        File appDirectory = new File(variantDirectory, sourceAppDirectory.getName());
+        VariantGenerator variantGenerator = new VariantGenerator(variant, this.plist.copy(), this.getLog());
+        variantGenerator.setAppCdsConfiguration(this.appCds);
+        variantGenerator.setLinkStrategy(this.linkStrategy);
+        variantGenerator.setCopyThreads(this.app.copyThreads);
+        variantGenerator.setIncremental(this.app.incremental);
+        variantGenerator.setBuildMetrics(variantMetrics);
+        variantGenerator.generateVariant(sourceAppDirectory, appDirectory, new File(targetDirectory, "macosappbundler/variants/" + variantName + "/" + appDirectory.getName() + ".manifest"));
+
+        File codesignDirectory = new File(targetDirectory, "macosappbundler/codesign/" + variantName + "/" + appDirectory.getName());
+        File dmgWorkDirectory = new File(targetDirectory, "macosappbundler/dmg/" + variantName + "/" + appDirectory.getName());
+        File dmgFile = new File(targetDirectory, this.createDmgFileName(appName, variantName));
+        this.completeBundle(appName, appDirectory, codesignDirectory, dmgWorkDirectory, new File(variantDirectory, "bundle"), dmgFile, outputInstant, variantMetrics);
+    }
+
+    /**
+     * Variants can only be created for architectures the shared app has been built for, as all native binaries of a
+     * variant are taken from the shared app.
+     */
+    private void validateVariants() throws MojoExecutionException {
+        Set<String> variantNames = new HashSet<>();
+        for (VariantConfiguration variant : this.variants) {
+            if (variant.nativeBinary == null) {
+                throw new MojoExecutionException("No 'nativeBinary' has been defined for variant" + (StringUtils.isNotEmpty(variant.name) ? " '" + variant.name + "'" : "") + "!");
+            } else if (!variantNames.add(variant.getName())) {
+                throw new MojoExecutionException("Multiple variants use the name '" + variant.getName() + "'! Make sure to define a unique name for each variant.");
+            } else if (!this.nativeBinary.getArchitectures().containsAll(variant.nativeBinary.getArchitectures())) {
+                throw new MojoExecutionException("Variant '" + variant.getName() + "' requires the architectures " + variant.nativeBinary.getArchitectures() + " but the app is built for 'nativeBinary' " + this.nativeBinary + " containing only the architectures " + this.nativeBinary.getArchitectures() + "!");
+            }
+        }
+    }
+
+    /**
+     * Writes the metrics of all stages executed so far, so that even a failed build reports where it spent its time.
+     */
+    private void writeMetrics(BuildMetrics buildMetrics, File metricsFile) {
+        this.getLog().info("Bundle stages:");
+        buildMetrics.createSummary().forEach(line -> this.getLog().info("  " + line));
+        try {
+            buildMetrics.writeJson(metricsFile.toPath());
+        } catch (IOException e) {
+            this.getLog().warn("Cannot write build metrics to: " + metricsFile.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Parses the timestamp configured in {@code project.build.outputTimestamp}, either given as ISO 8601 date with
+     * offset or as number of seconds since the epoch, using the same rules as the other Maven plugins.
+     *
+     * @return the timestamp or {@code null} if no reproducible output has been requested
+     */
+    private Instant parseOutputTimestamp() throws MojoExecutionException {
+        if (this.outputTimestamp == null || this.outputTimestamp.length() < 2) {
+            return null;
+        } else if (StringUtils.isNumeric(this.outputTimestamp)) {
+            return Instant.ofEpochSecond(Long.parseLong(this.outputTimestamp));
+        } else {
+            try {
+                return OffsetDateTime.parse(this.outputTimestamp).toInstant().truncatedTo(ChronoUnit.SECONDS);
+            } catch (DateTimeParseException e) {
+                throw new MojoExecutionException("Invalid project.build.outputTimestamp value '" + this.outputTimestamp + "'", e);
+            }
+        }
+    }
 
+    private void normalizeApp(File appDirectory, Instant outputInstant) throws MojoExecutionException {
+        try {
+            int linkedCount = IO.normalizeFiles(appDirectory.toPath(), outputInstant);
+            this.getLog().info("Normalized timestamps and permissions of app files to: " + outputInstant);
+            if (linkedCount > 0) {
+                this.getLog().warn("Timestamps and permissions of " + linkedCount + " hard linked files have not been normalized. Use a linkStrategy of COPY or REFLINK for fully reproducible builds.");
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot normalize app directory at: " + appDirectory.getAbsolutePath(), e);
         }
     }
 
-    private String createDmgFileName(String appName) {
+    /**
+     * @param variantName the name of the variant the DMG archive is created for or {@code null} for the app itself
+     */
+    private String createDmgFileName(String appName, String variantName) {
         String baseName = appName;
         if (StringUtils.isNotEmpty(this.dmg.dmgFileName)) {
             baseName = this.dmg.dmgFileName;
@@ -128,6 +330,9 @@ public class BundleMojo extends AbstractMojo {
         if (this.dmg.appendVersion) {
             fullName.append("_").append(this.project.getVersion());
         }
+        if (variantName != null) {
+            fullName.append("_").append(variantName);
+        }
         fullName.append(".dmg");
         return fullName.toString();
     }
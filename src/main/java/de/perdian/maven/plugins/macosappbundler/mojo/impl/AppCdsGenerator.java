@@ -0,0 +1,239 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.shared.utils.cli.Commandline;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.IO;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.JdkRelease;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.Processes;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.AppCdsConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.PlistConfiguration;
+
+/**
+ * Creates a dynamic Class Data Sharing (AppCDS) archive by running the application once with the same runtime, the
+ * same options and the same classpath or module path that the launcher will use.
+ */
+
+public class AppCdsGenerator {
+
+    private static final int MINIMUM_FEATURE_VERSION = 13;
+
+    private AppCdsConfiguration configuration = null;
+    private PlistConfiguration plistConfiguration = null;
+    private List<String> classpathEntries = null;
+    private Log log = null;
+
+    public AppCdsGenerator(AppCdsConfiguration configuration, PlistConfiguration plistConfiguration, Log log) {
+        this.setConfiguration(configuration);
+        this.setPlistConfiguration(plistConfiguration);
+        this.setLog(log);
+    }
+
+    /**
+     * Runs the training invocation of the application and creates the archive inside the work directory. If the
+     * archive has already been created by a previous build from exactly the same runtime, options and application
+     * files, the existing archive will be returned without running the application again.
+     *
+     * @param appDirectory the app directory, into which the application classes and the runtime have already been copied
+     * @param workDirectory the directory in which the archive will be created
+     * @return the archive or {@code null} if the runtime doesn't support the creation of a dynamic archive
+     */
+    public File generateArchive(File appDirectory, File workDirectory) throws MojoExecutionException {
+        try {
+            File runtimeDirectory = this.resolveRuntimeDirectory(appDirectory);
+            JdkRelease runtimeRelease = JdkRelease.read(runtimeDirectory);
+            int featureVersion = runtimeRelease.getFeatureVersion();
+            if (featureVersion > 0 && featureVersion < MINIMUM_FEATURE_VERSION) {
+                this.getLog().warn("Runtime at '" + runtimeDirectory.getAbsolutePath() + "' doesn't support dynamic CDS archives (Java " + MINIMUM_FEATURE_VERSION + " or later is required). No AppCDS archive will be created.");
+                return null;
+            }
+
+            File javaExecutable = new File(runtimeDirectory, "bin/java");
+            List<String> launchArguments = this.computeLaunchArguments(new File(appDirectory, "Contents/Java"));
+            File archiveFile = new File(workDirectory, this.getConfiguration().archiveFileName);
+            File archiveKeyFile = new File(workDirectory, this.getConfiguration().archiveFileName + ".key");
+            String archiveKey = this.computeArchiveKey(javaExecutable, launchArguments, new File(appDirectory, "Contents/Java"));
+            if (archiveFile.exists() && archiveKeyFile.exists() && archiveKey.equals(new String(Files.readAllBytes(archiveKeyFile.toPath()), StandardCharsets.UTF_8))) {
+                this.getLog().info("Reusing AppCDS archive from: " + archiveFile.getAbsolutePath());
+                return archiveFile;
+            }
+
+            Files.createDirectories(workDirectory.toPath());
+            this.ensureBaseArchive(runtimeDirectory, javaExecutable, workDirectory);
+
+            File temporaryArchiveFile = new File(workDirectory, archiveFile.getName() + ".tmp");
+            File outputFile = new File(workDirectory, archiveFile.getName() + ".log");
+            Files.deleteIfExists(temporaryArchiveFile.toPath());
+            List<String> trainingCommand = new ArrayList<>();
+            trainingCommand.add(javaExecutable.getAbsolutePath());
+            trainingCommand.add("-XX:ArchiveClassesAtExit=" + temporaryArchiveFile.getAbsolutePath());
+            trainingCommand.addAll(launchArguments);
+            this.getLog().info("Creating AppCDS archive using training run of the application (output written to: " + outputFile.getAbsolutePath() + ")");
+            int exitValue = Processes.execute(trainingCommand, appDirectory, outputFile, this.getConfiguration().trainingTimeout, this.getLog());
+            if (!temporaryArchiveFile.exists()) {
+                throw new MojoExecutionException("Training run exited with status " + exitValue + " but didn't create an AppCDS archive. See output at: " + outputFile.getAbsolutePath());
+            } else if (exitValue != 0) {
+                this.getLog().warn("Training run exited with status " + exitValue + ". See output at: " + outputFile.getAbsolutePath());
+            }
+            Files.move(temporaryArchiveFile.toPath(), archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.write(archiveKeyFile.toPath(), archiveKey.getBytes(StandardCharsets.UTF_8));
+            return archiveFile;
+
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot create AppCDS archive", e);
+        }
+    }
+
+    /**
+     * A dynamic archive can only be created on top of the default CDS archive of the runtime. Runtime images created by
+     * jlink don't contain a default archive, so it needs to be created first.
+     */
+    private void ensureBaseArchive(File runtimeDirectory, File javaExecutable, File workDirectory) throws IOException {
+        File baseArchiveFile = new File(runtimeDirectory, "lib/server/classes.jsa");
+        if (!baseArchiveFile.exists() && new File(runtimeDirectory, "lib/server").isDirectory()) {
+            this.getLog().info("Creating default CDS archive of runtime at: " + runtimeDirectory.getAbsolutePath());
+            Commandline dumpCommandLine = new Commandline();
+            dumpCommandLine.setExecutable(javaExecutable.getAbsolutePath());
+            dumpCommandLine.createArg().setValue("-Xshare:dump");
+            Processes.execute(dumpCommandLine, this.getLog());
+        }
+    }
+
+    private File resolveRuntimeDirectory(File appDirectory) {
+        File bundledRuntimeDirectory = new File(appDirectory, "Contents/Java/runtime");
+        if (new File(bundledRuntimeDirectory, "bin/java").canExecute()) {
+            return bundledRuntimeDirectory;
+        } else {
+            File systemRuntimeDirectory = new File(System.getProperty("java.home"));
+            this.getLog().warn("No runtime included in app, creating AppCDS archive using runtime at: " + systemRuntimeDirectory.getAbsolutePath() + ". The archive will only be used if the app is executed with exactly this runtime.");
+            return systemRuntimeDirectory;
+        }
+    }
+
+    /**
+     * Computes the arguments in the same way the native launcher does, so that the classes recorded inside the archive
+     * will be accepted when the application is started by the launcher.
+     */
+    private List<String> computeLaunchArguments(File appJavaDirectory) throws IOException, MojoExecutionException {
+        List<String> launchArguments = new ArrayList<>();
+        if (this.getPlistConfiguration().JVMOptions != null) {
+            launchArguments.addAll(this.getPlistConfiguration().JVMOptions);
+        }
+        if (this.getConfiguration().trainingOptions != null) {
+            launchArguments.addAll(this.getConfiguration().trainingOptions);
+        }
+        File modulesDirectory = new File(appJavaDirectory, "modules");
+        File classpathDirectory = new File(appJavaDirectory, "classpath");
+        if (modulesDirectory.isDirectory()) {
+            launchArguments.add("--module-path");
+            launchArguments.add(modulesDirectory.getAbsolutePath());
+            launchArguments.add("--module");
+            launchArguments.add(this.getPlistConfiguration().JVMMainModuleName);
+        } else if (classpathDirectory.isDirectory()) {
+            if (this.getClasspathEntries() == null) {
+                throw new MojoExecutionException("An AppCDS archive for a classpath based application requires the classpath to be stored inside the Info.plist file (JVMClasspath), as the launcher would otherwise use another classpath order than the training run");
+            }
+            launchArguments.add("-classpath");
+            launchArguments.add(this.getClasspathEntries().stream().map(classpathEntry -> new File(appJavaDirectory, classpathEntry).getAbsolutePath()).collect(Collectors.joining(File.pathSeparator)));
+            launchArguments.add(this.getPlistConfiguration().JVMMainClassName);
+        } else {
+            throw new MojoExecutionException("Neither a 'classpath' nor a 'modules' directory could be found at: " + appJavaDirectory.getAbsolutePath());
+        }
+        if (this.getPlistConfiguration().JVMArguments != null) {
+            launchArguments.addAll(this.getPlistConfiguration().JVMArguments);
+        }
+        if (this.getConfiguration().trainingArguments != null) {
+            launchArguments.addAll(this.getConfiguration().trainingArguments);
+        }
+        return launchArguments;
+    }
+
+    private String computeArchiveKey(File javaExecutable, List<String> launchArguments, File appJavaDirectory) throws IOException {
+        StringBuilder archiveKeySource = new StringBuilder();
+        archiveKeySource.append(javaExecutable.getCanonicalPath()).append("\n");
+        File releaseFile = new File(javaExecutable.getParentFile().getParentFile(), "release");
+        if (releaseFile.exists()) {
+            archiveKeySource.append(IO.computeHash(releaseFile.toPath())).append("\n");
+        }
+        archiveKeySource.append(String.join(" ", launchArguments)).append("\n");
+        for (Path applicationFile : this.listFiles(appJavaDirectory)) {
+            if (!applicationFile.startsWith(appJavaDirectory.toPath().resolve("runtime")) && !applicationFile.getFileName().toString().equals(this.getConfiguration().archiveFileName)) {
+                archiveKeySource.append(applicationFile).append("\t").append(Files.size(applicationFile)).append("\t").append(Files.getLastModifiedTime(applicationFile).toMillis()).append("\n");
+            }
+        }
+        return IO.computeHash(archiveKeySource.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<Path> listFiles(File directory) throws IOException {
+        try (Stream<Path> directoryFiles = Files.walk(directory.toPath())) {
+            return directoryFiles.filter(Files::isRegularFile).map(Path::toAbsolutePath).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return the option that needs to be passed to the JVM so that the archive will be used by the launcher
+     */
+    public String createSharedArchiveFileOption() {
+        return "-XX:SharedArchiveFile=Contents/Java/" + this.getConfiguration().archiveFileName;
+    }
+
+    private AppCdsConfiguration getConfiguration() {
+        return this.configuration;
+    }
+    private void setConfiguration(AppCdsConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    private PlistConfiguration getPlistConfiguration() {
+        return this.plistConfiguration;
+    }
+    private void setPlistConfiguration(PlistConfiguration plistConfiguration) {
+        this.plistConfiguration = plistConfiguration;
+    }
+
+    private List<String> getClasspathEntries() {
+        return this.classpathEntries;
+    }
+    /**
+     * @param classpathEntries the classpath entries (relative to {@code Contents/Java}) in the order in which they are passed to the JVM by the launcher
+     */
+    public void setClasspathEntries(List<String> classpathEntries) {
+        this.classpathEntries = classpathEntries;
+    }
+
+    private Log getLog() {
+        return this.log;
+    }
+    private void setLog(Log log) {
+        this.log = log;
+    }
+
+}
@@ -17,12 +17,30 @@
  */
 package de.perdian.maven.plugins.macosappbundler.mojo.impl;
 
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.BinaryPlistReader;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.BinaryPlistWriter;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.BuildMetrics;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.BundleManifest;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.FileCache;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.FileTransfer;
 import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.IO;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.JarEntryFilter;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.NativeBinarySlimmer;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.NativeLibraries;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.TreeCopier;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.XmlPlistReader;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.XmlPlistWriter;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.AppCdsConfiguration;
 import de.perdian.maven.plugins.macosappbundler.mojo.model.AppConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.ClasspathLayout;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.JlinkConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.LinkStrategy;
 import de.perdian.maven.plugins.macosappbundler.mojo.model.NativeBinaryType;
 import de.perdian.maven.plugins.macosappbundler.mojo.model.PlistConfiguration;
-import org.apache.commons.io.FileUtils;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.PlistFormat;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.RepackConfiguration;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.repository.layout.ArtifactRepositoryLayout;
@@ -32,25 +50,50 @@ import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.shared.model.fileset.FileSet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class AppGenerator {
 
+    private static final String NATIVE_LIBRARY_PATH = "Contents/Java/native";
+
     private PlistConfiguration plistConfiguration = null;
     private NativeBinaryType nativeBinaryType = NativeBinaryType.UNIVERSAL;
+    private LinkStrategy linkStrategy = LinkStrategy.COPY;
+    private PlistFormat plistFormat = PlistFormat.XML;
+    private JlinkConfiguration jlinkConfiguration = null;
+    private AppCdsConfiguration appCdsConfiguration = null;
     private boolean includeJdk = false;
     private String jdkLocation = null;
+    private File runtimeCacheDirectory = null;
+    private long runtimeCacheMaximumSize = Long.MAX_VALUE;
+    private BuildMetrics buildMetrics = new BuildMetrics();
+    private Instant outputTimestamp = null;
     private Log log = null;
     private AppConfiguration appConfiguration = null;
+    private BundleManifest bundleManifest = null;
+    private NativeBinarySlimmer nativeBinarySlimmer = null;
+    private JarEntryFilter jarEntryFilter = null;
+    private List<String> classpathEntries = null;
 
     public AppGenerator(PlistConfiguration plistConfiguration, AppConfiguration appConfiguration, Log log) {
         this.setPlistConfiguration(plistConfiguration);
@@ -66,31 +109,175 @@ public class AppGenerator {
     }
 
     public void generateApp(MavenProject project, File appDirectory) throws MojoExecutionException {
-        this.copyApplicationClasses(project, new File(appDirectory, "Contents/Java"));
-        this.copyJdk(new File(appDirectory, "Contents/Java/runtime"));
-        this.copyNativeExecutable(new File(appDirectory, "Contents/MacOS"));
-        this.generatePlist(project, new File(appDirectory, "Contents/"));
+        this.setBundleManifest(this.createBundleManifest(project, appDirectory));
+        IO.FileCopier fileCopier = new FileTransfer(this.getLinkStrategy(), this.getLog())::transfer;
+        List<String> bundleConfiguration = new ArrayList<>();
+        if (this.getAppConfiguration().isSlimNativeBinaries()) {
+            this.setNativeBinarySlimmer(new NativeBinarySlimmer(this.getNativeBinaryType().getArchitectures(), this.getLog()));
+            bundleConfiguration.add("slimNativeBinaries=" + String.join(",", this.getNativeBinaryType().getArchitectures()));
+            fileCopier = this.getNativeBinarySlimmer().createFileCopier(fileCopier);
+        }
+        List<String> jarEntryIncludes = this.getAppConfiguration().getJarEntryIncludes();
+        List<String> jarEntryExcludes = this.getAppConfiguration().getJarEntryExcludes();
+        if ((jarEntryIncludes != null && !jarEntryIncludes.isEmpty()) || (jarEntryExcludes != null && !jarEntryExcludes.isEmpty())) {
+            this.setJarEntryFilter(new JarEntryFilter(jarEntryIncludes, jarEntryExcludes, this.getLog()));
+            this.getJarEntryFilter().setNativeBinarySlimmer(this.getNativeBinarySlimmer());
+            bundleConfiguration.add("jarEntryIncludes=" + this.getJarEntryFilter().getIncludes());
+            bundleConfiguration.add("jarEntryExcludes=" + this.getJarEntryFilter().getExcludes());
+        }
+        this.getBundleManifest().setConfiguration(String.join(";", bundleConfiguration));
+        this.getBundleManifest().setFileCopier(fileCopier);
+
+        this.runStage("copyApplicationClasses", appDirectory, stage -> this.copyApplicationClasses(project, appDirectory));
+        this.runStage("copyJdk", appDirectory, stage -> this.copyJdk(project, new File(appDirectory, "Contents/Java/runtime")));
+        this.runStage("copyNativeExecutable", appDirectory, stage -> this.copyNativeExecutable(new File(appDirectory, "Contents/MacOS")));
+        if (this.getAppCdsConfiguration() != null && this.getAppCdsConfiguration().enable) {
+            this.runStage("generateAppCdsArchive", appDirectory, stage -> this.generateAppCdsArchive(project, appDirectory));
+        }
+        this.runStage("generatePlist", appDirectory, stage -> {
+            File plistFile = this.generatePlist(project, new File(appDirectory, "Contents/"));
+            stage.addFiles(1, plistFile.length());
+        });
 
         if (this.getAppConfiguration().additionalResources != null && !this.getAppConfiguration().additionalResources.isEmpty()) {
             this.getLog().info("Copy additional app resources");
-            this.copyAdditionalAppResources(project, this.getAppConfiguration().additionalResources, appDirectory);
+            this.runStage("copyAdditionalResources", appDirectory, stage -> {
+                List<File> resourceFiles = this.copyAdditionalAppResources(project, this.getAppConfiguration().additionalResources, appDirectory);
+                stage.addFiles(resourceFiles.size(), resourceFiles.stream().mapToLong(File::length).sum());
+            });
+        }
+
+        this.completeBundleManifest();
+        if (this.getClasspathEntries() != null && this.completeClasspathEntries(new File(appDirectory, "Contents/Java/classpath"))) {
+            this.writePlist(new File(appDirectory, "Contents/"));
+        }
+        if (this.getNativeBinarySlimmer() != null) {
+            this.getLog().info("Native binaries for architectures " + this.getNativeBinaryType().getArchitectures() + ": " + this.getNativeBinarySlimmer());
+        }
+        if (this.getJarEntryFilter() != null) {
+            this.getLog().info("Filtered JAR file entries: " + this.getJarEntryFilter());
+        }
+    }
+
+    /**
+     * Runs the action as a stage of the build metrics, including all files that the action copies into the bundle.
+     */
+    private void runStage(String stageName, File appDirectory, BuildMetrics.StageAction<MojoExecutionException> stageAction) throws MojoExecutionException {
+        int copiedCount = this.getBundleManifest().getCopiedCount();
+        long copiedSize = this.getBundleManifest().getCopiedSize();
+        this.getBuildMetrics().runStage(stageName, appDirectory, stage -> {
+            try {
+                stageAction.run(stage);
+            } finally {
+                stage.addFiles(this.getBundleManifest().getCopiedCount() - copiedCount, this.getBundleManifest().getCopiedSize() - copiedSize);
+            }
+        });
+    }
+
+    private BundleManifest createBundleManifest(MavenProject project, File appDirectory) throws MojoExecutionException {
+        File manifestFile = new File(project.getBuild().getDirectory(), "macosappbundler/" + appDirectory.getName() + ".manifest");
+        if (this.getAppConfiguration().isIncremental()) {
+            try {
+                this.getLog().debug("Loading bundle manifest from: " + manifestFile.getAbsolutePath());
+                return BundleManifest.load(appDirectory.toPath(), manifestFile.toPath());
+            } catch (IOException | RuntimeException e) {
+                this.getLog().warn("Cannot read bundle manifest at: " + manifestFile.getAbsolutePath() + ". All files will be copied.", e);
+            }
+        }
+        return BundleManifest.create(appDirectory.toPath(), manifestFile.toPath());
+    }
+
+    /**
+     * Appends all files inside the classpath directory that haven't been copied from the project artifacts (like JAR
+     * files copied via additional resources) to the precomputed classpath, as the launcher doesn't scan the classpath
+     * directory itself if the classpath is stored inside the Info.plist file.
+     *
+     * @return {@code true} if additional entries have been found, so the Info.plist file needs to be generated again
+     */
+    private boolean completeClasspathEntries(File classpathDirectory) throws MojoExecutionException {
+        if (!classpathDirectory.isDirectory()) {
+            return false;
+        }
+        Path appJavaDirectory = classpathDirectory.getParentFile().toPath();
+        try (Stream<Path> classpathFiles = Files.walk(classpathDirectory.toPath())) {
+            List<String> additionalEntries = classpathFiles
+                .filter(Files::isRegularFile)
+                .map(classpathFile -> appJavaDirectory.relativize(classpathFile).toString().replace('\\', '/'))
+                .filter(classpathEntry -> !this.getClasspathEntries().contains(classpathEntry))
+                .sorted()
+                .collect(Collectors.toList());
+            if (additionalEntries.isEmpty()) {
+                return false;
+            } else {
+                this.getLog().info("Adding " + additionalEntries.size() + " additional files from the classpath directory to the precomputed classpath");
+                List<String> classpathEntries = new ArrayList<>(this.getClasspathEntries());
+                classpathEntries.addAll(additionalEntries);
+                this.setClasspathEntries(classpathEntries);
+                return true;
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot scan classpath directory at: " + classpathDirectory.getAbsolutePath(), e);
+        }
+    }
+
+    private void completeBundleManifest() throws MojoExecutionException {
+        try {
+            this.getBundleManifest().removeStaleFiles();
+            this.getBundleManifest().save();
+            this.getLog().info("Bundle files copied: " + this.getBundleManifest().getCopiedCount() + ", skipped (unchanged): " + this.getBundleManifest().getSkippedCount() + ", removed (stale): " + this.getBundleManifest().getRemovedCount());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot update bundle manifest", e);
         }
     }
 
-    private void copyAdditionalAppResources(MavenProject project, List<FileSet> additionalResources, File appDirectory) throws MojoExecutionException {
+    /**
+     * @return the resource files that have been copied, resources that are unchanged since the previous build are kept
+     */
+    private List<File> copyAdditionalAppResources(MavenProject project, List<FileSet> additionalResources, File appDirectory) throws MojoExecutionException {
+        IO.CopyResult copyResult = null;
         try {
-            IO.copyFileSets(appDirectory, additionalResources);
+            File recordFile = new File(project.getBuild().getDirectory(), "macosappbundler/" + appDirectory.getName() + ".resources");
+            copyResult = IO.copyFileSets(appDirectory, additionalResources, this.getAppConfiguration().getCopyThreads(), this.getAppConfiguration().isIncremental() ? recordFile.toPath() : null, "plistFormat=" + this.getPlistFormat());
+            this.getLog().info("Additional app resources " + copyResult);
         } catch (Exception e) {
             this.getLog().error("Cannot copy additional app resources", e);
             throw new MojoExecutionException("Cannot copy additional app resources", e);
         }
+        if (PlistFormat.BINARY.equals(this.getPlistFormat())) {
+            for (File resourceFile : copyResult.getCopiedFiles()) {
+                if (resourceFile.getName().endsWith(".plist")) {
+                    this.convertPlistToBinary(resourceFile);
+                }
+            }
+        }
+        return copyResult.getCopiedFiles();
+    }
+
+    private void convertPlistToBinary(File plistFile) throws MojoExecutionException {
+        try {
+            byte[] plistContent = Files.readAllBytes(plistFile.toPath());
+            if (!BinaryPlistReader.isBinaryPlist(plistContent)) {
+                ByteArrayOutputStream binaryContent = new ByteArrayOutputStream();
+                try {
+                    XmlPlistReader.read(new ByteArrayInputStream(plistContent), new BinaryPlistWriter(binaryContent));
+                } catch (IOException e) {
+                    this.getLog().warn("Cannot convert property list to binary format, keeping original file at: " + plistFile.getAbsolutePath(), e);
+                    return;
+                }
+                this.getLog().debug("Converting property list to binary format: " + plistFile.getAbsolutePath());
+                Files.write(plistFile.toPath(), binaryContent.toByteArray());
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot convert property list at: " + plistFile.getAbsolutePath(), e);
+        }
     }
 
-    private void copyApplicationClasses(MavenProject project, File appJavaDirectory) throws MojoExecutionException {
+    private void copyApplicationClasses(MavenProject project, File appDirectory) throws MojoExecutionException {
+        File appJavaDirectory = new File(appDirectory, "Contents/Java");
         this.getLog().info("Copy application classes to: " + appJavaDirectory.getAbsolutePath());
         try {
             if (StringUtils.isNotEmpty(this.getPlistConfiguration().JVMMainClassName)) {
-                this.copyClasspathApplicationClasses(project, new File(appJavaDirectory, "classpath"));
+                this.copyClasspathApplicationClasses(project, new File(appJavaDirectory, "classpath"), new File(project.getBuild().getDirectory(), "macosappbundler/repack/" + appDirectory.getName()));
             } else if (StringUtils.isNotEmpty(this.getPlistConfiguration().JVMMainModuleName)) {
                 this.copyModulesApplicationClasses(project, new File(appJavaDirectory, "modules"));
             }
@@ -99,17 +286,64 @@ public class AppGenerator {
         }
     }
 
-    private void copyClasspathApplicationClasses(MavenProject project, File classpathDirectory) throws IOException {
+    private void copyClasspathApplicationClasses(MavenProject project, File classpathDirectory, File repackDirectory) throws IOException, MojoExecutionException {
         ArtifactRepositoryLayout repositoryLayout = new DefaultRepositoryLayout();
+        Map<Path, Path> artifactFiles = new LinkedHashMap<>();
         Artifact primaryArtifact = this.resolvePrimaryArtifact(project);
-        this.copyClasspathApplicationDependencyArtifact(primaryArtifact, classpathDirectory, repositoryLayout);
+        this.appendClasspathApplicationDependencyArtifact(primaryArtifact, classpathDirectory, repositoryLayout, artifactFiles);
         if (this.getAppConfiguration().isIncludeDependencies()) {
             for (Artifact artifact : project.getArtifacts()) {
-                this.copyClasspathApplicationDependencyArtifact(artifact, classpathDirectory, repositoryLayout);
+                this.appendClasspathApplicationDependencyArtifact(artifact, classpathDirectory, repositoryLayout, artifactFiles);
             }
         } else {
             this.getLog().debug("Inclusion of dependencies has been disbaled");
         }
+        Map<Path, Path> copiedFiles = artifactFiles;
+        RepackConfiguration repackConfiguration = this.getAppConfiguration().getRepack();
+        if (repackConfiguration != null && repackConfiguration.enable) {
+            copiedFiles = this.repackDependencyArtifacts(artifactFiles, classpathDirectory, repackDirectory);
+        }
+        this.copyApplicationArtifacts(copiedFiles);
+        if (this.getAppConfiguration().isExtractNativeLibraries()) {
+            this.extractNativeLibraries(artifactFiles.values(), new File(classpathDirectory.getParentFile(), "native"));
+        }
+        if (this.isPrecomputedClasspath()) {
+            Path appJavaDirectory = classpathDirectory.getParentFile().toPath();
+            this.setClasspathEntries(copiedFiles.keySet().stream().map(targetFile -> appJavaDirectory.relativize(targetFile).toString().replace('\\', '/')).collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * An AppCDS archive can only be used if the classpath at runtime starts with the classpath of the training run. The
+     * order in which the launcher lists the classpath directory is unspecified, so the classpath is always stored
+     * inside the Info.plist file when an archive is created.
+     */
+    private boolean isPrecomputedClasspath() {
+        if (this.getAppConfiguration().isPrecomputedClasspath()) {
+            return true;
+        } else if (this.getAppCdsConfiguration() != null && this.getAppCdsConfiguration().enable) {
+            this.getLog().info("Storing classpath inside Info.plist, as the AppCDS archive requires the same classpath order as the training run");
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Merges all dependencies into a single JAR file. The primary artifact is kept separate, so that the merged JAR
+     * file doesn't need to be recreated whenever only the application itself has changed.
+     */
+    private Map<Path, Path> repackDependencyArtifacts(Map<Path, Path> artifactFiles, File classpathDirectory, File repackDirectory) throws MojoExecutionException {
+        Map<Path, Path> repackedFiles = new LinkedHashMap<>();
+        Map<Path, Path> dependencyFiles = new LinkedHashMap<>(artifactFiles);
+        Map.Entry<Path, Path> primaryArtifactFile = artifactFiles.entrySet().iterator().next();
+        repackedFiles.put(primaryArtifactFile.getKey(), primaryArtifactFile.getValue());
+        dependencyFiles.remove(primaryArtifactFile.getKey());
+        RepackGenerator repackGenerator = new RepackGenerator(this.getAppConfiguration().getRepack(), this.getLog());
+        repackGenerator.setJarEntryFilter(this.getJarEntryFilter());
+        repackGenerator.setTimestamp(this.getOutputTimestamp());
+        repackedFiles.putAll(repackGenerator.repack(dependencyFiles, classpathDirectory, repackDirectory));
+        return repackedFiles;
     }
 
     private Artifact resolvePrimaryArtifact(MavenProject project) {
@@ -124,38 +358,94 @@ public class AppGenerator {
         return project.getArtifact();
     }
 
-    private void copyClasspathApplicationDependencyArtifact(Artifact artifact, File targetDirectory, ArtifactRepositoryLayout repositoryLayout) throws IOException {
-        File targetFile = new File(targetDirectory, repositoryLayout.pathOf(artifact));
-        if (!targetFile.getParentFile().exists()) {
-            targetFile.getParentFile().mkdirs();
+    private void appendClasspathApplicationDependencyArtifact(Artifact artifact, File targetDirectory, ArtifactRepositoryLayout repositoryLayout, Map<Path, Path> artifactFiles) {
+        File targetFile = null;
+        if (this.getAppConfiguration().getClasspathLayout() == ClasspathLayout.FLAT) {
+            targetFile = new File(targetDirectory, artifact.getGroupId() + "-" + this.createArtifactFileName(artifact));
+        } else {
+            targetFile = new File(targetDirectory, repositoryLayout.pathOf(artifact));
         }
-        FileUtils.copyFile(artifact.getFile(), targetFile);
+        artifactFiles.put(targetFile.toPath(), artifact.getFile().toPath());
     }
 
     private void copyModulesApplicationClasses(MavenProject project, File modulesDirectory) throws IOException {
+        Map<Path, Path> artifactFiles = new LinkedHashMap<>();
         Artifact primaryArtifact = this.resolvePrimaryArtifact(project);
-    	this.copyModulesApplicationClassesArtifact(primaryArtifact, modulesDirectory);
+    	this.appendModulesApplicationClassesArtifact(primaryArtifact, modulesDirectory, artifactFiles);
         if (this.getAppConfiguration().isIncludeDependencies()) {
             for (Artifact artifact : project.getArtifacts()) {
-                this.copyModulesApplicationClassesArtifact(artifact, modulesDirectory);
+                this.appendModulesApplicationClassesArtifact(artifact, modulesDirectory, artifactFiles);
             }
         } else {
             this.getLog().debug("Inclusion of dependencies has been disbaled");
         }
+        if (this.getAppConfiguration().getRepack() != null && this.getAppConfiguration().getRepack().enable) {
+            this.getLog().warn("Repacking dependencies is only supported for classpath applications, copying modules unchanged");
+        }
+        this.copyApplicationArtifacts(artifactFiles);
+        if (this.getAppConfiguration().isExtractNativeLibraries()) {
+            this.extractNativeLibraries(artifactFiles.values(), new File(modulesDirectory.getParentFile(), "native"));
+        }
     }
 
-    private void copyModulesApplicationClassesArtifact(Artifact artifact, File modulesDirectory) throws IOException {
+    private void appendModulesApplicationClassesArtifact(Artifact artifact, File modulesDirectory, Map<Path, Path> artifactFiles) {
+        File targetFile = new File(modulesDirectory, this.createArtifactFileName(artifact));
+        artifactFiles.put(targetFile.toPath(), artifact.getFile().toPath());
+    }
+
+    private String createArtifactFileName(Artifact artifact) {
         StringBuilder targetFileName = new StringBuilder();
         targetFileName.append(artifact.getArtifactId());
         targetFileName.append("-").append(artifact.getVersion());
         String classifier = artifact.getClassifier();
         if (classifier != null && !classifier.isEmpty()) targetFileName.append("-").append(classifier);
         targetFileName.append(".").append(FilenameUtils.getExtension(artifact.getFile().getName()));
-        File targetFile = new File(modulesDirectory, targetFileName.toString());
-        if (!targetFile.getParentFile().exists()) {
-            targetFile.getParentFile().mkdirs();
+        return targetFileName.toString();
+    }
+
+    private void copyApplicationArtifacts(Map<Path, Path> artifactFiles) throws IOException {
+        int copyThreads = this.getAppConfiguration().getCopyThreads();
+        this.getLog().debug("Copy " + artifactFiles.size() + " artifacts using " + copyThreads + " threads");
+        IO.FileCopier artifactCopier = this.getBundleManifest().getFileCopier();
+        if (this.getJarEntryFilter() != null) {
+            artifactCopier = this.getJarEntryFilter().createFileCopier(artifactCopier);
+        }
+        IO.FileCopier bundleArtifactCopier = artifactCopier;
+        IO.copyFiles(artifactFiles, copyThreads, (sourceFile, targetFile) -> this.getBundleManifest().copyFile(sourceFile, targetFile, bundleArtifactCopier));
+    }
+
+    /**
+     * Extracts the native libraries from the artifacts into the app, so that they can be loaded directly from there
+     * instead of being extracted into a temporary directory whenever the app is launched.
+     */
+    private void extractNativeLibraries(Collection<Path> artifactFiles, File nativeDirectory) throws IOException {
+        Map<String, NativeLibraries.NativeLibrary> nativeLibraries = NativeLibraries.collect(artifactFiles, this.getNativeBinaryType().getArchitectures(), this.getLog());
+        if (!nativeLibraries.isEmpty()) {
+            this.getLog().info("Extracting " + nativeLibraries.size() + " native libraries to: " + nativeDirectory.getAbsolutePath());
+            Files.createDirectories(nativeDirectory.toPath());
+            for (Map.Entry<String, NativeLibraries.NativeLibrary> nativeLibrary : nativeLibraries.entrySet()) {
+                this.getLog().debug("Extracting native library from: " + nativeLibrary.getValue());
+                byte[] nativeLibraryContent = nativeLibrary.getValue().readContent();
+                if (this.getNativeBinarySlimmer() != null) {
+                    nativeLibraryContent = this.getNativeBinarySlimmer().slimContent(nativeLibraryContent);
+                }
+                this.getBundleManifest().copyContent(nativeLibrary.getValue().toString(), nativeLibraryContent, new File(nativeDirectory, nativeLibrary.getKey()).toPath());
+            }
+            this.appendLibraryPathOption("java.library.path");
+            this.appendLibraryPathOption("jna.boot.library.path");
+        }
+    }
+
+    private void appendLibraryPathOption(String propertyName) {
+        if (this.getPlistConfiguration().JVMOptions == null) {
+            this.getPlistConfiguration().JVMOptions = new ArrayList<>();
+        }
+        String optionPrefix = "-D" + propertyName + "=";
+        if (this.getPlistConfiguration().JVMOptions.stream().anyMatch(option -> option.startsWith(optionPrefix))) {
+            this.getLog().info("Keeping existing JVM option for '" + propertyName + "', extracted native libraries are located at: " + NATIVE_LIBRARY_PATH);
+        } else {
+            this.getPlistConfiguration().JVMOptions.add(optionPrefix + NATIVE_LIBRARY_PATH);
         }
-        FileUtils.copyFile(artifact.getFile(), targetFile);
     }
 
     private void copyNativeExecutable(File targetDirectory) throws MojoExecutionException {
@@ -164,8 +454,11 @@ public class AppGenerator {
             String targetFileName = StringUtils.defaultIfEmpty(this.getPlistConfiguration().CFBundleExecutable, "JavaLauncher");
             File targetFile = new File(targetDirectory, targetFileName);
             this.getLog().info("Copy native executable for binary type " + this.getNativeBinaryType() + " to: " + targetFile.getAbsolutePath());
+            if (!targetDirectory.exists()) {
+                targetDirectory.mkdirs();
+            }
             try (InputStream nativeExecutableStream = nativeBinarySource.openStream()) {
-                FileUtils.copyInputStreamToFile(nativeExecutableStream, targetFile);
+                this.getBundleManifest().copyContent(nativeBinarySource.toString(), IOUtils.toByteArray(nativeExecutableStream), targetFile.toPath());
             }
             targetFile.setExecutable(true, false);
         } catch (IOException e) {
@@ -182,22 +475,73 @@ public class AppGenerator {
         }
     }
 
-    private void generatePlist(MavenProject project, File contentsDirectory) throws MojoExecutionException {
-        Map<String, String> additionalProperties = new LinkedHashMap<>();
-        String iconFileName = this.copyIcon(project, contentsDirectory);
-        if (StringUtils.isNotEmpty(iconFileName)) {
-            additionalProperties.put("CFBundleIconFile", iconFileName);
+    private void generateAppCdsArchive(MavenProject project, File appDirectory) throws MojoExecutionException {
+        if (this.getOutputTimestamp() != null) {
+            // The archive records the modification times of the JAR files, so they must be normalized before the
+            // training run instead of afterwards
+            try {
+                IO.normalizeFiles(new File(appDirectory, "Contents/Java").toPath(), this.getOutputTimestamp());
+            } catch (IOException e) {
+                throw new MojoExecutionException("Cannot normalize application files", e);
+            }
+        }
+        AppCdsGenerator appCdsGenerator = new AppCdsGenerator(this.getAppCdsConfiguration(), this.getPlistConfiguration(), this.getLog());
+        appCdsGenerator.setClasspathEntries(this.getClasspathEntries());
+        File workDirectory = new File(project.getBuild().getDirectory(), "macosappbundler/appcds/" + appDirectory.getName());
+        File archiveFile = appCdsGenerator.generateArchive(appDirectory, workDirectory);
+        if (archiveFile != null) {
+            File targetFile = new File(appDirectory, "Contents/Java/" + archiveFile.getName());
+            try {
+                this.getBundleManifest().copyFile(archiveFile.toPath(), targetFile.toPath());
+            } catch (IOException e) {
+                throw new MojoExecutionException("Cannot copy AppCDS archive to: " + targetFile.getAbsolutePath(), e);
+            }
+            String sharedArchiveFileOption = appCdsGenerator.createSharedArchiveFileOption();
+            if (this.getPlistConfiguration().JVMOptions == null) {
+                this.getPlistConfiguration().JVMOptions = new ArrayList<>();
+            }
+            if (!this.getPlistConfiguration().JVMOptions.contains(sharedArchiveFileOption)) {
+                this.getPlistConfiguration().JVMOptions.add(sharedArchiveFileOption);
+            }
+        }
+    }
+
+    private File generatePlist(MavenProject project, File contentsDirectory) throws MojoExecutionException {
+        this.copyIcon(project, contentsDirectory);
+        this.getLog().info("Generating Info.plist");
+        return this.writePlist(contentsDirectory);
+    }
+
+    /**
+     * Writes the Info.plist file without copying the icon, so it can be written again once the precomputed classpath
+     * has been completed.
+     */
+    private File writePlist(File contentsDirectory) throws MojoExecutionException {
+        Map<String, Object> additionalProperties = new LinkedHashMap<>();
+        if (StringUtils.isNotEmpty(this.getPlistConfiguration().CFBundleIconFile)) {
+            additionalProperties.put("CFBundleIconFile", new File(this.getPlistConfiguration().CFBundleIconFile).getName());
+        }
+        if (this.getClasspathEntries() != null) {
+            additionalProperties.put("JVMClasspath", this.getClasspathEntries());
         }
         try {
             File plistFile = new File(contentsDirectory, "Info.plist");
-            this.getLog().info("Generating Info.plist");
-            FileUtils.write(plistFile, this.getPlistConfiguration().toXmlString(additionalProperties), "UTF-8");
-        } catch (Exception e) {
+            if (PlistFormat.BINARY.equals(this.getPlistFormat())) {
+                try (OutputStream plistStream = Files.newOutputStream(plistFile.toPath())) {
+                    this.getPlistConfiguration().write(new BinaryPlistWriter(plistStream), additionalProperties);
+                }
+            } else {
+                try (Writer plistWriter = Files.newBufferedWriter(plistFile.toPath(), StandardCharsets.UTF_8)) {
+                    this.getPlistConfiguration().write(new XmlPlistWriter(plistWriter), additionalProperties);
+                }
+            }
+            return plistFile;
+        } catch (IOException e) {
             throw new MojoExecutionException("Cannot generate Info.plist file", e);
         }
     }
 
-    private String copyIcon(MavenProject project, File contentsDirectory) throws MojoExecutionException {
+    private void copyIcon(MavenProject project, File contentsDirectory) throws MojoExecutionException {
         String iconFileValue = this.getPlistConfiguration().CFBundleIconFile;
         if (StringUtils.isNotEmpty(iconFileValue)) {
             File iconFile = new File(project.getBasedir(), iconFileValue);
@@ -210,22 +554,19 @@ public class AppGenerator {
                     targetFile.getParentFile().mkdirs();
                 }
                 try {
-                    FileUtils.copyFile(iconFile, targetFile);
-                    return targetFile.getName();
+                    this.getBundleManifest().copyFile(iconFile.toPath(), targetFile.toPath());
                 } catch (IOException e) {
                     throw new MojoExecutionException("Cannot copy icon file to: " + targetFile.getAbsolutePath(), e);
                 }
             }
-        } else {
-            return null;
         }
     }
 
-    private void copyJdk(File targetDirectory) throws MojoExecutionException {
+    private void copyJdk(MavenProject project, File targetDirectory) throws MojoExecutionException {
         if (this.isIncludeJdk()) {
             if (StringUtils.isEmpty(this.getJdkLocation())) {
                 this.getLog().info("Copy JDK from system default directory at: " + System.getProperty("java.home"));
-                this.copyJdkFromDirectory(targetDirectory, new File(System.getProperty("java.home")));
+                this.copyRuntime(project, targetDirectory, new File(System.getProperty("java.home")));
             } else {
                 File jdkDirectory = new File(this.getJdkLocation());
                 if (!jdkDirectory.exists()) {
@@ -241,41 +582,113 @@ public class AppGenerator {
                     }
 
                     this.getLog().info("Copy JDK from explicit directory at: " + jdkDirectory.getAbsolutePath());
-                    this.copyJdkFromDirectory(targetDirectory, jdkDirectory);
+                    this.copyRuntime(project, targetDirectory, jdkDirectory);
 
                 }
             }
         }
     }
 
-    private void copyJdkFromDirectory(File targetDirectory, File sourceDirectory) throws MojoExecutionException {
-        Path sourceDirectoryPath = sourceDirectory.toPath();
-        Path targetDirectoryPath = targetDirectory.toPath();
+    private void copyRuntime(MavenProject project, File targetDirectory, File jdkDirectory) throws MojoExecutionException {
+        if (this.getJlinkConfiguration() != null && this.getJlinkConfiguration().enable) {
+            JlinkGenerator jlinkGenerator = new JlinkGenerator(this.getJlinkConfiguration(), jdkDirectory, this.getLog());
+            Set<String> runtimeModules = jlinkGenerator.computeRuntimeModules(targetDirectory.getParentFile());
+            String runtimeKey = "jlink-" + jlinkGenerator.computeRuntimeKey(runtimeModules);
+            FileCache runtimeCache = this.createRuntimeCache(project);
+            this.copyRuntimeFromCache(runtimeCache, runtimeKey, targetDirectory, cacheDirectory -> jlinkGenerator.generateRuntime(runtimeModules, cacheDirectory.toFile()));
+        } else if (this.getRuntimeCacheDirectory() != null && !LinkStrategy.COPY.equals(this.getLinkStrategy())) {
+            String runtimeKey = "jdk-" + this.computeJdkKey(jdkDirectory);
+            FileCache runtimeCache = this.createRuntimeCache(project);
+            this.copyRuntimeFromCache(runtimeCache, runtimeKey, targetDirectory, cacheDirectory -> {
+                this.getLog().info("Copying JDK into runtime cache at: " + cacheDirectory);
+                new TreeCopier(this.getAppConfiguration().getCopyThreads(), (sourceFile, targetFile) -> Files.copy(sourceFile, targetFile, StandardCopyOption.COPY_ATTRIBUTES)).copyTree(jdkDirectory.toPath(), cacheDirectory);
+            });
+        } else {
+            if (this.getRuntimeCacheDirectory() != null) {
+                // Copying the JDK into the cache first would only copy all files twice
+                this.getLog().debug("Not using runtime cache for JDK as files are copied using link strategy: " + this.getLinkStrategy());
+            }
+            this.copyJdkFromDirectory(targetDirectory, jdkDirectory);
+        }
+    }
+
+    private FileCache createRuntimeCache(MavenProject project) {
+        if (this.getRuntimeCacheDirectory() != null) {
+            return new FileCache(new File(this.getRuntimeCacheDirectory(), "runtimes").toPath(), this.getRuntimeCacheMaximumSize(), this.getLog());
+        } else {
+            return new FileCache(new File(project.getBuild().getDirectory(), "macosappbundler/runtimes").toPath(), Long.MAX_VALUE, this.getLog());
+        }
+    }
+
+    private void copyRuntimeFromCache(FileCache runtimeCache, String runtimeKey, File targetDirectory, FileCache.EntryCreator runtimeCreator) throws MojoExecutionException {
         try {
-            Files.walk(sourceDirectoryPath).forEach(sourcePath -> {
-                try {
-                    Path sourcePathRelative = sourceDirectoryPath.relativize(sourcePath);
-                    Path targetPath = targetDirectoryPath.resolve(sourcePathRelative);
-                    if (Files.isDirectory(sourcePath)) {
-                        if (!Files.exists(targetPath)) {
-                            Files.createDirectory(targetPath);
-                        }
-                    } else {
-                        if (!Files.exists(targetPath.getParent())) {
-                            Files.createDirectories(targetPath.getParent());
-                        }
-                        this.getLog().debug("Copying JDK file from '" + sourcePath + "' to '" + targetPath + "'");
-                        Files.copy(sourcePath, targetPath, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException("Cannot copy JDK directory '" + sourceDirectory + "' to '" + targetDirectory + "'", e);
-                }
+            runtimeCache.use(runtimeKey, runtimeCreator, cacheDirectory -> {
+                this.getLog().info("Using runtime from cache at: " + cacheDirectory);
+                this.copyJdkTree(targetDirectory, cacheDirectory.toFile());
+                return null;
             });
         } catch (IOException e) {
-            throw new RuntimeException("Cannot copy JDK directory '" + sourceDirectory + "' to '" + targetDirectory + "'", e);
+            throw new MojoExecutionException("Cannot prepare runtime using cache", e);
         }
     }
 
+    private String computeJdkKey(File jdkDirectory) throws MojoExecutionException {
+        try {
+            StringBuilder jdkKeySource = new StringBuilder();
+            jdkKeySource.append(jdkDirectory.getCanonicalPath()).append("\n");
+            File releaseFile = new File(jdkDirectory, "release");
+            if (releaseFile.exists()) {
+                jdkKeySource.append(IO.computeHash(releaseFile.toPath())).append("\n");
+            }
+            return IO.computeHash(jdkKeySource.toString().getBytes(StandardCharsets.UTF_8)).substring(0, 32);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot compute key for JDK at: " + jdkDirectory.getAbsolutePath(), e);
+        }
+    }
+
+    private void copyJdkFromDirectory(File targetDirectory, File sourceDirectory) throws MojoExecutionException {
+        try {
+            this.copyJdkTree(targetDirectory, sourceDirectory);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot copy JDK directory '" + sourceDirectory + "' to '" + targetDirectory + "'", e);
+        }
+    }
+
+    private void copyJdkTree(File targetDirectory, File sourceDirectory) throws IOException {
+        TreeCopier treeCopier = new TreeCopier(this.getAppConfiguration().getCopyThreads(), this.getBundleManifest()::copyFile);
+        treeCopier.setSymbolicLinkCopier(this.getBundleManifest()::copySymbolicLink);
+        TreeCopier.Result copyResult = treeCopier.copyTree(sourceDirectory.toPath(), targetDirectory.toPath());
+        this.getLog().info("Copied JDK: " + copyResult);
+    }
+
+    private BundleManifest getBundleManifest() {
+        return this.bundleManifest;
+    }
+    private void setBundleManifest(BundleManifest bundleManifest) {
+        this.bundleManifest = bundleManifest;
+    }
+
+    private NativeBinarySlimmer getNativeBinarySlimmer() {
+        return this.nativeBinarySlimmer;
+    }
+    private void setNativeBinarySlimmer(NativeBinarySlimmer nativeBinarySlimmer) {
+        this.nativeBinarySlimmer = nativeBinarySlimmer;
+    }
+
+    private JarEntryFilter getJarEntryFilter() {
+        return this.jarEntryFilter;
+    }
+    private void setJarEntryFilter(JarEntryFilter jarEntryFilter) {
+        this.jarEntryFilter = jarEntryFilter;
+    }
+
+    private List<String> getClasspathEntries() {
+        return this.classpathEntries;
+    }
+    private void setClasspathEntries(List<String> classpathEntries) {
+        this.classpathEntries = classpathEntries;
+    }
+
     private PlistConfiguration getPlistConfiguration() {
         return this.plistConfiguration;
     }
@@ -297,6 +710,34 @@ public class AppGenerator {
         this.nativeBinaryType = nativeBinaryType;
     }
 
+    public JlinkConfiguration getJlinkConfiguration() {
+        return this.jlinkConfiguration;
+    }
+    public void setJlinkConfiguration(JlinkConfiguration jlinkConfiguration) {
+        this.jlinkConfiguration = jlinkConfiguration;
+    }
+
+    public AppCdsConfiguration getAppCdsConfiguration() {
+        return this.appCdsConfiguration;
+    }
+    public void setAppCdsConfiguration(AppCdsConfiguration appCdsConfiguration) {
+        this.appCdsConfiguration = appCdsConfiguration;
+    }
+
+    public PlistFormat getPlistFormat() {
+        return this.plistFormat;
+    }
+    public void setPlistFormat(PlistFormat plistFormat) {
+        this.plistFormat = plistFormat;
+    }
+
+    public LinkStrategy getLinkStrategy() {
+        return this.linkStrategy;
+    }
+    public void setLinkStrategy(LinkStrategy linkStrategy) {
+        this.linkStrategy = linkStrategy;
+    }
+
     public String getJdkLocation() {
         return this.jdkLocation;
     }
@@ -304,6 +745,34 @@ public class AppGenerator {
         this.jdkLocation = jdkLocation;
     }
 
+    public File getRuntimeCacheDirectory() {
+        return this.runtimeCacheDirectory;
+    }
+    public void setRuntimeCacheDirectory(File runtimeCacheDirectory) {
+        this.runtimeCacheDirectory = runtimeCacheDirectory;
+    }
+
+    public long getRuntimeCacheMaximumSize() {
+        return this.runtimeCacheMaximumSize;
+    }
+    public void setRuntimeCacheMaximumSize(long runtimeCacheMaximumSize) {
+        this.runtimeCacheMaximumSize = runtimeCacheMaximumSize;
+    }
+
+    public BuildMetrics getBuildMetrics() {
+        return this.buildMetrics;
+    }
+    public void setBuildMetrics(BuildMetrics buildMetrics) {
+        this.buildMetrics = buildMetrics;
+    }
+
+    public Instant getOutputTimestamp() {
+        return this.outputTimestamp;
+    }
+    public void setOutputTimestamp(Instant outputTimestamp) {
+        this.outputTimestamp = outputTimestamp;
+    }
+
     private Log getLog() {
         return this.log;
     }
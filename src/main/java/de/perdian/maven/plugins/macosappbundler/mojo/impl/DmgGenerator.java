@@ -16,13 +16,16 @@
  */
 package de.perdian.maven.plugins.macosappbundler.mojo.impl;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.util.Iterator;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.maven.plugin.MojoExecutionException;
@@ -31,13 +34,27 @@ import org.apache.maven.project.MavenProject;
 import org.apache.maven.shared.model.fileset.FileSet;
 import org.apache.maven.shared.utils.cli.Commandline;
 
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.BuildMetrics;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.FileTransfer;
 import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.IO;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.IsoImageWriter;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.Processes;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.TreeCopier;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.UdifWriter;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.DmgCompression;
 import de.perdian.maven.plugins.macosappbundler.mojo.model.DmgConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.DmgStaging;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.LinkStrategy;
 
 public class DmgGenerator {
 
     private DmgConfiguration dmgConfiguration = null;
     private String volumeName = null;
+    private int copyThreads = Runtime.getRuntime().availableProcessors();
+    private File workDirectory = null;
+    private boolean appStaged = false;
+    private Instant outputTimestamp = null;
+    private BuildMetrics buildMetrics = new BuildMetrics();
     private Log log = null;
 
     public DmgGenerator(DmgConfiguration dmgConfiguration, String volumeName, Log log) {
@@ -47,27 +64,17 @@ public class DmgGenerator {
     }
 
     public void generateDmg(MavenProject project, File appDirectory, File bundleDirectory, File dmgFile) throws MojoExecutionException {
-        try {
-            File bundleAppDirectory = new File(bundleDirectory, appDirectory.getName());
-            if (!bundleAppDirectory.exists()) {
-                this.getLog().debug("Creating bundle app directory at: " + bundleAppDirectory.getAbsolutePath());
-                bundleAppDirectory.mkdirs();
-            }
-            Iterator<Path> files = Files.walk(appDirectory.toPath()).iterator();
-            while (files.hasNext()) {
-                Path sourcePathAbsolute = files.next();
-                Path targetPathRelative = appDirectory.toPath().relativize(sourcePathAbsolute);
-                Path targetPathAbsolute = bundleAppDirectory.toPath().resolve(targetPathRelative);
-                Files.copy(sourcePathAbsolute, targetPathAbsolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
-            }
-        } catch (IOException e) {
-            this.getLog().error("Cannot copy app directory", e);
-            throw new MojoExecutionException("Cannot copy app directory", e);
+        if (!bundleDirectory.exists()) {
+            this.getLog().debug("Creating bundle directory at: " + bundleDirectory.getAbsolutePath());
+            bundleDirectory.mkdirs();
+        }
+        if (this.isStagingRequired()) {
+            this.stageApp(appDirectory, bundleDirectory);
         }
 
         if (this.getDmgConfiguration().additionalResources != null && !this.getDmgConfiguration().additionalResources.isEmpty()) {
             this.getLog().info("Copy additional resources");
-            this.copyAdditionalDmgResources(project, this.getDmgConfiguration().additionalResources, bundleDirectory);
+            this.getBuildMetrics().runStage("copyAdditionalDmgResources", bundleDirectory, stage -> this.copyAdditionalDmgResources(project, this.getDmgConfiguration().additionalResources, bundleDirectory, stage));
         }
         if (this.getDmgConfiguration().createApplicationsSymlink) {
             this.getLog().info("Create Applications symlink");
@@ -77,24 +84,140 @@ public class DmgGenerator {
                 throw new MojoExecutionException("Cannot create link to Applications folder at: " + new File(bundleDirectory, "Applications").getAbsolutePath(), e);
             }
         }
+        if (this.getOutputTimestamp() != null) {
+            this.normalizeBundleDirectory(bundleDirectory);
+        }
         this.getLog().info("Generating DMG archive");
-        this.generateDmgArchive(bundleDirectory, dmgFile);
+        this.getBuildMetrics().runStage("generateDmg", dmgFile, stage -> {
+            this.generateDmgArchive(appDirectory, bundleDirectory, dmgFile);
+            stage.addFiles(1, dmgFile.length());
+        });
+
+    }
+
+    private void normalizeBundleDirectory(File bundleDirectory) throws MojoExecutionException {
+        if (!this.getDmgConfiguration().useBuiltInWriter) {
+            this.getLog().info("Only the built-in writer creates reproducible DMG archives, images created by " + (this.getDmgConfiguration().useGenIsoImage ? "genisoimage" : "hdiutil") + " will differ between builds");
+        }
+        try {
+            IO.normalizeFiles(bundleDirectory.toPath(), this.getOutputTimestamp());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot normalize bundle directory at: " + bundleDirectory.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * The built-in writer always reads the app directory directly, genisoimage only when using a graft point.
+     */
+    private boolean isStagingRequired() {
+        if (this.getDmgConfiguration().useBuiltInWriter) {
+            return false;
+        } else {
+            return !DmgStaging.GRAFT.equals(this.getDmgConfiguration().staging) || !this.getDmgConfiguration().useGenIsoImage;
+        }
+    }
 
+    private void stageApp(File appDirectory, File bundleDirectory) throws MojoExecutionException {
+        this.getBuildMetrics().runStage("stageDmg", appDirectory, stage -> this.stageApp(appDirectory, bundleDirectory, stage));
     }
 
-    private void generateDmgArchive(File bundleDirectory, File dmgFile) throws MojoExecutionException {
+    private void stageApp(File appDirectory, File bundleDirectory, BuildMetrics.Stage stage) throws MojoExecutionException {
+        File bundleAppDirectory = new File(bundleDirectory, appDirectory.getName());
+        LinkStrategy linkStrategy = DmgStaging.COPY.equals(this.getDmgConfiguration().staging) ? LinkStrategy.COPY : LinkStrategy.AUTO;
         try {
-            if (this.getDmgConfiguration().useGenIsoImage) {
-                this.generateDmgArchiveGenIsoImage(bundleDirectory, dmgFile, false);
+            FileTransfer fileTransfer = new FileTransfer(linkStrategy, this.getLog());
+            TreeCopier.Result stagingResult = new TreeCopier(this.getCopyThreads(), fileTransfer::transfer).copyTree(appDirectory.toPath(), bundleAppDirectory.toPath());
+            this.getLog().info("Staged app directory for DMG using strategy " + linkStrategy + ": " + stagingResult);
+            stage.addFiles(stagingResult.getFileCount(), stagingResult.getByteCount());
+            this.setAppStaged(true);
+        } catch (IOException e) {
+            this.getLog().error("Cannot copy app directory", e);
+            throw new MojoExecutionException("Cannot copy app directory", e);
+        }
+    }
+
+    private void generateDmgArchive(File appDirectory, File bundleDirectory, File dmgFile) throws MojoExecutionException {
+        try {
+            if (this.getDmgConfiguration().useBuiltInWriter) {
+                this.generateDmgArchiveBuiltIn(appDirectory, bundleDirectory, dmgFile);
+            } else if (DmgCompression.ZLIB.equals(this.getDmgConfiguration().compression)) {
+
+                // The external tool only creates the raw image, which is then compressed by our own post-processing
+                // stage, so that the chunk size, compression level and number of threads can be controlled
+                File rawImageFile = new File(dmgFile.getParentFile(), dmgFile.getName() + ".cdr");
+                Files.deleteIfExists(rawImageFile.toPath());
+                try {
+                    if (this.getDmgConfiguration().useGenIsoImage) {
+                        this.generateDmgArchiveGenIsoImage(appDirectory, bundleDirectory, rawImageFile, false);
+                    } else {
+                        this.generateDmgArchiveHdiUtil(appDirectory, bundleDirectory, rawImageFile, false);
+                    }
+                    this.compressImage(rawImageFile, dmgFile);
+                } finally {
+                    Files.deleteIfExists(rawImageFile.toPath());
+                }
+
+            } else if (this.getDmgConfiguration().useGenIsoImage) {
+                this.generateDmgArchiveGenIsoImage(appDirectory, bundleDirectory, dmgFile, false);
             } else {
-                this.generateDmgArchiveHdiUtil(bundleDirectory, dmgFile, false);
+                this.generateDmgArchiveHdiUtil(appDirectory, bundleDirectory, dmgFile, false);
             }
+        } catch (MojoExecutionException e) {
+            throw e;
         } catch (Exception e) {
             throw new MojoExecutionException("Cannot generate DMG archive at: " + dmgFile.getAbsolutePath(), e);
         }
     }
 
-    private void generateDmgArchiveGenIsoImage(File bundleDirectory, File dmgFile, boolean fallback) throws Exception {
+    private void generateDmgArchiveBuiltIn(File appDirectory, File bundleDirectory, File dmgFile) throws IOException {
+        long startTime = System.nanoTime();
+        IsoImageWriter imageWriter = new IsoImageWriter(this.getVolumeName());
+        if (this.getOutputTimestamp() != null) {
+            imageWriter.setTimestamp(this.getOutputTimestamp());
+        }
+        imageWriter.addDirectoryContent(bundleDirectory.toPath());
+        if (!this.isAppStaged()) {
+            imageWriter.addDirectory(appDirectory.getName(), appDirectory.toPath());
+        }
+        long imageSize = 0;
+        if (DmgCompression.NONE.equals(this.getDmgConfiguration().compression)) {
+            try (OutputStream imageStream = new BufferedOutputStream(Files.newOutputStream(dmgFile.toPath()))) {
+                imageSize = imageWriter.write(imageStream);
+            }
+        } else {
+            try (UdifWriter udifWriter = this.createUdifWriter(dmgFile)) {
+                imageSize = imageWriter.write(udifWriter);
+            }
+        }
+        this.getLog().info("Created DMG archive using built-in writer: " + (imageSize / 1024 / 1024) + " MB image stored as " + (dmgFile.length() / 1024 / 1024) + " MB in " + ((System.nanoTime() - startTime) / 1_000_000) + " ms");
+    }
+
+    /**
+     * Converts the raw image created by an external tool into a compressed UDIF image.
+     */
+    private void compressImage(File rawImageFile, File dmgFile) throws IOException {
+        long startTime = System.nanoTime();
+        try (InputStream rawImageStream = Files.newInputStream(rawImageFile.toPath()); UdifWriter udifWriter = this.createUdifWriter(dmgFile)) {
+            byte[] buffer = new byte[this.getDmgConfiguration().compressionChunkSize];
+            for (int bufferLength = rawImageStream.read(buffer); bufferLength > -1; bufferLength = rawImageStream.read(buffer)) {
+                udifWriter.write(buffer, 0, bufferLength);
+            }
+        }
+        this.getLog().info("Compressed DMG archive using " + this.getDmgConfiguration().compressionThreads + " threads: " + (rawImageFile.length() / 1024 / 1024) + " MB image compressed to " + (dmgFile.length() / 1024 / 1024) + " MB in " + ((System.nanoTime() - startTime) / 1_000_000) + " ms");
+    }
+
+    private UdifWriter createUdifWriter(File dmgFile) throws IOException {
+        DmgConfiguration dmgConfiguration = this.getDmgConfiguration();
+        OutputStream dmgStream = new BufferedOutputStream(Files.newOutputStream(dmgFile.toPath()));
+        try {
+            return new UdifWriter(dmgStream, dmgConfiguration.compressionChunkSize, dmgConfiguration.compressionLevel, Math.max(1, dmgConfiguration.compressionThreads));
+        } catch (IllegalArgumentException e) {
+            dmgStream.close();
+            throw new IOException("Invalid DMG compression settings: " + e.getMessage(), e);
+        }
+    }
+
+    private void generateDmgArchiveGenIsoImage(File appDirectory, File bundleDirectory, File dmgFile, boolean fallback) throws Exception {
         Commandline dmgCommandLine = new Commandline();
         dmgCommandLine.setExecutable("genisoimage");
         dmgCommandLine.createArg().setValue("-D");
@@ -106,39 +229,107 @@ public class DmgGenerator {
         dmgCommandLine.createArg().setValue("-quiet");
         dmgCommandLine.createArg().setValue("-o");
         dmgCommandLine.createArg().setValue(dmgFile.getAbsolutePath());
-        dmgCommandLine.createArg().setValue(bundleDirectory.getAbsolutePath());
-        int returnValue = dmgCommandLine.execute().waitFor();
-        if (returnValue != 0) {
+        File pathListFile = null;
+        if (this.isAppStaged()) {
+            dmgCommandLine.createArg().setValue(bundleDirectory.getAbsolutePath());
+        } else {
+
+            // The app directory is mapped into the root of the image, so it doesn't need to be staged at all. The
+            // pathspecs are passed via a file, so that no escaping for the shell is required
+            pathListFile = File.createTempFile("macosappbundler-", ".pathlist");
+            List<String> pathSpecs = createGraftPathSpecs(appDirectory, bundleDirectory);
+            Files.write(pathListFile.toPath(), pathSpecs, StandardCharsets.UTF_8);
+            this.getLog().debug("Passing app directory to genisoimage using graft point: " + pathSpecs.get(0));
+            dmgCommandLine.createArg().setValue("-graft-points");
+            dmgCommandLine.createArg().setValue("-path-list");
+            dmgCommandLine.createArg().setValue(pathListFile.getAbsolutePath());
+
+        }
+        try {
+            Processes.execute(dmgCommandLine, this.getLog());
+        } catch (IOException e) {
             if (this.getDmgConfiguration().autoFallback && !fallback) {
-                generateDmgArchiveHdiUtil(bundleDirectory, dmgFile, true);
+                this.getLog().warn("Creating DMG archive using genisoimage failed, falling back to hdiutil: " + e.getMessage());
+                generateDmgArchiveHdiUtil(appDirectory, bundleDirectory, dmgFile, true);
             } else {
-                throw new Exception("Command 'genisoimage' exited with status " + returnValue);
+                throw e;
+            }
+        } finally {
+            if (pathListFile != null) {
+                Files.deleteIfExists(pathListFile.toPath());
             }
         }
     }
 
-    private void generateDmgArchiveHdiUtil(File bundleDirectory, File dmgFile, boolean fallback) throws Exception {
+    /**
+     * @return the lines of the {@code -path-list} file, mapping the app directory into the root of the image next to
+     *     the other files of the bundle directory. Backslashes and equal signs are escaped, as genisoimage would
+     *     otherwise interpret them as escape character or separator of a graft point.
+     */
+    static List<String> createGraftPathSpecs(File appDirectory, File bundleDirectory) {
+        List<String> pathSpecs = new ArrayList<>();
+        pathSpecs.add(escapeGraftPath(appDirectory.getName()) + "/=" + escapeGraftPath(appDirectory.getAbsolutePath()));
+        pathSpecs.add(escapeGraftPath(bundleDirectory.getAbsolutePath()));
+        return pathSpecs;
+    }
+
+    private static String escapeGraftPath(String path) {
+        return path.replace("\\", "\\\\").replace("=", "\\=");
+    }
+
+    private void generateDmgArchiveHdiUtil(File appDirectory, File bundleDirectory, File dmgFile, boolean fallback) throws Exception {
+        if (!this.isAppStaged()) {
+            this.stageApp(appDirectory, bundleDirectory);
+        }
         Commandline dmgCommandLine = new Commandline();
         dmgCommandLine.setExecutable("hdiutil");
         dmgCommandLine.createArg().setValue("create");
         dmgCommandLine.createArg().setValue("-srcfolder");
         dmgCommandLine.createArg().setValue(bundleDirectory.getAbsolutePath());
         dmgCommandLine.createArg().setValue(dmgFile.getAbsolutePath());
+        if (DmgCompression.ZLIB.equals(this.getDmgConfiguration().compression)) {
+            dmgCommandLine.createArg().setValue("-format");
+            dmgCommandLine.createArg().setValue("UDTO");
+        } else if (DmgCompression.NONE.equals(this.getDmgConfiguration().compression)) {
+            dmgCommandLine.createArg().setValue("-format");
+            dmgCommandLine.createArg().setValue("UDRO");
+        }
         dmgCommandLine.createArg().setValue("-volname");
         dmgCommandLine.createArg().setValue(this.getVolumeName());
-        int returnValue = dmgCommandLine.execute().waitFor();
-        if (returnValue != 0) {
+        try {
+            Processes.execute(dmgCommandLine, this.getLog());
+        } catch (IOException e) {
             if (this.getDmgConfiguration().autoFallback && !fallback) {
-                generateDmgArchiveGenIsoImage(bundleDirectory, dmgFile, true);
+                this.getLog().warn("Creating DMG archive using hdiutil failed, falling back to genisoimage: " + e.getMessage());
+                generateDmgArchiveGenIsoImage(appDirectory, bundleDirectory, dmgFile, true);
             } else {
-                throw new Exception("Command 'hdiutil' exited with status " + returnValue);
+                throw e;
             }
         }
     }
 
-    private void copyAdditionalDmgResources(MavenProject project, List<FileSet> additionalResources, File bundleDirectory) throws MojoExecutionException {
+    /**
+     * The bundle directory is removed after each build, so if a work directory is available the resources are copied
+     * incrementally into the work directory first and then transferred into the bundle directory using links.
+     */
+    private void copyAdditionalDmgResources(MavenProject project, List<FileSet> additionalResources, File bundleDirectory, BuildMetrics.Stage stage) throws MojoExecutionException {
         try {
-            IO.copyFileSets(bundleDirectory, additionalResources);
+            if (this.getWorkDirectory() == null) {
+                List<File> resourceFiles = IO.copyFileSets(bundleDirectory, additionalResources, this.getCopyThreads(), null, null).getCopiedFiles();
+                stage.addFiles(resourceFiles.size(), resourceFiles.stream().mapToLong(File::length).sum());
+            } else {
+                File resourcesDirectory = new File(this.getWorkDirectory(), "resources");
+                IO.CopyResult copyResult = IO.copyFileSets(resourcesDirectory, additionalResources, this.getCopyThreads(), new File(this.getWorkDirectory(), "resources.record").toPath(), null);
+                this.getLog().info("Additional DMG resources " + copyResult);
+                stage.addFiles(copyResult.getCopiedFiles().size(), copyResult.getCopiedFiles().stream().mapToLong(File::length).sum());
+                if (resourcesDirectory.exists()) {
+                    if (this.getOutputTimestamp() != null) {
+                        IO.normalizeFiles(resourcesDirectory.toPath(), this.getOutputTimestamp());
+                    }
+                    FileTransfer fileTransfer = new FileTransfer(LinkStrategy.AUTO, this.getLog());
+                    new TreeCopier(this.getCopyThreads(), fileTransfer::transfer).copyTree(resourcesDirectory.toPath(), bundleDirectory.toPath());
+                }
+            }
         } catch (Exception e) {
             this.getLog().error("Cannot copy additional resources", e);
             throw new MojoExecutionException("Cannot copy additional resources", e);
@@ -152,6 +343,41 @@ public class DmgGenerator {
         this.dmgConfiguration = dmgConfiguration;
     }
 
+    private boolean isAppStaged() {
+        return this.appStaged;
+    }
+    private void setAppStaged(boolean appStaged) {
+        this.appStaged = appStaged;
+    }
+
+    public int getCopyThreads() {
+        return this.copyThreads;
+    }
+    public void setCopyThreads(int copyThreads) {
+        this.copyThreads = copyThreads;
+    }
+
+    public File getWorkDirectory() {
+        return this.workDirectory;
+    }
+    public void setWorkDirectory(File workDirectory) {
+        this.workDirectory = workDirectory;
+    }
+
+    public Instant getOutputTimestamp() {
+        return this.outputTimestamp;
+    }
+    public void setOutputTimestamp(Instant outputTimestamp) {
+        this.outputTimestamp = outputTimestamp;
+    }
+
+    public BuildMetrics getBuildMetrics() {
+        return this.buildMetrics;
+    }
+    public void setBuildMetrics(BuildMetrics buildMetrics) {
+        this.buildMetrics = buildMetrics;
+    }
+
     private String getVolumeName() {
         return this.volumeName;
     }
@@ -0,0 +1,299 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.shared.utils.cli.Commandline;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.IO;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.JdkRelease;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.Processes;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.JlinkConfiguration;
+
+/**
+ * Creates a trimmed runtime image containing only the modules required by the application using {@code jlink}.
+ */
+
+public class JlinkGenerator {
+
+    private JlinkConfiguration configuration = null;
+    private File jdkDirectory = null;
+    private JdkRelease jdkRelease = null;
+    private File jlinkExecutable = null;
+    private Log log = null;
+
+    public JlinkGenerator(JlinkConfiguration configuration, File jdkDirectory, Log log) throws MojoExecutionException {
+        this.setConfiguration(configuration);
+        this.setJdkDirectory(jdkDirectory);
+        this.setLog(log);
+        try {
+            this.setJdkRelease(JdkRelease.read(jdkDirectory));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot read release file of JDK at: " + jdkDirectory.getAbsolutePath(), e);
+        }
+        this.setJlinkExecutable(this.resolveTool(jdkDirectory, "jlink"));
+    }
+
+    /**
+     * Computes the modules that need to be contained in the runtime image.
+     *
+     * @param appJavaDirectory the {@code Contents/Java} directory of the app, into which the application classes have already been copied
+     */
+    public Set<String> computeRuntimeModules(File appJavaDirectory) throws MojoExecutionException {
+        try {
+            return this.computeRuntimeModules(this.getJdkDirectory(), this.getJdkRelease(), appJavaDirectory);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot compute modules required by the application", e);
+        }
+    }
+
+    /**
+     * Computes a key identifying the runtime image for the given modules. Images created from the same JDK with the
+     * same modules and the same jlink options will share the same key.
+     */
+    public String computeRuntimeKey(Set<String> runtimeModules) throws MojoExecutionException {
+        try {
+            return this.computeRuntimeKey(this.getJdkDirectory(), this.getJlinkExecutable(), runtimeModules, this.computeJlinkOptions());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot compute runtime image key", e);
+        }
+    }
+
+    /**
+     * Creates the runtime image using jlink.
+     *
+     * @param outputDirectory the directory into which the image will be written, which must not exist yet
+     */
+    public void generateRuntime(Set<String> runtimeModules, File outputDirectory) throws IOException {
+        this.getLog().info("Creating runtime image for modules " + runtimeModules + " using jlink");
+        Commandline jlinkCommandLine = new Commandline();
+        jlinkCommandLine.setExecutable(this.getJlinkExecutable().getAbsolutePath());
+        File jmodsDirectory = new File(this.getJdkDirectory(), "jmods");
+        if (jmodsDirectory.isDirectory()) {
+            jlinkCommandLine.createArg().setValue("--module-path");
+            jlinkCommandLine.createArg().setFile(jmodsDirectory);
+        } else {
+            // JDKs without packaged modules (JEP 493) can only link from their own run-time image, which is always the
+            // configured JDK, as its own jlink is used
+            this.getLog().debug("No jmods directory found in JDK at '" + this.getJdkDirectory().getAbsolutePath() + "', linking from its run-time image");
+        }
+        jlinkCommandLine.createArg().setValue("--add-modules");
+        jlinkCommandLine.createArg().setValue(String.join(",", runtimeModules));
+        this.computeJlinkOptions().forEach(jlinkOption -> jlinkCommandLine.createArg().setValue(jlinkOption));
+        jlinkCommandLine.createArg().setValue("--output");
+        jlinkCommandLine.createArg().setFile(outputDirectory);
+        Processes.execute(jlinkCommandLine, this.getLog());
+    }
+
+    private Set<String> computeRuntimeModules(File jdkDirectory, JdkRelease jdkRelease, File appJavaDirectory) throws IOException, MojoExecutionException {
+        Set<String> runtimeModules = new TreeSet<>();
+        if (this.getConfiguration().modules != null && !this.getConfiguration().modules.isEmpty()) {
+            runtimeModules.addAll(this.getConfiguration().modules);
+        } else {
+            File modulesDirectory = new File(appJavaDirectory, "modules");
+            File classpathDirectory = new File(appJavaDirectory, "classpath");
+            Set<String> requiredModules = new TreeSet<>();
+            if (modulesDirectory.isDirectory()) {
+                requiredModules.addAll(this.computeRequiredModulesFromModulepath(jdkDirectory, jdkRelease, modulesDirectory));
+            } else if (classpathDirectory.isDirectory()) {
+                requiredModules.addAll(this.computeRequiredModulesFromJdeps(jdkDirectory, jdkRelease, this.listJarFiles(classpathDirectory)));
+            }
+            Set<String> jdkModules = this.computeJdkModules(jdkDirectory, jdkRelease);
+            for (String requiredModule : requiredModules) {
+                if (jdkModules.isEmpty() || jdkModules.contains(requiredModule)) {
+                    runtimeModules.add(requiredModule);
+                } else {
+                    this.getLog().warn("Required module '" + requiredModule + "' is neither part of the application nor of the JDK at: " + jdkDirectory.getAbsolutePath());
+                }
+            }
+        }
+        if (this.getConfiguration().additionalModules != null) {
+            runtimeModules.addAll(this.getConfiguration().additionalModules);
+        }
+        runtimeModules.add("java.base");
+        return runtimeModules;
+    }
+
+    private Set<String> computeRequiredModulesFromModulepath(File jdkDirectory, JdkRelease jdkRelease, File modulesDirectory) throws IOException, MojoExecutionException {
+        Set<String> applicationModules = new HashSet<>();
+        Set<String> requiredModules = new TreeSet<>();
+        List<Path> automaticModuleFiles = new ArrayList<>();
+        for (ModuleReference moduleReference : ModuleFinder.of(modulesDirectory.toPath()).findAll()) {
+            ModuleDescriptor moduleDescriptor = moduleReference.descriptor();
+            applicationModules.add(moduleDescriptor.name());
+            if (moduleDescriptor.isAutomatic()) {
+                moduleReference.location().map(Paths::get).ifPresent(automaticModuleFiles::add);
+            } else {
+                for (ModuleDescriptor.Requires requires : moduleDescriptor.requires()) {
+                    if (!requires.modifiers().contains(ModuleDescriptor.Requires.Modifier.STATIC)) {
+                        requiredModules.add(requires.name());
+                    }
+                }
+            }
+        }
+        if (!automaticModuleFiles.isEmpty()) {
+            requiredModules.addAll(this.computeRequiredModulesFromJdeps(jdkDirectory, jdkRelease, automaticModuleFiles));
+        }
+        requiredModules.removeAll(applicationModules);
+        return requiredModules;
+    }
+
+    private Set<String> computeRequiredModulesFromJdeps(File jdkDirectory, JdkRelease jdkRelease, List<Path> jarFiles) throws IOException, MojoExecutionException {
+        if (jarFiles.isEmpty()) {
+            return new TreeSet<>();
+        } else {
+            String classpathValue = jarFiles.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator));
+            Commandline jdepsCommandLine = new Commandline();
+            jdepsCommandLine.setExecutable(this.resolveTool(jdkDirectory, "jdeps").getAbsolutePath());
+            jdepsCommandLine.createArg().setValue("--print-module-deps");
+            jdepsCommandLine.createArg().setValue("--ignore-missing-deps");
+            jdepsCommandLine.createArg().setValue("--multi-release");
+            jdepsCommandLine.createArg().setValue(this.computeFeatureVersion(jdkRelease));
+            jdepsCommandLine.createArg().setValue("--class-path");
+            jdepsCommandLine.createArg().setValue(classpathValue);
+            jarFiles.forEach(jarFile -> jdepsCommandLine.createArg().setFile(jarFile.toFile()));
+            String jdepsOutput = Processes.execute(jdepsCommandLine, this.getLog());
+            this.getLog().debug("Modules computed by jdeps: " + jdepsOutput.trim());
+            return Arrays.stream(jdepsOutput.trim().split("[,\\s]+")).filter(StringUtils::isNotEmpty).collect(Collectors.toCollection(TreeSet::new));
+        }
+    }
+
+    private Set<String> computeJdkModules(File jdkDirectory, JdkRelease jdkRelease) {
+        Set<String> jdkModules = jdkRelease.getModules();
+        if (jdkModules.isEmpty()) {
+            File jmodsDirectory = new File(jdkDirectory, "jmods");
+            if (jmodsDirectory.isDirectory()) {
+                return ModuleFinder.of(jmodsDirectory.toPath()).findAll().stream().map(moduleReference -> moduleReference.descriptor().name()).collect(Collectors.toCollection(TreeSet::new));
+            }
+        }
+        return jdkModules;
+    }
+
+    private List<String> computeJlinkOptions() {
+        List<String> jlinkOptions = new ArrayList<>();
+        if (this.getConfiguration().stripDebug) {
+            jlinkOptions.add("--strip-debug");
+        }
+        if (StringUtils.isNotEmpty(this.getConfiguration().compress)) {
+            jlinkOptions.add("--compress=" + this.getConfiguration().compress);
+        }
+        if (this.getConfiguration().noHeaderFiles) {
+            jlinkOptions.add("--no-header-files");
+        }
+        if (this.getConfiguration().noManPages) {
+            jlinkOptions.add("--no-man-pages");
+        }
+        return jlinkOptions;
+    }
+
+    private String computeRuntimeKey(File jdkDirectory, File jlinkExecutable, Set<String> runtimeModules, List<String> jlinkOptions) throws IOException {
+        Commandline versionCommandLine = new Commandline();
+        versionCommandLine.setExecutable(jlinkExecutable.getAbsolutePath());
+        versionCommandLine.createArg().setValue("--version");
+        StringBuilder runtimeKeySource = new StringBuilder();
+        runtimeKeySource.append(jdkDirectory.getCanonicalPath()).append("\n");
+        runtimeKeySource.append(jlinkExecutable.getCanonicalPath()).append("\n");
+        runtimeKeySource.append(Processes.execute(versionCommandLine, this.getLog()).trim()).append("\n");
+        File releaseFile = new File(jdkDirectory, "release");
+        if (releaseFile.exists()) {
+            runtimeKeySource.append(IO.computeHash(releaseFile.toPath())).append("\n");
+        }
+        runtimeKeySource.append(String.join(",", runtimeModules)).append("\n");
+        runtimeKeySource.append(String.join(" ", jlinkOptions)).append("\n");
+        return IO.computeHash(runtimeKeySource.toString().getBytes(StandardCharsets.UTF_8)).substring(0, 32);
+    }
+
+    private String computeFeatureVersion(JdkRelease jdkRelease) {
+        int featureVersion = jdkRelease.getFeatureVersion();
+        return featureVersion > 0 ? String.valueOf(featureVersion) : "base";
+    }
+
+    /**
+     * The tools are always taken from the configured JDK, as the tools of another JDK (like the one running Maven)
+     * would create the runtime image from their own modules.
+     */
+    private File resolveTool(File jdkDirectory, String toolName) throws MojoExecutionException {
+        File jdkTool = new File(jdkDirectory, "bin/" + toolName);
+        if (jdkTool.canExecute()) {
+            return jdkTool;
+        } else {
+            throw new MojoExecutionException("No '" + toolName + "' found in JDK at '" + jdkDirectory.getAbsolutePath() + "'. Creating a runtime image using jlink requires a complete JDK containing the tools 'jlink' and 'jdeps'.");
+        }
+    }
+
+    private List<Path> listJarFiles(File directory) throws IOException {
+        try (Stream<Path> directoryFiles = Files.walk(directory.toPath())) {
+            return directoryFiles.filter(Files::isRegularFile).filter(file -> file.getFileName().toString().endsWith(".jar")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private JlinkConfiguration getConfiguration() {
+        return this.configuration;
+    }
+    private void setConfiguration(JlinkConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    private File getJdkDirectory() {
+        return this.jdkDirectory;
+    }
+    private void setJdkDirectory(File jdkDirectory) {
+        this.jdkDirectory = jdkDirectory;
+    }
+
+    private JdkRelease getJdkRelease() {
+        return this.jdkRelease;
+    }
+    private void setJdkRelease(JdkRelease jdkRelease) {
+        this.jdkRelease = jdkRelease;
+    }
+
+    private File getJlinkExecutable() {
+        return this.jlinkExecutable;
+    }
+    private void setJlinkExecutable(File jlinkExecutable) {
+        this.jlinkExecutable = jlinkExecutable;
+    }
+
+    private Log getLog() {
+        return this.log;
+    }
+    private void setLog(Log log) {
+        this.log = log;
+    }
+
+}
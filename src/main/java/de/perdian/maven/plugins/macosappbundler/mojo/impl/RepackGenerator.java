@@ -0,0 +1,180 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.IO;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.JarEntryFilter;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.JarMerger;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.RepackConfiguration;
+
+/**
+ * Merges the dependencies of a classpath application into a single JAR file, so that the class loader has to open
+ * and search far fewer JAR files while the application is starting.
+ */
+
+public class RepackGenerator {
+
+    private RepackConfiguration configuration = null;
+    private JarEntryFilter jarEntryFilter = null;
+    private Instant timestamp = null;
+    private Log log = null;
+
+    public RepackGenerator(RepackConfiguration configuration, Log log) {
+        this.setConfiguration(configuration);
+        this.setLog(log);
+    }
+
+    /**
+     * Creates the merged JAR file inside the work directory. If the merged JAR file has already been created by a
+     * previous build from exactly the same dependencies, the existing file will be used without merging again.
+     *
+     * @param dependencyFiles the dependencies in classpath order, mapped from their location inside the app to their
+     *     source file
+     * @param classpathDirectory the classpath directory of the app, into which the merged JAR file will be copied
+     * @param workDirectory the directory in which the merged JAR file will be created
+     * @return the files to copy into the app instead of the dependencies in classpath order, mapped from their location
+     *     inside the app to their source file
+     */
+    public Map<Path, Path> repack(Map<Path, Path> dependencyFiles, File classpathDirectory, File workDirectory) throws MojoExecutionException {
+        String jarFileName = this.getConfiguration().jarFileName;
+        File mergedFile = new File(workDirectory, jarFileName);
+        Map<Path, Path> repackedFiles = new LinkedHashMap<>();
+        List<Path> mergedSourceFiles = new ArrayList<>();
+        for (Map.Entry<Path, Path> dependencyFile : dependencyFiles.entrySet()) {
+            if (this.isMergeable(dependencyFile.getValue())) {
+                repackedFiles.putIfAbsent(new File(classpathDirectory, jarFileName).toPath(), mergedFile.toPath());
+                mergedSourceFiles.add(dependencyFile.getValue());
+            } else {
+                repackedFiles.put(dependencyFile.getKey(), dependencyFile.getValue());
+            }
+        }
+        if (mergedSourceFiles.size() < 2) {
+            this.getLog().debug("Not enough JAR files to repack, copying dependencies unchanged");
+            return dependencyFiles;
+        }
+
+        try {
+            File mergedKeyFile = new File(workDirectory, jarFileName + ".key");
+            File mergedIndexFile = new File(workDirectory, jarFileName + ".index");
+            String mergedKey = this.computeMergedKey(mergedSourceFiles);
+            if (mergedFile.exists() && mergedKeyFile.exists() && mergedKey.equals(new String(Files.readAllBytes(mergedKeyFile.toPath()), StandardCharsets.UTF_8))) {
+                this.getLog().info("Reusing repacked dependencies from: " + mergedFile.getAbsolutePath());
+            } else {
+                this.getLog().info("Repacking " + mergedSourceFiles.size() + " dependencies into: " + mergedFile.getAbsolutePath());
+                Files.createDirectories(workDirectory.toPath());
+                File temporaryMergedFile = new File(workDirectory, jarFileName + ".tmp");
+                JarMerger jarMerger = new JarMerger(this.getConfiguration().compress);
+                if (this.getJarEntryFilter() != null) {
+                    jarMerger.setEntryFilter(this.getJarEntryFilter());
+                }
+                jarMerger.setTimestamp(this.getTimestamp());
+                List<String> indexLines = jarMerger.merge(mergedSourceFiles, temporaryMergedFile.toPath());
+                Files.move(temporaryMergedFile.toPath(), mergedFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.write(mergedIndexFile.toPath(), indexLines, StandardCharsets.UTF_8);
+                Files.write(mergedKeyFile.toPath(), mergedKey.getBytes(StandardCharsets.UTF_8));
+                this.getLog().info("Index of repacked dependencies written to: " + mergedIndexFile.getAbsolutePath());
+            }
+            this.getLog().info("Repacked " + dependencyFiles.size() + " dependencies (" + FileUtils.byteCountToDisplaySize(this.computeSize(dependencyFiles.values())) + ") into " + repackedFiles.size() + " files (" + FileUtils.byteCountToDisplaySize(this.computeSize(repackedFiles.values())) + ")");
+            return repackedFiles;
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot repack dependencies", e);
+        }
+    }
+
+    private boolean isMergeable(Path dependencyFile) {
+        String fileName = dependencyFile.getFileName().toString();
+        if (!Files.isRegularFile(dependencyFile) || !fileName.toLowerCase().endsWith(".jar")) {
+            return false;
+        } else if (this.getConfiguration().keepSeparate != null) {
+            return this.getConfiguration().keepSeparate.stream().noneMatch(pattern -> FilenameUtils.wildcardMatch(fileName, pattern));
+        } else {
+            return true;
+        }
+    }
+
+    private String computeMergedKey(List<Path> mergedSourceFiles) throws IOException {
+        StringBuilder mergedKeySource = new StringBuilder();
+        mergedKeySource.append("compress=").append(this.getConfiguration().compress).append("\n");
+        if (this.getTimestamp() != null) {
+            mergedKeySource.append("timestamp=").append(this.getTimestamp()).append("\n");
+        }
+        if (this.getJarEntryFilter() != null) {
+            mergedKeySource.append("includes=").append(this.getJarEntryFilter().getIncludes()).append("\n");
+            mergedKeySource.append("excludes=").append(this.getJarEntryFilter().getExcludes()).append("\n");
+        }
+        for (Path mergedSourceFile : mergedSourceFiles) {
+            mergedKeySource.append(mergedSourceFile.toAbsolutePath()).append("\t").append(Files.size(mergedSourceFile)).append("\t").append(Files.getLastModifiedTime(mergedSourceFile).toMillis()).append("\n");
+        }
+        return IO.computeHash(mergedKeySource.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long computeSize(Iterable<Path> files) throws IOException {
+        long size = 0;
+        for (Path file : files) {
+            if (Files.isRegularFile(file)) {
+                size += Files.size(file);
+            }
+        }
+        return size;
+    }
+
+    private RepackConfiguration getConfiguration() {
+        return this.configuration;
+    }
+    private void setConfiguration(RepackConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    private JarEntryFilter getJarEntryFilter() {
+        return this.jarEntryFilter;
+    }
+    public void setJarEntryFilter(JarEntryFilter jarEntryFilter) {
+        this.jarEntryFilter = jarEntryFilter;
+    }
+
+    private Instant getTimestamp() {
+        return this.timestamp;
+    }
+    public void setTimestamp(Instant timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    private Log getLog() {
+        return this.log;
+    }
+    private void setLog(Log log) {
+        this.log = log;
+    }
+
+}
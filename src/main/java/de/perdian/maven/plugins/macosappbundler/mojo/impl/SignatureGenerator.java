@@ -16,18 +16,51 @@
  */
 package de.perdian.maven.plugins.macosappbundler.mojo.impl;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.shared.utils.cli.Commandline;
 
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.BuildMetrics;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.FileCache;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.IO;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.MachOFile;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.Processes;
 import de.perdian.maven.plugins.macosappbundler.mojo.model.CodesignConfiguration;
 
 public class SignatureGenerator {
 
+    private static final String SIGNATURES_HEADER = "# macosappbundler signatures v1";
+
     private CodesignConfiguration configuration = null;
+    private String signingKey = null;
+    private FileCache signatureCache = null;
+    private AtomicInteger restoredCount = new AtomicInteger();
+    private BuildMetrics buildMetrics = new BuildMetrics();
     private Log log = null;
 
     public SignatureGenerator(CodesignConfiguration configuration, Log log) {
@@ -35,14 +68,196 @@ public class SignatureGenerator {
         this.setLog(log);
     }
 
-    public void sign(File appDirectory) throws MojoExecutionException {
+    /**
+     * Signs the app. Unless disabled, all Mach-O binaries inside the app are signed first, starting with the most
+     * deeply nested ones, before the app bundle itself gets signed.
+     *
+     * @param workDirectory the directory in which the hashes of the signed binaries are stored, so that binaries that
+     *     haven't changed since the previous build don't need to be signed again
+     */
+    public void sign(File appDirectory, File workDirectory) throws MojoExecutionException {
+        this.getBuildMetrics().runStage("sign", appDirectory, stage -> this.sign(appDirectory, workDirectory, stage));
+    }
+
+    private void sign(File appDirectory, File workDirectory, BuildMetrics.Stage stage) throws MojoExecutionException {
 
         this.getLog().info("Signing application '" + appDirectory.getName() + "' using identity: '" + this.getConfiguration().identity + "'");
 
-        String preserveMetadataValue = StringUtils.join(this.getConfiguration().preserveMetadata, ",");
+        try {
+            Path appPath = appDirectory.toPath().toAbsolutePath();
+            if (this.getConfiguration().signNestedBinaries) {
+
+                long startTime = System.nanoTime();
+                Path signaturesFile = workDirectory.toPath().resolve("signatures");
+                String signingKey = IO.computeHash(this.createCommandLine().toString().getBytes(StandardCharsets.UTF_8));
+                this.setSigningKey(signingKey);
+                if (this.getConfiguration().cache) {
+                    this.setSignatureCache(new FileCache(new File(this.getConfiguration().cacheDirectory, "signatures").toPath(), this.getConfiguration().cacheMaximumSize * 1024 * 1024, this.getLog()));
+                }
+                Map<String, String> previousSignatures = this.loadSignatures(signaturesFile, signingKey);
+                SortedMap<Integer, List<Path>> binariesByDepth = this.collectNestedBinaries(appPath);
+                int signedCount = 0;
+                int unchangedCount = 0;
+                for (List<Path> binaries : binariesByDepth.values()) {
+                    List<Path> unsignedBinaries = new ArrayList<>();
+                    for (Path binary : binaries) {
+                        String previousHash = previousSignatures.get(this.toKey(appPath, binary));
+                        if (previousHash != null && previousHash.equals(IO.computeHash(binary))) {
+                            unchangedCount++;
+                        } else {
+                            unsignedBinaries.add(binary);
+                        }
+                    }
+                    this.signNestedBinaries(unsignedBinaries);
+                    stage.addFiles(unsignedBinaries.size(), unsignedBinaries.stream().mapToLong(binary -> binary.toFile().length()).sum());
+                    signedCount += unsignedBinaries.size();
+                }
+                this.getLog().info("Signed " + signedCount + " nested binaries (" + this.restoredCount.get() + " restored from cache, " + unchangedCount + " unchanged since previous build) in " + ((System.nanoTime() - startTime) / 1_000_000) + " ms");
+
+                // The hashes can only be computed after the app itself has been signed, as signing the app also signs
+                // its main executable
+                this.signFile(appPath);
+                stage.addFiles(1, 0);
+                Map<String, String> currentSignatures = new TreeMap<>();
+                for (List<Path> binaries : binariesByDepth.values()) {
+                    for (Path binary : binaries) {
+                        currentSignatures.put(this.toKey(appPath, binary), IO.computeHash(binary));
+                    }
+                }
+                this.saveSignatures(signaturesFile, signingKey, currentSignatures);
+
+            } else {
+                this.signFile(appPath);
+                stage.addFiles(1, 0);
+            }
+        } catch (Exception e) {
+            this.getLog().error("Cannot sign app", e);
+            throw new MojoExecutionException("Cannot sign app", e);
+        }
+
+    }
+
+    /**
+     * @return all Mach-O binaries inside the app, grouped by their nesting depth with the deepest level first
+     */
+    private SortedMap<Integer, List<Path>> collectNestedBinaries(Path appDirectory) throws IOException {
+        SortedMap<Integer, List<Path>> binariesByDepth = new TreeMap<>(Comparator.reverseOrder());
+        try (Stream<Path> appFiles = Files.walk(appDirectory)) {
+            for (Path appFile : appFiles.filter(file -> Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)).collect(Collectors.toList())) {
+                if (MachOFile.isMachO(appFile)) {
+                    binariesByDepth.computeIfAbsent(appDirectory.relativize(appFile).getNameCount(), depth -> new ArrayList<>()).add(appFile);
+                }
+            }
+        }
+        return binariesByDepth;
+    }
+
+    /**
+     * Signs all binaries concurrently. Failures are collected and reported together after all binaries have been
+     * processed.
+     */
+    private void signNestedBinaries(List<Path> files) throws IOException {
+        List<Throwable> signFailures = new ArrayList<>();
+        int threads = Math.min(this.getConfiguration().threads, files.size());
+        if (threads <= 1) {
+            for (Path file : files) {
+                try {
+                    this.signNestedBinary(file);
+                } catch (IOException | RuntimeException e) {
+                    signFailures.add(e);
+                }
+            }
+        } else {
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> signFutures = new ArrayList<>(files.size());
+                for (Path file : files) {
+                    signFutures.add(executorService.submit(() -> {
+                        this.signNestedBinary(file);
+                        return null;
+                    }));
+                }
+                for (Future<?> signFuture : signFutures) {
+                    try {
+                        signFuture.get();
+                    } catch (ExecutionException e) {
+                        signFailures.add(e.getCause());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while signing files", e);
+                    }
+                }
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+        if (!signFailures.isEmpty()) {
+            IOException signException = new IOException("Cannot sign " + signFailures.size() + " of " + files.size() + " files: " + signFailures.get(0).getMessage());
+            signFailures.forEach(signException::addSuppressed);
+            throw signException;
+        }
+    }
+
+    /**
+     * Signs the binary inside the signature cache, so that the signed content can be restored by subsequent builds for
+     * a binary with the same content instead of signing it again. The binary is signed using its original file name, as
+     * the identifier stored inside the signature is derived from it.
+     */
+    private void signNestedBinary(Path binary) throws IOException {
+        if (this.getSignatureCache() == null) {
+            this.signFile(binary);
+        } else {
+            String fileName = binary.getFileName().toString();
+            String cacheKey = IO.computeHash((this.getSigningKey() + "\n" + fileName + "\n" + IO.computeHash(binary)).getBytes(StandardCharsets.UTF_8));
+            AtomicInteger signedCount = new AtomicInteger();
+            this.getSignatureCache().use(cacheKey, entryDirectory -> {
+                Path entryFile = Files.createDirectories(entryDirectory).resolve(fileName);
+                Files.copy(binary, entryFile, StandardCopyOption.COPY_ATTRIBUTES);
+                this.signFile(entryFile);
+                signedCount.incrementAndGet();
+            }, entryDirectory -> {
+                Path copiedFile = binary.resolveSibling(fileName + ".macosappbundler-copy");
+                Files.copy(entryDirectory.resolve(fileName), copiedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                Files.move(copiedFile, binary, StandardCopyOption.REPLACE_EXISTING);
+                return null;
+            });
+            if (signedCount.get() == 0) {
+                this.restoredCount.incrementAndGet();
+            }
+        }
+    }
 
+    private void signFile(Path file) throws IOException {
+        if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+            this.breakHardLink(file);
+        }
+        Commandline codesignCommandLine = this.createCommandLine();
+        codesignCommandLine.createArg().setFile(file.toFile());
+        Processes.execute(codesignCommandLine, this.getLog());
+    }
+
+    /**
+     * Signing modifies the file in place, so a file that is hard linked to a file outside of the app (like a library
+     * inside the local Maven repository or the JDK) is replaced by a copy first.
+     */
+    private void breakHardLink(Path file) throws IOException {
+        Object linkCount = null;
+        try {
+            linkCount = Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return;
+        }
+        if (linkCount instanceof Integer && (Integer)linkCount > 1) {
+            Path copiedFile = file.resolveSibling(file.getFileName() + ".macosappbundler-copy");
+            Files.copy(file, copiedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            Files.move(copiedFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Commandline createCommandLine() {
+        String preserveMetadataValue = StringUtils.join(this.getConfiguration().preserveMetadata, ",");
         Commandline codesignCommandLine = new Commandline();
-        codesignCommandLine.setExecutable("codesign");
+        codesignCommandLine.setExecutable(StringUtils.defaultIfEmpty(this.getConfiguration().executable, "codesign"));
         codesignCommandLine.createArg().setValue("--force");
         codesignCommandLine.createArg().setValue("--timestamp");
         codesignCommandLine.createArg().setValue("--sign");
@@ -50,19 +265,47 @@ public class SignatureGenerator {
         if (StringUtils.isNotEmpty(preserveMetadataValue)) {
             codesignCommandLine.createArg().setValue("--preserve-metadata=" + preserveMetadataValue);
         }
-        codesignCommandLine.createArg().setFile(appDirectory);
+        return codesignCommandLine;
+    }
 
-        try {
-            Process codesignProcess = codesignCommandLine.execute();
-            int codesignReturnValue = codesignProcess.waitFor();
-            if (codesignReturnValue != 0) {
-                throw new Exception("Command 'codesign' exited with status " + codesignReturnValue);
+    /**
+     * @return the hashes of all binaries signed during the previous build, if they have been signed using the same
+     *     signing key
+     */
+    private Map<String, String> loadSignatures(Path signaturesFile, String signingKey) {
+        Map<String, String> signatures = new TreeMap<>();
+        if (Files.exists(signaturesFile)) {
+            try (BufferedReader signaturesReader = Files.newBufferedReader(signaturesFile, StandardCharsets.UTF_8)) {
+                for (String line = signaturesReader.readLine(); line != null; line = signaturesReader.readLine()) {
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        String[] lineValues = line.split("\t");
+                        if (lineValues.length == 3 && lineValues[1].equals(signingKey)) {
+                            signatures.put(lineValues[0], lineValues[2]);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                this.getLog().warn("Cannot read signatures at: " + signaturesFile + ". All binaries will be signed.", e);
+                return Collections.emptyMap();
             }
-        } catch (Exception e) {
-            this.getLog().error("Cannot sign app", e);
-            throw new MojoExecutionException("Cannot sign app", e);
         }
+        return signatures;
+    }
 
+    private void saveSignatures(Path signaturesFile, String signingKey, Map<String, String> signatures) throws IOException {
+        Files.createDirectories(signaturesFile.getParent());
+        try (BufferedWriter signaturesWriter = Files.newBufferedWriter(signaturesFile, StandardCharsets.UTF_8)) {
+            signaturesWriter.write(SIGNATURES_HEADER);
+            signaturesWriter.write("\n");
+            for (Map.Entry<String, String> signature : signatures.entrySet()) {
+                signaturesWriter.write(signature.getKey() + "\t" + signingKey + "\t" + signature.getValue());
+                signaturesWriter.write("\n");
+            }
+        }
+    }
+
+    private String toKey(Path appDirectory, Path file) {
+        return appDirectory.relativize(file).toString().replace('\\', '/');
     }
 
     private CodesignConfiguration getConfiguration() {
@@ -72,6 +315,27 @@ public class SignatureGenerator {
         this.configuration = configuration;
     }
 
+    private String getSigningKey() {
+        return this.signingKey;
+    }
+    private void setSigningKey(String signingKey) {
+        this.signingKey = signingKey;
+    }
+
+    private FileCache getSignatureCache() {
+        return this.signatureCache;
+    }
+    private void setSignatureCache(FileCache signatureCache) {
+        this.signatureCache = signatureCache;
+    }
+
+    public BuildMetrics getBuildMetrics() {
+        return this.buildMetrics;
+    }
+    public void setBuildMetrics(BuildMetrics buildMetrics) {
+        this.buildMetrics = buildMetrics;
+    }
+
     private Log getLog() {
         return this.log;
     }
@@ -0,0 +1,359 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.BinaryPlistReader;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.BinaryPlistWriter;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.BuildMetrics;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.BundleManifest;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.FileTransfer;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.IO;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.NativeBinarySlimmer;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.PlistWriter;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.TreeCopier;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.XmlPlistReader;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.XmlPlistWriter;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.AppCdsConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.LinkStrategy;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.PlistConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.VariantConfiguration;
+
+/**
+ * Creates a variant of an app for another native binary type, by copying the complete app created by the
+ * {@link AppGenerator}, selecting the launcher for the native binary type of the variant and slimming all native
+ * binaries to its architectures. An AppCDS archive can only be used on the architecture on which it has been created,
+ * so it is left out of variants that don't include the architecture of the build together with its JVM option.
+ */
+
+public class VariantGenerator {
+
+    private VariantConfiguration variantConfiguration = null;
+    private PlistConfiguration plistConfiguration = null;
+    private AppCdsConfiguration appCdsConfiguration = new AppCdsConfiguration();
+    private String buildArchitecture = resolveArchitecture(System.getProperty("os.arch"));
+    private LinkStrategy linkStrategy = LinkStrategy.COPY;
+    private int copyThreads = Runtime.getRuntime().availableProcessors();
+    private boolean incremental = true;
+    private BuildMetrics buildMetrics = new BuildMetrics();
+    private Log log = null;
+
+    public VariantGenerator(VariantConfiguration variantConfiguration, PlistConfiguration plistConfiguration, Log log) {
+        this.setVariantConfiguration(variantConfiguration);
+        this.setPlistConfiguration(plistConfiguration);
+        this.setLog(log);
+    }
+
+    /**
+     * @param manifestFile the file in which the files copied into the variant are recorded, so that a subsequent build
+     *     only needs to copy the files that have changed inside the source app
+     */
+    public void generateVariant(File sourceAppDirectory, File appDirectory, File manifestFile) throws MojoExecutionException {
+        this.getLog().info("Creating variant '" + this.getVariantConfiguration().getName() + "' for binary type " + this.getVariantConfiguration().nativeBinary + " at: " + appDirectory.getAbsolutePath());
+        BundleManifest bundleManifest = this.createBundleManifest(appDirectory, manifestFile);
+        IO.FileCopier fileCopier = new FileTransfer(this.getLinkStrategy(), this.getLog())::transfer;
+        List<String> bundleConfiguration = new ArrayList<>();
+        bundleConfiguration.add("variant=" + this.getVariantConfiguration().nativeBinary);
+        NativeBinarySlimmer nativeBinarySlimmer = null;
+        if (this.getVariantConfiguration().slimNativeBinaries) {
+            nativeBinarySlimmer = new NativeBinarySlimmer(this.getVariantConfiguration().nativeBinary.getArchitectures(), this.getLog());
+            bundleConfiguration.add("slimNativeBinaries=" + String.join(",", this.getVariantConfiguration().nativeBinary.getArchitectures()));
+            fileCopier = nativeBinarySlimmer.createFileCopier(fileCopier);
+        }
+        bundleManifest.setConfiguration(String.join(";", bundleConfiguration));
+        bundleManifest.setFileCopier(fileCopier);
+
+        String executableName = StringUtils.defaultIfEmpty(this.getPlistConfiguration().CFBundleExecutable, "JavaLauncher");
+        Path sourceExecutable = sourceAppDirectory.toPath().resolve("Contents/MacOS").resolve(executableName).toAbsolutePath();
+        Path sourcePlist = sourceAppDirectory.toPath().resolve("Contents/Info.plist").toAbsolutePath();
+        Path sourceAppCdsArchive = sourceAppDirectory.toPath().resolve("Contents/Java").resolve(this.getAppCdsConfiguration().archiveFileName).toAbsolutePath();
+        boolean removeAppCdsArchive = this.getAppCdsConfiguration().enable && !this.getVariantConfiguration().nativeBinary.getArchitectures().contains(this.getBuildArchitecture());
+        if (removeAppCdsArchive) {
+            this.getLog().info("AppCDS archive created on architecture " + this.getBuildArchitecture() + " will not be included in variant '" + this.getVariantConfiguration().getName() + "'");
+        }
+        this.getBuildMetrics().runStage("copyApp", appDirectory, stage -> {
+            try {
+                TreeCopier treeCopier = new TreeCopier(this.getCopyThreads(), (sourceFile, targetFile) -> {
+                    Path absoluteSourceFile = sourceFile.toAbsolutePath();
+                    if (removeAppCdsArchive && (absoluteSourceFile.equals(sourcePlist) || absoluteSourceFile.equals(sourceAppCdsArchive))) {
+                        return;
+                    } else if (!absoluteSourceFile.equals(sourceExecutable)) {
+                        bundleManifest.copyFile(sourceFile, targetFile);
+                    }
+                });
+                treeCopier.setSymbolicLinkCopier(bundleManifest::copySymbolicLink);
+                treeCopier.copyTree(sourceAppDirectory.toPath(), appDirectory.toPath());
+                stage.addFiles(bundleManifest.getCopiedCount(), bundleManifest.getCopiedSize());
+            } catch (IOException e) {
+                throw new MojoExecutionException("Cannot copy app into variant directory at: " + appDirectory.getAbsolutePath(), e);
+            }
+        });
+        this.getBuildMetrics().runStage("copyNativeExecutable", appDirectory, stage -> {
+            File targetFile = new File(appDirectory, "Contents/MacOS/" + executableName);
+            if (this.copyNativeExecutable(bundleManifest, targetFile)) {
+                stage.addFiles(1, targetFile.length());
+            }
+        });
+        if (removeAppCdsArchive && Files.exists(sourcePlist)) {
+            this.getBuildMetrics().runStage("copyPlist", appDirectory, stage -> {
+                File targetFile = new File(appDirectory, "Contents/Info.plist");
+                if (this.copyPlistWithoutAppCdsArchive(bundleManifest, sourcePlist, targetFile)) {
+                    stage.addFiles(1, targetFile.length());
+                }
+            });
+        }
+
+        try {
+            bundleManifest.removeStaleFiles();
+            bundleManifest.save();
+            this.getLog().info("Variant files copied: " + bundleManifest.getCopiedCount() + ", skipped (unchanged): " + bundleManifest.getSkippedCount() + ", removed (stale): " + bundleManifest.getRemovedCount());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot update variant manifest", e);
+        }
+        if (nativeBinarySlimmer != null) {
+            this.getLog().info("Native binaries for architectures " + this.getVariantConfiguration().nativeBinary.getArchitectures() + ": " + nativeBinarySlimmer);
+        }
+    }
+
+    private BundleManifest createBundleManifest(File appDirectory, File manifestFile) {
+        if (this.isIncremental()) {
+            try {
+                return BundleManifest.load(appDirectory.toPath(), manifestFile.toPath());
+            } catch (IOException | RuntimeException e) {
+                this.getLog().warn("Cannot read variant manifest at: " + manifestFile.getAbsolutePath() + ". All files will be copied.", e);
+            }
+        }
+        return BundleManifest.create(appDirectory.toPath(), manifestFile.toPath());
+    }
+
+    private boolean copyNativeExecutable(BundleManifest bundleManifest, File targetFile) throws MojoExecutionException {
+        String nativeBinaryFileName = this.getVariantConfiguration().nativeBinary.getFilename();
+        URL nativeBinarySource = this.getClass().getClassLoader().getResource(nativeBinaryFileName);
+        if (nativeBinarySource == null) {
+            throw new MojoExecutionException("No native executable packaged in plugin for native binary type " + this.getVariantConfiguration().nativeBinary.name() + " found at location: " + nativeBinaryFileName);
+        }
+        try (InputStream nativeExecutableStream = nativeBinarySource.openStream()) {
+            targetFile.getParentFile().mkdirs();
+            boolean copied = bundleManifest.copyContent(nativeBinarySource.toString(), IOUtils.toByteArray(nativeExecutableStream), targetFile.toPath());
+            targetFile.setExecutable(true, false);
+            return copied;
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot copy native executable", e);
+        }
+    }
+
+    private boolean copyPlistWithoutAppCdsArchive(BundleManifest bundleManifest, Path sourcePlist, File targetFile) throws MojoExecutionException {
+        String sharedArchiveFileOption = new AppCdsGenerator(this.getAppCdsConfiguration(), this.getPlistConfiguration(), this.getLog()).createSharedArchiveFileOption();
+        try {
+            byte[] sourceContent = Files.readAllBytes(sourcePlist);
+            ByteArrayOutputStream targetContent = new ByteArrayOutputStream();
+            if (BinaryPlistReader.isBinaryPlist(sourceContent)) {
+                BinaryPlistReader.read(sourceContent, new OptionFilteringPlistWriter(new BinaryPlistWriter(targetContent), sharedArchiveFileOption));
+            } else {
+                try (Writer targetWriter = new OutputStreamWriter(targetContent, StandardCharsets.UTF_8)) {
+                    XmlPlistReader.read(new ByteArrayInputStream(sourceContent), new OptionFilteringPlistWriter(new XmlPlistWriter(targetWriter), sharedArchiveFileOption));
+                }
+            }
+            return bundleManifest.copyContent(sourcePlist.toString() + "!-" + sharedArchiveFileOption, targetContent.toByteArray(), targetFile.toPath());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot copy Info.plist into variant directory at: " + targetFile.getAbsolutePath(), e);
+        }
+    }
+
+    static String resolveArchitecture(String osArchitecture) {
+        if ("aarch64".equals(osArchitecture) || "arm64".equals(osArchitecture)) {
+            return "arm64";
+        } else if ("amd64".equals(osArchitecture) || "x86_64".equals(osArchitecture)) {
+            return "x86_64";
+        } else {
+            return osArchitecture;
+        }
+    }
+
+    /**
+     * Passes all events to the delegate except for the given option inside an array.
+     */
+
+    static class OptionFilteringPlistWriter implements PlistWriter {
+
+        private PlistWriter delegate = null;
+        private String option = null;
+        private Deque<Boolean> arrays = new ArrayDeque<>();
+
+        OptionFilteringPlistWriter(PlistWriter delegate, String option) {
+            this.delegate = delegate;
+            this.option = option;
+        }
+
+        @Override
+        public void startDocument() throws IOException {
+            this.delegate.startDocument();
+        }
+
+        @Override
+        public void endDocument() throws IOException {
+            this.delegate.endDocument();
+        }
+
+        @Override
+        public void startDict() throws IOException {
+            this.arrays.push(Boolean.FALSE);
+            this.delegate.startDict();
+        }
+
+        @Override
+        public void endDict() throws IOException {
+            this.arrays.pop();
+            this.delegate.endDict();
+        }
+
+        @Override
+        public void startArray() throws IOException {
+            this.arrays.push(Boolean.TRUE);
+            this.delegate.startArray();
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            this.arrays.pop();
+            this.delegate.endArray();
+        }
+
+        @Override
+        public void key(String key) throws IOException {
+            this.delegate.key(key);
+        }
+
+        @Override
+        public void string(String value) throws IOException {
+            if (!Boolean.TRUE.equals(this.arrays.peek()) || !this.option.equals(value)) {
+                this.delegate.string(value);
+            }
+        }
+
+        @Override
+        public void bool(boolean value) throws IOException {
+            this.delegate.bool(value);
+        }
+
+        @Override
+        public void integer(long value) throws IOException {
+            this.delegate.integer(value);
+        }
+
+        @Override
+        public void real(double value) throws IOException {
+            this.delegate.real(value);
+        }
+
+        @Override
+        public void date(Instant value) throws IOException {
+            this.delegate.date(value);
+        }
+
+        @Override
+        public void data(byte[] value) throws IOException {
+            this.delegate.data(value);
+        }
+
+    }
+
+    private VariantConfiguration getVariantConfiguration() {
+        return this.variantConfiguration;
+    }
+    private void setVariantConfiguration(VariantConfiguration variantConfiguration) {
+        this.variantConfiguration = variantConfiguration;
+    }
+
+    private PlistConfiguration getPlistConfiguration() {
+        return this.plistConfiguration;
+    }
+    private void setPlistConfiguration(PlistConfiguration plistConfiguration) {
+        this.plistConfiguration = plistConfiguration;
+    }
+
+    public AppCdsConfiguration getAppCdsConfiguration() {
+        return this.appCdsConfiguration;
+    }
+    public void setAppCdsConfiguration(AppCdsConfiguration appCdsConfiguration) {
+        this.appCdsConfiguration = appCdsConfiguration;
+    }
+
+    String getBuildArchitecture() {
+        return this.buildArchitecture;
+    }
+    void setBuildArchitecture(String buildArchitecture) {
+        this.buildArchitecture = buildArchitecture;
+    }
+
+    public LinkStrategy getLinkStrategy() {
+        return this.linkStrategy;
+    }
+    public void setLinkStrategy(LinkStrategy linkStrategy) {
+        this.linkStrategy = linkStrategy;
+    }
+
+    public int getCopyThreads() {
+        return this.copyThreads;
+    }
+    public void setCopyThreads(int copyThreads) {
+        this.copyThreads = copyThreads;
+    }
+
+    public boolean isIncremental() {
+        return this.incremental;
+    }
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public BuildMetrics getBuildMetrics() {
+        return this.buildMetrics;
+    }
+    public void setBuildMetrics(BuildMetrics buildMetrics) {
+        this.buildMetrics = buildMetrics;
+    }
+
+    private Log getLog() {
+        return this.log;
+    }
+    private void setLog(Log log) {
+        this.log = log;
+    }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Reads a property list in the binary {@code bplist00} format and replays its content as events to a
+ * {@link PlistWriter}, so that it can be converted into another format or inspected.
+ */
+
+public class BinaryPlistReader {
+
+    private static final int MAXIMUM_DEPTH = 512;
+
+    private ByteBuffer buffer = null;
+    private int offsetSize = 0;
+    private int objectReferenceSize = 0;
+    private int objectCount = 0;
+    private int offsetTableOffset = 0;
+
+    private BinaryPlistReader(byte[] content) {
+        this.buffer = ByteBuffer.wrap(content);
+    }
+
+    public static boolean isBinaryPlist(byte[] content) {
+        return content.length >= BinaryPlistWriter.MAGIC.length && Arrays.equals(Arrays.copyOf(content, BinaryPlistWriter.MAGIC.length), BinaryPlistWriter.MAGIC);
+    }
+
+    public static void read(byte[] content, PlistWriter plistWriter) throws IOException {
+        if (!BinaryPlistReader.isBinaryPlist(content) || content.length < BinaryPlistWriter.MAGIC.length + 32) {
+            throw new IOException("Content is not a binary property list");
+        }
+        try {
+            BinaryPlistReader reader = new BinaryPlistReader(content);
+            long rootObject = reader.readTrailer();
+            plistWriter.startDocument();
+            reader.readObject(reader.checkReference(rootObject), plistWriter, 0);
+            plistWriter.endDocument();
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Invalid binary property list", e);
+        }
+    }
+
+    private long readTrailer() throws IOException {
+        int trailerOffset = this.buffer.capacity() - 32;
+        this.offsetSize = this.buffer.get(trailerOffset + 6) & 0xFF;
+        this.objectReferenceSize = this.buffer.get(trailerOffset + 7) & 0xFF;
+        long objectCount = this.buffer.getLong(trailerOffset + 8);
+        long rootObject = this.buffer.getLong(trailerOffset + 16);
+        long offsetTableOffset = this.buffer.getLong(trailerOffset + 24);
+        if (this.offsetSize < 1 || this.offsetSize > 8 || this.objectReferenceSize < 1 || this.objectReferenceSize > 8) {
+            throw new IOException("Invalid integer sizes in binary property list trailer");
+        } else if (objectCount < 1 || offsetTableOffset < BinaryPlistWriter.MAGIC.length || offsetTableOffset + objectCount * this.offsetSize > trailerOffset) {
+            throw new IOException("Invalid offset table in binary property list trailer");
+        }
+        this.objectCount = (int)objectCount;
+        this.offsetTableOffset = (int)offsetTableOffset;
+        return rootObject;
+    }
+
+    private void readObject(int objectIndex, PlistWriter plistWriter, int depth) throws IOException {
+        if (depth > MAXIMUM_DEPTH) {
+            throw new IOException("Binary property list is nested too deeply");
+        }
+        int objectOffset = this.checkOffset(this.readSizedInteger(this.offsetTableOffset + objectIndex * this.offsetSize, this.offsetSize));
+        int marker = this.buffer.get(objectOffset) & 0xFF;
+        int objectInfo = marker & 0x0F;
+        switch (marker >> 4) {
+            case 0x0:
+                if (objectInfo == 0x08 || objectInfo == 0x09) {
+                    plistWriter.bool(objectInfo == 0x09);
+                    return;
+                }
+                break;
+            case 0x1:
+                plistWriter.integer(this.readIntegerValue(objectOffset + 1, objectInfo));
+                return;
+            case 0x2:
+                if (objectInfo == 2) {
+                    plistWriter.real(this.buffer.getFloat(objectOffset + 1));
+                    return;
+                } else if (objectInfo == 3) {
+                    plistWriter.real(this.buffer.getDouble(objectOffset + 1));
+                    return;
+                }
+                break;
+            case 0x3:
+                if (objectInfo == 3) {
+                    double seconds = this.buffer.getDouble(objectOffset + 1);
+                    long wholeSeconds = (long)Math.floor(seconds);
+                    plistWriter.date(Instant.ofEpochSecond(wholeSeconds + BinaryPlistWriter.DATE_EPOCH_SECONDS, Math.round((seconds - wholeSeconds) * 1_000_000_000d)));
+                    return;
+                }
+                break;
+            case 0x4: {
+                int[] countAndStart = this.readCount(objectOffset, objectInfo);
+                byte[] data = new byte[countAndStart[0]];
+                this.buffer.position(countAndStart[1]);
+                this.buffer.get(data);
+                plistWriter.data(data);
+                return;
+            }
+            case 0x5: {
+                int[] countAndStart = this.readCount(objectOffset, objectInfo);
+                plistWriter.string(this.readString(countAndStart[1], countAndStart[0], StandardCharsets.US_ASCII));
+                return;
+            }
+            case 0x6: {
+                int[] countAndStart = this.readCount(objectOffset, objectInfo);
+                plistWriter.string(this.readString(countAndStart[1], countAndStart[0] * 2, StandardCharsets.UTF_16BE));
+                return;
+            }
+            case 0xA: {
+                int[] countAndStart = this.readCount(objectOffset, objectInfo);
+                plistWriter.startArray();
+                for (int i = 0; i < countAndStart[0]; i++) {
+                    this.readObject(this.readReference(countAndStart[1], i), plistWriter, depth + 1);
+                }
+                plistWriter.endArray();
+                return;
+            }
+            case 0xD: {
+                int[] countAndStart = this.readCount(objectOffset, objectInfo);
+                plistWriter.startDict();
+                for (int i = 0; i < countAndStart[0]; i++) {
+                    plistWriter.key(this.readKey(this.readReference(countAndStart[1], i)));
+                    this.readObject(this.readReference(countAndStart[1], countAndStart[0] + i), plistWriter, depth + 1);
+                }
+                plistWriter.endDict();
+                return;
+            }
+            default:
+                break;
+        }
+        throw new IOException("Unsupported object marker 0x" + Integer.toHexString(marker) + " at offset " + objectOffset);
+    }
+
+    private String readKey(int objectIndex) throws IOException {
+        int objectOffset = this.checkOffset(this.readSizedInteger(this.offsetTableOffset + objectIndex * this.offsetSize, this.offsetSize));
+        int marker = this.buffer.get(objectOffset) & 0xFF;
+        if ((marker >> 4) == 0x5 || (marker >> 4) == 0x6) {
+            int[] countAndStart = this.readCount(objectOffset, marker & 0x0F);
+            return (marker >> 4) == 0x5 ? this.readString(countAndStart[1], countAndStart[0], StandardCharsets.US_ASCII) : this.readString(countAndStart[1], countAndStart[0] * 2, StandardCharsets.UTF_16BE);
+        } else {
+            throw new IOException("Dict key at offset " + objectOffset + " is not a string");
+        }
+    }
+
+    private String readString(int offset, int length, Charset charset) {
+        byte[] stringBytes = new byte[length];
+        this.buffer.position(offset);
+        this.buffer.get(stringBytes);
+        return new String(stringBytes, charset);
+    }
+
+    /**
+     * @return the number of elements and the offset of the first element
+     */
+    private int[] readCount(int objectOffset, int objectInfo) throws IOException {
+        if (objectInfo != 0x0F) {
+            return new int[] { objectInfo, objectOffset + 1 };
+        }
+        int countMarker = this.buffer.get(objectOffset + 1) & 0xFF;
+        if ((countMarker >> 4) != 0x1) {
+            throw new IOException("Invalid count at offset " + objectOffset);
+        }
+        long count = this.readIntegerValue(objectOffset + 2, countMarker & 0x0F);
+        if (count < 0 || count > this.buffer.capacity()) {
+            throw new IOException("Invalid count " + count + " at offset " + objectOffset);
+        }
+        return new int[] { (int)count, objectOffset + 2 + (1 << (countMarker & 0x0F)) };
+    }
+
+    private long readIntegerValue(int offset, int sizeExponent) throws IOException {
+        if (sizeExponent > 3) {
+            throw new IOException("Unsupported integer size at offset " + offset);
+        }
+        return this.readSizedInteger(offset, 1 << sizeExponent);
+    }
+
+    private int readReference(int referencesOffset, int referenceIndex) throws IOException {
+        return this.checkReference(this.readSizedInteger(referencesOffset + referenceIndex * this.objectReferenceSize, this.objectReferenceSize));
+    }
+
+    private int checkReference(long reference) throws IOException {
+        if (reference < 0 || reference >= this.objectCount) {
+            throw new IOException("Invalid object reference: " + reference);
+        }
+        return (int)reference;
+    }
+
+    private int checkOffset(long offset) throws IOException {
+        if (offset < BinaryPlistWriter.MAGIC.length || offset >= this.offsetTableOffset) {
+            throw new IOException("Invalid object offset: " + offset);
+        }
+        return (int)offset;
+    }
+
+    private long readSizedInteger(int offset, int size) {
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            value = (value << 8) | (this.buffer.get(offset + i) & 0xFF);
+        }
+        return value;
+    }
+
+}
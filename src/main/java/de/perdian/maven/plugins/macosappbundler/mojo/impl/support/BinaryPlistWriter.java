@@ -0,0 +1,326 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a property list in the binary {@code bplist00} format as understood by CoreFoundation. The events are
+ * collected into an object tree first, since the binary format needs to know the total number of objects before the
+ * first object can be written.
+ *
+ * Scalar values (strings, numbers, dates and data) that occur more than once - like keys repeated in every entry of
+ * {@code CFBundleDocumentTypes} - are only stored once and referenced from every place they are used. Object
+ * references and entries of the offset table use the smallest possible number of bytes.
+ */
+
+public class BinaryPlistWriter implements PlistWriter {
+
+    static final byte[] MAGIC = "bplist00".getBytes(StandardCharsets.US_ASCII);
+    static final long DATE_EPOCH_SECONDS = 978307200L; // 2001-01-01T00:00:00Z
+
+    private OutputStream outputStream = null;
+    private Deque<Object> containers = new ArrayDeque<>();
+    private String pendingKey = null;
+    private Object rootObject = null;
+
+    public BinaryPlistWriter(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    @Override
+    public void startDocument() throws IOException {
+        this.containers.clear();
+        this.pendingKey = null;
+        this.rootObject = null;
+    }
+
+    @Override
+    public void endDocument() throws IOException {
+        if (!this.containers.isEmpty()) {
+            throw new IOException("Property list contains unclosed dict or array");
+        } else if (this.rootObject == null) {
+            throw new IOException("Property list doesn't contain any object");
+        }
+        new Encoder().encode(this.rootObject, this.outputStream);
+        this.outputStream.flush();
+    }
+
+    @Override
+    public void startDict() throws IOException {
+        Map<String, Object> dict = new LinkedHashMap<>();
+        this.addValue(dict);
+        this.containers.push(dict);
+    }
+
+    @Override
+    public void endDict() throws IOException {
+        this.endContainer(Map.class);
+    }
+
+    @Override
+    public void startArray() throws IOException {
+        List<Object> array = new ArrayList<>();
+        this.addValue(array);
+        this.containers.push(array);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        this.endContainer(List.class);
+    }
+
+    @Override
+    public void key(String key) throws IOException {
+        if (!(this.containers.peek() instanceof Map) || this.pendingKey != null) {
+            throw new IOException("Key '" + key + "' is not expected at this position");
+        }
+        this.pendingKey = key;
+    }
+
+    @Override
+    public void string(String value) throws IOException {
+        this.addValue(value);
+    }
+
+    @Override
+    public void bool(boolean value) throws IOException {
+        this.addValue(Boolean.valueOf(value));
+    }
+
+    @Override
+    public void integer(long value) throws IOException {
+        this.addValue(Long.valueOf(value));
+    }
+
+    @Override
+    public void real(double value) throws IOException {
+        this.addValue(Double.valueOf(value));
+    }
+
+    @Override
+    public void date(Instant value) throws IOException {
+        this.addValue(value);
+    }
+
+    @Override
+    public void data(byte[] value) throws IOException {
+        this.addValue(ByteBuffer.wrap(value.clone()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addValue(Object value) throws IOException {
+        Object container = this.containers.peek();
+        if (container == null) {
+            if (this.rootObject != null) {
+                throw new IOException("Property list can only contain a single root object");
+            }
+            this.rootObject = value;
+        } else if (container instanceof List) {
+            ((List<Object>)container).add(value);
+        } else if (this.pendingKey == null) {
+            throw new IOException("Missing key for value inside dict");
+        } else {
+            ((Map<String, Object>)container).put(this.pendingKey, value);
+            this.pendingKey = null;
+        }
+    }
+
+    private void endContainer(Class<?> containerClass) throws IOException {
+        if (!containerClass.isInstance(this.containers.peek()) || this.pendingKey != null) {
+            throw new IOException("Unexpected end of " + (containerClass == Map.class ? "dict" : "array"));
+        }
+        this.containers.pop();
+    }
+
+    static class Encoder {
+
+        private List<Object> objects = new ArrayList<>();
+        private Map<Integer, int[]> objectReferences = new HashMap<>();
+        private Map<Object, Integer> uniqueObjects = new HashMap<>();
+
+        void encode(Object rootObject, OutputStream outputStream) throws IOException {
+            this.flatten(rootObject);
+            int objectReferenceSize = Encoder.computeIntegerSize(this.objects.size() - 1);
+            long[] offsets = new long[this.objects.size()];
+
+            DataOutputStream dataStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+            dataStream.write(MAGIC);
+            for (int i = 0; i < this.objects.size(); i++) {
+                offsets[i] = dataStream.size();
+                this.writeObject(dataStream, i, objectReferenceSize);
+            }
+
+            long offsetTableOffset = dataStream.size();
+            int offsetSize = Encoder.computeIntegerSize(offsetTableOffset);
+            for (long offset : offsets) {
+                Encoder.writeSizedInteger(dataStream, offset, offsetSize);
+            }
+
+            dataStream.write(new byte[6]);
+            dataStream.writeByte(offsetSize);
+            dataStream.writeByte(objectReferenceSize);
+            dataStream.writeLong(this.objects.size());
+            dataStream.writeLong(0);
+            dataStream.writeLong(offsetTableOffset);
+            dataStream.flush();
+        }
+
+        /**
+         * Assigns an index to every object in the tree. Containers always get their own index, scalar values that are
+         * equal share the index of their first occurrence.
+         */
+        private int flatten(Object object) throws IOException {
+            if (object instanceof Map) {
+                Map<?, ?> dict = (Map<?, ?>)object;
+                int index = this.addObject(object);
+                int[] references = new int[dict.size() * 2];
+                int keyIndex = 0;
+                for (Map.Entry<?, ?> entry : dict.entrySet()) {
+                    references[keyIndex] = this.flatten(entry.getKey());
+                    references[keyIndex + dict.size()] = this.flatten(entry.getValue());
+                    keyIndex++;
+                }
+                this.objectReferences.put(index, references);
+                return index;
+            } else if (object instanceof List) {
+                List<?> array = (List<?>)object;
+                int index = this.addObject(object);
+                int[] references = new int[array.size()];
+                for (int i = 0; i < array.size(); i++) {
+                    references[i] = this.flatten(array.get(i));
+                }
+                this.objectReferences.put(index, references);
+                return index;
+            } else {
+                Integer existingIndex = this.uniqueObjects.get(object);
+                if (existingIndex != null) {
+                    return existingIndex;
+                }
+                int index = this.addObject(object);
+                this.uniqueObjects.put(object, index);
+                return index;
+            }
+        }
+
+        private int addObject(Object object) {
+            this.objects.add(object);
+            return this.objects.size() - 1;
+        }
+
+        private void writeObject(DataOutputStream dataStream, int index, int objectReferenceSize) throws IOException {
+            Object object = this.objects.get(index);
+            if (object instanceof Boolean) {
+                dataStream.writeByte(((Boolean)object).booleanValue() ? 0x09 : 0x08);
+            } else if (object instanceof Long) {
+                Encoder.writeIntegerObject(dataStream, ((Long)object).longValue());
+            } else if (object instanceof Double) {
+                dataStream.writeByte(0x23);
+                dataStream.writeDouble(((Double)object).doubleValue());
+            } else if (object instanceof Instant) {
+                Instant instant = (Instant)object;
+                dataStream.writeByte(0x33);
+                dataStream.writeDouble(instant.getEpochSecond() - DATE_EPOCH_SECONDS + instant.getNano() / 1_000_000_000d);
+            } else if (object instanceof ByteBuffer) {
+                ByteBuffer data = (ByteBuffer)object;
+                Encoder.writeMarker(dataStream, 0x40, data.remaining());
+                dataStream.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            } else if (object instanceof String) {
+                Encoder.writeString(dataStream, (String)object);
+            } else if (object instanceof List || object instanceof Map) {
+                int[] references = this.objectReferences.get(index);
+                boolean dict = object instanceof Map;
+                Encoder.writeMarker(dataStream, dict ? 0xD0 : 0xA0, dict ? references.length / 2 : references.length);
+                for (int reference : references) {
+                    Encoder.writeSizedInteger(dataStream, reference, objectReferenceSize);
+                }
+            } else {
+                throw new IOException("Unsupported property list value: " + object);
+            }
+        }
+
+        private static void writeString(DataOutputStream dataStream, String value) throws IOException {
+            boolean ascii = true;
+            for (int i = 0; i < value.length() && ascii; i++) {
+                ascii = value.charAt(i) < 0x80;
+            }
+            if (ascii) {
+                Encoder.writeMarker(dataStream, 0x50, value.length());
+                dataStream.write(value.getBytes(StandardCharsets.US_ASCII));
+            } else {
+                Encoder.writeMarker(dataStream, 0x60, value.length());
+                dataStream.write(value.getBytes(StandardCharsets.UTF_16BE));
+            }
+        }
+
+        /**
+         * Writes the type marker of an object. Counts below 15 are stored inside the marker itself, larger counts are
+         * written as integer object directly following the marker.
+         */
+        private static void writeMarker(DataOutputStream dataStream, int type, int count) throws IOException {
+            if (count < 15) {
+                dataStream.writeByte(type | count);
+            } else {
+                dataStream.writeByte(type | 0x0F);
+                Encoder.writeIntegerObject(dataStream, count);
+            }
+        }
+
+        /**
+         * Integers of one, two and four bytes are read as unsigned values, so negative values always need to be
+         * written using eight bytes.
+         */
+        private static void writeIntegerObject(DataOutputStream dataStream, long value) throws IOException {
+            int size = value < 0 ? 8 : Encoder.computeIntegerSize(value);
+            dataStream.writeByte(0x10 | Integer.numberOfTrailingZeros(size));
+            Encoder.writeSizedInteger(dataStream, value, size);
+        }
+
+        private static void writeSizedInteger(DataOutputStream dataStream, long value, int size) throws IOException {
+            for (int i = size - 1; i >= 0; i--) {
+                dataStream.writeByte((int)(value >>> (i * 8)));
+            }
+        }
+
+        private static int computeIntegerSize(long value) {
+            if (value <= 0xFFL) {
+                return 1;
+            } else if (value <= 0xFFFFL) {
+                return 2;
+            } else if (value <= 0xFFFFFFFFL) {
+                return 4;
+            } else {
+                return 8;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+/**
+ * Reports the stages of a bundle run and the external processes started by it as JDK Flight Recorder events, so that
+ * a recording of the Maven build (e.g. using {@code MAVEN_OPTS=-XX:StartFlightRecording}) shows the activity of the
+ * plugin next to the GC, I/O and thread events of the JVM. On a JVM without Flight Recorder nothing is reported.
+ */
+
+public class BuildEvents {
+
+    private static final boolean FLIGHT_RECORDER_AVAILABLE = BuildEvents.isFlightRecorderAvailable();
+
+    public static StageRecorder beginStage(String stageName, String target) {
+        if (FLIGHT_RECORDER_AVAILABLE) {
+            return FlightRecorderEvents.beginStage(stageName, target);
+        } else {
+            return (fileCount, byteCount) -> {};
+        }
+    }
+
+    public static ProcessRecorder beginProcess(String executable, String arguments) {
+        if (FLIGHT_RECORDER_AVAILABLE) {
+            return FlightRecorderEvents.beginProcess(executable, arguments);
+        } else {
+            return (exitValue, outputBytes) -> {};
+        }
+    }
+
+    /**
+     * The event classes are only loaded after the {@code jdk.jfr} module has been found, as it is missing on some of
+     * the supported JVMs.
+     */
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder", false, BuildEvents.class.getClassLoader());
+            return FlightRecorderEvents.isAvailable();
+        } catch (ClassNotFoundException | LinkageError | SecurityException e) {
+            return false;
+        }
+    }
+
+    @FunctionalInterface
+    public interface StageRecorder {
+
+        void end(int fileCount, long byteCount);
+
+    }
+
+    @FunctionalInterface
+    public interface ProcessRecorder {
+
+        void end(int exitValue, long outputBytes);
+
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the wall time together with the number and size of the files written by each stage of a bundle run, so
+ * that slow builds can be attributed to the stage causing them.
+ */
+
+public class BuildMetrics {
+
+    private long startNanos = System.nanoTime();
+    private List<Stage> stages = new CopyOnWriteArrayList<>();
+    private String stagePrefix = "";
+
+    /**
+     * @return metrics recording into the same list of stages, adding the prefix to the names of all stages started
+     *     through them, so that the stages of multiple bundles created concurrently can be told apart
+     */
+    public BuildMetrics withStagePrefix(String prefix) {
+        BuildMetrics prefixedMetrics = new BuildMetrics();
+        prefixedMetrics.startNanos = this.startNanos;
+        prefixedMetrics.stages = this.stages;
+        prefixedMetrics.stagePrefix = this.stagePrefix + prefix;
+        return prefixedMetrics;
+    }
+
+    public Stage startStage(String name, File target) {
+        Stage stage = new Stage(this.stagePrefix + name, target == null ? null : target.getName());
+        this.stages.add(stage);
+        return stage;
+    }
+
+    /**
+     * Runs the action as a stage with the given name. The stage is finished even if the action fails, so that the
+     * metrics of a failed build still show how far the build got. If the Flight Recorder is available, the stage is
+     * also reported as event to any running recording.
+     *
+     * @param target the app or file created by the stage
+     */
+    public <E extends Exception> void runStage(String name, File target, StageAction<E> action) throws E {
+        Stage stage = this.startStage(name, target);
+        BuildEvents.StageRecorder stageRecorder = BuildEvents.beginStage(stage.getName(), stage.getTarget());
+        try {
+            action.run(stage);
+        } finally {
+            stage.finish();
+            stageRecorder.end(stage.getFileCount(), stage.getByteCount());
+        }
+    }
+
+    public void writeJson(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("{\n");
+            writer.write("  \"totalMillis\": " + this.getTotalMillis() + ",\n");
+            writer.write("  \"stages\": [");
+            for (int i = 0; i < this.stages.size(); i++) {
+                Stage stage = this.stages.get(i);
+                writer.write(i == 0 ? "\n" : ",\n");
+                writer.write("    { \"name\": \"" + BuildMetrics.escapeJson(stage.getName()) + "\", \"millis\": " + stage.getMillis() + ", \"files\": " + stage.getFileCount() + ", \"bytes\": " + stage.getByteCount() + " }");
+            }
+            writer.write(this.stages.isEmpty() ? "]\n" : "\n  ]\n");
+            writer.write("}\n");
+        }
+    }
+
+    private static String escapeJson(String value) {
+        StringBuilder result = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int)c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return the lines of a table listing all stages, to be written into the build log
+     */
+    public List<String> createSummary() {
+        int nameWidth = Math.max(5, this.stages.stream().mapToInt(stage -> stage.getName().length()).max().orElse(0));
+        String lineFormat = "%-" + nameWidth + "s %10s %8s %12s";
+        List<String> summaryLines = new ArrayList<>();
+        summaryLines.add(String.format(lineFormat, "Stage", "Time (ms)", "Files", "Bytes"));
+        for (Stage stage : this.stages) {
+            summaryLines.add(String.format(lineFormat, stage.getName(), stage.getMillis(), stage.getFileCount(), stage.getByteCount()));
+        }
+        summaryLines.add(String.format(lineFormat, "Total", this.getTotalMillis(), this.stages.stream().mapToInt(Stage::getFileCount).sum(), this.stages.stream().mapToLong(Stage::getByteCount).sum()));
+        return summaryLines;
+    }
+
+    /**
+     * @return the wall time since the metrics have been created, which can be less than the sum of all stages if stages
+     *     have been running concurrently
+     */
+    private long getTotalMillis() {
+        return (System.nanoTime() - this.startNanos) / 1_000_000;
+    }
+
+    public List<Stage> getStages() {
+        return this.stages;
+    }
+
+    @FunctionalInterface
+    public interface StageAction<E extends Exception> {
+
+        void run(Stage stage) throws E;
+
+    }
+
+    public static class Stage {
+
+        private String name = null;
+        private String target = null;
+        private long startNanos = System.nanoTime();
+        private long durationNanos = -1;
+        private AtomicInteger fileCount = new AtomicInteger();
+        private AtomicLong byteCount = new AtomicLong();
+
+        Stage(String name, String target) {
+            this.name = name;
+            this.target = target;
+        }
+
+        public void addFiles(int fileCount, long byteCount) {
+            this.fileCount.addAndGet(fileCount);
+            this.byteCount.addAndGet(byteCount);
+        }
+
+        public void finish() {
+            if (this.durationNanos < 0) {
+                this.durationNanos = System.nanoTime() - this.startNanos;
+            }
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getTarget() {
+            return this.target;
+        }
+
+        public long getMillis() {
+            return (this.durationNanos < 0 ? System.nanoTime() - this.startNanos : this.durationNanos) / 1_000_000;
+        }
+
+        public int getFileCount() {
+            return this.fileCount.get();
+        }
+
+        public long getByteCount() {
+            return this.byteCount.get();
+        }
+
+    }
+
+}
@@ -0,0 +1,359 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Keeps track of all files that have been copied into the app directory, so that a subsequent build only needs to
+ * copy the entries whose source has changed and can remove the entries that are no longer part of the bundle.
+ */
+
+public class BundleManifest {
+
+    private static final String HEADER = "# macosappbundler manifest v1";
+    private static final String CONFIGURATION_PREFIX = "# configuration: ";
+    private static final String UNKNOWN_HASH = "-";
+
+    private Path appDirectory = null;
+    private Path manifestFile = null;
+    private Map<String, Entry> previousEntries = null;
+    private String previousConfiguration = "";
+    private String configuration = "";
+    private Map<String, Entry> currentEntries = new ConcurrentHashMap<>();
+    private AtomicInteger copiedCount = new AtomicInteger();
+    private AtomicLong copiedSize = new AtomicLong();
+    private AtomicInteger skippedCount = new AtomicInteger();
+    private AtomicInteger removedCount = new AtomicInteger();
+    private IO.FileCopier fileCopier = (sourceFile, targetFile) -> Files.copy(sourceFile, targetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+
+    private BundleManifest(Path appDirectory, Path manifestFile, Map<String, Entry> previousEntries, String previousConfiguration) {
+        this.setAppDirectory(appDirectory);
+        this.setManifestFile(manifestFile);
+        this.setPreviousEntries(previousEntries);
+        this.setPreviousConfiguration(previousConfiguration);
+    }
+
+    /**
+     * Creates a new manifest that doesn't know about any previously copied files, so every file will be copied.
+     */
+    public static BundleManifest create(Path appDirectory, Path manifestFile) {
+        return new BundleManifest(appDirectory, manifestFile, Collections.emptyMap(), "");
+    }
+
+    /**
+     * Loads the manifest written by a previous build. If no such manifest exists an empty manifest is returned.
+     */
+    public static BundleManifest load(Path appDirectory, Path manifestFile) throws IOException {
+        Map<String, Entry> previousEntries = new TreeMap<>();
+        String previousConfiguration = "";
+        if (Files.exists(manifestFile)) {
+            try (BufferedReader manifestReader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+                for (String line = manifestReader.readLine(); line != null; line = manifestReader.readLine()) {
+                    if (line.startsWith(CONFIGURATION_PREFIX)) {
+                        previousConfiguration = line.substring(CONFIGURATION_PREFIX.length());
+                    } else if (!line.isEmpty() && !line.startsWith("#")) {
+                        String[] lineValues = line.split("\t");
+                        if (lineValues.length == 5) {
+                            previousEntries.put(lineValues[0], new Entry(lineValues[1], Long.parseLong(lineValues[2]), Long.parseLong(lineValues[3]), lineValues[4]));
+                        }
+                    }
+                }
+            }
+        }
+        return new BundleManifest(appDirectory, manifestFile, previousEntries, previousConfiguration);
+    }
+
+    /**
+     * Copies the source file to the target file, unless the manifest shows that the target has already been created
+     * from exactly the same source content.
+     *
+     * @return {@code true} if the file has been copied, {@code false} if the existing target has been kept
+     */
+    public boolean copyFile(Path sourceFile, Path targetFile) throws IOException {
+        return this.copyFile(sourceFile, targetFile, this.getFileCopier());
+    }
+
+    /**
+     * Copies the source file to the target file using the given file copier instead of the default file copier of the
+     * manifest, unless the manifest shows that the target has already been created from exactly the same source content.
+     * The content of the source is only hashed if its size is unchanged but its modification time differs, so that
+     * copying (or linking) a file doesn't require reading it once more.
+     *
+     * @return {@code true} if the file has been copied, {@code false} if the existing target has been kept
+     */
+    public boolean copyFile(Path sourceFile, Path targetFile, IO.FileCopier fileCopier) throws IOException {
+        String targetKey = this.toKey(targetFile);
+        String sourceValue = sourceFile.toAbsolutePath().toString();
+        long sourceSize = Files.size(sourceFile);
+        long sourceModified = Files.getLastModifiedTime(sourceFile).toMillis();
+        String sourceHash = UNKNOWN_HASH;
+        Entry previousEntry = this.getPreviousEntry(targetKey);
+        if (previousEntry != null && previousEntry.getSource().equals(sourceValue) && previousEntry.getSize() == sourceSize && Files.exists(targetFile)) {
+            if (previousEntry.getModified() == sourceModified) {
+                this.getCurrentEntries().put(targetKey, previousEntry);
+                this.skippedCount.incrementAndGet();
+                return false;
+            }
+
+            // Only the modification time has changed (e.g. because the artifact has been built again), so the content
+            // decides. The target is never hashed, as it may differ from the source (e.g. after slimming).
+            sourceHash = IO.computeHash(sourceFile);
+            if (sourceHash.equals(previousEntry.getHash())) {
+                this.getCurrentEntries().put(targetKey, new Entry(sourceValue, sourceSize, sourceModified, sourceHash));
+                this.skippedCount.incrementAndGet();
+                return false;
+            }
+        }
+        fileCopier.copy(sourceFile, targetFile);
+        this.getCurrentEntries().put(targetKey, new Entry(sourceValue, sourceSize, sourceModified, sourceHash));
+        this.copiedCount.incrementAndGet();
+        this.copiedSize.addAndGet(Files.size(targetFile));
+        return true;
+    }
+
+    /**
+     * Recreates the symbolic link at the target location, unless the manifest shows that the target link has already
+     * been created pointing to the same location.
+     *
+     * @return {@code true} if the link has been created, {@code false} if the existing target link has been kept
+     */
+    public boolean copySymbolicLink(Path sourceLink, Path targetLink) throws IOException {
+        String targetKey = this.toKey(targetLink);
+        String sourceValue = sourceLink.toAbsolutePath().toString();
+        String linkValue = "link:" + Files.readSymbolicLink(sourceLink);
+        Entry previousEntry = this.getPreviousEntry(targetKey);
+        Entry currentEntry = new Entry(sourceValue, 0, 0, linkValue);
+        if (previousEntry != null && previousEntry.getSource().equals(sourceValue) && previousEntry.getHash().equals(linkValue) && Files.isSymbolicLink(targetLink)) {
+            this.getCurrentEntries().put(targetKey, currentEntry);
+            this.skippedCount.incrementAndGet();
+            return false;
+        } else {
+            Files.deleteIfExists(targetLink);
+            Files.createSymbolicLink(targetLink, Files.readSymbolicLink(sourceLink));
+            this.getCurrentEntries().put(targetKey, currentEntry);
+            this.copiedCount.incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Writes the content to the target file, unless the manifest shows that the target has already been created from
+     * exactly the same content.
+     *
+     * @return {@code true} if the file has been written, {@code false} if the existing target has been kept
+     */
+    public boolean copyContent(String sourceValue, byte[] sourceContent, Path targetFile) throws IOException {
+        String targetKey = this.toKey(targetFile);
+        String sourceHash = IO.computeHash(sourceContent);
+        Entry previousEntry = this.getPreviousEntry(targetKey);
+        Entry currentEntry = new Entry(sourceValue, sourceContent.length, 0, sourceHash);
+        if (previousEntry != null && previousEntry.getSource().equals(sourceValue) && previousEntry.getHash().equals(sourceHash) && Files.exists(targetFile)) {
+            this.getCurrentEntries().put(targetKey, currentEntry);
+            this.skippedCount.incrementAndGet();
+            return false;
+        } else {
+            // The target may still be a link to a file of the source app created by a previous build
+            Files.deleteIfExists(targetFile);
+            Files.write(targetFile, sourceContent);
+            this.getCurrentEntries().put(targetKey, currentEntry);
+            this.copiedCount.incrementAndGet();
+            this.copiedSize.addAndGet(sourceContent.length);
+            return true;
+        }
+    }
+
+    /**
+     * Removes all files that have been recorded during the previous build but haven't been part of the current build.
+     * Directories that become empty after removing these files are removed as well.
+     */
+    public void removeStaleFiles() throws IOException {
+        for (String previousKey : this.getPreviousEntries().keySet()) {
+            if (!this.getCurrentEntries().containsKey(previousKey)) {
+                Path staleFile = this.getAppDirectory().resolve(previousKey);
+                if (Files.deleteIfExists(staleFile)) {
+                    this.removedCount.incrementAndGet();
+                    this.removeEmptyParentDirectories(staleFile.getParent());
+                }
+            }
+        }
+    }
+
+    private void removeEmptyParentDirectories(Path directory) throws IOException {
+        for (Path currentDirectory = directory; currentDirectory != null && currentDirectory.startsWith(this.getAppDirectory()) && !currentDirectory.equals(this.getAppDirectory()); currentDirectory = currentDirectory.getParent()) {
+            try (Stream<Path> directoryEntries = Files.list(currentDirectory)) {
+                if (directoryEntries.findAny().isPresent()) {
+                    return;
+                }
+            }
+            Files.delete(currentDirectory);
+        }
+    }
+
+    public void save() throws IOException {
+        List<String> manifestLines = new ArrayList<>();
+        manifestLines.add(HEADER);
+        if (!this.getConfiguration().isEmpty()) {
+            manifestLines.add(CONFIGURATION_PREFIX + this.getConfiguration());
+        }
+        for (Map.Entry<String, Entry> currentEntry : new TreeMap<>(this.getCurrentEntries()).entrySet()) {
+            Entry entry = currentEntry.getValue();
+            manifestLines.add(currentEntry.getKey() + "\t" + entry.getSource() + "\t" + entry.getSize() + "\t" + entry.getModified() + "\t" + entry.getHash());
+        }
+        Files.createDirectories(this.getManifestFile().getParent());
+        try (BufferedWriter manifestWriter = Files.newBufferedWriter(this.getManifestFile(), StandardCharsets.UTF_8)) {
+            for (String manifestLine : manifestLines) {
+                manifestWriter.write(manifestLine);
+                manifestWriter.write("\n");
+            }
+        }
+    }
+
+    /**
+     * @return the entry recorded during the previous build, unless the previous build used another configuration, in
+     *     which case the existing files cannot be reused
+     */
+    private Entry getPreviousEntry(String targetKey) {
+        if (this.getPreviousConfiguration().equals(this.getConfiguration())) {
+            return this.getPreviousEntries().get(targetKey);
+        } else {
+            return null;
+        }
+    }
+
+    private String toKey(Path targetFile) {
+        return this.getAppDirectory().relativize(targetFile.toAbsolutePath()).toString().replace('\\', '/');
+    }
+
+    static class Entry {
+
+        private String source = null;
+        private long size = 0;
+        private long modified = 0;
+        private String hash = null;
+
+        Entry(String source, long size, long modified, String hash) {
+            this.source = source;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        String getSource() {
+            return this.source;
+        }
+
+        long getSize() {
+            return this.size;
+        }
+
+        long getModified() {
+            return this.modified;
+        }
+
+        String getHash() {
+            return this.hash;
+        }
+
+    }
+
+    public int getCopiedCount() {
+        return this.copiedCount.get();
+    }
+
+    /**
+     * @return the total size of all files that have been copied
+     */
+    public long getCopiedSize() {
+        return this.copiedSize.get();
+    }
+
+    public int getSkippedCount() {
+        return this.skippedCount.get();
+    }
+
+    public int getRemovedCount() {
+        return this.removedCount.get();
+    }
+
+    public IO.FileCopier getFileCopier() {
+        return this.fileCopier;
+    }
+    public void setFileCopier(IO.FileCopier fileCopier) {
+        this.fileCopier = fileCopier;
+    }
+
+    private String getConfiguration() {
+        return this.configuration;
+    }
+
+    /**
+     * Sets a value describing all settings that influence the content of the copied files (apart from the source files
+     * themselves). If the value differs from the one used during the previous build all files are copied again.
+     */
+    public void setConfiguration(String configuration) {
+        this.configuration = configuration == null ? "" : configuration;
+    }
+
+    private String getPreviousConfiguration() {
+        return this.previousConfiguration;
+    }
+    private void setPreviousConfiguration(String previousConfiguration) {
+        this.previousConfiguration = previousConfiguration;
+    }
+
+    private Path getAppDirectory() {
+        return this.appDirectory;
+    }
+    private void setAppDirectory(Path appDirectory) {
+        this.appDirectory = appDirectory.toAbsolutePath();
+    }
+
+    private Path getManifestFile() {
+        return this.manifestFile;
+    }
+    private void setManifestFile(Path manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    private Map<String, Entry> getPreviousEntries() {
+        return this.previousEntries;
+    }
+    private void setPreviousEntries(Map<String, Entry> previousEntries) {
+        this.previousEntries = previousEntries;
+    }
+
+    private Map<String, Entry> getCurrentEntries() {
+        return this.currentEntries;
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Directory based cache that is shared between builds on the same machine. Each entry is a directory identified by a
+ * key. Access to an entry is guarded by a lock inside the current JVM (for parallel builds using {@code -T}) as well as
+ * by a file lock (for builds running in different processes). Entries that haven't been used for the longest time are
+ * removed as soon as the total size of the cache exceeds the configured maximum size.
+ */
+
+public class FileCache {
+
+    private static final String EVICTION_KEY = "eviction";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final String SIZE_SUFFIX = ".size";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final Map<Path, ReentrantLock> JVM_LOCKS = new ConcurrentHashMap<>();
+
+    private Path cacheDirectory = null;
+    private long maximumSize = Long.MAX_VALUE;
+    private Log log = null;
+
+    public FileCache(Path cacheDirectory, long maximumSize, Log log) {
+        this.setCacheDirectory(cacheDirectory);
+        this.setMaximumSize(maximumSize);
+        this.setLog(log);
+    }
+
+    /**
+     * Passes the entry with the given key to the consumer. If the entry doesn't exist yet, it is created first by
+     * passing a (not yet existing) temporary directory to the creator, which is moved to the final location once the
+     * creator has completed successfully. No other build can access or remove the entry while the consumer is running.
+     */
+    public <T> T use(String key, EntryCreator entryCreator, EntryConsumer<T> entryConsumer) throws IOException {
+        Files.createDirectories(this.getCacheDirectory());
+        Path entryDirectory = this.getCacheDirectory().resolve(key);
+        T result = null;
+        try (EntryLock entryLock = this.lock(key, true)) {
+            if (!Files.isDirectory(entryDirectory)) {
+                Path temporaryDirectory = this.getCacheDirectory().resolve(key + TEMPORARY_SUFFIX);
+                FileUtils.deleteDirectory(temporaryDirectory.toFile());
+                this.getLog().debug("Creating cache entry at: " + entryDirectory);
+                entryCreator.create(temporaryDirectory);
+                Files.write(this.getCacheDirectory().resolve(key + SIZE_SUFFIX), String.valueOf(FileUtils.sizeOfDirectory(temporaryDirectory.toFile())).getBytes(StandardCharsets.UTF_8));
+                Files.move(temporaryDirectory, entryDirectory, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                this.getLog().debug("Using existing cache entry at: " + entryDirectory);
+            }
+            Files.setLastModifiedTime(entryDirectory, FileTime.fromMillis(System.currentTimeMillis()));
+            result = entryConsumer.consume(entryDirectory);
+        }
+        this.evict(key);
+        return result;
+    }
+
+    /**
+     * Removes the least recently used entries until the total size of the cache is below the maximum size. Entries that
+     * are currently in use by another build are skipped.
+     */
+    public void evict() throws IOException {
+        this.evict(null);
+    }
+
+    /**
+     * Removes the least recently used entries but always keeps the entry with the given key, even if that entry alone
+     * exceeds the maximum size of the cache.
+     */
+    private void evict(String retainedKey) throws IOException {
+        try (EntryLock evictionLock = this.lock(EVICTION_KEY, false)) {
+            if (evictionLock != null) {
+                List<Path> entryDirectories = null;
+                try (Stream<Path> cacheFiles = Files.list(this.getCacheDirectory())) {
+                    entryDirectories = cacheFiles.filter(Files::isDirectory).filter(file -> !file.getFileName().toString().endsWith(TEMPORARY_SUFFIX)).collect(Collectors.toList());
+                }
+                Map<Path, Long> entrySizes = new HashMap<>();
+                Map<Path, FileTime> entryModificationTimes = new HashMap<>();
+                long totalSize = 0;
+                for (Path entryDirectory : entryDirectories) {
+                    long entrySize = this.readEntrySize(entryDirectory);
+                    entrySizes.put(entryDirectory, entrySize);
+                    entryModificationTimes.put(entryDirectory, Files.getLastModifiedTime(entryDirectory));
+                    totalSize += entrySize;
+                }
+                List<Path> evictionCandidates = new ArrayList<>(entryDirectories);
+                evictionCandidates.sort(Comparator.comparing(entryModificationTimes::get));
+                for (Path evictionCandidate : evictionCandidates) {
+                    if (totalSize <= this.getMaximumSize()) {
+                        return;
+                    }
+                    String key = evictionCandidate.getFileName().toString();
+                    if (key.equals(retainedKey)) {
+                        continue;
+                    }
+                    try (EntryLock entryLock = this.lock(key, false)) {
+                        if (entryLock != null) {
+                            this.getLog().debug("Removing least recently used cache entry at: " + evictionCandidate);
+                            FileUtils.deleteDirectory(evictionCandidate.toFile());
+                            Files.deleteIfExists(this.getCacheDirectory().resolve(key + SIZE_SUFFIX));
+                            totalSize -= entrySizes.get(evictionCandidate);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private long readEntrySize(Path entryDirectory) throws IOException {
+        Path sizeFile = this.getCacheDirectory().resolve(entryDirectory.getFileName() + SIZE_SUFFIX);
+        if (Files.exists(sizeFile)) {
+            try {
+                return Long.parseLong(new String(Files.readAllBytes(sizeFile), StandardCharsets.UTF_8).trim());
+            } catch (NumberFormatException e) {
+                this.getLog().debug("Invalid size file at: " + sizeFile, e);
+            }
+        }
+        return FileUtils.sizeOfDirectory(entryDirectory.toFile());
+    }
+
+    /**
+     * Acquires the lock for the given key, both inside the current JVM as well as on the filesystem.
+     *
+     * @param wait whether to wait until the lock becomes available
+     * @return the lock or {@code null} if the lock is not available and {@code wait} has been set to {@code false}
+     */
+    private EntryLock lock(String key, boolean wait) throws IOException {
+        Path lockFile = this.getCacheDirectory().resolve(key + LOCK_SUFFIX).toAbsolutePath();
+        ReentrantLock jvmLock = JVM_LOCKS.computeIfAbsent(lockFile, path -> new ReentrantLock());
+        if (wait) {
+            jvmLock.lock();
+        } else if (!jvmLock.tryLock()) {
+            return null;
+        }
+        try {
+            FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock fileLock = wait ? lockChannel.lock() : lockChannel.tryLock();
+            if (fileLock == null) {
+                lockChannel.close();
+                jvmLock.unlock();
+                return null;
+            } else {
+                return new EntryLock(jvmLock, lockChannel);
+            }
+        } catch (IOException | RuntimeException e) {
+            jvmLock.unlock();
+            throw e;
+        }
+    }
+
+    static class EntryLock implements AutoCloseable {
+
+        private ReentrantLock jvmLock = null;
+        private FileChannel lockChannel = null;
+
+        EntryLock(ReentrantLock jvmLock, FileChannel lockChannel) {
+            this.jvmLock = jvmLock;
+            this.lockChannel = lockChannel;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.lockChannel.close();
+            } finally {
+                this.jvmLock.unlock();
+            }
+        }
+
+    }
+
+    @FunctionalInterface
+    public interface EntryCreator {
+
+        void create(Path entryDirectory) throws IOException;
+
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer<T> {
+
+        T consume(Path entryDirectory) throws IOException;
+
+    }
+
+    private Path getCacheDirectory() {
+        return this.cacheDirectory;
+    }
+    private void setCacheDirectory(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    private long getMaximumSize() {
+        return this.maximumSize;
+    }
+    private void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    private Log getLog() {
+        return this.log;
+    }
+    private void setLog(Log log) {
+        this.log = log;
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.shared.utils.cli.CommandLineException;
+import org.apache.maven.shared.utils.cli.CommandLineUtils;
+import org.apache.maven.shared.utils.cli.Commandline;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.model.LinkStrategy;
+
+/**
+ * Transfers a file into the bundle by either copying it, creating a hard link or creating a copy-on-write clone,
+ * depending on the selected {@link LinkStrategy}. Whenever a link or clone cannot be created (e.g. because source and
+ * target are located on different filesystems) the file is copied instead.
+ */
+
+public class FileTransfer {
+
+    /**
+     * Cloning is done by an external process, which is more expensive than simply copying a small file
+     */
+    private static final long REFLINK_MINIMUM_SIZE = 256 * 1024;
+
+    private LinkStrategy linkStrategy = LinkStrategy.COPY;
+    private Log log = null;
+    private Map<String, Boolean> sameFileStoreCache = new ConcurrentHashMap<>();
+    private Map<FileStore, Boolean> reflinkSupportCache = new ConcurrentHashMap<>();
+    private Map<FileStore, Boolean> hardlinkSupportCache = new ConcurrentHashMap<>();
+
+    public FileTransfer(LinkStrategy linkStrategy, Log log) {
+        this.setLinkStrategy(linkStrategy == null ? LinkStrategy.COPY : linkStrategy);
+        this.setLog(log);
+    }
+
+    public void transfer(Path sourceFile, Path targetFile) throws IOException {
+        LinkStrategy linkStrategy = this.getLinkStrategy();
+        if (linkStrategy != LinkStrategy.COPY && !Files.isSymbolicLink(sourceFile) && this.isSameFileStore(sourceFile, targetFile)) {
+            FileStore fileStore = Files.getFileStore(targetFile.getParent());
+            if ((linkStrategy == LinkStrategy.REFLINK || linkStrategy == LinkStrategy.AUTO) && this.transferReflink(sourceFile, targetFile, fileStore)) {
+                return;
+            } else if ((linkStrategy == LinkStrategy.HARDLINK || linkStrategy == LinkStrategy.AUTO) && this.transferHardlink(sourceFile, targetFile, fileStore)) {
+                return;
+            }
+        }
+        Files.copy(sourceFile, targetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+
+    private boolean transferHardlink(Path sourceFile, Path targetFile, FileStore fileStore) throws IOException {
+        if (Boolean.FALSE.equals(this.getHardlinkSupportCache().get(fileStore))) {
+            return false;
+        } else {
+            try {
+                Files.deleteIfExists(targetFile);
+                this.createHardlink(sourceFile, targetFile);
+                return true;
+            } catch (IOException | UnsupportedOperationException e) {
+                this.getLog().debug("Cannot create hard link at '" + targetFile + "', falling back to copy for filesystem: " + fileStore, e);
+                this.getHardlinkSupportCache().put(fileStore, Boolean.FALSE);
+                return false;
+            }
+        }
+    }
+
+    void createHardlink(Path sourceFile, Path targetFile) throws IOException {
+        Files.createLink(targetFile, sourceFile);
+    }
+
+    private boolean transferReflink(Path sourceFile, Path targetFile, FileStore fileStore) throws IOException {
+        if (Files.size(sourceFile) < REFLINK_MINIMUM_SIZE || Boolean.FALSE.equals(this.getReflinkSupportCache().get(fileStore))) {
+            return false;
+        } else {
+            Files.deleteIfExists(targetFile);
+            if (this.createReflink(sourceFile, targetFile, fileStore)) {
+                return true;
+            } else {
+                this.getReflinkSupportCache().put(fileStore, Boolean.FALSE);
+                Files.deleteIfExists(targetFile);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the clone has been created, {@code false} if the filesystem or the operating system
+     *     doesn't support cloning files
+     */
+    boolean createReflink(Path sourceFile, Path targetFile, FileStore fileStore) throws IOException {
+        Commandline cloneCommandLine = new Commandline();
+        cloneCommandLine.setExecutable("cp");
+        if (SystemUtils.IS_OS_MAC) {
+            cloneCommandLine.createArg().setValue("-c");
+            cloneCommandLine.createArg().setValue("-p");
+        } else if (SystemUtils.IS_OS_LINUX) {
+            cloneCommandLine.createArg().setValue("--reflink=always");
+            cloneCommandLine.createArg().setValue("--preserve=mode,timestamps");
+        } else {
+            return false;
+        }
+        cloneCommandLine.createArg().setFile(sourceFile.toFile());
+        cloneCommandLine.createArg().setFile(targetFile.toFile());
+        try {
+            CommandLineUtils.StringStreamConsumer errorConsumer = new CommandLineUtils.StringStreamConsumer();
+            int cloneReturnValue = CommandLineUtils.executeCommandLine(cloneCommandLine, new CommandLineUtils.StringStreamConsumer(), errorConsumer);
+            if (cloneReturnValue == 0) {
+                return true;
+            } else {
+                this.getLog().debug("Cannot clone file to '" + targetFile + "', falling back for filesystem '" + fileStore + "': " + errorConsumer.getOutput().trim());
+                return false;
+            }
+        } catch (CommandLineException e) {
+            this.getLog().debug("Cannot execute clone command, falling back for filesystem: " + fileStore, e);
+            return false;
+        }
+    }
+
+    private boolean isSameFileStore(Path sourceFile, Path targetFile) throws IOException {
+        Path sourceDirectory = sourceFile.toAbsolutePath().getParent();
+        Path targetDirectory = targetFile.toAbsolutePath().getParent();
+        String cacheKey = sourceDirectory + "\n" + targetDirectory;
+        Boolean sameFileStore = this.getSameFileStoreCache().get(cacheKey);
+        if (sameFileStore == null) {
+            sameFileStore = Files.getFileStore(sourceDirectory).equals(Files.getFileStore(targetDirectory));
+            this.getSameFileStoreCache().put(cacheKey, sameFileStore);
+        }
+        return sameFileStore.booleanValue();
+    }
+
+    public LinkStrategy getLinkStrategy() {
+        return this.linkStrategy;
+    }
+    private void setLinkStrategy(LinkStrategy linkStrategy) {
+        this.linkStrategy = linkStrategy;
+    }
+
+    private Log getLog() {
+        return this.log;
+    }
+    private void setLog(Log log) {
+        this.log = log;
+    }
+
+    private Map<String, Boolean> getSameFileStoreCache() {
+        return this.sameFileStoreCache;
+    }
+
+    private Map<FileStore, Boolean> getReflinkSupportCache() {
+        return this.reflinkSupportCache;
+    }
+
+    private Map<FileStore, Boolean> getHardlinkSupportCache() {
+        return this.hardlinkSupportCache;
+    }
+
+}
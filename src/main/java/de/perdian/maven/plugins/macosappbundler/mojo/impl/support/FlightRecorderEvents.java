@@ -0,0 +1,123 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Flight Recorder events created by {@link BuildEvents}. This is the only class referencing the {@code jdk.jfr}
+ * module.
+ */
+
+class FlightRecorderEvents {
+
+    static boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    static BuildEvents.StageRecorder beginStage(String stageName, String target) {
+        StageEvent stageEvent = new StageEvent();
+        if (!stageEvent.isEnabled()) {
+            return (fileCount, byteCount) -> {};
+        } else {
+            stageEvent.stage = stageName;
+            stageEvent.target = target;
+            stageEvent.begin();
+            return (fileCount, byteCount) -> {
+                stageEvent.end();
+                if (stageEvent.shouldCommit()) {
+                    stageEvent.fileCount = fileCount;
+                    stageEvent.byteCount = byteCount;
+                    stageEvent.commit();
+                }
+            };
+        }
+    }
+
+    static BuildEvents.ProcessRecorder beginProcess(String executable, String arguments) {
+        ProcessEvent processEvent = new ProcessEvent();
+        if (!processEvent.isEnabled()) {
+            return (exitValue, outputBytes) -> {};
+        } else {
+            processEvent.executable = executable;
+            processEvent.arguments = arguments;
+            processEvent.begin();
+            return (exitValue, outputBytes) -> {
+                processEvent.end();
+                if (processEvent.shouldCommit()) {
+                    processEvent.exitValue = exitValue;
+                    processEvent.outputBytes = outputBytes;
+                    processEvent.commit();
+                }
+            };
+        }
+    }
+
+    @Name("de.perdian.macosappbundler.Stage")
+    @Label("Bundle Stage")
+    @Category({ "Maven", "macOS App Bundler" })
+    @Description("A stage of creating the app bundle or DMG archive")
+    static class StageEvent extends Event {
+
+        @Label("Stage")
+        String stage = null;
+
+        @Label("Target")
+        @Description("The app or file created by the stage")
+        String target = null;
+
+        @Label("Files")
+        @Description("The number of files written by the stage")
+        int fileCount = 0;
+
+        @Label("Bytes")
+        @Description("The size of all files written by the stage")
+        @DataAmount
+        long byteCount = 0;
+
+    }
+
+    @Name("de.perdian.macosappbundler.Process")
+    @Label("External Process")
+    @Category({ "Maven", "macOS App Bundler" })
+    @Description("An external process started while creating the app bundle, like codesign or jlink")
+    static class ProcessEvent extends Event {
+
+        @Label("Executable")
+        String executable = null;
+
+        @Label("Arguments")
+        @Description("The arguments passed to the executable, including the file the process operates on")
+        String arguments = null;
+
+        @Label("Exit Value")
+        int exitValue = 0;
+
+        @Label("Output Bytes")
+        @Description("The size of the output written by the process")
+        @DataAmount
+        long outputBytes = 0;
+
+    }
+
+}
@@ -1,11 +1,39 @@
 package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.shared.model.fileset.FileSet;
@@ -14,7 +42,20 @@ import org.apache.maven.shared.model.fileset.util.FileSetManager;
 
 public class IO {
 
-    public static void copyFileSets(File baseDirectory, Collection<FileSet> fileSets) throws IOException, MapperException {
+    private static final Set<PosixFilePermission> EXECUTABLE_PERMISSIONS = PosixFilePermissions.fromString("rwxr-xr-x");
+    private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
+    private static final String COPY_RECORD_HEADER = "# macosappbundler copied files v2";
+    private static final String COPY_RECORD_CONFIGURATION_PREFIX = "# configuration: ";
+    private static final int COPY_BATCHES_PER_THREAD = 4;
+
+    /**
+     * Copies all files included by the file sets into the base directory using the given number of threads. If a record
+     * file is given, the copy is incremental: targets whose source has the same path, size and modification time as
+     * recorded by the previous copy (using the same configuration) are kept, and files recorded by the previous copy
+     * whose source is no longer included are removed. Without a record file all files are copied.
+     */
+    public static CopyResult copyFileSets(File baseDirectory, Collection<FileSet> fileSets, int threads, Path recordFile, String configuration) throws IOException, MapperException {
+        Map<Path, Path> sourceFilesByTargetFile = new TreeMap<>();
         FileSetManager fileSetManager = new FileSetManager();
         for (FileSet fileSet : fileSets) {
 
@@ -25,15 +66,287 @@ public class IO {
             }
 
             File outputDirectory = IO.resolveTargetDirectory(baseDirectory, fileSet);
-            for (Map.Entry<String, String> mappedFile : mappedFiles.entrySet()){
-                File sourceFile = new File(fileSetDirectory, mappedFile.getKey());
-                File targetFile = new File(outputDirectory, mappedFile.getKey());
-                if (!targetFile.getParentFile().exists()) {
-                    targetFile.getParentFile().mkdirs();
+            for (String mappedFile : mappedFiles.keySet()) {
+                File sourceFile = new File(fileSetDirectory, mappedFile);
+                File targetFile = new File(outputDirectory, mappedFile);
+                sourceFilesByTargetFile.put(targetFile.toPath().toAbsolutePath(), sourceFile.toPath().toAbsolutePath());
+            }
+
+        }
+
+        Path basePath = baseDirectory.toPath().toAbsolutePath();
+        Map<String, String> previousRecords = recordFile == null ? Collections.emptyMap() : IO.readCopyRecords(recordFile, configuration);
+        Map<String, String> currentRecords = new TreeMap<>();
+        CopyResult copyResult = new CopyResult();
+        Map<Path, Path> changedSourceFilesByTargetFile = new TreeMap<>();
+        for (Map.Entry<Path, Path> sourceFileByTargetFile : sourceFilesByTargetFile.entrySet()) {
+            Path targetFile = sourceFileByTargetFile.getKey();
+            Path sourceFile = sourceFileByTargetFile.getValue();
+            copyResult.getTargetFiles().add(targetFile.toFile());
+            String recordKey = targetFile.startsWith(basePath) ? basePath.relativize(targetFile).toString() : null;
+            String recordValue = null;
+            if (recordKey != null) {
+                recordValue = sourceFile + "\t" + Files.size(sourceFile) + "\t" + Files.getLastModifiedTime(sourceFile).toMillis();
+                currentRecords.put(recordKey, recordValue);
+            }
+            if (recordValue != null && recordValue.equals(previousRecords.get(recordKey)) && Files.exists(targetFile)) {
+                copyResult.skippedCount++;
+            } else {
+                changedSourceFilesByTargetFile.put(targetFile, sourceFile);
+                copyResult.getCopiedFiles().add(targetFile.toFile());
+            }
+        }
+        IO.copyFiles(changedSourceFilesByTargetFile, threads, (sourceFile, targetFile) -> Files.copy(sourceFile, targetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES));
+
+        if (recordFile != null) {
+            for (String previousKey : previousRecords.keySet()) {
+                if (!currentRecords.containsKey(previousKey)) {
+                    Path staleFile = basePath.resolve(previousKey).normalize();
+                    if (staleFile.startsWith(basePath) && Files.deleteIfExists(staleFile)) {
+                        copyResult.removedCount++;
+                        IO.removeEmptyParentDirectories(staleFile.getParent(), basePath);
+                    }
+                }
+            }
+            List<String> recordLines = new ArrayList<>();
+            recordLines.add(COPY_RECORD_HEADER);
+            if (StringUtils.isNotEmpty(configuration)) {
+                recordLines.add(COPY_RECORD_CONFIGURATION_PREFIX + configuration);
+            }
+            currentRecords.forEach((recordKey, recordValue) -> recordLines.add(recordKey + "\t" + recordValue));
+            Files.createDirectories(recordFile.toAbsolutePath().getParent());
+            Files.write(recordFile, recordLines, StandardCharsets.UTF_8);
+        }
+        return copyResult;
+    }
+
+    /**
+     * @return the recorded sources (path, size and modification time) by target file. If the previous copy used another
+     *     configuration, all targets are returned without a source, so that they are copied again.
+     */
+    private static Map<String, String> readCopyRecords(Path recordFile, String configuration) throws IOException {
+        Map<String, String> copyRecords = new TreeMap<>();
+        String previousConfiguration = "";
+        if (Files.exists(recordFile)) {
+            for (String recordLine : Files.readAllLines(recordFile, StandardCharsets.UTF_8)) {
+                if (recordLine.startsWith(COPY_RECORD_CONFIGURATION_PREFIX)) {
+                    previousConfiguration = recordLine.substring(COPY_RECORD_CONFIGURATION_PREFIX.length());
+                } else if (!recordLine.isEmpty() && !recordLine.startsWith("#")) {
+                    int separatorIndex = recordLine.indexOf('\t');
+                    if (separatorIndex > 0) {
+                        copyRecords.put(recordLine.substring(0, separatorIndex), recordLine.substring(separatorIndex + 1));
+                    }
+                }
+            }
+        }
+        if (!previousConfiguration.equals(StringUtils.defaultString(configuration))) {
+            copyRecords.replaceAll((recordKey, recordValue) -> "");
+        }
+        return copyRecords;
+    }
+
+    private static void removeEmptyParentDirectories(Path directory, Path baseDirectory) throws IOException {
+        for (Path currentDirectory = directory; currentDirectory != null && currentDirectory.startsWith(baseDirectory) && !currentDirectory.equals(baseDirectory); currentDirectory = currentDirectory.getParent()) {
+            try (Stream<Path> directoryEntries = Files.list(currentDirectory)) {
+                if (directoryEntries.findAny().isPresent()) {
+                    return;
+                }
+            }
+            Files.delete(currentDirectory);
+        }
+    }
+
+    /**
+     * Copies all files (given as map from target file to source file) using the given number of threads. All target
+     * directories are created upfront, so the copy tasks only need to transfer the file content. The files are split
+     * into batches of consecutive files, so that large numbers of small files don't need a separate task per file.
+     * Failures are collected and reported together after all copy tasks have been completed.
+     */
+    public static void copyFiles(Map<Path, Path> sourceFilesByTargetFile, int threads, FileCopier fileCopier) throws IOException {
+        for (Path targetDirectory : new TreeSet<>(sourceFilesByTargetFile.keySet().stream().map(Path::getParent).collect(Collectors.toSet()))) {
+            Files.createDirectories(targetDirectory);
+        }
+        List<Throwable> copyFailures = new ArrayList<>();
+        if (threads <= 1 || sourceFilesByTargetFile.size() <= 1) {
+            IO.copyBatch(new ArrayList<>(sourceFilesByTargetFile.entrySet()), fileCopier, copyFailures);
+        } else {
+            List<Map.Entry<Path, Path>> copyEntries = new ArrayList<>(sourceFilesByTargetFile.entrySet());
+            int batchSize = Math.max(1, copyEntries.size() / (threads * COPY_BATCHES_PER_THREAD));
+            ExecutorService executorService = Executors.newFixedThreadPool(Math.min(threads, copyEntries.size()));
+            try {
+                List<Future<List<Throwable>>> copyFutures = new ArrayList<>();
+                for (int batchStart = 0; batchStart < copyEntries.size(); batchStart += batchSize) {
+                    List<Map.Entry<Path, Path>> copyBatch = copyEntries.subList(batchStart, Math.min(batchStart + batchSize, copyEntries.size()));
+                    copyFutures.add(executorService.submit(() -> {
+                        List<Throwable> batchFailures = new ArrayList<>();
+                        IO.copyBatch(copyBatch, fileCopier, batchFailures);
+                        return batchFailures;
+                    }));
+                }
+                for (Future<List<Throwable>> copyFuture : copyFutures) {
+                    try {
+                        copyFailures.addAll(copyFuture.get());
+                    } catch (ExecutionException e) {
+                        copyFailures.add(e.getCause());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while copying files", e);
+                    }
+                }
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+        if (!copyFailures.isEmpty()) {
+            IOException copyException = new IOException("Cannot copy " + copyFailures.size() + " of " + sourceFilesByTargetFile.size() + " files: " + copyFailures.get(0).getMessage());
+            copyFailures.forEach(copyException::addSuppressed);
+            throw copyException;
+        }
+    }
+
+    private static void copyBatch(List<Map.Entry<Path, Path>> copyBatch, FileCopier fileCopier, List<Throwable> copyFailures) {
+        for (Map.Entry<Path, Path> sourceFileByTargetFile : copyBatch) {
+            try {
+                fileCopier.copy(sourceFileByTargetFile.getValue(), sourceFileByTargetFile.getKey());
+            } catch (IOException | RuntimeException e) {
+                copyFailures.add(e);
+            }
+        }
+    }
+
+    /**
+     * Sets the modification time of all files and directories inside the directory to the given time and normalizes
+     * their permissions to {@code rwxr-xr-x} for directories and executable files and {@code rw-r--r--} for all other
+     * files. Files with more than one hard link are left unchanged, as they are usually shared with the source they
+     * have been linked from and changing them would change the source as well.
+     *
+     * @return the number of files that have been left unchanged because they are hard links
+     */
+    public static int normalizeFiles(Path directory, Instant modificationTime) throws IOException {
+        FileTime normalizedTime = FileTime.from(modificationTime);
+        AtomicInteger linkedCount = new AtomicInteger();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (attributes.isRegularFile()) {
+                    if (IO.isHardLink(file)) {
+                        linkedCount.incrementAndGet();
+                    } else {
+                        IO.normalizeFile(file, IO.isExecutable(file) ? EXECUTABLE_PERMISSIONS : FILE_PERMISSIONS, normalizedTime);
+                    }
                 }
-                Files.copy(sourceFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                return FileVisitResult.CONTINUE;
             }
 
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException exception) throws IOException {
+                if (exception != null) {
+                    throw exception;
+                }
+                IO.normalizeFile(directory, EXECUTABLE_PERMISSIONS, normalizedTime);
+                return FileVisitResult.CONTINUE;
+            }
+
+        });
+        return linkedCount.get();
+    }
+
+    private static void normalizeFile(Path file, Set<PosixFilePermission> permissions, FileTime modificationTime) throws IOException {
+        try {
+            Files.setPosixFilePermissions(file, permissions);
+        } catch (UnsupportedOperationException e) {
+            // Permissions cannot be normalized on file systems without POSIX permissions
+        }
+        Files.setLastModifiedTime(file, modificationTime);
+    }
+
+    private static boolean isHardLink(Path file) throws IOException {
+        try {
+            return ((Number)Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS)).intValue() > 1;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean isExecutable(Path file) throws IOException {
+        try {
+            return Files.getPosixFilePermissions(file, LinkOption.NOFOLLOW_LINKS).contains(PosixFilePermission.OWNER_EXECUTE);
+        } catch (UnsupportedOperationException e) {
+            return Files.isExecutable(file);
+        }
+    }
+
+    @FunctionalInterface
+    public interface FileCopier {
+
+        void copy(Path sourceFile, Path targetFile) throws IOException;
+
+    }
+
+    public static class CopyResult {
+
+        private List<File> targetFiles = new ArrayList<>();
+        private List<File> copiedFiles = new ArrayList<>();
+        private int skippedCount = 0;
+        private int removedCount = 0;
+
+        @Override
+        public String toString() {
+            return "copied: " + this.getCopiedFiles().size() + ", skipped (unchanged): " + this.getSkippedCount() + ", removed (stale): " + this.getRemovedCount();
+        }
+
+        /**
+         * @return all files that are included by the file sets, no matter whether they have been copied or kept
+         */
+        public List<File> getTargetFiles() {
+            return this.targetFiles;
+        }
+
+        /**
+         * @return the files that have actually been copied
+         */
+        public List<File> getCopiedFiles() {
+            return this.copiedFiles;
+        }
+
+        public int getSkippedCount() {
+            return this.skippedCount;
+        }
+
+        public int getRemovedCount() {
+            return this.removedCount;
+        }
+
+    }
+
+    public static String computeHash(Path file) throws IOException {
+        try (InputStream fileStream = Files.newInputStream(file)) {
+            return IO.computeHash(fileStream);
+        }
+    }
+
+    public static String computeHash(byte[] content) throws IOException {
+        return IO.computeHash(new ByteArrayInputStream(content));
+    }
+
+    private static String computeHash(InputStream inputStream) throws IOException {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            try (DigestInputStream digestStream = new DigestInputStream(inputStream, messageDigest)) {
+                byte[] buffer = new byte[65536];
+                while (digestStream.read(buffer) > -1) {
+                    // Continue reading until the complete content has been consumed by the digest
+                }
+            }
+            StringBuilder hashValue = new StringBuilder();
+            for (byte digestByte : messageDigest.digest()) {
+                hashValue.append(Character.forDigit((digestByte >> 4) & 0xF, 16));
+                hashValue.append(Character.forDigit(digestByte & 0xF, 16));
+            }
+            return hashValue.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Cannot compute SHA-256 hash", e);
         }
     }
 
@@ -0,0 +1,770 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Writes an ISO 9660 filesystem image containing a set of directories. The original names, permissions and symbolic
+ * links are stored using the Rock Ridge extensions, so the result matches what {@code genisoimage -D -r} would create
+ * and can be mounted on macOS as well as on Linux.
+ *
+ * The complete directory structure is scanned upfront to compute the location of every directory and file within the
+ * image. The image itself is then written strictly sequentially, so it can be streamed into a consumer (like the
+ * {@link UdifWriter}) without being stored in between.
+ */
+
+public class IsoImageWriter {
+
+    public static final int SECTOR_SIZE = 2048;
+
+    private static final int SYSTEM_AREA_SECTORS = 16;
+    private static final int MAXIMUM_RECORD_LENGTH = 254;
+    private static final int MAXIMUM_FILE_IDENTIFIER_LENGTH = 30;
+    private static final int MAXIMUM_EXTENSION_LENGTH = 8;
+    private static final int MAXIMUM_SUSP_ENTRY_CONTENT = 250;
+    private static final int CE_ENTRY_LENGTH = 28;
+    private static final String ER_IDENTIFIER = "RRIP_1991A";
+    private static final String ER_DESCRIPTION = "THE ROCK RIDGE INTERCHANGE PROTOCOL PROVIDES SUPPORT FOR POSIX FILE SYSTEM SEMANTICS";
+
+    private String volumeName = null;
+    private Instant creationTime = Instant.now();
+    private Instant modificationTime = null;
+    private Node rootNode = null;
+
+    public IsoImageWriter(String volumeName) {
+        this.setVolumeName(volumeName);
+        this.setRootNode(Node.createDirectory("", null, this.getCreationTime()));
+        this.getRootNode().identifier = new byte[] { 0 };
+    }
+
+    /**
+     * Uses the given time as creation time of the image and as modification time of all entries, instead of the current
+     * time and the modification times of the source files. Together with the sorted directory records this ensures that
+     * the same content always results in exactly the same image. Must be called before any content is added.
+     */
+    public void setTimestamp(Instant timestamp) {
+        this.setCreationTime(timestamp);
+        this.setModificationTime(timestamp);
+        this.getRootNode().modified = timestamp;
+    }
+
+    /**
+     * Adds the source directory with all its content into the root of the image, using the given name.
+     */
+    public void addDirectory(String name, Path sourceDirectory) throws IOException {
+        this.getRootNode().addChild(this.scan(name, sourceDirectory));
+    }
+
+    /**
+     * Adds all entries of the source directory into the root of the image.
+     */
+    public void addDirectoryContent(Path sourceDirectory) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(sourceDirectory)) {
+            for (Path entry : entries) {
+                Node childNode = this.scan(entry.getFileName().toString(), entry);
+                if (childNode != null) {
+                    this.getRootNode().addChild(childNode);
+                }
+            }
+        }
+    }
+
+    private Node scan(String name, Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        Instant modified = this.getModificationTime() != null ? this.getModificationTime() : attributes.lastModifiedTime().toInstant();
+        if (attributes.isSymbolicLink()) {
+            return Node.createSymbolicLink(name, path, modified, Files.readSymbolicLink(path).toString());
+        } else if (attributes.isDirectory()) {
+            Node directoryNode = Node.createDirectory(name, path, modified);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                for (Path entry : entries) {
+                    Node childNode = this.scan(entry.getFileName().toString(), entry);
+                    if (childNode != null) {
+                        directoryNode.addChild(childNode);
+                    }
+                }
+            }
+            return directoryNode;
+        } else if (attributes.isRegularFile()) {
+            if (attributes.size() > 0xFFFFFFFFL) {
+                throw new IOException("File too large for ISO 9660 image: " + path);
+            }
+            return Node.createFile(name, path, modified, attributes.size(), IsoImageWriter.isExecutable(path));
+        } else {
+            return null;
+        }
+    }
+
+    private static boolean isExecutable(Path path) throws IOException {
+        PosixFileAttributeView posixAttributes = Files.getFileAttributeView(path, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        if (posixAttributes != null) {
+            Set<PosixFilePermission> permissions = posixAttributes.readAttributes().permissions();
+            return permissions.contains(PosixFilePermission.OWNER_EXECUTE) || permissions.contains(PosixFilePermission.GROUP_EXECUTE) || permissions.contains(PosixFilePermission.OTHERS_EXECUTE);
+        } else {
+            return Files.isExecutable(path);
+        }
+    }
+
+    /**
+     * Writes the complete image into the output stream.
+     *
+     * @return the number of bytes written
+     */
+    public long write(OutputStream outputStream) throws IOException {
+        List<Node> directories = this.layout();
+        ImageOutput imageOutput = new ImageOutput(outputStream);
+        imageOutput.write(new byte[SYSTEM_AREA_SECTORS * SECTOR_SIZE]);
+        imageOutput.write(this.createPrimaryVolumeDescriptor());
+        imageOutput.write(this.createVolumeDescriptorSetTerminator());
+        imageOutput.writePadded(this.createPathTable(directories, ByteOrder.LITTLE_ENDIAN));
+        imageOutput.writePadded(this.createPathTable(directories, ByteOrder.BIG_ENDIAN));
+        for (Node directory : directories) {
+            imageOutput.write(this.createDirectoryExtent(directory));
+        }
+        imageOutput.writePadded(this.createContinuationArea(directories));
+        for (Node directory : directories) {
+            for (Node childNode : directory.children) {
+                if (childNode.type == NodeType.FILE && childNode.size > 0) {
+                    this.writeFileContent(childNode, imageOutput);
+                }
+            }
+        }
+        if (imageOutput.position != (long)this.getRootNode().volumeSectors * SECTOR_SIZE) {
+            throw new IOException("Unexpected image size " + imageOutput.position + ", expected " + ((long)this.getRootNode().volumeSectors * SECTOR_SIZE));
+        }
+        outputStream.flush();
+        return imageOutput.position;
+    }
+
+    private void writeFileContent(Node fileNode, ImageOutput imageOutput) throws IOException {
+        if (imageOutput.position != (long)fileNode.extent * SECTOR_SIZE) {
+            throw new IOException("Unexpected position " + imageOutput.position + " for file: " + fileNode.source);
+        }
+        long remainingBytes = fileNode.size;
+        byte[] buffer = new byte[65536];
+        try (InputStream fileStream = Files.newInputStream(fileNode.source)) {
+            for (int bytesRead = fileStream.read(buffer, 0, (int)Math.min(buffer.length, remainingBytes)); bytesRead > 0 && remainingBytes > 0; bytesRead = fileStream.read(buffer, 0, (int)Math.min(buffer.length, remainingBytes))) {
+                imageOutput.write(buffer, 0, bytesRead);
+                remainingBytes -= bytesRead;
+            }
+            if (remainingBytes > 0 || fileStream.read() >= 0) {
+                throw new IOException("File has been modified while writing the image: " + fileNode.source);
+            }
+        }
+        imageOutput.padToSector();
+    }
+
+    /**
+     * Computes the ISO 9660 names, the order of the directories and the location of every structure inside the image.
+     *
+     * @return all directories in the order of the path table
+     */
+    private List<Node> layout() throws IOException {
+        List<Node> directories = new ArrayList<>();
+        Deque<Node> pendingDirectories = new ArrayDeque<>();
+        this.getRootNode().parent = this.getRootNode();
+        pendingDirectories.add(this.getRootNode());
+        while (!pendingDirectories.isEmpty()) {
+            Node directory = pendingDirectories.poll();
+            IsoImageWriter.assignIdentifiers(directory);
+            directories.add(directory);
+            directory.number = directories.size();
+            for (Node childNode : directory.children) {
+                childNode.parent = directory;
+                if (childNode.type == NodeType.DIRECTORY) {
+                    pendingDirectories.add(childNode);
+                }
+            }
+        }
+
+        int pathTableSize = 0;
+        for (Node directory : directories) {
+            pathTableSize += 8 + directory.identifier.length + (directory.identifier.length % 2);
+        }
+        this.getRootNode().pathTableSize = pathTableSize;
+        int nextSector = SYSTEM_AREA_SECTORS + 2;
+        this.getRootNode().pathTableLocationL = nextSector;
+        nextSector += IsoImageWriter.toSectors(pathTableSize);
+        this.getRootNode().pathTableLocationM = nextSector;
+        nextSector += IsoImageWriter.toSectors(pathTableSize);
+
+        for (Node directory : directories) {
+            directory.selfSystemUse = this.createSystemUse(directory, directory == this.getRootNode(), false);
+            for (Node childNode : directory.children) {
+                childNode.systemUse = this.createSystemUse(childNode, false, true);
+            }
+            int directorySize = 0;
+            directorySize = IsoImageWriter.appendRecordSize(directorySize, IsoImageWriter.computeRecordLength(1, directory.selfSystemUse));
+            directorySize = IsoImageWriter.appendRecordSize(directorySize, IsoImageWriter.computeRecordLength(1, IsoImageWriter.createParentSystemUse(directory.parent)));
+            for (Node childNode : directory.children) {
+                directorySize = IsoImageWriter.appendRecordSize(directorySize, IsoImageWriter.computeRecordLength(childNode.identifier.length, childNode.systemUse));
+            }
+            directory.size = IsoImageWriter.toSectors(directorySize) * (long)SECTOR_SIZE;
+            directory.extent = nextSector;
+            nextSector += IsoImageWriter.toSectors(directory.size);
+        }
+
+        int continuationOffset = 0;
+        int continuationSector = nextSector;
+        for (Node directory : directories) {
+            List<SystemUse> systemUses = new ArrayList<>();
+            systemUses.add(directory.selfSystemUse);
+            directory.children.forEach(childNode -> systemUses.add(childNode.systemUse));
+            for (SystemUse systemUse : systemUses) {
+                if (systemUse.continuation.length > SECTOR_SIZE) {
+                    throw new IOException("Rock Ridge information too large for: " + directory.source);
+                } else if (systemUse.continuation.length > 0) {
+                    if (continuationOffset + systemUse.continuation.length > SECTOR_SIZE) {
+                        continuationSector++;
+                        continuationOffset = 0;
+                    }
+                    systemUse.continuationSector = continuationSector;
+                    systemUse.continuationOffset = continuationOffset;
+                    continuationOffset += systemUse.continuation.length;
+                }
+            }
+        }
+        this.getRootNode().continuationSize = (continuationSector - nextSector) * SECTOR_SIZE + continuationOffset;
+        nextSector += IsoImageWriter.toSectors(this.getRootNode().continuationSize);
+
+        for (Node directory : directories) {
+            for (Node childNode : directory.children) {
+                if (childNode.type != NodeType.DIRECTORY) {
+                    childNode.extent = nextSector;
+                    nextSector += IsoImageWriter.toSectors(childNode.size);
+                }
+            }
+        }
+        this.getRootNode().volumeSectors = nextSector;
+        return directories;
+    }
+
+    private static int appendRecordSize(int directorySize, int recordLength) {
+        int remainingInSector = SECTOR_SIZE - (directorySize % SECTOR_SIZE);
+        return (recordLength > remainingInSector ? directorySize + remainingInSector : directorySize) + recordLength;
+    }
+
+    private static int computeRecordLength(int identifierLength, SystemUse systemUse) {
+        int recordLength = 33 + identifierLength + (identifierLength % 2 == 0 ? 1 : 0) + systemUse.inlineLength;
+        return recordLength + (recordLength % 2);
+    }
+
+    private static int toSectors(long size) {
+        return (int)((size + SECTOR_SIZE - 1) / SECTOR_SIZE);
+    }
+
+    /**
+     * Creates unique ISO 9660 identifiers (using uppercase letters, digits and underscores only) for all children of the
+     * given directory and sorts the children according to their identifiers.
+     */
+    private static void assignIdentifiers(Node directory) {
+        Set<String> usedNames = new HashSet<>();
+        directory.children.sort(Comparator.comparing(childNode -> childNode.name));
+        for (Node childNode : directory.children) {
+            String baseName = childNode.name;
+            String extension = "";
+            int extensionSeparator = childNode.name.lastIndexOf('.');
+            if (childNode.type != NodeType.DIRECTORY && extensionSeparator >= 0) {
+                baseName = childNode.name.substring(0, extensionSeparator);
+                extension = IsoImageWriter.toDCharacters(childNode.name.substring(extensionSeparator + 1), MAXIMUM_EXTENSION_LENGTH);
+            }
+            int maximumBaseLength = childNode.type == NodeType.DIRECTORY ? MAXIMUM_FILE_IDENTIFIER_LENGTH + 1 : MAXIMUM_FILE_IDENTIFIER_LENGTH - extension.length();
+            String isoBaseName = IsoImageWriter.toDCharacters(baseName, maximumBaseLength);
+            if (isoBaseName.isEmpty() && extension.isEmpty()) {
+                isoBaseName = "_";
+            }
+            for (int counter = 1; usedNames.contains(isoBaseName + "." + extension); counter++) {
+                String suffix = "_" + counter;
+                isoBaseName = IsoImageWriter.toDCharacters(baseName, maximumBaseLength - suffix.length()) + suffix;
+            }
+            usedNames.add(isoBaseName + "." + extension);
+            childNode.isoBaseName = isoBaseName;
+            childNode.isoExtension = extension;
+            String identifier = childNode.type == NodeType.DIRECTORY ? isoBaseName : isoBaseName + "." + extension + ";1";
+            childNode.identifier = identifier.getBytes(StandardCharsets.US_ASCII);
+        }
+        directory.children.sort(Comparator.comparing((Node childNode) -> IsoImageWriter.padRight(childNode.isoBaseName, MAXIMUM_FILE_IDENTIFIER_LENGTH + 1)).thenComparing(childNode -> IsoImageWriter.padRight(childNode.isoExtension, MAXIMUM_EXTENSION_LENGTH)));
+    }
+
+    private static String toDCharacters(String value, int maximumLength) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < value.length() && result.length() < maximumLength; i++) {
+            char c = Character.toUpperCase(value.charAt(i));
+            result.append((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ? c : '_');
+        }
+        return result.toString();
+    }
+
+    private static String padRight(String value, int length) {
+        StringBuilder result = new StringBuilder(value);
+        while (result.length() < length) {
+            result.append(' ');
+        }
+        return result.toString();
+    }
+
+    private SystemUse createSystemUse(Node node, boolean rootSelf, boolean includeName) {
+        List<byte[]> entries = new ArrayList<>();
+        if (rootSelf) {
+            entries.add(new byte[] { 'S', 'P', 7, 1, (byte)0xBE, (byte)0xEF, 0 });
+        }
+        entries.add(IsoImageWriter.createPxEntry(node));
+        entries.add(IsoImageWriter.createTfEntry(node.modified));
+        if (includeName) {
+            entries.addAll(IsoImageWriter.createNmEntries(node.name));
+        }
+        if (node.type == NodeType.SYMBOLIC_LINK) {
+            entries.addAll(IsoImageWriter.createSlEntries(node.linkTarget));
+        }
+        if (rootSelf) {
+            entries.add(IsoImageWriter.createErEntry());
+        }
+        int identifierLength = includeName ? node.identifier.length : 1;
+        return SystemUse.create(entries, MAXIMUM_RECORD_LENGTH - 33 - identifierLength - (identifierLength % 2 == 0 ? 1 : 0));
+    }
+
+    private static SystemUse createParentSystemUse(Node parentNode) {
+        List<byte[]> entries = new ArrayList<>();
+        entries.add(IsoImageWriter.createPxEntry(parentNode));
+        entries.add(IsoImageWriter.createTfEntry(parentNode.modified));
+        return SystemUse.create(entries, Integer.MAX_VALUE);
+    }
+
+    private static byte[] createPxEntry(Node node) {
+        ByteBuffer entry = ByteBuffer.allocate(36);
+        entry.put((byte)'P').put((byte)'X').put((byte)36).put((byte)1);
+        IsoImageWriter.putBoth32(entry, node.mode);
+        IsoImageWriter.putBoth32(entry, node.type == NodeType.DIRECTORY ? 2 + (int)node.children.stream().filter(childNode -> childNode.type == NodeType.DIRECTORY).count() : 1);
+        IsoImageWriter.putBoth32(entry, 0);
+        IsoImageWriter.putBoth32(entry, 0);
+        return entry.array();
+    }
+
+    private static byte[] createTfEntry(Instant modified) {
+        ByteBuffer entry = ByteBuffer.allocate(12);
+        entry.put((byte)'T').put((byte)'F').put((byte)12).put((byte)1).put((byte)0x02);
+        entry.put(IsoImageWriter.createRecordingTime(modified));
+        return entry.array();
+    }
+
+    private static List<byte[]> createNmEntries(String name) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> entries = new ArrayList<>();
+        for (int offset = 0; offset < nameBytes.length; offset += MAXIMUM_SUSP_ENTRY_CONTENT) {
+            int length = Math.min(MAXIMUM_SUSP_ENTRY_CONTENT, nameBytes.length - offset);
+            ByteBuffer entry = ByteBuffer.allocate(5 + length);
+            entry.put((byte)'N').put((byte)'M').put((byte)(5 + length)).put((byte)1);
+            entry.put((byte)(offset + length < nameBytes.length ? 0x01 : 0x00));
+            entry.put(nameBytes, offset, length);
+            entries.add(entry.array());
+        }
+        return entries;
+    }
+
+    private static List<byte[]> createSlEntries(String linkTarget) {
+        List<byte[]> components = new ArrayList<>();
+        if (linkTarget.startsWith("/")) {
+            components.add(new byte[] { 0x08, 0 });
+        }
+        for (String part : linkTarget.split("/")) {
+            if (".".equals(part)) {
+                components.add(new byte[] { 0x02, 0 });
+            } else if ("..".equals(part)) {
+                components.add(new byte[] { 0x04, 0 });
+            } else if (!part.isEmpty()) {
+                byte[] partBytes = part.getBytes(StandardCharsets.UTF_8);
+                for (int offset = 0; offset < partBytes.length; offset += MAXIMUM_SUSP_ENTRY_CONTENT - 2) {
+                    int length = Math.min(MAXIMUM_SUSP_ENTRY_CONTENT - 2, partBytes.length - offset);
+                    byte[] component = new byte[2 + length];
+                    component[0] = (byte)(offset + length < partBytes.length ? 0x01 : 0x00);
+                    component[1] = (byte)length;
+                    System.arraycopy(partBytes, offset, component, 2, length);
+                    components.add(component);
+                }
+            }
+        }
+        List<byte[]> entries = new ArrayList<>();
+        List<byte[]> entryComponents = new ArrayList<>();
+        int entryLength = 0;
+        for (int i = 0; i <= components.size(); i++) {
+            if (i == components.size() || entryLength + components.get(i).length > MAXIMUM_SUSP_ENTRY_CONTENT) {
+                ByteBuffer entry = ByteBuffer.allocate(5 + entryLength);
+                entry.put((byte)'S').put((byte)'L').put((byte)(5 + entryLength)).put((byte)1);
+                entry.put((byte)(i < components.size() ? 0x01 : 0x00));
+                entryComponents.forEach(entry::put);
+                entries.add(entry.array());
+                entryComponents.clear();
+                entryLength = 0;
+            }
+            if (i < components.size()) {
+                entryComponents.add(components.get(i));
+                entryLength += components.get(i).length;
+            }
+        }
+        return entries;
+    }
+
+    private static byte[] createErEntry() {
+        byte[] identifier = ER_IDENTIFIER.getBytes(StandardCharsets.US_ASCII);
+        byte[] description = ER_DESCRIPTION.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer entry = ByteBuffer.allocate(8 + identifier.length + description.length);
+        entry.put((byte)'E').put((byte)'R').put((byte)entry.capacity()).put((byte)1);
+        entry.put((byte)identifier.length).put((byte)description.length).put((byte)0).put((byte)1);
+        entry.put(identifier).put(description);
+        return entry.array();
+    }
+
+    private byte[] createPrimaryVolumeDescriptor() {
+        ByteBuffer descriptor = ByteBuffer.allocate(SECTOR_SIZE);
+        descriptor.put((byte)1).put("CD001".getBytes(StandardCharsets.US_ASCII)).put((byte)1).put((byte)0);
+        IsoImageWriter.putString(descriptor, "", 32);
+        IsoImageWriter.putString(descriptor, this.getVolumeName(), 32);
+        descriptor.put(new byte[8]);
+        IsoImageWriter.putBoth32(descriptor, this.getRootNode().volumeSectors);
+        descriptor.put(new byte[32]);
+        IsoImageWriter.putBoth16(descriptor, 1);
+        IsoImageWriter.putBoth16(descriptor, 1);
+        IsoImageWriter.putBoth16(descriptor, SECTOR_SIZE);
+        IsoImageWriter.putBoth32(descriptor, this.getRootNode().pathTableSize);
+        descriptor.order(ByteOrder.LITTLE_ENDIAN).putInt(this.getRootNode().pathTableLocationL).putInt(0);
+        descriptor.order(ByteOrder.BIG_ENDIAN).putInt(this.getRootNode().pathTableLocationM).putInt(0);
+        this.putRecord(descriptor, this.getRootNode(), new byte[] { 0 }, SystemUse.EMPTY);
+        IsoImageWriter.putString(descriptor, "", 128);
+        IsoImageWriter.putString(descriptor, "", 128);
+        IsoImageWriter.putString(descriptor, "", 128);
+        IsoImageWriter.putString(descriptor, "MACOSAPPBUNDLER", 128);
+        IsoImageWriter.putString(descriptor, "", 37);
+        IsoImageWriter.putString(descriptor, "", 37);
+        IsoImageWriter.putString(descriptor, "", 37);
+        descriptor.put(IsoImageWriter.createVolumeTime(this.getCreationTime()));
+        descriptor.put(IsoImageWriter.createVolumeTime(this.getCreationTime()));
+        descriptor.put(IsoImageWriter.createVolumeTime(null));
+        descriptor.put(IsoImageWriter.createVolumeTime(null));
+        descriptor.put((byte)1);
+        return descriptor.array();
+    }
+
+    private byte[] createVolumeDescriptorSetTerminator() {
+        ByteBuffer descriptor = ByteBuffer.allocate(SECTOR_SIZE);
+        descriptor.put((byte)255).put("CD001".getBytes(StandardCharsets.US_ASCII)).put((byte)1);
+        return descriptor.array();
+    }
+
+    private byte[] createPathTable(List<Node> directories, ByteOrder byteOrder) {
+        ByteBuffer pathTable = ByteBuffer.allocate(this.getRootNode().pathTableSize).order(byteOrder);
+        for (Node directory : directories) {
+            byte[] identifier = directory.identifier;
+            pathTable.put((byte)identifier.length).put((byte)0);
+            pathTable.putInt(directory.extent);
+            pathTable.putShort((short)directory.parent.number);
+            pathTable.put(identifier);
+            if (identifier.length % 2 != 0) {
+                pathTable.put((byte)0);
+            }
+        }
+        return pathTable.array();
+    }
+
+    private byte[] createDirectoryExtent(Node directory) {
+        ByteBuffer extent = ByteBuffer.allocate((int)directory.size);
+        this.putDirectoryRecord(extent, directory, new byte[] { 0 }, directory.selfSystemUse);
+        this.putDirectoryRecord(extent, directory.parent, new byte[] { 1 }, IsoImageWriter.createParentSystemUse(directory.parent));
+        for (Node childNode : directory.children) {
+            this.putDirectoryRecord(extent, childNode, childNode.identifier, childNode.systemUse);
+        }
+        return extent.array();
+    }
+
+    private void putDirectoryRecord(ByteBuffer extent, Node node, byte[] identifier, SystemUse systemUse) {
+        int recordLength = IsoImageWriter.computeRecordLength(identifier.length, systemUse);
+        if (recordLength > SECTOR_SIZE - (extent.position() % SECTOR_SIZE)) {
+            extent.position(extent.position() + SECTOR_SIZE - (extent.position() % SECTOR_SIZE));
+        }
+        this.putRecord(extent, node, identifier, systemUse);
+    }
+
+    private void putRecord(ByteBuffer buffer, Node node, byte[] identifier, SystemUse systemUse) {
+        int recordStart = buffer.position();
+        int recordLength = IsoImageWriter.computeRecordLength(identifier.length, systemUse);
+        buffer.put((byte)recordLength).put((byte)0);
+        IsoImageWriter.putBoth32(buffer, node.extent);
+        IsoImageWriter.putBoth32(buffer, (int)node.size);
+        buffer.put(IsoImageWriter.createRecordingTime(node.modified));
+        buffer.put((byte)(node.type == NodeType.DIRECTORY ? 0x02 : 0x00)).put((byte)0).put((byte)0);
+        IsoImageWriter.putBoth16(buffer, 1);
+        buffer.put((byte)identifier.length).put(identifier);
+        if (identifier.length % 2 == 0) {
+            buffer.put((byte)0);
+        }
+        for (byte[] entry : systemUse.inlineEntries) {
+            buffer.put(entry);
+        }
+        if (systemUse.continuation.length > 0) {
+            buffer.put((byte)'C').put((byte)'E').put((byte)CE_ENTRY_LENGTH).put((byte)1);
+            IsoImageWriter.putBoth32(buffer, systemUse.continuationSector);
+            IsoImageWriter.putBoth32(buffer, systemUse.continuationOffset);
+            IsoImageWriter.putBoth32(buffer, systemUse.continuation.length);
+        }
+        buffer.position(recordStart + recordLength);
+    }
+
+    private byte[] createContinuationArea(List<Node> directories) {
+        ByteBuffer continuationArea = ByteBuffer.allocate(this.getRootNode().continuationSize);
+        int firstSector = directories.get(directories.size() - 1).extent + IsoImageWriter.toSectors(directories.get(directories.size() - 1).size);
+        for (Node directory : directories) {
+            List<SystemUse> systemUses = new ArrayList<>();
+            systemUses.add(directory.selfSystemUse);
+            directory.children.forEach(childNode -> systemUses.add(childNode.systemUse));
+            for (SystemUse systemUse : systemUses) {
+                if (systemUse.continuation.length > 0) {
+                    continuationArea.position((systemUse.continuationSector - firstSector) * SECTOR_SIZE + systemUse.continuationOffset);
+                    continuationArea.put(systemUse.continuation);
+                }
+            }
+        }
+        return continuationArea.array();
+    }
+
+    private static byte[] createRecordingTime(Instant instant) {
+        ZonedDateTime dateTime = instant.atZone(ZoneOffset.UTC);
+        return new byte[] { (byte)(dateTime.getYear() - 1900), (byte)dateTime.getMonthValue(), (byte)dateTime.getDayOfMonth(), (byte)dateTime.getHour(), (byte)dateTime.getMinute(), (byte)dateTime.getSecond(), 0 };
+    }
+
+    private static byte[] createVolumeTime(Instant instant) {
+        byte[] volumeTime = new byte[17];
+        String digits = "0000000000000000";
+        if (instant != null) {
+            ZonedDateTime dateTime = instant.atZone(ZoneOffset.UTC);
+            digits = String.format(Locale.ROOT, "%04d%02d%02d%02d%02d%02d%02d", dateTime.getYear(), dateTime.getMonthValue(), dateTime.getDayOfMonth(), dateTime.getHour(), dateTime.getMinute(), dateTime.getSecond(), dateTime.getNano() / 10_000_000);
+        }
+        System.arraycopy(digits.getBytes(StandardCharsets.US_ASCII), 0, volumeTime, 0, 16);
+        return volumeTime;
+    }
+
+    private static void putString(ByteBuffer buffer, String value, int length) {
+        for (int i = 0; i < length; i++) {
+            char c = i < value.length() ? value.charAt(i) : ' ';
+            buffer.put((byte)(c >= 0x20 && c < 0x7F ? c : '_'));
+        }
+    }
+
+    private static void putBoth16(ByteBuffer buffer, int value) {
+        buffer.put((byte)value).put((byte)(value >> 8)).put((byte)(value >> 8)).put((byte)value);
+    }
+
+    private static void putBoth32(ByteBuffer buffer, int value) {
+        buffer.put((byte)value).put((byte)(value >> 8)).put((byte)(value >> 16)).put((byte)(value >> 24));
+        buffer.put((byte)(value >> 24)).put((byte)(value >> 16)).put((byte)(value >> 8)).put((byte)value);
+    }
+
+    enum NodeType {
+        DIRECTORY, FILE, SYMBOLIC_LINK;
+    }
+
+    static class Node {
+
+        private String name = null;
+        private Path source = null;
+        private NodeType type = null;
+        private Instant modified = null;
+        private long size = 0;
+        private int mode = 0;
+        private String linkTarget = null;
+        private List<Node> children = new ArrayList<>();
+        private Node parent = null;
+        private String isoBaseName = null;
+        private String isoExtension = null;
+        private byte[] identifier = null;
+        private int number = 0;
+        private int extent = 0;
+        private SystemUse systemUse = null;
+        private SystemUse selfSystemUse = null;
+
+        // Only used by the root node to describe the complete image
+        private int pathTableSize = 0;
+        private int pathTableLocationL = 0;
+        private int pathTableLocationM = 0;
+        private int continuationSize = 0;
+        private int volumeSectors = 0;
+
+        static Node createDirectory(String name, Path source, Instant modified) {
+            Node node = new Node();
+            node.name = name;
+            node.source = source;
+            node.type = NodeType.DIRECTORY;
+            node.modified = modified;
+            node.mode = 040555;
+            return node;
+        }
+
+        static Node createFile(String name, Path source, Instant modified, long size, boolean executable) {
+            Node node = new Node();
+            node.name = name;
+            node.source = source;
+            node.type = NodeType.FILE;
+            node.modified = modified;
+            node.size = size;
+            node.mode = executable ? 0100555 : 0100444;
+            return node;
+        }
+
+        static Node createSymbolicLink(String name, Path source, Instant modified, String linkTarget) {
+            Node node = new Node();
+            node.name = name;
+            node.source = source;
+            node.type = NodeType.SYMBOLIC_LINK;
+            node.modified = modified;
+            node.mode = 0120777;
+            node.linkTarget = linkTarget;
+            return node;
+        }
+
+        void addChild(Node childNode) throws IOException {
+            for (Node existingNode : this.children) {
+                if (existingNode.name.equals(childNode.name)) {
+                    throw new IOException("Duplicate entry '" + childNode.name + "' in image directory: " + (this.source == null ? "/" : this.source));
+                }
+            }
+            this.children.add(childNode);
+        }
+
+    }
+
+    /**
+     * The System Use Sharing Protocol entries of a directory record. Entries that don't fit into the record itself are
+     * moved into a continuation area that is referenced by a {@code CE} entry.
+     */
+    static class SystemUse {
+
+        static final SystemUse EMPTY = new SystemUse(new ArrayList<>(), new byte[0]);
+
+        private List<byte[]> inlineEntries = null;
+        private byte[] continuation = null;
+        private int inlineLength = 0;
+        private int continuationSector = 0;
+        private int continuationOffset = 0;
+
+        private SystemUse(List<byte[]> inlineEntries, byte[] continuation) {
+            this.inlineEntries = inlineEntries;
+            this.continuation = continuation;
+            this.inlineLength = inlineEntries.stream().mapToInt(entry -> entry.length).sum() + (continuation.length > 0 ? CE_ENTRY_LENGTH : 0);
+        }
+
+        static SystemUse create(List<byte[]> entries, int availableLength) {
+            int totalLength = entries.stream().mapToInt(entry -> entry.length).sum();
+            if (totalLength <= availableLength) {
+                return new SystemUse(entries, new byte[0]);
+            }
+            List<byte[]> inlineEntries = new ArrayList<>();
+            int inlineLength = 0;
+            int entryIndex = 0;
+            while (entryIndex < entries.size() && inlineLength + entries.get(entryIndex).length + CE_ENTRY_LENGTH <= availableLength) {
+                inlineLength += entries.get(entryIndex).length;
+                inlineEntries.add(entries.get(entryIndex++));
+            }
+            ByteBuffer continuation = ByteBuffer.allocate(totalLength - inlineLength);
+            entries.subList(entryIndex, entries.size()).forEach(continuation::put);
+            return new SystemUse(inlineEntries, continuation.array());
+        }
+
+    }
+
+    static class ImageOutput {
+
+        private OutputStream outputStream = null;
+        private long position = 0;
+
+        ImageOutput(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            this.write(bytes, 0, bytes.length);
+        }
+
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            this.outputStream.write(bytes, offset, length);
+            this.position += length;
+        }
+
+        void writePadded(byte[] bytes) throws IOException {
+            this.write(bytes);
+            this.padToSector();
+        }
+
+        void padToSector() throws IOException {
+            int remainder = (int)(this.position % SECTOR_SIZE);
+            if (remainder > 0) {
+                this.write(new byte[SECTOR_SIZE - remainder]);
+            }
+        }
+
+    }
+
+    private String getVolumeName() {
+        return this.volumeName;
+    }
+    private void setVolumeName(String volumeName) {
+        this.volumeName = volumeName;
+    }
+
+    public Instant getCreationTime() {
+        return this.creationTime;
+    }
+    public void setCreationTime(Instant creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    private Instant getModificationTime() {
+        return this.modificationTime;
+    }
+    private void setModificationTime(Instant modificationTime) {
+        this.modificationTime = modificationTime;
+    }
+
+    private Node getRootNode() {
+        return this.rootNode;
+    }
+    private void setRootNode(Node rootNode) {
+        this.rootNode = rootNode;
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the entries of an existing JAR file into a new JAR file, keeping the metadata of each entry.
+ */
+
+class JarEntries {
+
+    /**
+     * Writes the entry into the target stream. If a content is given, it replaces the content of the source entry, so
+     * the size and checksum of an uncompressed entry are computed again. The compressed size of a compressed entry is
+     * always reset, as the entry is compressed again while it's written.
+     */
+    static void writeEntry(ZipFile sourceFile, ZipEntry sourceEntry, byte[] content, ZipOutputStream targetStream) throws IOException {
+        ZipEntry targetEntry = new ZipEntry(sourceEntry);
+        if (content != null && targetEntry.getMethod() == ZipEntry.STORED) {
+            CRC32 checksum = new CRC32();
+            checksum.update(content);
+            targetEntry.setSize(content.length);
+            targetEntry.setCompressedSize(content.length);
+            targetEntry.setCrc(checksum.getValue());
+        } else if (targetEntry.getMethod() != ZipEntry.STORED) {
+            targetEntry.setCompressedSize(-1);
+        }
+        targetStream.putNextEntry(targetEntry);
+        if (content != null) {
+            targetStream.write(content);
+        } else {
+            try (InputStream entryStream = sourceFile.getInputStream(sourceEntry)) {
+                entryStream.transferTo(targetStream);
+            }
+        }
+        targetStream.closeEntry();
+    }
+
+}
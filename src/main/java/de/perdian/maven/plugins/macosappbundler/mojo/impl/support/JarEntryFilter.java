@@ -0,0 +1,190 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * Removes the entries that aren't needed by the application from JAR files while they are copied into the app. The
+ * entries are streamed from the source JAR file directly into the target JAR file, so no separate step unpacking and
+ * packing the JAR file again is required.
+ */
+
+public class JarEntryFilter implements Predicate<String> {
+
+    private List<String> includes = null;
+    private List<String> excludes = null;
+    private NativeBinarySlimmer nativeBinarySlimmer = null;
+    private Log log = null;
+    private AtomicInteger filteredCount = new AtomicInteger();
+    private AtomicInteger removedCount = new AtomicInteger();
+    private AtomicLong savedSize = new AtomicLong();
+
+    public JarEntryFilter(List<String> includes, List<String> excludes, Log log) {
+        this.setIncludes(includes == null ? Collections.emptyList() : includes);
+        this.setExcludes(excludes == null ? Collections.emptyList() : excludes);
+        this.setLog(log);
+    }
+
+    /**
+     * @return {@code true} if the entry should be kept inside the JAR file. The manifest is always kept and directories
+     *     are only removed if they match one of the exclude patterns.
+     */
+    @Override
+    public boolean test(String entryName) {
+        if (entryName.equals("META-INF/") || entryName.equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+            return true;
+        }
+        boolean directory = entryName.endsWith("/");
+        String entryPath = directory ? entryName.substring(0, entryName.length() - 1) : entryName;
+        if (this.getExcludes().stream().anyMatch(pattern -> matchEntry(pattern, entryPath))) {
+            return false;
+        } else {
+            return directory || this.getIncludes().isEmpty() || this.getIncludes().stream().anyMatch(pattern -> matchEntry(pattern, entryPath));
+        }
+    }
+
+    private static boolean matchEntry(String pattern, String entryPath) {
+        // Entry names always use forward slashes, independent of the platform running the build
+        return SelectorUtils.matchPath(pattern, entryPath, "/", true);
+    }
+
+    /**
+     * Creates a file copier that writes a filtered version of the source file if it is a JAR file containing entries
+     * that should be removed and passes all other files to the given file copier.
+     */
+    public IO.FileCopier createFileCopier(IO.FileCopier fileCopier) {
+        return (sourceFile, targetFile) -> {
+            if (!this.filterFile(sourceFile, targetFile)) {
+                fileCopier.copy(sourceFile, targetFile);
+            }
+        };
+    }
+
+    /**
+     * Writes a copy of the JAR file without the entries that should be removed. If native binaries are slimmed, the
+     * native libraries inside the JAR file are slimmed while the JAR file is written. Signed JAR files are never
+     * changed, as modifying their content would invalidate the signature.
+     *
+     * @return {@code true} if a filtered version of the JAR file has been written into the target file, {@code false}
+     *     if the source file doesn't need to be filtered
+     */
+    public boolean filterFile(Path sourceFile, Path targetFile) throws IOException {
+        if (!sourceFile.getFileName().toString().endsWith(".jar")) {
+            return false;
+        }
+        try (ZipFile zipFile = new ZipFile(sourceFile.toFile())) {
+            boolean filterRequired = false;
+            for (Enumeration<? extends ZipEntry> zipEntries = zipFile.entries(); zipEntries.hasMoreElements(); ) {
+                String entryName = zipEntries.nextElement().getName();
+                if (entryName.startsWith("META-INF/") && entryName.endsWith(".SF")) {
+                    this.getLog().debug("Not filtering signed JAR file: " + sourceFile);
+                    return false;
+                } else if (!this.test(entryName)) {
+                    filterRequired = true;
+                }
+            }
+            if (!filterRequired) {
+                return false;
+            }
+
+            // The target might still be a hard link to another file, so it has to be removed instead of being overwritten
+            Files.deleteIfExists(targetFile);
+            int removedEntries = 0;
+            try (OutputStream targetStream = Files.newOutputStream(targetFile); ZipOutputStream zipStream = new ZipOutputStream(targetStream)) {
+                for (Enumeration<? extends ZipEntry> zipEntries = zipFile.entries(); zipEntries.hasMoreElements(); ) {
+                    ZipEntry zipEntry = zipEntries.nextElement();
+                    if (!this.test(zipEntry.getName())) {
+                        removedEntries++;
+                    } else if (!zipEntry.isDirectory() && this.getNativeBinarySlimmer() != null && this.getNativeBinarySlimmer().isNativeLibraryName(zipEntry.getName())) {
+                        byte[] entryContent = null;
+                        try (InputStream entryStream = zipFile.getInputStream(zipEntry)) {
+                            entryContent = entryStream.readAllBytes();
+                        }
+                        byte[] slimmedContent = this.getNativeBinarySlimmer().slimJarEntry(zipEntry.getName(), entryContent);
+                        if (slimmedContent != null) {
+                            JarEntries.writeEntry(zipFile, zipEntry, slimmedContent, zipStream);
+                        }
+                    } else {
+                        JarEntries.writeEntry(zipFile, zipEntry, null, zipStream);
+                    }
+                }
+            }
+            Files.setLastModifiedTime(targetFile, Files.getLastModifiedTime(sourceFile));
+            this.filteredCount.incrementAndGet();
+            this.removedCount.addAndGet(removedEntries);
+            this.savedSize.addAndGet(Math.max(0, Files.size(sourceFile) - Files.size(targetFile)));
+            this.getLog().debug("Removed " + removedEntries + " entries from JAR file: " + sourceFile);
+            return true;
+        } catch (ZipException e) {
+            this.getLog().debug("Not filtering invalid JAR file " + sourceFile + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "removed " + this.removedCount.get() + " entries from " + this.filteredCount.get() + " JAR files, saving " + (this.savedSize.get() / 1024 / 1024) + " MB";
+    }
+
+    public List<String> getIncludes() {
+        return this.includes;
+    }
+    private void setIncludes(List<String> includes) {
+        this.includes = includes;
+    }
+
+    public List<String> getExcludes() {
+        return this.excludes;
+    }
+    private void setExcludes(List<String> excludes) {
+        this.excludes = excludes;
+    }
+
+    private NativeBinarySlimmer getNativeBinarySlimmer() {
+        return this.nativeBinarySlimmer;
+    }
+    public void setNativeBinarySlimmer(NativeBinarySlimmer nativeBinarySlimmer) {
+        this.nativeBinarySlimmer = nativeBinarySlimmer;
+    }
+
+    private Log getLog() {
+        return this.log;
+    }
+    private void setLog(Log log) {
+        this.log = log;
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Merges multiple JAR files into a single JAR file. Entries contained in more than one JAR file are taken from the
+ * first JAR file containing them, just like the class loader would find them on the classpath. Only service provider
+ * configuration files are combined, so that all providers remain visible to the {@code ServiceLoader}.
+ */
+
+public class JarMerger {
+
+    private static final String SERVICES_PREFIX = "META-INF/services/";
+    private static final Pattern SIGNATURE_ENTRY_PATTERN = Pattern.compile("META-INF/([^/]+\\.(SF|RSA|DSA|EC)|SIG-[^/]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern UNUSED_ENTRY_PATTERN = Pattern.compile("META-INF/(MANIFEST\\.MF|INDEX\\.LIST|maven/.*)|(META-INF/versions/[0-9]+/)?module-info\\.class", Pattern.CASE_INSENSITIVE);
+
+    private boolean compress = true;
+    private Predicate<String> entryFilter = entryName -> true;
+    private Instant timestamp = null;
+
+    public JarMerger(boolean compress) {
+        this.setCompress(compress);
+    }
+
+    /**
+     * Merges the source JAR files into the target JAR file. The manifests, signatures, module descriptors and Maven
+     * metadata of the source JAR files are not copied into the target JAR file, neither are the entries rejected by
+     * the entry filter.
+     *
+     * @param sourceFiles the JAR files to merge in classpath order
+     * @param targetFile the JAR file to write
+     * @return the lines of an index listing the number of entries taken from each of the source JAR files
+     */
+    public List<String> merge(List<Path> sourceFiles, Path targetFile) throws IOException {
+        Set<String> writtenEntries = new HashSet<>();
+        Map<String, Set<String>> serviceProviders = new TreeMap<>();
+        List<String> indexLines = new ArrayList<>();
+        Files.deleteIfExists(targetFile);
+        try (OutputStream targetStream = Files.newOutputStream(targetFile); ZipOutputStream zipStream = new ZipOutputStream(targetStream)) {
+            this.writeEntry(zipStream, "META-INF/", -1, new byte[0]);
+            this.writeEntry(zipStream, JarFile.MANIFEST_NAME, -1, this.createManifest(sourceFiles));
+            writtenEntries.add("META-INF/");
+            writtenEntries.add(JarFile.MANIFEST_NAME);
+            for (Path sourceFile : sourceFiles) {
+                int copiedCount = 0;
+                int duplicateCount = 0;
+                int removedCount = 0;
+                try (ZipFile zipFile = new ZipFile(sourceFile.toFile())) {
+                    for (Enumeration<? extends ZipEntry> zipEntries = zipFile.entries(); zipEntries.hasMoreElements(); ) {
+                        ZipEntry zipEntry = zipEntries.nextElement();
+                        String entryName = zipEntry.getName();
+                        if (SIGNATURE_ENTRY_PATTERN.matcher(entryName).matches() || UNUSED_ENTRY_PATTERN.matcher(entryName).matches() || !this.getEntryFilter().test(entryName)) {
+                            removedCount++;
+                        } else if (!zipEntry.isDirectory() && entryName.startsWith(SERVICES_PREFIX) && entryName.indexOf('/', SERVICES_PREFIX.length()) < 0) {
+                            try (InputStream entryStream = zipFile.getInputStream(zipEntry)) {
+                                this.appendServiceProviders(entryStream, serviceProviders.computeIfAbsent(entryName, key -> new LinkedHashSet<>()));
+                            }
+                        } else if (!writtenEntries.add(entryName)) {
+                            if (!zipEntry.isDirectory()) {
+                                duplicateCount++;
+                            }
+                        } else {
+                            try (InputStream entryStream = zipFile.getInputStream(zipEntry)) {
+                                this.writeEntry(zipStream, entryName, zipEntry.getTime(), entryStream.readAllBytes());
+                            }
+                            copiedCount++;
+                        }
+                    }
+                } catch (ZipException e) {
+                    throw new IOException("Cannot read JAR file: " + sourceFile, e);
+                }
+                indexLines.add(sourceFile + "\t" + copiedCount + " entries copied\t" + duplicateCount + " duplicates skipped\t" + removedCount + " entries removed");
+            }
+            if (!serviceProviders.isEmpty() && writtenEntries.add(SERVICES_PREFIX)) {
+                this.writeEntry(zipStream, SERVICES_PREFIX, -1, new byte[0]);
+            }
+            for (Map.Entry<String, Set<String>> serviceProvider : serviceProviders.entrySet()) {
+                StringBuilder serviceContent = new StringBuilder();
+                serviceProvider.getValue().forEach(providerName -> serviceContent.append(providerName).append("\n"));
+                this.writeEntry(zipStream, serviceProvider.getKey(), -1, serviceContent.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return indexLines;
+    }
+
+    private byte[] createManifest(List<Path> sourceFiles) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Created-By", "macosappbundler-maven-plugin");
+        for (Path sourceFile : sourceFiles) {
+            try (JarFile jarFile = new JarFile(sourceFile.toFile(), false)) {
+                Manifest sourceManifest = jarFile.getManifest();
+                if (sourceManifest != null && "true".equalsIgnoreCase(sourceManifest.getMainAttributes().getValue(Attributes.Name.MULTI_RELEASE))) {
+                    manifest.getMainAttributes().put(Attributes.Name.MULTI_RELEASE, "true");
+                }
+            } catch (ZipException e) {
+                throw new IOException("Cannot read JAR file: " + sourceFile, e);
+            }
+        }
+        ByteArrayOutputStream manifestContent = new ByteArrayOutputStream();
+        manifest.write(manifestContent);
+        return manifestContent.toByteArray();
+    }
+
+    private void appendServiceProviders(InputStream serviceStream, Set<String> providerNames) throws IOException {
+        for (String line : new String(serviceStream.readAllBytes(), StandardCharsets.UTF_8).split("\\r?\\n|\\r")) {
+            int commentIndex = line.indexOf('#');
+            String providerName = (commentIndex < 0 ? line : line.substring(0, commentIndex)).trim();
+            if (!providerName.isEmpty()) {
+                providerNames.add(providerName);
+            }
+        }
+    }
+
+    private void writeEntry(ZipOutputStream zipStream, String entryName, long time, byte[] content) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(entryName);
+        if (this.getTimestamp() != null) {
+            // Entry times are stored in local time, so the offset needs to be removed to get the same entry everywhere
+            long timestampMillis = this.getTimestamp().toEpochMilli();
+            zipEntry.setTime(timestampMillis - TimeZone.getDefault().getOffset(timestampMillis));
+        } else if (time >= 0) {
+            zipEntry.setTime(time);
+        }
+        if (!this.isCompress() || content.length == 0) {
+            CRC32 checksum = new CRC32();
+            checksum.update(content);
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setSize(content.length);
+            zipEntry.setCompressedSize(content.length);
+            zipEntry.setCrc(checksum.getValue());
+        } else {
+            zipEntry.setMethod(ZipEntry.DEFLATED);
+        }
+        zipStream.putNextEntry(zipEntry);
+        zipStream.write(content);
+        zipStream.closeEntry();
+    }
+
+    private boolean isCompress() {
+        return this.compress;
+    }
+    private void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    private Instant getTimestamp() {
+        return this.timestamp;
+    }
+
+    /**
+     * Uses the given time as modification time of all entries instead of the times of the source entries and the
+     * current time, so that the same source JAR files always result in exactly the same target JAR file.
+     */
+    public void setTimestamp(Instant timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    private Predicate<String> getEntryFilter() {
+        return this.entryFilter;
+    }
+    public void setEntryFilter(Predicate<String> entryFilter) {
+        this.entryFilter = entryFilter;
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Gives access to the values stored inside the {@code release} file of a JDK or runtime image.
+ */
+
+public class JdkRelease {
+
+    private Properties properties = null;
+
+    private JdkRelease(Properties properties) {
+        this.setProperties(properties);
+    }
+
+    /**
+     * Reads the {@code release} file of the given JDK. If the JDK doesn't contain a {@code release} file, an empty
+     * release will be returned.
+     */
+    public static JdkRelease read(File jdkDirectory) throws IOException {
+        Properties properties = new Properties();
+        File releaseFile = new File(jdkDirectory, "release");
+        if (releaseFile.exists()) {
+            try (InputStream releaseStream = Files.newInputStream(releaseFile.toPath())) {
+                properties.load(releaseStream);
+            }
+        }
+        return new JdkRelease(properties);
+    }
+
+    public String getValue(String key) {
+        return StringUtils.strip(this.getProperties().getProperty(key), "\"");
+    }
+
+    /**
+     * @return the feature version of the JDK (e.g. {@code 17} for {@code 17.0.9}) or {@code -1} if it is unknown
+     */
+    public int getFeatureVersion() {
+        String javaVersion = this.getValue("JAVA_VERSION");
+        String featureVersion = StringUtils.substringBefore(StringUtils.removeStart(javaVersion, "1."), ".");
+        return StringUtils.isNumeric(featureVersion) ? Integer.parseInt(featureVersion) : -1;
+    }
+
+    /**
+     * @return the modules contained in the JDK or an empty set if they are unknown
+     */
+    public Set<String> getModules() {
+        String modulesValue = this.getValue("MODULES");
+        if (StringUtils.isNotEmpty(modulesValue)) {
+            return Arrays.stream(modulesValue.split("\\s+")).collect(Collectors.toCollection(TreeSet::new));
+        } else {
+            return new TreeSet<>();
+        }
+    }
+
+    private Properties getProperties() {
+        return this.properties;
+    }
+    private void setProperties(Properties properties) {
+        this.properties = properties;
+    }
+
+}
@@ -0,0 +1,258 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class MachOFile {
+
+    private static final int MH_MAGIC = 0xFEEDFACE;
+    private static final int MH_CIGAM = 0xCEFAEDFE;
+    private static final int MH_MAGIC_64 = 0xFEEDFACF;
+    private static final int MH_CIGAM_64 = 0xCFFAEDFE;
+    private static final int FAT_MAGIC = 0xCAFEBABE;
+    private static final int FAT_MAGIC_64 = 0xCAFEBABF;
+    private static final int CPU_TYPE_X86 = 0x00000007;
+    private static final int CPU_TYPE_X86_64 = 0x01000007;
+    private static final int CPU_TYPE_ARM64 = 0x0100000C;
+
+    /**
+     * Java class files use the same magic number as universal binaries. They store their version at the position of
+     * the architecture count, which is at least 45 for every class file version.
+     */
+    private static final int FAT_MAXIMUM_ARCHITECTURES = 44;
+
+    /**
+     * The number of bytes at the start of a file that are sufficient to read the header of a universal binary.
+     */
+    public static final int HEADER_LENGTH = 8 + FAT_MAXIMUM_ARCHITECTURES * 32;
+
+    /**
+     * Checks whether the file is a Mach-O executable or library, either for a single architecture or as universal
+     * binary, by looking at the magic number at the start of the file.
+     */
+    public static boolean isMachO(Path file) throws IOException {
+        byte[] header = new byte[8];
+        int headerLength = 0;
+        try (InputStream fileStream = Files.newInputStream(file)) {
+            headerLength = fileStream.readNBytes(header, 0, header.length);
+        }
+        return MachOFile.isMachO(header, headerLength);
+    }
+
+    /**
+     * Checks whether the content (of which only the first eight bytes are required) is a Mach-O binary.
+     */
+    public static boolean isMachO(byte[] content, int contentLength) {
+        if (contentLength < 4) {
+            return false;
+        }
+        ByteBuffer headerBuffer = ByteBuffer.wrap(content);
+        int magic = headerBuffer.getInt(0);
+        if (magic == MH_MAGIC || magic == MH_CIGAM || magic == MH_MAGIC_64 || magic == MH_CIGAM_64) {
+            return true;
+        } else if (magic == FAT_MAGIC || magic == FAT_MAGIC_64) {
+            int architectureCount = contentLength < 8 ? 0 : headerBuffer.getInt(4);
+            return architectureCount > 0 && architectureCount <= FAT_MAXIMUM_ARCHITECTURES;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the architectures (like {@code x86_64} or {@code arm64}) a Mach-O binary has been built for. Universal
+     * binaries store the list of architectures at the start of the file, so only the first {@link #HEADER_LENGTH} bytes
+     * of the content are required.
+     *
+     * @return the architectures or an empty set if the content isn't a Mach-O binary
+     */
+    public static Set<String> readArchitectures(byte[] content, int contentLength) {
+        if (!MachOFile.isMachO(content, contentLength)) {
+            return Collections.emptySet();
+        }
+        Set<String> architectures = new TreeSet<>();
+        List<Slice> slices = MachOFile.readSlices(content, contentLength);
+        if (slices != null) {
+            slices.forEach(slice -> architectures.add(slice.getArchitecture()));
+        } else if (contentLength >= 8) {
+            ByteBuffer headerBuffer = ByteBuffer.wrap(content, 0, contentLength);
+            int magic = headerBuffer.getInt(0);
+            headerBuffer.order(magic == MH_CIGAM || magic == MH_CIGAM_64 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+            architectures.add(MachOFile.toArchitectureName(headerBuffer.getInt(4)));
+        }
+        return architectures;
+    }
+
+    /**
+     * Reads the slices of a universal binary from the header, which is stored within the first {@link #HEADER_LENGTH}
+     * bytes of the content.
+     *
+     * @return the slices or {@code null} if the content isn't a universal binary
+     */
+    public static List<Slice> readSlices(byte[] content, int contentLength) {
+        if (!MachOFile.isMachO(content, contentLength)) {
+            return null;
+        }
+        ByteBuffer headerBuffer = ByteBuffer.wrap(content, 0, contentLength);
+        int magic = headerBuffer.getInt(0);
+        if (magic != FAT_MAGIC && magic != FAT_MAGIC_64) {
+            return null;
+        }
+        boolean fat64 = magic == FAT_MAGIC_64;
+        int sliceEntrySize = fat64 ? 32 : 20;
+        int sliceCount = headerBuffer.getInt(4);
+        if (8 + sliceCount * sliceEntrySize > contentLength) {
+            return null;
+        }
+        List<Slice> slices = new ArrayList<>(sliceCount);
+        for (int i = 0; i < sliceCount; i++) {
+            int entryOffset = 8 + i * sliceEntrySize;
+            int cpuType = headerBuffer.getInt(entryOffset);
+            int cpuSubtype = headerBuffer.getInt(entryOffset + 4);
+            long offset = fat64 ? headerBuffer.getLong(entryOffset + 8) : Integer.toUnsignedLong(headerBuffer.getInt(entryOffset + 8));
+            long size = fat64 ? headerBuffer.getLong(entryOffset + 16) : Integer.toUnsignedLong(headerBuffer.getInt(entryOffset + 12));
+            int align = headerBuffer.getInt(entryOffset + (fat64 ? 24 : 16));
+            slices.add(new Slice(cpuType, cpuSubtype, offset, size, align, fat64));
+        }
+        return slices;
+    }
+
+    /**
+     * Writes the slices either as universal binary or, if only a single slice is given, as binary for that single
+     * architecture. The content of the slices is read from the original binary using the slice reader.
+     *
+     * @return the number of bytes written
+     */
+    public static long writeSlices(List<Slice> slices, SliceReader sliceReader, OutputStream outputStream) throws IOException {
+        if (slices.size() == 1) {
+            sliceReader.copy(slices.get(0).getOffset(), slices.get(0).getSize(), outputStream);
+            return slices.get(0).getSize();
+        }
+        boolean fat64 = slices.stream().anyMatch(Slice::isFat64);
+        int sliceEntrySize = fat64 ? 32 : 20;
+        long[] sliceOffsets = new long[slices.size()];
+        long currentOffset = 8 + slices.size() * sliceEntrySize;
+        for (int i = 0; i < slices.size(); i++) {
+            long alignment = 1L << Math.min(slices.get(i).getAlign(), 30);
+            currentOffset = (currentOffset + alignment - 1) / alignment * alignment;
+            sliceOffsets[i] = currentOffset;
+            currentOffset += slices.get(i).getSize();
+        }
+        ByteBuffer headerBuffer = ByteBuffer.allocate(8 + slices.size() * sliceEntrySize);
+        headerBuffer.putInt(fat64 ? FAT_MAGIC_64 : FAT_MAGIC);
+        headerBuffer.putInt(slices.size());
+        for (int i = 0; i < slices.size(); i++) {
+            Slice slice = slices.get(i);
+            headerBuffer.putInt(slice.getCpuType());
+            headerBuffer.putInt(slice.getCpuSubtype());
+            if (fat64) {
+                headerBuffer.putLong(sliceOffsets[i]).putLong(slice.getSize()).putInt(slice.getAlign()).putInt(0);
+            } else {
+                headerBuffer.putInt((int)sliceOffsets[i]).putInt((int)slice.getSize()).putInt(slice.getAlign());
+            }
+        }
+        outputStream.write(headerBuffer.array());
+        long writtenLength = headerBuffer.capacity();
+        for (int i = 0; i < slices.size(); i++) {
+            for (; writtenLength < sliceOffsets[i]; writtenLength++) {
+                outputStream.write(0);
+            }
+            sliceReader.copy(slices.get(i).getOffset(), slices.get(i).getSize(), outputStream);
+            writtenLength += slices.get(i).getSize();
+        }
+        return writtenLength;
+    }
+
+    private static String toArchitectureName(int cpuType) {
+        if (cpuType == CPU_TYPE_X86_64) {
+            return "x86_64";
+        } else if (cpuType == CPU_TYPE_ARM64) {
+            return "arm64";
+        } else if (cpuType == CPU_TYPE_X86) {
+            return "i386";
+        } else {
+            return "cpu" + Integer.toHexString(cpuType);
+        }
+    }
+
+    @FunctionalInterface
+    public interface SliceReader {
+
+        void copy(long offset, long size, OutputStream outputStream) throws IOException;
+
+    }
+
+    public static class Slice {
+
+        private int cpuType = 0;
+        private int cpuSubtype = 0;
+        private long offset = 0;
+        private long size = 0;
+        private int align = 0;
+        private boolean fat64 = false;
+
+        Slice(int cpuType, int cpuSubtype, long offset, long size, int align, boolean fat64) {
+            this.cpuType = cpuType;
+            this.cpuSubtype = cpuSubtype;
+            this.offset = offset;
+            this.size = size;
+            this.align = align;
+            this.fat64 = fat64;
+        }
+
+        public String getArchitecture() {
+            return MachOFile.toArchitectureName(this.getCpuType());
+        }
+
+        public int getCpuType() {
+            return this.cpuType;
+        }
+
+        public int getCpuSubtype() {
+            return this.cpuSubtype;
+        }
+
+        public long getOffset() {
+            return this.offset;
+        }
+
+        public long getSize() {
+            return this.size;
+        }
+
+        public int getAlign() {
+            return this.align;
+        }
+
+        public boolean isFat64() {
+            return this.fat64;
+        }
+
+    }
+
+}
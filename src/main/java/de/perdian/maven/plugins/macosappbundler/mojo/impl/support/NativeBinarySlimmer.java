@@ -0,0 +1,280 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Removes the code for all architectures that aren't needed from the native binaries copied into the app. Universal
+ * binaries are reduced to the slices of the required architectures and native libraries inside JAR files that cannot
+ * be used on any of the required architectures (including libraries for other operating systems) are removed.
+ */
+
+public class NativeBinarySlimmer {
+
+    private static final int ELF_MAGIC = 0x7F454C46;
+    private static final short PE_MAGIC = 0x4D5A;
+
+    private Set<String> architectures = null;
+    private Log log = null;
+    private AtomicInteger slimmedCount = new AtomicInteger();
+    private AtomicInteger removedCount = new AtomicInteger();
+    private AtomicLong savedSize = new AtomicLong();
+
+    public NativeBinarySlimmer(Set<String> architectures, Log log) {
+        this.setArchitectures(architectures);
+        this.setLog(log);
+    }
+
+    /**
+     * Creates a file copier that writes a slimmed version of the source file if it contains code for architectures
+     * that aren't required and passes all other files to the given file copier.
+     */
+    public IO.FileCopier createFileCopier(IO.FileCopier fileCopier) {
+        return (sourceFile, targetFile) -> {
+            if (!this.slimFile(sourceFile, targetFile)) {
+                fileCopier.copy(sourceFile, targetFile);
+            }
+        };
+    }
+
+    /**
+     * @return {@code true} if a slimmed version of the source file has been written into the target file,
+     *     {@code false} if the source file doesn't need to be slimmed
+     */
+    public boolean slimFile(Path sourceFile, Path targetFile) throws IOException {
+        if (sourceFile.getFileName().toString().endsWith(".jar")) {
+            return this.slimJar(sourceFile, targetFile);
+        }
+        byte[] header = new byte[MachOFile.HEADER_LENGTH];
+        int headerLength = 0;
+        try (InputStream sourceStream = Files.newInputStream(sourceFile)) {
+            headerLength = sourceStream.readNBytes(header, 0, header.length);
+        }
+        List<MachOFile.Slice> requiredSlices = this.selectRequiredSlices(header, headerLength);
+        if (requiredSlices == null) {
+            return false;
+        }
+
+        // The target might still be a hard link to another file, so it has to be removed instead of being overwritten
+        Files.deleteIfExists(targetFile);
+        try (FileChannel sourceChannel = FileChannel.open(sourceFile, StandardOpenOption.READ); OutputStream targetStream = Files.newOutputStream(targetFile)) {
+            WritableByteChannel targetChannel = Channels.newChannel(targetStream);
+            MachOFile.writeSlices(requiredSlices, (offset, size, outputStream) -> {
+                for (long transferredSize = 0; transferredSize < size; ) {
+                    transferredSize += sourceChannel.transferTo(offset + transferredSize, size - transferredSize, targetChannel);
+                }
+            }, targetStream);
+        }
+        try {
+            Files.setPosixFilePermissions(targetFile, Files.getPosixFilePermissions(sourceFile, LinkOption.NOFOLLOW_LINKS));
+        } catch (UnsupportedOperationException e) {
+            targetFile.toFile().setExecutable(sourceFile.toFile().canExecute(), false);
+        }
+        Files.setLastModifiedTime(targetFile, Files.getLastModifiedTime(sourceFile));
+        this.recordSlimmed(Files.size(sourceFile), Files.size(targetFile));
+        return true;
+    }
+
+    /**
+     * @return the slimmed content or the content itself if it doesn't need to be slimmed
+     */
+    public byte[] slimContent(byte[] content) throws IOException {
+        byte[] slimmedContent = this.writeRequiredSlices(content);
+        if (slimmedContent == null) {
+            return content;
+        } else {
+            this.recordSlimmed(content.length, slimmedContent.length);
+            return slimmedContent;
+        }
+    }
+
+    /**
+     * Slims a native library read from a JAR file that is being rewritten anyway.
+     *
+     * @return the slimmed content, the content itself if it doesn't need to be slimmed or {@code null} if the library
+     *     cannot be used on any of the required architectures and should be removed from the JAR file
+     */
+    public byte[] slimJarEntry(String entryName, byte[] content) throws IOException {
+        if (!this.isNativeLibraryName(entryName)) {
+            return content;
+        } else if (this.isForeignBinary(content, content.length)) {
+            this.removedCount.incrementAndGet();
+            this.savedSize.addAndGet(content.length);
+            return null;
+        } else {
+            return this.slimContent(content);
+        }
+    }
+
+    private byte[] writeRequiredSlices(byte[] content) throws IOException {
+        List<MachOFile.Slice> requiredSlices = this.selectRequiredSlices(content, content.length);
+        if (requiredSlices == null) {
+            return null;
+        } else {
+            ByteArrayOutputStream slimmedContent = new ByteArrayOutputStream();
+            MachOFile.writeSlices(requiredSlices, (offset, size, outputStream) -> outputStream.write(content, (int)offset, (int)size), slimmedContent);
+            return slimmedContent.toByteArray();
+        }
+    }
+
+    /**
+     * Writes a copy of the JAR file without the native libraries that cannot be used on the required architectures.
+     * Signed JAR files are never changed, as modifying their content would invalidate the signature.
+     *
+     * @return {@code true} if a slimmed version of the JAR file has been written into the target file, {@code false}
+     *     if the JAR file doesn't need to be slimmed
+     */
+    private boolean slimJar(Path sourceFile, Path targetFile) throws IOException {
+        try (ZipFile zipFile = new ZipFile(sourceFile.toFile())) {
+            Set<String> removedEntries = new HashSet<>();
+            Map<String, byte[]> slimmedEntries = new HashMap<>();
+            for (Enumeration<? extends ZipEntry> zipEntries = zipFile.entries(); zipEntries.hasMoreElements(); ) {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                String entryName = zipEntry.getName();
+                if (entryName.startsWith("META-INF/") && entryName.endsWith(".SF")) {
+                    this.getLog().debug("Not slimming signed JAR file: " + sourceFile);
+                    return false;
+                } else if (!zipEntry.isDirectory() && this.isNativeLibraryName(entryName)) {
+                    byte[] header = new byte[MachOFile.HEADER_LENGTH];
+                    int headerLength = 0;
+                    try (InputStream entryStream = zipFile.getInputStream(zipEntry)) {
+                        headerLength = entryStream.readNBytes(header, 0, header.length);
+                    }
+                    if (this.isForeignBinary(header, headerLength)) {
+                        removedEntries.add(entryName);
+                    } else if (this.selectRequiredSlices(header, headerLength) != null) {
+                        try (InputStream entryStream = zipFile.getInputStream(zipEntry)) {
+                            slimmedEntries.put(entryName, this.writeRequiredSlices(entryStream.readAllBytes()));
+                        }
+                    }
+                }
+            }
+            if (removedEntries.isEmpty() && slimmedEntries.isEmpty()) {
+                return false;
+            }
+            Files.deleteIfExists(targetFile);
+            try (OutputStream targetStream = Files.newOutputStream(targetFile); ZipOutputStream zipStream = new ZipOutputStream(targetStream)) {
+                for (Enumeration<? extends ZipEntry> zipEntries = zipFile.entries(); zipEntries.hasMoreElements(); ) {
+                    ZipEntry zipEntry = zipEntries.nextElement();
+                    if (!removedEntries.contains(zipEntry.getName())) {
+                        JarEntries.writeEntry(zipFile, zipEntry, slimmedEntries.get(zipEntry.getName()), zipStream);
+                    }
+                }
+            }
+            Files.setLastModifiedTime(targetFile, Files.getLastModifiedTime(sourceFile));
+            this.slimmedCount.addAndGet(slimmedEntries.size());
+            this.removedCount.addAndGet(removedEntries.size());
+            this.getLog().debug("Removed " + removedEntries.size() + " and slimmed " + slimmedEntries.size() + " native libraries in JAR file: " + sourceFile);
+            this.savedSize.addAndGet(Math.max(0, Files.size(sourceFile) - Files.size(targetFile)));
+            return true;
+        } catch (ZipException e) {
+            this.getLog().debug("Not slimming invalid JAR file " + sourceFile + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return the slices that need to be kept or {@code null} if the binary doesn't need to be slimmed, either because
+     *     it isn't a universal binary, because it only contains required architectures or because it doesn't contain
+     *     any of the required architectures at all (in which case removing all slices would render it unusable)
+     */
+    private List<MachOFile.Slice> selectRequiredSlices(byte[] header, int headerLength) {
+        List<MachOFile.Slice> slices = MachOFile.readSlices(header, headerLength);
+        if (slices == null) {
+            return null;
+        }
+        List<MachOFile.Slice> requiredSlices = slices.stream().filter(slice -> this.getArchitectures().contains(slice.getArchitecture())).collect(Collectors.toList());
+        if (requiredSlices.isEmpty() || requiredSlices.size() == slices.size()) {
+            return null;
+        } else {
+            return requiredSlices;
+        }
+    }
+
+    /**
+     * @return {@code true} if the content is a native binary for another operating system or a Mach-O binary that
+     *     doesn't contain code for any of the required architectures
+     */
+    private boolean isForeignBinary(byte[] header, int headerLength) {
+        if (headerLength >= 4 && ByteBuffer.wrap(header).getInt(0) == ELF_MAGIC) {
+            return true;
+        } else if (headerLength >= 2 && ByteBuffer.wrap(header).getShort(0) == PE_MAGIC) {
+            return true;
+        } else if (MachOFile.isMachO(header, headerLength)) {
+            Set<String> binaryArchitectures = MachOFile.readArchitectures(header, headerLength);
+            return binaryArchitectures.stream().noneMatch(this.getArchitectures()::contains);
+        } else {
+            return false;
+        }
+    }
+
+    boolean isNativeLibraryName(String entryName) {
+        return entryName.endsWith(".dylib") || entryName.endsWith(".jnilib") || entryName.endsWith(".so") || entryName.endsWith(".dll");
+    }
+
+    private void recordSlimmed(long originalSize, long slimmedSize) {
+        this.slimmedCount.incrementAndGet();
+        this.savedSize.addAndGet(originalSize - slimmedSize);
+    }
+
+    @Override
+    public String toString() {
+        return "slimmed " + this.slimmedCount.get() + " universal binaries and removed " + this.removedCount.get() + " native libraries inside JAR files for other architectures, saving " + (this.savedSize.get() / 1024 / 1024) + " MB";
+    }
+
+    private Set<String> getArchitectures() {
+        return this.architectures;
+    }
+    private void setArchitectures(Set<String> architectures) {
+        this.architectures = architectures;
+    }
+
+    private Log getLog() {
+        return this.log;
+    }
+    private void setLog(Log log) {
+        this.log = log;
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Finds the native macOS libraries packaged inside JAR files, which libraries like JNA or SQLite JDBC would otherwise
+ * extract into a temporary directory when they are used for the first time.
+ */
+
+public class NativeLibraries {
+
+    /**
+     * Collects all libraries that contain code for all of the required architectures. If multiple JAR files contain a
+     * library with the same file name, the first one found is used.
+     *
+     * @return the libraries found, identified by their file name
+     */
+    public static Map<String, NativeLibrary> collect(Collection<Path> jarFiles, Set<String> requiredArchitectures, Log log) throws IOException {
+        Map<String, NativeLibrary> librariesByFileName = new TreeMap<>();
+        Set<String> incompleteFileNames = new TreeSet<>();
+        for (Path jarFile : jarFiles) {
+            if (jarFile.getFileName().toString().endsWith(".jar") && Files.isRegularFile(jarFile)) {
+                try (ZipFile zipFile = new ZipFile(jarFile.toFile())) {
+                    for (Enumeration<? extends ZipEntry> zipEntries = zipFile.entries(); zipEntries.hasMoreElements(); ) {
+                        ZipEntry zipEntry = zipEntries.nextElement();
+                        String fileName = zipEntry.getName().substring(zipEntry.getName().lastIndexOf('/') + 1);
+                        if (!zipEntry.isDirectory() && (fileName.endsWith(".dylib") || fileName.endsWith(".jnilib"))) {
+                            NativeLibrary existingLibrary = librariesByFileName.get(fileName);
+                            if (existingLibrary != null) {
+                                log.debug("Ignoring native library " + jarFile + "!/" + zipEntry.getName() + " as it has already been found at: " + existingLibrary);
+                            } else {
+                                Set<String> architectures = NativeLibraries.readArchitectures(zipFile, zipEntry);
+                                if (!architectures.isEmpty() && architectures.containsAll(requiredArchitectures)) {
+                                    librariesByFileName.put(fileName, new NativeLibrary(jarFile, zipEntry.getName(), architectures));
+                                    incompleteFileNames.remove(fileName);
+                                } else if (!architectures.isEmpty()) {
+                                    incompleteFileNames.add(fileName);
+                                }
+                            }
+                        }
+                    }
+                } catch (ZipException e) {
+                    log.warn("Cannot search for native libraries in invalid JAR file " + jarFile + ": " + e.getMessage());
+                }
+            }
+        }
+        for (String incompleteFileName : incompleteFileNames) {
+            log.info("Native library '" + incompleteFileName + "' isn't available for all architectures " + requiredArchitectures + " and will not be extracted");
+        }
+        return librariesByFileName;
+    }
+
+    private static Set<String> readArchitectures(ZipFile zipFile, ZipEntry zipEntry) throws IOException {
+        byte[] header = new byte[MachOFile.HEADER_LENGTH];
+        try (InputStream entryStream = zipFile.getInputStream(zipEntry)) {
+            return MachOFile.readArchitectures(header, entryStream.readNBytes(header, 0, header.length));
+        }
+    }
+
+    public static class NativeLibrary {
+
+        private Path jarFile = null;
+        private String entryName = null;
+        private Set<String> architectures = null;
+
+        NativeLibrary(Path jarFile, String entryName, Set<String> architectures) {
+            this.jarFile = jarFile;
+            this.entryName = entryName;
+            this.architectures = architectures;
+        }
+
+        public byte[] readContent() throws IOException {
+            try (ZipFile zipFile = new ZipFile(this.getJarFile().toFile())) {
+                try (InputStream entryStream = zipFile.getInputStream(zipFile.getEntry(this.getEntryName()))) {
+                    return entryStream.readAllBytes();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.getJarFile().toAbsolutePath() + "!/" + this.getEntryName();
+        }
+
+        public Path getJarFile() {
+            return this.jarFile;
+        }
+
+        public String getEntryName() {
+            return this.entryName;
+        }
+
+        public Set<String> getArchitectures() {
+            return this.architectures;
+        }
+
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Receives the structure of a property list as a sequence of events and writes it in a specific format. Every
+ * {@code startDict} and {@code startArray} must be matched by the corresponding {@code end} event and every value
+ * inside a dictionary must be preceded by a {@code key} event.
+ */
+
+public interface PlistWriter {
+
+    void startDocument() throws IOException;
+
+    void endDocument() throws IOException;
+
+    void startDict() throws IOException;
+
+    void endDict() throws IOException;
+
+    void startArray() throws IOException;
+
+    void endArray() throws IOException;
+
+    void key(String key) throws IOException;
+
+    void string(String value) throws IOException;
+
+    void bool(boolean value) throws IOException;
+
+    void integer(long value) throws IOException;
+
+    void real(double value) throws IOException;
+
+    void date(Instant value) throws IOException;
+
+    void data(byte[] value) throws IOException;
+
+}
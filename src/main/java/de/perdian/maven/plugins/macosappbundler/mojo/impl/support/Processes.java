@@ -0,0 +1,104 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.shared.utils.cli.CommandLineException;
+import org.apache.maven.shared.utils.cli.CommandLineUtils;
+import org.apache.maven.shared.utils.cli.Commandline;
+
+public class Processes {
+
+    private static final long TERMINATION_GRACE_SECONDS = 60;
+
+    /**
+     * Executes the command and waits for it to complete.
+     *
+     * @return the content the command has written to its standard output
+     * @throws IOException if the command cannot be started or exits with a status other than {@code 0}
+     */
+    public static String execute(Commandline commandLine, Log log) throws IOException {
+        log.debug("Executing command: " + commandLine);
+        CommandLineUtils.StringStreamConsumer outputConsumer = new CommandLineUtils.StringStreamConsumer();
+        CommandLineUtils.StringStreamConsumer errorConsumer = new CommandLineUtils.StringStreamConsumer();
+        BuildEvents.ProcessRecorder processRecorder = BuildEvents.beginProcess(StringUtils.unwrap(commandLine.getExecutable(), "'"), String.join(" ", commandLine.getArguments()));
+        int returnValue = -1;
+        try {
+            returnValue = CommandLineUtils.executeCommandLine(commandLine, outputConsumer, errorConsumer);
+            if (returnValue != 0) {
+                StringBuilder errorMessage = new StringBuilder();
+                errorMessage.append("Command '").append(commandLine.getExecutable()).append("' exited with status ").append(returnValue);
+                String errorOutput = errorConsumer.getOutput().trim();
+                if (errorOutput.isEmpty()) {
+                    errorOutput = outputConsumer.getOutput().trim();
+                }
+                if (!errorOutput.isEmpty()) {
+                    errorMessage.append(": ").append(errorOutput);
+                }
+                throw new IOException(errorMessage.toString());
+            }
+            return outputConsumer.getOutput();
+        } catch (CommandLineException e) {
+            throw new IOException("Cannot execute command '" + commandLine.getExecutable() + "'", e);
+        } finally {
+            processRecorder.end(returnValue, outputConsumer.getOutput().getBytes(StandardCharsets.UTF_8).length + errorConsumer.getOutput().getBytes(StandardCharsets.UTF_8).length);
+        }
+    }
+
+    /**
+     * Executes the command and writes everything the command prints into the output file. If the command hasn't
+     * completed after the timeout, it is asked to terminate and given some time to shut down cleanly before it gets
+     * killed.
+     *
+     * @return the exit status of the command
+     */
+    public static int execute(List<String> command, File workingDirectory, File outputFile, long timeoutSeconds, Log log) throws IOException {
+        log.debug("Executing command: " + command);
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.directory(workingDirectory);
+        processBuilder.redirectErrorStream(true);
+        processBuilder.redirectOutput(outputFile);
+        BuildEvents.ProcessRecorder processRecorder = BuildEvents.beginProcess(command.get(0), String.join(" ", command.subList(1, command.size())));
+        Process process = processBuilder.start();
+        int exitValue = -1;
+        try {
+            if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                log.info("Command '" + command.get(0) + "' hasn't completed after " + timeoutSeconds + " seconds and will be terminated");
+                process.destroy();
+                if (!process.waitFor(TERMINATION_GRACE_SECONDS, TimeUnit.SECONDS)) {
+                    process.destroyForcibly().waitFor();
+                }
+            }
+            exitValue = process.exitValue();
+            return exitValue;
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for command '" + command.get(0) + "'", e);
+        } finally {
+            processRecorder.end(exitValue, outputFile.length());
+        }
+    }
+
+}
@@ -0,0 +1,283 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Copies a complete directory tree. The tree is scanned first, then the directory skeleton is created, then all files
+ * are copied in parallel using a {@link ForkJoinPool} and finally the attributes of the directories are transferred.
+ * Symbolic links are recreated as symbolic links instead of copying the file they're pointing to.
+ */
+
+public class TreeCopier {
+
+    private static final int FILES_PER_TASK = 16;
+
+    private int parallelism = 1;
+    private IO.FileCopier fileCopier = null;
+    private IO.FileCopier symbolicLinkCopier = TreeCopier::copySymbolicLink;
+
+    public TreeCopier(int parallelism, IO.FileCopier fileCopier) {
+        this.setParallelism(parallelism);
+        this.setFileCopier(fileCopier);
+    }
+
+    public Result copyTree(Path sourceDirectory, Path targetDirectory) throws IOException {
+        Result result = new Result();
+
+        long scanStartTime = System.nanoTime();
+        List<Path> directories = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+        List<Path> symbolicLinks = new ArrayList<>();
+        Files.walkFileTree(sourceDirectory, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                directories.add(sourceDirectory.relativize(directory));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isSymbolicLink()) {
+                    symbolicLinks.add(sourceDirectory.relativize(file));
+                } else {
+                    files.add(sourceDirectory.relativize(file));
+                    result.byteCount += attributes.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+        });
+        result.directoryCount = directories.size();
+        result.fileCount = files.size();
+        result.symbolicLinkCount = symbolicLinks.size();
+        result.scanNanos = System.nanoTime() - scanStartTime;
+
+        long directoriesStartTime = System.nanoTime();
+        for (Path directory : directories) {
+            Path targetPath = targetDirectory.resolve(directory.toString());
+            if (!Files.isDirectory(targetPath)) {
+                Files.createDirectories(targetPath);
+            }
+        }
+        result.directoriesNanos = System.nanoTime() - directoriesStartTime;
+
+        long filesStartTime = System.nanoTime();
+        Queue<Throwable> copyFailures = new ConcurrentLinkedQueue<>();
+        CopyAction copyAction = new CopyAction(files, 0, files.size(), sourceDirectory, targetDirectory, this.getFileCopier(), copyFailures);
+        if (this.getParallelism() <= 1) {
+            copyAction.invoke();
+        } else {
+            ForkJoinPool forkJoinPool = new ForkJoinPool(this.getParallelism());
+            try {
+                forkJoinPool.invoke(copyAction);
+            } finally {
+                forkJoinPool.shutdown();
+            }
+        }
+        for (Path symbolicLink : symbolicLinks) {
+            try {
+                this.getSymbolicLinkCopier().copy(sourceDirectory.resolve(symbolicLink), targetDirectory.resolve(symbolicLink.toString()));
+            } catch (IOException | RuntimeException e) {
+                copyFailures.add(e);
+            }
+        }
+        if (!copyFailures.isEmpty()) {
+            IOException copyException = new IOException("Cannot copy " + copyFailures.size() + " of " + (files.size() + symbolicLinks.size()) + " files from '" + sourceDirectory + "' to '" + targetDirectory + "': " + copyFailures.peek().getMessage());
+            copyFailures.forEach(copyException::addSuppressed);
+            throw copyException;
+        }
+        result.filesNanos = System.nanoTime() - filesStartTime;
+
+        // The directory attributes must be set after all files have been copied, since creating the files within a
+        // directory updates its modification time. Deeper directories are handled first for the same reason.
+        long attributesStartTime = System.nanoTime();
+        for (int i = directories.size() - 1; i >= 0; i--) {
+            Path sourcePath = sourceDirectory.resolve(directories.get(i));
+            Path targetPath = targetDirectory.resolve(directories.get(i).toString());
+            TreeCopier.copyDirectoryAttributes(sourcePath, targetPath);
+        }
+        result.attributesNanos = System.nanoTime() - attributesStartTime;
+
+        return result;
+    }
+
+    private static void copyDirectoryAttributes(Path sourceDirectory, Path targetDirectory) throws IOException {
+        PosixFileAttributeView sourceAttributeView = Files.getFileAttributeView(sourceDirectory, PosixFileAttributeView.class);
+        PosixFileAttributeView targetAttributeView = Files.getFileAttributeView(targetDirectory, PosixFileAttributeView.class);
+        if (sourceAttributeView != null && targetAttributeView != null) {
+            PosixFileAttributes sourceAttributes = sourceAttributeView.readAttributes();
+            Set<PosixFilePermission> targetPermissions = EnumSet.copyOf(sourceAttributes.permissions());
+            targetPermissions.add(PosixFilePermission.OWNER_WRITE);
+            targetAttributeView.setPermissions(targetPermissions);
+            targetAttributeView.setTimes(sourceAttributes.lastModifiedTime(), null, null);
+        } else {
+            Files.setLastModifiedTime(targetDirectory, Files.getLastModifiedTime(sourceDirectory));
+        }
+    }
+
+    private static void copySymbolicLink(Path sourceLink, Path targetLink) throws IOException {
+        Files.deleteIfExists(targetLink);
+        Files.createSymbolicLink(targetLink, Files.readSymbolicLink(sourceLink));
+    }
+
+    static class CopyAction extends RecursiveAction {
+
+        static final long serialVersionUID = 1L;
+
+        private List<Path> files = null;
+        private int fromIndex = 0;
+        private int toIndex = 0;
+        private Path sourceDirectory = null;
+        private Path targetDirectory = null;
+        private IO.FileCopier fileCopier = null;
+        private Queue<Throwable> copyFailures = null;
+
+        CopyAction(List<Path> files, int fromIndex, int toIndex, Path sourceDirectory, Path targetDirectory, IO.FileCopier fileCopier, Queue<Throwable> copyFailures) {
+            this.files = files;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+            this.sourceDirectory = sourceDirectory;
+            this.targetDirectory = targetDirectory;
+            this.fileCopier = fileCopier;
+            this.copyFailures = copyFailures;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.toIndex - this.fromIndex <= FILES_PER_TASK) {
+                for (int i = this.fromIndex; i < this.toIndex; i++) {
+                    Path file = this.files.get(i);
+                    try {
+                        this.fileCopier.copy(this.sourceDirectory.resolve(file), this.targetDirectory.resolve(file.toString()));
+                    } catch (IOException | RuntimeException e) {
+                        this.copyFailures.add(e);
+                    }
+                }
+            } else {
+                int middleIndex = (this.fromIndex + this.toIndex) >>> 1;
+                RecursiveAction.invokeAll(
+                    new CopyAction(this.files, this.fromIndex, middleIndex, this.sourceDirectory, this.targetDirectory, this.fileCopier, this.copyFailures),
+                    new CopyAction(this.files, middleIndex, this.toIndex, this.sourceDirectory, this.targetDirectory, this.fileCopier, this.copyFailures)
+                );
+            }
+        }
+
+    }
+
+    public static class Result {
+
+        private int directoryCount = 0;
+        private int fileCount = 0;
+        private int symbolicLinkCount = 0;
+        private long byteCount = 0;
+        private long scanNanos = 0;
+        private long directoriesNanos = 0;
+        private long filesNanos = 0;
+        private long attributesNanos = 0;
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append(this.getFileCount()).append(" files (").append(this.getByteCount() / 1024 / 1024).append(" MB), ");
+            result.append(this.getDirectoryCount()).append(" directories, ");
+            result.append(this.getSymbolicLinkCount()).append(" symbolic links in ");
+            result.append(this.getTotalMillis()).append(" ms [scan: ").append(this.getScanMillis());
+            result.append(" ms, directories: ").append(this.getDirectoriesMillis());
+            result.append(" ms, files: ").append(this.getFilesMillis());
+            result.append(" ms, attributes: ").append(this.getAttributesMillis()).append(" ms]");
+            return result.toString();
+        }
+
+        public int getDirectoryCount() {
+            return this.directoryCount;
+        }
+
+        public int getFileCount() {
+            return this.fileCount;
+        }
+
+        public int getSymbolicLinkCount() {
+            return this.symbolicLinkCount;
+        }
+
+        public long getByteCount() {
+            return this.byteCount;
+        }
+
+        public long getScanMillis() {
+            return this.scanNanos / 1_000_000;
+        }
+
+        public long getDirectoriesMillis() {
+            return this.directoriesNanos / 1_000_000;
+        }
+
+        public long getFilesMillis() {
+            return this.filesNanos / 1_000_000;
+        }
+
+        public long getAttributesMillis() {
+            return this.attributesNanos / 1_000_000;
+        }
+
+        public long getTotalMillis() {
+            return (this.scanNanos + this.directoriesNanos + this.filesNanos + this.attributesNanos) / 1_000_000;
+        }
+
+    }
+
+    private int getParallelism() {
+        return this.parallelism;
+    }
+    private void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    private IO.FileCopier getFileCopier() {
+        return this.fileCopier;
+    }
+    private void setFileCopier(IO.FileCopier fileCopier) {
+        this.fileCopier = fileCopier;
+    }
+
+    private IO.FileCopier getSymbolicLinkCopier() {
+        return this.symbolicLinkCopier;
+    }
+    public void setSymbolicLinkCopier(IO.FileCopier symbolicLinkCopier) {
+        this.symbolicLinkCopier = symbolicLinkCopier;
+    }
+
+}
@@ -0,0 +1,329 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a raw disk image into a compressed UDIF ({@code .dmg}) container as created by {@code hdiutil} using the
+ * {@code UDZO} format.
+ *
+ * The raw image is split into chunks of a fixed size, which are compressed in parallel. The compressed chunks are
+ * written in their original order, so the target only needs to support sequential writes. After the last chunk the
+ * chunk table (stored as {@code blkx} resource inside an XML property list) and the {@code koly} trailer are appended.
+ */
+
+public class UdifWriter extends OutputStream {
+
+    public static final int SECTOR_SIZE = 512;
+
+    private static final int CHUNK_TYPE_ZERO = 0x00000000;
+    private static final int CHUNK_TYPE_RAW = 0x00000001;
+    private static final int CHUNK_TYPE_ZLIB = 0x80000005;
+    private static final int CHUNK_TYPE_TERMINATOR = 0xFFFFFFFF;
+    private static final int CHECKSUM_TYPE_CRC32 = 2;
+    private static final int ENTIRE_DEVICE_DESCRIPTOR = 0xFFFFFFFE;
+    private static final String PARTITION_NAME = "whole disk (ISO9660 : 0)";
+
+    private OutputStream outputStream = null;
+    private int chunkSize = 0;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private ExecutorService executorService = null;
+    private int maximumPendingChunks = 0;
+    private Deque<Future<Chunk>> pendingChunks = new ArrayDeque<>();
+    private List<Chunk> writtenChunks = new ArrayList<>();
+    private byte[] currentBuffer = null;
+    private int currentLength = 0;
+    private long sectorCount = 0;
+    private long dataForkLength = 0;
+    private CRC32 dataChecksum = new CRC32();
+    private CRC32 dataForkChecksum = new CRC32();
+    private boolean closed = false;
+
+    /**
+     * @param chunkSize the number of uncompressed bytes per chunk, which must be a multiple of the sector size
+     * @param compressionLevel the zlib compression level (between 1 and 9)
+     * @param threads the number of threads compressing the chunks
+     */
+    public UdifWriter(OutputStream outputStream, int chunkSize, int compressionLevel, int threads) {
+        if (chunkSize <= 0 || chunkSize % SECTOR_SIZE != 0) {
+            throw new IllegalArgumentException("Chunk size must be a positive multiple of " + SECTOR_SIZE + ": " + chunkSize);
+        } else if (compressionLevel != Deflater.DEFAULT_COMPRESSION && (compressionLevel < 1 || compressionLevel > 9)) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9: " + compressionLevel);
+        }
+        this.outputStream = outputStream;
+        this.chunkSize = chunkSize;
+        this.compressionLevel = compressionLevel;
+        this.executorService = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "macosappbundler-udif");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maximumPendingChunks = Math.max(1, threads) * 2;
+        this.currentBuffer = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.write(new byte[] { (byte)b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (this.closed) {
+            throw new IOException("UDIF writer has already been closed");
+        }
+        while (length > 0) {
+            int copyLength = Math.min(length, this.chunkSize - this.currentLength);
+            System.arraycopy(bytes, offset, this.currentBuffer, this.currentLength, copyLength);
+            this.currentLength += copyLength;
+            offset += copyLength;
+            length -= copyLength;
+            if (this.currentLength == this.chunkSize) {
+                this.submitChunk();
+            }
+        }
+    }
+
+    private void submitChunk() throws IOException {
+        int paddedLength = (this.currentLength + SECTOR_SIZE - 1) / SECTOR_SIZE * SECTOR_SIZE;
+        byte[] chunkBuffer = this.currentBuffer;
+        long chunkSector = this.sectorCount;
+        this.dataChecksum.update(chunkBuffer, 0, paddedLength);
+        this.sectorCount += paddedLength / SECTOR_SIZE;
+        this.pendingChunks.add(this.executorService.submit(() -> this.compressChunk(chunkBuffer, paddedLength, chunkSector)));
+        this.currentBuffer = new byte[this.chunkSize];
+        this.currentLength = 0;
+        while (this.pendingChunks.size() > this.maximumPendingChunks) {
+            this.writeChunk(this.pendingChunks.poll());
+        }
+    }
+
+    private Chunk compressChunk(byte[] buffer, int length, long sectorNumber) {
+        boolean zeroChunk = true;
+        for (int i = 0; i < length && zeroChunk; i++) {
+            zeroChunk = buffer[i] == 0;
+        }
+        if (zeroChunk) {
+            return new Chunk(CHUNK_TYPE_ZERO, sectorNumber, length / SECTOR_SIZE, null, 0);
+        }
+        Deflater deflater = new Deflater(this.compressionLevel);
+        try {
+            deflater.setInput(buffer, 0, length);
+            deflater.finish();
+            byte[] compressedBuffer = new byte[length];
+            int compressedLength = 0;
+            while (!deflater.finished() && compressedLength < compressedBuffer.length) {
+                compressedLength += deflater.deflate(compressedBuffer, compressedLength, compressedBuffer.length - compressedLength);
+            }
+            if (deflater.finished() && compressedLength < length) {
+                return new Chunk(CHUNK_TYPE_ZLIB, sectorNumber, length / SECTOR_SIZE, compressedBuffer, compressedLength);
+            } else {
+                return new Chunk(CHUNK_TYPE_RAW, sectorNumber, length / SECTOR_SIZE, buffer, length);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeChunk(Future<Chunk> chunkFuture) throws IOException {
+        Chunk chunk = null;
+        try {
+            chunk = chunkFuture.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot compress image chunk", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing image chunk", e);
+        }
+        Chunk previousChunk = this.writtenChunks.isEmpty() ? null : this.writtenChunks.get(this.writtenChunks.size() - 1);
+        if (chunk.type == CHUNK_TYPE_ZERO && previousChunk != null && previousChunk.type == CHUNK_TYPE_ZERO) {
+            previousChunk.sectorCount += chunk.sectorCount;
+        } else {
+            chunk.compressedOffset = this.dataForkLength;
+            if (chunk.data != null) {
+                this.outputStream.write(chunk.data, 0, chunk.dataLength);
+                this.dataForkChecksum.update(chunk.data, 0, chunk.dataLength);
+                this.dataForkLength += chunk.dataLength;
+                chunk.data = null;
+            }
+            this.writtenChunks.add(chunk);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!this.closed) {
+            this.closed = true;
+            try {
+                if (this.currentLength > 0) {
+                    this.submitChunk();
+                }
+                while (!this.pendingChunks.isEmpty()) {
+                    this.writeChunk(this.pendingChunks.poll());
+                }
+                byte[] blkxData = this.createBlkxData();
+                byte[] resourceXml = this.createResourceXml(blkxData);
+                this.outputStream.write(resourceXml);
+                this.outputStream.write(this.createKolyBlock(this.dataForkLength, resourceXml.length, blkxData));
+                this.outputStream.flush();
+            } finally {
+                this.executorService.shutdownNow();
+                this.outputStream.close();
+            }
+        }
+    }
+
+    private byte[] createBlkxData() {
+        ByteBuffer blkx = ByteBuffer.allocate(204 + 40 * (this.writtenChunks.size() + 1));
+        blkx.put("mish".getBytes(StandardCharsets.US_ASCII));
+        blkx.putInt(1);
+        blkx.putLong(0);
+        blkx.putLong(this.sectorCount);
+        blkx.putLong(0);
+        blkx.putInt(this.chunkSize / SECTOR_SIZE + 8);
+        blkx.putInt(ENTIRE_DEVICE_DESCRIPTOR);
+        blkx.put(new byte[24]);
+        UdifWriter.putChecksum(blkx, this.dataChecksum.getValue());
+        blkx.putInt(this.writtenChunks.size() + 1);
+        for (Chunk chunk : this.writtenChunks) {
+            blkx.putInt(chunk.type);
+            blkx.putInt(0);
+            blkx.putLong(chunk.sectorNumber);
+            blkx.putLong(chunk.sectorCount);
+            blkx.putLong(chunk.compressedOffset);
+            blkx.putLong(chunk.dataLength);
+        }
+        blkx.putInt(CHUNK_TYPE_TERMINATOR);
+        blkx.putInt(0);
+        blkx.putLong(this.sectorCount);
+        blkx.putLong(0);
+        blkx.putLong(this.dataForkLength);
+        blkx.putLong(0);
+        return blkx.array();
+    }
+
+    private byte[] createResourceXml(byte[] blkxData) throws IOException {
+        ByteArrayOutputStream xmlContent = new ByteArrayOutputStream();
+        Writer xmlWriter = new OutputStreamWriter(xmlContent, StandardCharsets.UTF_8);
+        PlistWriter plistWriter = new XmlPlistWriter(xmlWriter);
+        plistWriter.startDocument();
+        plistWriter.startDict();
+        plistWriter.key("resource-fork");
+        plistWriter.startDict();
+        plistWriter.key("blkx");
+        plistWriter.startArray();
+        plistWriter.startDict();
+        plistWriter.key("Attributes");
+        plistWriter.string("0x0050");
+        plistWriter.key("CFName");
+        plistWriter.string(PARTITION_NAME);
+        plistWriter.key("Data");
+        plistWriter.data(blkxData);
+        plistWriter.key("ID");
+        plistWriter.string("-1");
+        plistWriter.key("Name");
+        plistWriter.string(PARTITION_NAME);
+        plistWriter.endDict();
+        plistWriter.endArray();
+        plistWriter.endDict();
+        plistWriter.endDict();
+        plistWriter.endDocument();
+        return xmlContent.toByteArray();
+    }
+
+    private byte[] createKolyBlock(long xmlOffset, long xmlLength, byte[] blkxData) {
+        CRC32 masterChecksum = new CRC32();
+        masterChecksum.update(ByteBuffer.allocate(4).putInt((int)this.dataChecksum.getValue()).array());
+        UUID segmentId = UUID.nameUUIDFromBytes(blkxData);
+
+        ByteBuffer koly = ByteBuffer.allocate(512);
+        koly.put("koly".getBytes(StandardCharsets.US_ASCII));
+        koly.putInt(4);
+        koly.putInt(512);
+        koly.putInt(1);
+        koly.putLong(0);
+        koly.putLong(0);
+        koly.putLong(this.dataForkLength);
+        koly.putLong(0);
+        koly.putLong(0);
+        koly.putInt(1);
+        koly.putInt(1);
+        koly.putLong(segmentId.getMostSignificantBits());
+        koly.putLong(segmentId.getLeastSignificantBits());
+        UdifWriter.putChecksum(koly, this.dataForkChecksum.getValue());
+        koly.putLong(xmlOffset);
+        koly.putLong(xmlLength);
+        koly.put(new byte[120]);
+        UdifWriter.putChecksum(koly, masterChecksum.getValue());
+        koly.putInt(1);
+        koly.putLong(this.sectorCount);
+        return koly.array();
+    }
+
+    private static void putChecksum(ByteBuffer buffer, long crc32Value) {
+        buffer.putInt(CHECKSUM_TYPE_CRC32);
+        buffer.putInt(32);
+        buffer.putInt((int)crc32Value);
+        buffer.put(new byte[124]);
+    }
+
+    public long getSectorCount() {
+        return this.sectorCount;
+    }
+
+    public long getDataForkLength() {
+        return this.dataForkLength;
+    }
+
+    static class Chunk {
+
+        private int type = 0;
+        private long sectorNumber = 0;
+        private long sectorCount = 0;
+        private long compressedOffset = 0;
+        private byte[] data = null;
+        private int dataLength = 0;
+
+        Chunk(int type, long sectorNumber, long sectorCount, byte[] data, int dataLength) {
+            this.type = type;
+            this.sectorNumber = sectorNumber;
+            this.sectorCount = sectorCount;
+            this.data = data;
+            this.dataLength = dataLength;
+        }
+
+    }
+
+}
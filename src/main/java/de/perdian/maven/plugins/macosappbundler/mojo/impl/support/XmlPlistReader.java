@@ -0,0 +1,109 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads a property list in the XML format and replays its content as events to a {@link PlistWriter}. The DTD
+ * referenced by the document is never loaded.
+ */
+
+public class XmlPlistReader {
+
+    public static void read(InputStream inputStream, PlistWriter plistWriter) throws IOException {
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        try {
+            XMLStreamReader streamReader = inputFactory.createXMLStreamReader(inputStream);
+            try {
+                while (streamReader.hasNext() && streamReader.next() != XMLStreamConstants.START_ELEMENT) {
+                    // Skip the prolog including the DOCTYPE declaration
+                }
+                if (!streamReader.isStartElement() || !"plist".equals(streamReader.getLocalName())) {
+                    throw new IOException("Document is not a property list");
+                }
+                plistWriter.startDocument();
+                XmlPlistReader.readValue(streamReader, streamReader.nextTag() == XMLStreamConstants.START_ELEMENT ? streamReader.getLocalName() : null, plistWriter);
+                plistWriter.endDocument();
+            } finally {
+                streamReader.close();
+            }
+        } catch (XMLStreamException | IllegalArgumentException | DateTimeException e) {
+            throw new IOException("Cannot parse property list: " + e.getMessage(), e);
+        }
+    }
+
+    private static void readValue(XMLStreamReader streamReader, String elementName, PlistWriter plistWriter) throws IOException, XMLStreamException {
+        if (elementName == null) {
+            throw new IOException("Missing property list value at line " + streamReader.getLocation().getLineNumber());
+        }
+        switch (elementName) {
+            case "dict":
+                plistWriter.startDict();
+                while (streamReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    if (!"key".equals(streamReader.getLocalName())) {
+                        throw new IOException("Expected key inside dict at line " + streamReader.getLocation().getLineNumber());
+                    }
+                    plistWriter.key(streamReader.getElementText());
+                    XmlPlistReader.readValue(streamReader, streamReader.nextTag() == XMLStreamConstants.START_ELEMENT ? streamReader.getLocalName() : null, plistWriter);
+                }
+                plistWriter.endDict();
+                break;
+            case "array":
+                plistWriter.startArray();
+                while (streamReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    XmlPlistReader.readValue(streamReader, streamReader.getLocalName(), plistWriter);
+                }
+                plistWriter.endArray();
+                break;
+            case "string":
+                plistWriter.string(streamReader.getElementText());
+                break;
+            case "integer":
+                plistWriter.integer(Long.parseLong(streamReader.getElementText().trim()));
+                break;
+            case "real":
+                plistWriter.real(Double.parseDouble(streamReader.getElementText().trim()));
+                break;
+            case "date":
+                plistWriter.date(Instant.parse(streamReader.getElementText().trim()));
+                break;
+            case "data":
+                plistWriter.data(Base64.getMimeDecoder().decode(streamReader.getElementText()));
+                break;
+            case "true":
+            case "false":
+                plistWriter.bool("true".equals(elementName));
+                streamReader.nextTag();
+                break;
+            default:
+                throw new IOException("Unsupported property list element '" + elementName + "' at line " + streamReader.getLocation().getLineNumber());
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+
+/**
+ * Writes a property list in the XML format directly to the underlying writer, without building a document in memory
+ * first. The output uses the same layout that {@code javax.xml.transform} creates with an indentation of four spaces.
+ */
+
+public class XmlPlistWriter implements PlistWriter {
+
+    private static final String INDENTATION = "    ";
+
+    private Writer writer = null;
+    private int depth = 0;
+    private String pendingElement = null;
+
+    public XmlPlistWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void startDocument() throws IOException {
+        this.writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        this.writer.write("<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n");
+        this.writer.write("<plist version=\"1.0\">\n");
+        this.depth = 1;
+    }
+
+    @Override
+    public void endDocument() throws IOException {
+        this.writer.write("</plist>\n");
+        this.writer.flush();
+    }
+
+    @Override
+    public void startDict() throws IOException {
+        this.startContainer("dict");
+    }
+
+    @Override
+    public void endDict() throws IOException {
+        this.endContainer("dict");
+    }
+
+    @Override
+    public void startArray() throws IOException {
+        this.startContainer("array");
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        this.endContainer("array");
+    }
+
+    @Override
+    public void key(String key) throws IOException {
+        this.writeTextElement("key", key);
+    }
+
+    @Override
+    public void string(String value) throws IOException {
+        this.writeTextElement("string", value);
+    }
+
+    @Override
+    public void bool(boolean value) throws IOException {
+        this.flushPendingElement();
+        this.writeIndentation();
+        this.writer.write(value ? "<true/>\n" : "<false/>\n");
+    }
+
+    @Override
+    public void integer(long value) throws IOException {
+        this.writeTextElement("integer", String.valueOf(value));
+    }
+
+    @Override
+    public void real(double value) throws IOException {
+        this.writeTextElement("real", String.valueOf(value));
+    }
+
+    @Override
+    public void date(Instant value) throws IOException {
+        this.writeTextElement("date", value.truncatedTo(ChronoUnit.SECONDS).toString());
+    }
+
+    @Override
+    public void data(byte[] value) throws IOException {
+        this.writeTextElement("data", Base64.getEncoder().encodeToString(value));
+    }
+
+    /**
+     * The start tag of a container is only written once its first child arrives, so that an empty container can be
+     * written as a single empty element.
+     */
+    private void startContainer(String elementName) throws IOException {
+        this.flushPendingElement();
+        this.pendingElement = elementName;
+    }
+
+    private void endContainer(String elementName) throws IOException {
+        if (elementName.equals(this.pendingElement)) {
+            this.writeIndentation();
+            this.writer.write("<" + elementName + "/>\n");
+            this.pendingElement = null;
+        } else {
+            this.depth--;
+            this.writeIndentation();
+            this.writer.write("</" + elementName + ">\n");
+        }
+    }
+
+    private void flushPendingElement() throws IOException {
+        if (this.pendingElement != null) {
+            this.writeIndentation();
+            this.writer.write("<" + this.pendingElement + ">\n");
+            this.pendingElement = null;
+            this.depth++;
+        }
+    }
+
+    private void writeTextElement(String elementName, String value) throws IOException {
+        this.flushPendingElement();
+        this.writeIndentation();
+        this.writer.write('<');
+        this.writer.write(elementName);
+        this.writer.write('>');
+        this.writeEscaped(value);
+        this.writer.write("</");
+        this.writer.write(elementName);
+        this.writer.write(">\n");
+    }
+
+    private void writeIndentation() throws IOException {
+        for (int i = 0; i < this.depth; i++) {
+            this.writer.write(INDENTATION);
+        }
+    }
+
+    /**
+     * Escapes the same characters as the {@code javax.xml.transform} serializer: the markup characters, carriage
+     * returns, all other control characters except tabs and line feeds, the C1 control characters (including
+     * {@code U+0085}) and all characters outside the basic multilingual plane.
+     */
+    private void writeEscaped(String value) throws IOException {
+        int unescapedStart = 0;
+        int i = 0;
+        while (i < value.length()) {
+            int codePoint = value.codePointAt(i);
+            int codePointLength = Character.charCount(codePoint);
+            String replacement = null;
+            if (codePoint == '&') {
+                replacement = "&amp;";
+            } else if (codePoint == '<') {
+                replacement = "&lt;";
+            } else if (codePoint == '>') {
+                replacement = "&gt;";
+            } else if ((codePoint < 0x20 && codePoint != '\t' && codePoint != '\n') || (codePoint >= 0x7F && codePoint <= 0x9F) || codePointLength > 1) {
+                replacement = "&#" + codePoint + ";";
+            }
+            if (replacement != null) {
+                this.writer.write(value, unescapedStart, i - unescapedStart);
+                this.writer.write(replacement);
+                unescapedStart = i + codePointLength;
+            }
+            i += codePointLength;
+        }
+        this.writer.write(value, unescapedStart, value.length() - unescapedStart);
+    }
+
+}
@@ -32,6 +32,33 @@ public class AppConfiguration {
     @Parameter
     public String primaryArtifactClassifier;
 
+    @Parameter
+    public boolean incremental = true;
+
+    @Parameter
+    public int copyThreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter
+    public ClasspathLayout classpathLayout = ClasspathLayout.REPOSITORY;
+
+    @Parameter
+    public boolean precomputedClasspath = false;
+
+    @Parameter
+    public boolean extractNativeLibraries = false;
+
+    @Parameter
+    public boolean slimNativeBinaries = false;
+
+    @Parameter
+    public List<String> jarEntryIncludes = null;
+
+    @Parameter
+    public List<String> jarEntryExcludes = null;
+
+    @Parameter
+    public RepackConfiguration repack = new RepackConfiguration();
+
     public boolean isIncludeDependencies() {
         return this.includeDependencies;
     }
@@ -46,4 +73,67 @@ public class AppConfiguration {
 		this.primaryArtifactClassifier = primaryArtifactClassifier;
 	}
 
+    public boolean isIncremental() {
+        return this.incremental;
+    }
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public int getCopyThreads() {
+        return this.copyThreads;
+    }
+    public void setCopyThreads(int copyThreads) {
+        this.copyThreads = copyThreads;
+    }
+
+    public ClasspathLayout getClasspathLayout() {
+        return this.classpathLayout;
+    }
+    public void setClasspathLayout(ClasspathLayout classpathLayout) {
+        this.classpathLayout = classpathLayout;
+    }
+
+    public boolean isPrecomputedClasspath() {
+        return this.precomputedClasspath;
+    }
+    public void setPrecomputedClasspath(boolean precomputedClasspath) {
+        this.precomputedClasspath = precomputedClasspath;
+    }
+
+    public boolean isExtractNativeLibraries() {
+        return this.extractNativeLibraries;
+    }
+    public void setExtractNativeLibraries(boolean extractNativeLibraries) {
+        this.extractNativeLibraries = extractNativeLibraries;
+    }
+
+    public boolean isSlimNativeBinaries() {
+        return this.slimNativeBinaries;
+    }
+    public void setSlimNativeBinaries(boolean slimNativeBinaries) {
+        this.slimNativeBinaries = slimNativeBinaries;
+    }
+
+    public List<String> getJarEntryIncludes() {
+        return this.jarEntryIncludes;
+    }
+    public void setJarEntryIncludes(List<String> jarEntryIncludes) {
+        this.jarEntryIncludes = jarEntryIncludes;
+    }
+
+    public List<String> getJarEntryExcludes() {
+        return this.jarEntryExcludes;
+    }
+    public void setJarEntryExcludes(List<String> jarEntryExcludes) {
+        this.jarEntryExcludes = jarEntryExcludes;
+    }
+
+    public RepackConfiguration getRepack() {
+        return this.repack;
+    }
+    public void setRepack(RepackConfiguration repack) {
+        this.repack = repack;
+    }
+
 }
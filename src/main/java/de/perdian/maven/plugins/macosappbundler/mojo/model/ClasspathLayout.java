@@ -0,0 +1,33 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.model;
+
+public enum ClasspathLayout {
+
+    /**
+     * Store the artifacts using the directory structure of a Maven repository (e.g.
+     * {@code classpath/org/slf4j/slf4j-api/2.0.9/slf4j-api-2.0.9.jar}).
+     */
+    REPOSITORY,
+
+    /**
+     * Store all artifacts directly inside the classpath directory, using the group ID as prefix of the filename (e.g.
+     * {@code classpath/org.slf4j-slf4j-api-2.0.9.jar}).
+     */
+    FLAT;
+
+}
@@ -16,6 +16,7 @@
  */
 package de.perdian.maven.plugins.macosappbundler.mojo.model;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -35,4 +36,39 @@ public class CodesignConfiguration {
     @Parameter
     public List<String> preserveMetadata = new ArrayList<>(Arrays.asList("entitlements"));
 
+    @Parameter
+    public String executable = "codesign";
+
+    @Parameter
+    public boolean signNestedBinaries = false;
+
+    @Parameter
+    public int threads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter
+    public boolean cache = false;
+
+    @Parameter
+    public File cacheDirectory = new File(System.getProperty("user.home"), ".m2/macosappbundler-cache");
+
+    @Parameter
+    public long cacheMaximumSize = 1024;
+
+    /**
+     * @return a copy of this configuration, so that concurrently created variants don't share any state
+     */
+    public CodesignConfiguration copy() {
+        CodesignConfiguration copy = new CodesignConfiguration();
+        copy.enable = this.enable;
+        copy.identity = this.identity;
+        copy.preserveMetadata = this.preserveMetadata == null ? null : new ArrayList<>(this.preserveMetadata);
+        copy.executable = this.executable;
+        copy.signNestedBinaries = this.signNestedBinaries;
+        copy.threads = this.threads;
+        copy.cache = this.cache;
+        copy.cacheDirectory = this.cacheDirectory;
+        copy.cacheMaximumSize = this.cacheMaximumSize;
+        return copy;
+    }
+
 }
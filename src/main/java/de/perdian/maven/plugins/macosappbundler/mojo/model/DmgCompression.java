@@ -0,0 +1,32 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.model;
+
+public enum DmgCompression {
+
+    /**
+     * Don't compress the image. {@code genisoimage} and the built-in writer create a plain ISO image, {@code hdiutil}
+     * creates an uncompressed UDIF image ({@code UDRO}).
+     */
+    NONE,
+
+    /**
+     * Compress the image using zlib and store it as UDIF image ({@code UDZO}).
+     */
+    ZLIB;
+
+}
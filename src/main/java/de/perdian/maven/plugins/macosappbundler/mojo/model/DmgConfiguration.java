@@ -16,6 +16,7 @@
  */
 package de.perdian.maven.plugins.macosappbundler.mojo.model;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.maven.plugins.annotations.Parameter;
@@ -35,6 +36,24 @@ public class DmgConfiguration {
     @Parameter
     public boolean useGenIsoImage = false;
 
+    @Parameter
+    public boolean useBuiltInWriter = false;
+
+    @Parameter
+    public DmgStaging staging = DmgStaging.LINK;
+
+    @Parameter
+    public DmgCompression compression = null;
+
+    @Parameter
+    public int compressionLevel = 6;
+
+    @Parameter
+    public int compressionChunkSize = 1024 * 1024;
+
+    @Parameter
+    public int compressionThreads = Runtime.getRuntime().availableProcessors();
+
     @Parameter
     public boolean autoFallback = false;
 
@@ -44,4 +63,25 @@ public class DmgConfiguration {
     @Parameter
     public String dmgFileName = null;
 
+    /**
+     * @return a copy of this configuration, so that concurrently created variants don't share any state
+     */
+    public DmgConfiguration copy() {
+        DmgConfiguration copy = new DmgConfiguration();
+        copy.generate = this.generate;
+        copy.additionalResources = this.additionalResources == null ? null : new ArrayList<>(this.additionalResources);
+        copy.createApplicationsSymlink = this.createApplicationsSymlink;
+        copy.useGenIsoImage = this.useGenIsoImage;
+        copy.useBuiltInWriter = this.useBuiltInWriter;
+        copy.staging = this.staging;
+        copy.compression = this.compression;
+        copy.compressionLevel = this.compressionLevel;
+        copy.compressionChunkSize = this.compressionChunkSize;
+        copy.compressionThreads = this.compressionThreads;
+        copy.autoFallback = this.autoFallback;
+        copy.appendVersion = this.appendVersion;
+        copy.dmgFileName = this.dmgFileName;
+        return copy;
+    }
+
 }
@@ -0,0 +1,38 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.model;
+
+public enum DmgStaging {
+
+    /**
+     * Copy all files of the app into the staging directory from which the DMG is created.
+     */
+    COPY,
+
+    /**
+     * Clone or hard link the files of the app into the staging directory, falling back to a copy if neither is
+     * possible.
+     */
+    LINK,
+
+    /**
+     * Don't stage the app at all but let {@code genisoimage} read the app directory directly using a graft point.
+     * When the DMG is created using {@code hdiutil} the app is staged using links instead.
+     */
+    GRAFT;
+
+}
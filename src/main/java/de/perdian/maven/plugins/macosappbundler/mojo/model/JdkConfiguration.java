@@ -16,6 +16,8 @@
  */
 package de.perdian.maven.plugins.macosappbundler.mojo.model;
 
+import java.io.File;
+
 import org.apache.maven.plugins.annotations.Parameter;
 
 public class JdkConfiguration {
@@ -26,4 +28,16 @@ public class JdkConfiguration {
     @Parameter
     public String location = null;
 
+    @Parameter
+    public boolean cache = false;
+
+    @Parameter
+    public File cacheDirectory = new File(System.getProperty("user.home"), ".m2/macosappbundler-cache");
+
+    @Parameter
+    public long cacheMaximumSize = 2048;
+
+    @Parameter
+    public JlinkConfiguration jlink = new JlinkConfiguration();
+
 }
@@ -0,0 +1,42 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.model;
+
+public enum LinkStrategy {
+
+    /**
+     * Always create a full copy of the source file.
+     */
+    COPY,
+
+    /**
+     * Create a hard link to the source file if source and target are located on the same filesystem.
+     */
+    HARDLINK,
+
+    /**
+     * Create a copy-on-write clone of the source file if source and target are located on the same filesystem and the
+     * filesystem supports cloning (APFS on macOS, Btrfs or XFS on Linux).
+     */
+    REFLINK,
+
+    /**
+     * Try to create a clone first, then a hard link and finally fall back to a full copy.
+     */
+    AUTO;
+
+}
@@ -16,16 +16,23 @@
  */
 package de.perdian.maven.plugins.macosappbundler.mojo.model;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
 public enum NativeBinaryType {
 
-    UNIVERSAL("JavaLauncher"),
-    X86_64("JavaLauncher.x86_64"),
-    ARM_64("JavaLauncher.arm64");
+    UNIVERSAL("JavaLauncher", "x86_64", "arm64"),
+    X86_64("JavaLauncher.x86_64", "x86_64"),
+    ARM_64("JavaLauncher.arm64", "arm64");
 
     private String filename = null;
+    private Set<String> architectures = null;
 
-    private NativeBinaryType(String filename) {
+    private NativeBinaryType(String filename, String... architectures) {
         this.setFilename(filename);
+        this.setArchitectures(Collections.unmodifiableSet(new TreeSet<>(Arrays.asList(architectures))));
     }
 
     public String getFilename() {
@@ -35,4 +42,14 @@ public enum NativeBinaryType {
         this.filename = filename;
     }
 
+    /**
+     * @return the names of the architectures (as used by Mach-O tools like {@code lipo}) the app is built for
+     */
+    public Set<String> getArchitectures() {
+        return this.architectures;
+    }
+    private void setArchitectures(Set<String> architectures) {
+        this.architectures = architectures;
+    }
+
 }
@@ -17,21 +17,17 @@
  */
 package de.perdian.maven.plugins.macosappbundler.mojo.model;
 
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.PlistWriter;
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.XmlPlistWriter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+
+import java.io.IOException;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 public class PlistConfiguration {
 
@@ -110,126 +106,135 @@ public class PlistConfiguration {
     @Parameter
     public String NSAppleMusicUsageDescription = null;
 
-    public String toXmlString(Map<String, String> additionalValues) throws Exception {
-
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer = transformerFactory.newTransformer();
-        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+    /**
+     * @return a copy of this configuration, so that concurrently created variants don't share any state
+     */
+    public PlistConfiguration copy() {
+        PlistConfiguration copy = new PlistConfiguration();
+        copy.CFBundleIconFile = this.CFBundleIconFile;
+        copy.CFBundleIdentifier = this.CFBundleIdentifier;
+        copy.CFBundleDisplayName = this.CFBundleDisplayName;
+        copy.CFBundleName = this.CFBundleName;
+        copy.CFBundleShortVersionString = this.CFBundleShortVersionString;
+        copy.CFBundleExecutable = this.CFBundleExecutable;
+        copy.CFBundleDocumentTypes = this.CFBundleDocumentTypes == null ? null : new ArrayList<>(this.CFBundleDocumentTypes);
+        copy.CFBundleURLTypes = this.CFBundleURLTypes == null ? null : new ArrayList<>(this.CFBundleURLTypes);
+        copy.CFBundleDevelopmentRegion = this.CFBundleDevelopmentRegion;
+        copy.CFBundlePackageType = this.CFBundlePackageType;
+        copy.JVMVersion = this.JVMVersion;
+        copy.JVMMainClassName = this.JVMMainClassName;
+        copy.JVMMainModuleName = this.JVMMainModuleName;
+        copy.JVMOptions = this.JVMOptions == null ? null : new ArrayList<>(this.JVMOptions);
+        copy.JVMArguments = this.JVMArguments == null ? null : new ArrayList<>(this.JVMArguments);
+        copy.JVMRuntimePath = this.JVMRuntimePath;
+        copy.JVMLogLevel = this.JVMLogLevel;
+        copy.NSHighResolutionCapable = this.NSHighResolutionCapable;
+        copy.LSUIElement = this.LSUIElement;
+        copy.NSSupportsAutomaticGraphicsSwitching = this.NSSupportsAutomaticGraphicsSwitching;
+        copy.NSMicrophoneUsageDescription = this.NSMicrophoneUsageDescription;
+        copy.NSCameraUsageDescription = this.NSCameraUsageDescription;
+        copy.NSHumanReadableCopyright = this.NSHumanReadableCopyright;
+        copy.NSAppSleepDisabled = this.NSAppSleepDisabled;
+        copy.NSAppleMusicUsageDescription = this.NSAppleMusicUsageDescription;
+        return copy;
+    }
 
+    public String toXmlString(Map<String, ?> additionalValues) throws IOException {
         StringWriter writer = new StringWriter();
-        writer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-        writer.append("<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n");
-        transformer.transform(new DOMSource(this.toXmlDocument(additionalValues)), new StreamResult(writer));
+        this.write(new XmlPlistWriter(writer), additionalValues);
         return writer.toString();
-
     }
 
-    private Document toXmlDocument(Map<String, String> additionalValues) throws Exception {
-        DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        Document document = documentBuilder.newDocument();
-        document.appendChild(document.getImplementation().createDocumentType("plist", "-//Apple//DTD PLIST 1.0//EN", "http://www.apple.com/DTDs/PropertyList-1.0.dtd"));
-        Element dictElement = document.createElement("dict");
-        this.appendKeyWithString(dictElement, document, "CFBundleDisplayName", this.CFBundleDisplayName);
-        this.appendKeyWithString(dictElement, document, "CFBundleExecutable", this.CFBundleExecutable);
-        this.appendKeyWithString(dictElement, document, "CFBundleIdentifier", this.CFBundleIdentifier);
-        this.appendKeyWithString(dictElement, document, "CFBundleName", this.CFBundleName);
-        this.appendKeyWithString(dictElement, document, "CFBundleShortVersionString", this.CFBundleShortVersionString);
-        this.appendKeyWithString(dictElement, document, "CFBundleDevelopmentRegion", this.CFBundleDevelopmentRegion);
-        this.appendKeyWithString(dictElement, document, "CFBundlePackageType", this.CFBundlePackageType);
-        this.appendCFBundleDocumentTypes(dictElement, document, this.CFBundleDocumentTypes);
-        this.appendCFBundleURLTypes(dictElement, document, this.CFBundleURLTypes);
-        this.appendKeyWithArrayOfStrings(dictElement, document, "JVMArguments", this.JVMArguments);
-        this.appendKeyWithString(dictElement, document, "JVMMainClassName", this.JVMMainClassName);
-        this.appendKeyWithString(dictElement, document, "JVMMainModuleName", this.JVMMainModuleName);
-        this.appendKeyWithArrayOfStrings(dictElement, document, "JVMOptions", this.JVMOptions);
-        this.appendKeyWithString(dictElement, document, "JVMRuntimePath", this.JVMRuntimePath);
-        this.appendKeyWithString(dictElement, document, "JVMVersion", this.JVMVersion);
-        this.appendKeyWithString(dictElement, document, "JVMLogLevel", this.JVMLogLevel);
-        this.appendKeyWithBoolean(dictElement, document, "NSHighResolutionCapable", this.NSHighResolutionCapable);
-        this.appendKeyWithString(dictElement, document, "LSUIElement", this.LSUIElement == null ? null : this.LSUIElement.toString());
-        this.appendKeyWithBoolean(dictElement, document, "NSSupportsAutomaticGraphicsSwitching", this.NSSupportsAutomaticGraphicsSwitching);
-        this.appendKeyWithString(dictElement, document, "NSMicrophoneUsageDescription", this.NSMicrophoneUsageDescription);
-        this.appendKeyWithString(dictElement, document, "NSCameraUsageDescription", this.NSCameraUsageDescription);
-        this.appendKeyWithString(dictElement, document, "NSHumanReadableCopyright", this.NSHumanReadableCopyright);
-        this.appendKeyWithBoolean(dictElement, document, "NSAppSleepDisabled", this.NSAppSleepDisabled);
-        this.appendKeyWithString(dictElement, document, "NSAppleMusicUsageDescription", this.NSAppleMusicUsageDescription);
-        for (Map.Entry<String, String> additionalValue : additionalValues.entrySet()) {
-            this.appendKeyWithString(dictElement, document, additionalValue.getKey(), additionalValue.getValue());
+    public void write(PlistWriter writer, Map<String, ?> additionalValues) throws IOException {
+        writer.startDocument();
+        writer.startDict();
+        this.appendKeyWithString(writer, "CFBundleDisplayName", this.CFBundleDisplayName);
+        this.appendKeyWithString(writer, "CFBundleExecutable", this.CFBundleExecutable);
+        this.appendKeyWithString(writer, "CFBundleIdentifier", this.CFBundleIdentifier);
+        this.appendKeyWithString(writer, "CFBundleName", this.CFBundleName);
+        this.appendKeyWithString(writer, "CFBundleShortVersionString", this.CFBundleShortVersionString);
+        this.appendKeyWithString(writer, "CFBundleDevelopmentRegion", this.CFBundleDevelopmentRegion);
+        this.appendKeyWithString(writer, "CFBundlePackageType", this.CFBundlePackageType);
+        this.appendCFBundleDocumentTypes(writer, this.CFBundleDocumentTypes);
+        this.appendCFBundleURLTypes(writer, this.CFBundleURLTypes);
+        this.appendKeyWithArrayOfStrings(writer, "JVMArguments", this.JVMArguments);
+        this.appendKeyWithString(writer, "JVMMainClassName", this.JVMMainClassName);
+        this.appendKeyWithString(writer, "JVMMainModuleName", this.JVMMainModuleName);
+        this.appendKeyWithArrayOfStrings(writer, "JVMOptions", this.JVMOptions);
+        this.appendKeyWithString(writer, "JVMRuntimePath", this.JVMRuntimePath);
+        this.appendKeyWithString(writer, "JVMVersion", this.JVMVersion);
+        this.appendKeyWithString(writer, "JVMLogLevel", this.JVMLogLevel);
+        this.appendKeyWithBoolean(writer, "NSHighResolutionCapable", this.NSHighResolutionCapable);
+        this.appendKeyWithString(writer, "LSUIElement", this.LSUIElement == null ? null : this.LSUIElement.toString());
+        this.appendKeyWithBoolean(writer, "NSSupportsAutomaticGraphicsSwitching", this.NSSupportsAutomaticGraphicsSwitching);
+        this.appendKeyWithString(writer, "NSMicrophoneUsageDescription", this.NSMicrophoneUsageDescription);
+        this.appendKeyWithString(writer, "NSCameraUsageDescription", this.NSCameraUsageDescription);
+        this.appendKeyWithString(writer, "NSHumanReadableCopyright", this.NSHumanReadableCopyright);
+        this.appendKeyWithBoolean(writer, "NSAppSleepDisabled", this.NSAppSleepDisabled);
+        this.appendKeyWithString(writer, "NSAppleMusicUsageDescription", this.NSAppleMusicUsageDescription);
+        for (Map.Entry<String, ?> additionalValue : additionalValues.entrySet()) {
+            if (additionalValue.getValue() instanceof List) {
+                List<String> additionalValueItems = ((List<?>) additionalValue.getValue()).stream().map(String::valueOf).collect(Collectors.toList());
+                this.appendKeyWithArrayOfStrings(writer, additionalValue.getKey(), additionalValueItems);
+            } else if (additionalValue.getValue() != null) {
+                this.appendKeyWithString(writer, additionalValue.getKey(), additionalValue.getValue().toString());
+            }
         }
-        Element plistElement = document.createElement("plist");
-        plistElement.setAttribute("version", "1.0");
-        plistElement.appendChild(dictElement);
-        document.appendChild(plistElement);
-        return document;
+        writer.endDict();
+        writer.endDocument();
     }
 
-    private void appendKeyWithString(Element dictElement, Document document, String key, String value) {
+    private void appendKeyWithString(PlistWriter writer, String key, String value) throws IOException {
         if (StringUtils.isNotEmpty(value)) {
-            Element keyElement = document.createElement("key");
-            keyElement.setTextContent(key);
-            dictElement.appendChild(keyElement);
-            Element stringElement = document.createElement("string");
-            stringElement.setTextContent(value);
-            dictElement.appendChild(stringElement);
+            writer.key(key);
+            writer.string(value);
         }
     }
 
-    private void appendKeyWithArrayOfStrings(Element dictElement, Document document, String key, List<String> value) {
+    private void appendKeyWithArrayOfStrings(PlistWriter writer, String key, List<String> value) throws IOException {
         if (value != null && !value.isEmpty()) {
-            Element keyElement = document.createElement("key");
-            keyElement.setTextContent(key);
-            dictElement.appendChild(keyElement);
-            Element arrayElement = document.createElement("array");
+            writer.key(key);
+            writer.startArray();
             for (String valueItem : value) {
                 if (!StringUtils.isEmpty(valueItem)) {
-                    Element stringElement = document.createElement("string");
-                    stringElement.setTextContent(valueItem);
-                    arrayElement.appendChild(stringElement);
+                    writer.string(valueItem);
                 }
             }
-            dictElement.appendChild(arrayElement);
+            writer.endArray();
         }
     }
 
-    private void appendKeyWithBoolean(Element dictElement, Document document, String key, Boolean value) {
+    private void appendKeyWithBoolean(PlistWriter writer, String key, Boolean value) throws IOException {
         if (value != null) {
-            Element keyElement = document.createElement("key");
-            keyElement.setTextContent(key);
-            dictElement.appendChild(keyElement);
-            dictElement.appendChild(document.createElement(value.toString()));
+            writer.key(key);
+            writer.bool(value);
         }
     }
 
-    private void appendCFBundleURLTypes(Element dictElement, Document document, List<String> value) {
+    private void appendCFBundleURLTypes(PlistWriter writer, List<String> value) throws IOException {
         if (value != null && !value.isEmpty()) {
-            Element keyElement = document.createElement("key");
-            keyElement.setTextContent("CFBundleURLTypes");
-            dictElement.appendChild(keyElement);
-            Element arrayElement = document.createElement("array");
-            Element arrayDictElement = document.createElement("dict");
-            this.appendKeyWithArrayOfStrings(arrayDictElement, document, "CFBundleURLSchemes", value);
-            arrayElement.appendChild(arrayDictElement);
-            dictElement.appendChild(arrayElement);
+            writer.key("CFBundleURLTypes");
+            writer.startArray();
+            writer.startDict();
+            this.appendKeyWithArrayOfStrings(writer, "CFBundleURLSchemes", value);
+            writer.endDict();
+            writer.endArray();
         }
     }
 
-    private void appendCFBundleDocumentTypes(Element dictElement, Document document, List<CFBundleDocumentTypesConfiguration> value) {
+    private void appendCFBundleDocumentTypes(PlistWriter writer, List<CFBundleDocumentTypesConfiguration> value) throws IOException {
         if (value != null && !value.isEmpty()) {
-            Element keyElement = document.createElement("key");
-            keyElement.setTextContent("CFBundleDocumentTypes");
-            dictElement.appendChild(keyElement);
-            Element arrayElement = document.createElement("array");
+            writer.key("CFBundleDocumentTypes");
+            writer.startArray();
             for (CFBundleDocumentTypesConfiguration valueItem : value) {
-                Element itemDictElement = document.createElement("dict");
-                this.appendKeyWithArrayOfStrings(itemDictElement, document, "CFBundleTypeExtensions", valueItem.CFBundleTypeExtensions);
-                this.appendKeyWithString(itemDictElement, document, "CFBundleTypeName", valueItem.CFBundleTypeName);
-                this.appendKeyWithArrayOfStrings(itemDictElement, document, "CFBundleTypeOSTypes", valueItem.CFBundleTypeOSTypes);
-                this.appendKeyWithString(itemDictElement, document, "CFBundleTypeRole", valueItem.CFBundleTypeRole);
-                arrayElement.appendChild(itemDictElement);
+                writer.startDict();
+                this.appendKeyWithArrayOfStrings(writer, "CFBundleTypeExtensions", valueItem.CFBundleTypeExtensions);
+                this.appendKeyWithString(writer, "CFBundleTypeName", valueItem.CFBundleTypeName);
+                this.appendKeyWithArrayOfStrings(writer, "CFBundleTypeOSTypes", valueItem.CFBundleTypeOSTypes);
+                this.appendKeyWithString(writer, "CFBundleTypeRole", valueItem.CFBundleTypeRole);
+                writer.endDict();
             }
-            dictElement.appendChild(arrayElement);
+            writer.endArray();
         }
     }
 
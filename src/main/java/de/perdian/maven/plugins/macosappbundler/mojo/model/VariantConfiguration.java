@@ -0,0 +1,43 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.model;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+public class VariantConfiguration {
+
+    @Parameter
+    public String name = null;
+
+    @Parameter(required = true)
+    public NativeBinaryType nativeBinary = null;
+
+    @Parameter
+    public boolean slimNativeBinaries = true;
+
+    /**
+     * @return the configured name or the architectures of the native binary type if no name has been configured
+     */
+    public String getName() {
+        if (this.name != null && !this.name.isEmpty()) {
+            return this.name;
+        } else {
+            return String.join("-", this.nativeBinary.getArchitectures());
+        }
+    }
+
+}
@@ -56,7 +56,7 @@
     if ([mainClassName length] <= 0) {
         @throw [NSException exceptionWithName:@"InvalidApplicationConfigurationException" reason:@"Invalid application configuration" userInfo:@{@"description": @"No JVMMainClassName value has been defined in the Info.plist file.\nA main class is required for a classpath based application."}];
     } else {
-        NSString *classpath = [self createClasspathValue:classpathDirectory];
+        NSString *classpath = [self createClasspathValue:classpathDirectory dictionary:dictionary];
         log_trace(@"Appending classpath application arguments");
         log_debug(@"Computed classpath directory: %@", classpathDirectory);
         log_info(@"Computed main class name: %@", mainClassName);
@@ -66,8 +66,22 @@
     }
 }
 
-+(NSString*)createClasspathValue:(NSString*)classpathDirectory {
-    return [self appendDirectoryToClasspath:classpathDirectory target:[NSMutableString string]];
++(NSString*)createClasspathValue:(NSString*)classpathDirectory dictionary:(NSDictionary*)dictionary {
+    NSArray* classpathEntries = [dictionary valueForKey:@"JVMClasspath"];
+    if (classpathEntries != nil && [classpathEntries count] > 0) {
+        log_debug(@"Using precomputed classpath from Info.plist");
+        NSString *javaDirectory = [classpathDirectory stringByDeletingLastPathComponent];
+        NSMutableString *classpath = [NSMutableString string];
+        for (id classpathEntry in classpathEntries) {
+            if ([classpath length] > 0) {
+                [classpath appendString:@":"];
+            }
+            [classpath appendString:[javaDirectory stringByAppendingPathComponent:classpathEntry]];
+        }
+        return classpath;
+    } else {
+        return [self appendDirectoryToClasspath:classpathDirectory target:[NSMutableString string]];
+    }
 }
 
 +(NSMutableString*)appendDirectoryToClasspath:(NSString*)directory target:(NSMutableString*)classpath {
@@ -0,0 +1,111 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.model.AppCdsConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.PlistConfiguration;
+
+public class AppCdsGeneratorTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void generateArchive() throws Exception {
+        Assumptions.assumeTrue(Integer.parseInt(System.getProperty("java.specification.version")) >= 13, "Dynamic CDS archives require Java 13 or later");
+
+        File appDirectory = this.temporaryDirectory.resolve("Test.app").toFile();
+        File jarFile = new File(appDirectory, "Contents/Java/classpath/hello.jar");
+        AppCdsGeneratorTest.createHelloJar(this.temporaryDirectory.resolve("src"), jarFile);
+
+        AppCdsConfiguration appCdsConfiguration = new AppCdsConfiguration();
+        appCdsConfiguration.enable = true;
+        PlistConfiguration plistConfiguration = new PlistConfiguration();
+        plistConfiguration.JVMMainClassName = "Hello";
+
+        AppCdsGenerator appCdsGenerator = new AppCdsGenerator(appCdsConfiguration, plistConfiguration, new SystemStreamLog());
+        appCdsGenerator.setClasspathEntries(Collections.singletonList("classpath/hello.jar"));
+        File archiveFile = appCdsGenerator.generateArchive(appDirectory, this.temporaryDirectory.resolve("work").toFile());
+        MatcherAssert.assertThat(archiveFile.exists(), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(appCdsGenerator.generateArchive(appDirectory, this.temporaryDirectory.resolve("work").toFile()), IsEqual.equalTo(archiveFile));
+
+        // With -Xshare:on the JVM refuses to start if the archive cannot be used
+        File outputFile = this.temporaryDirectory.resolve("output.txt").toFile();
+        ProcessBuilder processBuilder = new ProcessBuilder(Arrays.asList(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath(), "-XX:SharedArchiveFile=" + archiveFile.getAbsolutePath(), "-Xshare:on", "-classpath", jarFile.getAbsolutePath(), "Hello"));
+        processBuilder.directory(appDirectory);
+        processBuilder.redirectErrorStream(true);
+        processBuilder.redirectOutput(outputFile);
+        Process process = processBuilder.start();
+        MatcherAssert.assertThat(process.waitFor(60, TimeUnit.SECONDS), IsEqual.equalTo(true));
+        String output = new String(Files.readAllBytes(outputFile.toPath()), StandardCharsets.UTF_8);
+        MatcherAssert.assertThat(output, process.exitValue(), IsEqual.equalTo(0));
+        MatcherAssert.assertThat(output.trim(), IsEqual.equalTo("Hello"));
+    }
+
+    @Test
+    void generateArchiveRequiresClasspathEntries() throws Exception {
+        File appDirectory = this.temporaryDirectory.resolve("Test.app").toFile();
+        AppGeneratorTest.createJar(appDirectory.toPath().resolve("Contents/Java/classpath/hello.jar"));
+        AppCdsConfiguration appCdsConfiguration = new AppCdsConfiguration();
+        appCdsConfiguration.enable = true;
+        PlistConfiguration plistConfiguration = new PlistConfiguration();
+        plistConfiguration.JVMMainClassName = "Hello";
+
+        // Without the classpath stored inside the Info.plist file the launcher lists the directory in any order
+        AppCdsGenerator appCdsGenerator = new AppCdsGenerator(appCdsConfiguration, plistConfiguration, new SystemStreamLog());
+        MojoExecutionException exception = Assertions.assertThrows(MojoExecutionException.class, () -> appCdsGenerator.generateArchive(appDirectory, this.temporaryDirectory.resolve("work").toFile()));
+        MatcherAssert.assertThat(exception.getMessage().contains("JVMClasspath"), IsEqual.equalTo(true));
+    }
+
+    static void createHelloJar(Path sourceDirectory, File jarFile) throws IOException {
+        Files.createDirectories(sourceDirectory);
+        Path sourceFile = sourceDirectory.resolve("Hello.java");
+        Files.write(sourceFile, "public class Hello { public static void main(String[] args) { System.out.println(\"Hello\"); } }".getBytes(StandardCharsets.UTF_8));
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        MatcherAssert.assertThat(compiler.run(null, null, null, sourceFile.toString()), IsEqual.equalTo(0));
+        jarFile.getParentFile().mkdirs();
+        try (JarOutputStream jarStream = new JarOutputStream(Files.newOutputStream(jarFile.toPath()))) {
+            jarStream.putNextEntry(new JarEntry("Hello.class"));
+            Files.copy(sourceDirectory.resolve("Hello.class"), jarStream);
+            jarStream.closeEntry();
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.model.Build;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.model.fileset.FileSet;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.model.AppCdsConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.AppConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.PlistConfiguration;
+
+public class AppGeneratorTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void precomputedClasspathWithAdditionalResources() throws Exception {
+        MavenProject project = this.createProject();
+        Path resourcesDirectory = Files.createDirectories(this.temporaryDirectory.resolve("resources/Contents/Java/classpath/extra"));
+        AppGeneratorTest.createJar(resourcesDirectory.resolve("extra.jar"));
+        FileSet fileSet = new FileSet();
+        fileSet.setDirectory(this.temporaryDirectory.resolve("resources").toString());
+
+        AppConfiguration appConfiguration = new AppConfiguration();
+        appConfiguration.precomputedClasspath = true;
+        appConfiguration.additionalResources = Collections.singletonList(fileSet);
+        PlistConfiguration plistConfiguration = new PlistConfiguration();
+        plistConfiguration.JVMMainClassName = "test.Main";
+
+        File appDirectory = this.temporaryDirectory.resolve("target/Test.app").toFile();
+        AppGenerator appGenerator = new AppGenerator(plistConfiguration, appConfiguration, new SystemStreamLog());
+        appGenerator.generateApp(project, appDirectory);
+
+        // Completing the classpath rewrites the Info.plist file without running the stage again
+        MatcherAssert.assertThat(appGenerator.getBuildMetrics().getStages().stream().filter(stage -> "generatePlist".equals(stage.getName())).count(), IsEqual.equalTo(1L));
+        String plistContent = new String(Files.readAllBytes(appDirectory.toPath().resolve("Contents/Info.plist")), StandardCharsets.UTF_8);
+        int primaryIndex = plistContent.indexOf("<string>classpath/test/primary/1.0/primary-1.0.jar</string>");
+        int dependencyIndex = plistContent.indexOf("<string>classpath/test/dependency/1.0/dependency-1.0.jar</string>");
+        int extraIndex = plistContent.indexOf("<string>classpath/extra/extra.jar</string>");
+        MatcherAssert.assertThat(plistContent, plistContent.contains("<key>JVMClasspath</key>"), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(plistContent, primaryIndex > -1 && primaryIndex < dependencyIndex && dependencyIndex < extraIndex, IsEqual.equalTo(true));
+    }
+
+    @Test
+    void scannedClasspathByDefault() throws Exception {
+        PlistConfiguration plistConfiguration = new PlistConfiguration();
+        plistConfiguration.JVMMainClassName = "test.Main";
+
+        File appDirectory = this.temporaryDirectory.resolve("target/Test.app").toFile();
+        new AppGenerator(plistConfiguration, new AppConfiguration(), new SystemStreamLog()).generateApp(this.createProject(), appDirectory);
+
+        String plistContent = new String(Files.readAllBytes(appDirectory.toPath().resolve("Contents/Info.plist")), StandardCharsets.UTF_8);
+        MatcherAssert.assertThat(plistContent.contains("<key>JVMClasspath</key>"), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(new File(appDirectory, "Contents/Java/classpath/test/dependency/1.0/dependency-1.0.jar").exists(), IsEqual.equalTo(true));
+    }
+
+    @Test
+    void appCdsUsesPrecomputedClasspath() throws Exception {
+        Assumptions.assumeTrue(Integer.parseInt(System.getProperty("java.specification.version")) >= 13, "Dynamic CDS archives require Java 13 or later");
+        MavenProject project = this.createProject();
+        AppCdsGeneratorTest.createHelloJar(this.temporaryDirectory.resolve("src"), project.getArtifact().getFile());
+
+        AppCdsConfiguration appCdsConfiguration = new AppCdsConfiguration();
+        appCdsConfiguration.enable = true;
+        PlistConfiguration plistConfiguration = new PlistConfiguration();
+        plistConfiguration.JVMMainClassName = "Hello";
+        File appDirectory = this.temporaryDirectory.resolve("target/Test.app").toFile();
+        AppGenerator appGenerator = new AppGenerator(plistConfiguration, new AppConfiguration(), new SystemStreamLog());
+        appGenerator.setAppCdsConfiguration(appCdsConfiguration);
+        appGenerator.generateApp(project, appDirectory);
+
+        // The launcher passes the JVMClasspath in the stored order, which differs from the alphabetical order here
+        String plistContent = new String(Files.readAllBytes(appDirectory.toPath().resolve("Contents/Info.plist")), StandardCharsets.UTF_8);
+        Matcher classpathMatcher = Pattern.compile("<key>JVMClasspath</key>\\s*<array>(.*?)</array>", Pattern.DOTALL).matcher(plistContent);
+        MatcherAssert.assertThat(plistContent, classpathMatcher.find(), IsEqual.equalTo(true));
+        List<String> classpathEntries = new ArrayList<>();
+        for (Matcher entryMatcher = Pattern.compile("<string>(.*?)</string>").matcher(classpathMatcher.group(1)); entryMatcher.find(); ) {
+            classpathEntries.add(entryMatcher.group(1));
+        }
+        MatcherAssert.assertThat(classpathEntries, IsEqual.equalTo(Arrays.asList("classpath/test/primary/1.0/primary-1.0.jar", "classpath/test/dependency/1.0/dependency-1.0.jar")));
+
+        // With -Xshare:on the JVM refuses to start if the classpath of the training run isn't a prefix of the classpath
+        String classpath = classpathEntries.stream().map(classpathEntry -> new File(appDirectory, "Contents/Java/" + classpathEntry).getAbsolutePath()).collect(Collectors.joining(File.pathSeparator));
+        File archiveFile = new File(appDirectory, "Contents/Java/" + appCdsConfiguration.archiveFileName);
+        ProcessBuilder processBuilder = new ProcessBuilder(Arrays.asList(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath(), "-XX:SharedArchiveFile=" + archiveFile.getAbsolutePath(), "-Xshare:on", "-classpath", classpath, "Hello"));
+        processBuilder.redirectErrorStream(true);
+        Process process = processBuilder.start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        MatcherAssert.assertThat(process.waitFor(60, TimeUnit.SECONDS), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(output, process.exitValue(), IsEqual.equalTo(0));
+    }
+
+    private MavenProject createProject() throws IOException {
+        Build build = new Build();
+        build.setDirectory(this.temporaryDirectory.resolve("target").toString());
+        MavenProject project = new MavenProject();
+        project.setBuild(build);
+        project.setFile(this.temporaryDirectory.resolve("pom.xml").toFile());
+        project.setArtifact(this.createArtifact("primary"));
+        Set<Artifact> artifacts = new LinkedHashSet<>();
+        artifacts.add(this.createArtifact("dependency"));
+        project.setArtifacts(artifacts);
+        return project;
+    }
+
+    private Artifact createArtifact(String artifactId) throws IOException {
+        Path artifactFile = this.temporaryDirectory.resolve("repository/" + artifactId + ".jar");
+        AppGeneratorTest.createJar(artifactFile);
+        DefaultArtifact artifact = new DefaultArtifact("test", artifactId, "1.0", Artifact.SCOPE_RUNTIME, "jar", null, new DefaultArtifactHandler("jar"));
+        artifact.setFile(artifactFile.toFile());
+        return artifact;
+    }
+
+    static void createJar(Path jarFile) throws IOException {
+        Files.createDirectories(jarFile.getParent());
+        try (JarOutputStream jarStream = new JarOutputStream(Files.newOutputStream(jarFile))) {
+            jarStream.putNextEntry(new JarEntry("test/" + jarFile.getFileName() + ".txt"));
+            jarStream.write(jarFile.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+            jarStream.closeEntry();
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.model.fileset.FileSet;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.BuildMetrics;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.DmgConfiguration;
+
+public class DmgGeneratorTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void additionalResourcesCopiedIncrementally() throws Exception {
+        Path appDirectory = Files.createDirectories(this.temporaryDirectory.resolve("Test.app/Contents"));
+        Files.write(appDirectory.resolve("Info.plist"), "plist".getBytes(StandardCharsets.UTF_8));
+        Path resourcesDirectory = Files.createDirectories(this.temporaryDirectory.resolve("resources"));
+        Files.write(resourcesDirectory.resolve("readme.txt"), "readme".getBytes(StandardCharsets.UTF_8));
+        FileSet fileSet = new FileSet();
+        fileSet.setDirectory(resourcesDirectory.toString());
+
+        DmgConfiguration dmgConfiguration = new DmgConfiguration();
+        dmgConfiguration.useBuiltInWriter = true;
+        dmgConfiguration.createApplicationsSymlink = false;
+        dmgConfiguration.additionalResources = Collections.singletonList(fileSet);
+        File bundleDirectory = this.temporaryDirectory.resolve("bundle").toFile();
+        File workDirectory = this.temporaryDirectory.resolve("work").toFile();
+
+        BuildMetrics firstMetrics = this.generateDmg(dmgConfiguration, bundleDirectory, workDirectory);
+        MatcherAssert.assertThat(Files.readAllLines(bundleDirectory.toPath().resolve("readme.txt")).get(0), IsEqual.equalTo("readme"));
+        MatcherAssert.assertThat(this.findStage(firstMetrics, "copyAdditionalDmgResources").getFileCount(), IsEqual.equalTo(1));
+
+        // The bundle directory is removed after each build, but the resources are kept inside the work directory
+        FileUtils.deleteDirectory(bundleDirectory);
+        BuildMetrics secondMetrics = this.generateDmg(dmgConfiguration, bundleDirectory, workDirectory);
+        MatcherAssert.assertThat(Files.readAllLines(bundleDirectory.toPath().resolve("readme.txt")).get(0), IsEqual.equalTo("readme"));
+        MatcherAssert.assertThat(this.findStage(secondMetrics, "copyAdditionalDmgResources").getFileCount(), IsEqual.equalTo(0));
+
+        Files.delete(resourcesDirectory.resolve("readme.txt"));
+        FileUtils.deleteDirectory(bundleDirectory);
+        this.generateDmg(dmgConfiguration, bundleDirectory, workDirectory);
+        MatcherAssert.assertThat(Files.exists(bundleDirectory.toPath().resolve("readme.txt")), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(Files.exists(workDirectory.toPath().resolve("resources/readme.txt")), IsEqual.equalTo(false));
+    }
+
+    @Test
+    void createGraftPathSpecs() {
+        Assumptions.assumeTrue(File.separatorChar == '/', "The test uses absolute POSIX paths");
+        File appDirectory = new File("/work/target=1/My=App\\Test.app");
+        File bundleDirectory = new File("/work/target=1/bundle");
+        MatcherAssert.assertThat(DmgGenerator.createGraftPathSpecs(appDirectory, bundleDirectory), IsEqual.equalTo(Arrays.asList(
+            "My\\=App\\\\Test.app/=/work/target\\=1/My\\=App\\\\Test.app",
+            "/work/target\\=1/bundle"
+        )));
+        MatcherAssert.assertThat(DmgGenerator.createGraftPathSpecs(new File("/work/Test.app"), new File("/work/bundle")), IsEqual.equalTo(Arrays.asList("Test.app/=/work/Test.app", "/work/bundle")));
+    }
+
+    private BuildMetrics generateDmg(DmgConfiguration dmgConfiguration, File bundleDirectory, File workDirectory) throws Exception {
+        BuildMetrics buildMetrics = new BuildMetrics();
+        DmgGenerator dmgGenerator = new DmgGenerator(dmgConfiguration, "Test", new SystemStreamLog());
+        dmgGenerator.setWorkDirectory(workDirectory);
+        dmgGenerator.setBuildMetrics(buildMetrics);
+        dmgGenerator.generateDmg(new MavenProject(), this.temporaryDirectory.resolve("Test.app").toFile(), bundleDirectory, this.temporaryDirectory.resolve("Test.dmg").toFile());
+        return buildMetrics;
+    }
+
+    private BuildMetrics.Stage findStage(BuildMetrics buildMetrics, String stageName) {
+        return buildMetrics.getStages().stream().filter(stage -> stage.getName().equals(stageName)).findFirst().orElseThrow(IllegalStateException::new);
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.hamcrest.core.IsNot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.model.JlinkConfiguration;
+
+public class JlinkGeneratorTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void computeRuntimeKey() throws Exception {
+        Assumptions.assumeTrue(File.separatorChar == '/', "The jlink stub requires a POSIX shell");
+        Path jdkDirectory = this.createJdk("java.base java.logging java.sql");
+        Set<String> runtimeModules = new TreeSet<>(Arrays.asList("java.base", "java.logging"));
+        String runtimeKey = new JlinkGenerator(new JlinkConfiguration(), jdkDirectory.toFile(), new SystemStreamLog()).computeRuntimeKey(runtimeModules);
+        MatcherAssert.assertThat(runtimeKey.length(), IsEqual.equalTo(32));
+        MatcherAssert.assertThat(new JlinkGenerator(new JlinkConfiguration(), jdkDirectory.toFile(), new SystemStreamLog()).computeRuntimeKey(new TreeSet<>(runtimeModules)), IsEqual.equalTo(runtimeKey));
+
+        // Every change of the modules, the options or the JDK results in another runtime image
+        Set<String> otherRuntimeModules = new TreeSet<>(Arrays.asList("java.base", "java.sql"));
+        MatcherAssert.assertThat(new JlinkGenerator(new JlinkConfiguration(), jdkDirectory.toFile(), new SystemStreamLog()).computeRuntimeKey(otherRuntimeModules), IsNot.not(runtimeKey));
+        JlinkConfiguration compressConfiguration = new JlinkConfiguration();
+        compressConfiguration.compress = "2";
+        MatcherAssert.assertThat(new JlinkGenerator(compressConfiguration, jdkDirectory.toFile(), new SystemStreamLog()).computeRuntimeKey(runtimeModules), IsNot.not(runtimeKey));
+        JlinkConfiguration debugConfiguration = new JlinkConfiguration();
+        debugConfiguration.stripDebug = false;
+        MatcherAssert.assertThat(new JlinkGenerator(debugConfiguration, jdkDirectory.toFile(), new SystemStreamLog()).computeRuntimeKey(runtimeModules), IsNot.not(runtimeKey));
+        Files.write(jdkDirectory.resolve("release"), "JAVA_VERSION=\"17.0.10\"\nMODULES=\"java.base java.logging java.sql\"\n".getBytes(StandardCharsets.UTF_8));
+        String releaseKey = new JlinkGenerator(new JlinkConfiguration(), jdkDirectory.toFile(), new SystemStreamLog()).computeRuntimeKey(runtimeModules);
+        MatcherAssert.assertThat(releaseKey, IsNot.not(runtimeKey));
+        this.createTool(jdkDirectory, "jlink", "17.0.10+7");
+        MatcherAssert.assertThat(new JlinkGenerator(new JlinkConfiguration(), jdkDirectory.toFile(), new SystemStreamLog()).computeRuntimeKey(runtimeModules), IsNot.not(releaseKey));
+    }
+
+    @Test
+    void missingJlink() throws Exception {
+        Path jdkDirectory = Files.createTempDirectory(this.temporaryDirectory, "jre");
+        Files.write(jdkDirectory.resolve("release"), "JAVA_VERSION=\"17.0.9\"\n".getBytes(StandardCharsets.UTF_8));
+        MojoExecutionException exception = Assertions.assertThrows(MojoExecutionException.class, () -> new JlinkGenerator(new JlinkConfiguration(), jdkDirectory.toFile(), new SystemStreamLog()));
+        MatcherAssert.assertThat(exception.getMessage().startsWith("No 'jlink' found in JDK at '" + jdkDirectory.toFile().getAbsolutePath() + "'"), IsEqual.equalTo(true));
+    }
+
+    @Test
+    void computeRuntimeModulesFromModulepath() throws Exception {
+        JavaCompiler javaCompiler = ToolProvider.getSystemJavaCompiler();
+        Assumptions.assumeTrue(javaCompiler != null, "Compiling the test modules requires a JDK");
+        Assumptions.assumeTrue(File.separatorChar == '/', "The jlink stub requires a POSIX shell");
+
+        Path libraryClasses = this.compileModule(javaCompiler, "test.library", "module test.library { requires java.sql; }");
+        Path applicationClasses = this.compileModule(javaCompiler, "test.application", "module test.application { requires test.library; requires java.logging; requires static java.compiler; }", "--module-path", libraryClasses.toString());
+        Path appJavaDirectory = this.temporaryDirectory.resolve("Test.app/Contents/Java");
+        this.createJar(appJavaDirectory.resolve("modules/test-library.jar"), libraryClasses);
+        this.createJar(appJavaDirectory.resolve("modules/test-application.jar"), applicationClasses);
+
+        // Application modules and static dependencies are not part of the runtime, modules missing in the JDK are reported
+        JlinkConfiguration configuration = new JlinkConfiguration();
+        configuration.additionalModules = Collections.singletonList("jdk.localedata");
+        Path jdkDirectory = this.createJdk("java.base java.compiler java.logging jdk.localedata");
+        JlinkGenerator jlinkGenerator = new JlinkGenerator(configuration, jdkDirectory.toFile(), new SystemStreamLog());
+        MatcherAssert.assertThat(jlinkGenerator.computeRuntimeModules(appJavaDirectory.toFile()), IsEqual.equalTo(new TreeSet<>(Arrays.asList("java.base", "java.logging", "jdk.localedata"))));
+
+        Path completeJdkDirectory = this.createJdk("java.base java.compiler java.logging java.sql");
+        JlinkGenerator completeJlinkGenerator = new JlinkGenerator(new JlinkConfiguration(), completeJdkDirectory.toFile(), new SystemStreamLog());
+        MatcherAssert.assertThat(completeJlinkGenerator.computeRuntimeModules(appJavaDirectory.toFile()), IsEqual.equalTo(new TreeSet<>(Arrays.asList("java.base", "java.logging", "java.sql"))));
+
+        // Explicitly configured modules replace the discovery
+        JlinkConfiguration modulesConfiguration = new JlinkConfiguration();
+        modulesConfiguration.modules = Collections.singletonList("java.desktop");
+        JlinkGenerator modulesJlinkGenerator = new JlinkGenerator(modulesConfiguration, completeJdkDirectory.toFile(), new SystemStreamLog());
+        MatcherAssert.assertThat(modulesJlinkGenerator.computeRuntimeModules(appJavaDirectory.toFile()), IsEqual.equalTo(new TreeSet<>(Arrays.asList("java.base", "java.desktop"))));
+    }
+
+    private Path createJdk(String modules) throws Exception {
+        Path jdkDirectory = Files.createTempDirectory(this.temporaryDirectory, "jdk");
+        Files.write(jdkDirectory.resolve("release"), ("JAVA_VERSION=\"17.0.9\"\nMODULES=\"" + modules + "\"\n").getBytes(StandardCharsets.UTF_8));
+        this.createTool(jdkDirectory, "jlink", "17.0.9+9");
+        return jdkDirectory;
+    }
+
+    private void createTool(Path jdkDirectory, String toolName, String version) throws Exception {
+        Path toolFile = Files.createDirectories(jdkDirectory.resolve("bin")).resolve(toolName);
+        Files.write(toolFile, ("#!/bin/sh\necho " + version + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.setPosixFilePermissions(toolFile, PosixFilePermissions.fromString("rwxr-xr-x"));
+    }
+
+    private Path compileModule(JavaCompiler javaCompiler, String moduleName, String moduleInfo, String... options) throws Exception {
+        Path sourceDirectory = Files.createDirectories(this.temporaryDirectory.resolve("src/" + moduleName));
+        Path classesDirectory = Files.createDirectories(this.temporaryDirectory.resolve("classes/" + moduleName));
+        Path moduleInfoFile = Files.write(sourceDirectory.resolve("module-info.java"), moduleInfo.getBytes(StandardCharsets.UTF_8));
+        String[] arguments = new String[options.length + 3];
+        System.arraycopy(options, 0, arguments, 0, options.length);
+        arguments[options.length] = "-d";
+        arguments[options.length + 1] = classesDirectory.toString();
+        arguments[options.length + 2] = moduleInfoFile.toString();
+        MatcherAssert.assertThat(javaCompiler.run(null, null, null, arguments), IsEqual.equalTo(0));
+        return classesDirectory;
+    }
+
+    private void createJar(Path jarFile, Path classesDirectory) throws Exception {
+        Files.createDirectories(jarFile.getParent());
+        try (OutputStream jarStream = Files.newOutputStream(jarFile); JarOutputStream jarOutputStream = new JarOutputStream(jarStream)) {
+            jarOutputStream.putNextEntry(new JarEntry("module-info.class"));
+            jarOutputStream.write(Files.readAllBytes(classesDirectory.resolve("module-info.class")));
+            jarOutputStream.closeEntry();
+        }
+    }
+
+}
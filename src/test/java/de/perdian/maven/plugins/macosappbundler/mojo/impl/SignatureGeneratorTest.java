@@ -0,0 +1,172 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.model.CodesignConfiguration;
+
+public class SignatureGeneratorTest {
+
+    private static final byte[] THIN_BINARY = { (byte)0xCF, (byte)0xFA, (byte)0xED, (byte)0xFE, 0x07, 0x00, 0x00, 0x01 };
+    private static final byte[] UNIVERSAL_BINARY = { (byte)0xCA, (byte)0xFE, (byte)0xBA, (byte)0xBE, 0x00, 0x00, 0x00, 0x02 };
+    private static final byte[] CLASS_FILE = { (byte)0xCA, (byte)0xFE, (byte)0xBA, (byte)0xBE, 0x00, 0x00, 0x00, 0x34 };
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void signNestedBinaries() throws Exception {
+        Assumptions.assumeTrue(File.separatorChar == '/', "The signing stub requires a POSIX shell");
+
+        Path appDirectory = this.temporaryDirectory.resolve("Test.app");
+        Path launcherFile = this.createFile(appDirectory.resolve("Contents/MacOS/JavaLauncher"), THIN_BINARY);
+        Path javaLibraryFile = this.createFile(appDirectory.resolve("Contents/Runtime/Contents/Home/lib/libjava.dylib"), THIN_BINARY);
+        Path jvmLibraryFile = this.createFile(appDirectory.resolve("Contents/Runtime/Contents/Home/lib/server/libjvm.dylib"), UNIVERSAL_BINARY);
+        this.createFile(appDirectory.resolve("Contents/Java/classpath/Test.class"), CLASS_FILE);
+        this.createFile(appDirectory.resolve("Contents/Resources/readme.txt"), "readme".getBytes(StandardCharsets.UTF_8));
+
+        // The library is hard linked from a file outside the app, which must not be modified by signing the app
+        Path externalLibraryFile = this.createFile(this.temporaryDirectory.resolve("external/libexternal.dylib"), THIN_BINARY);
+        Path linkedLibraryFile = appDirectory.resolve("Contents/Runtime/Contents/Home/lib/libexternal.dylib");
+        Files.createLink(linkedLibraryFile, externalLibraryFile);
+
+        CodesignConfiguration codesignConfiguration = new CodesignConfiguration();
+        codesignConfiguration.identity = "-";
+        codesignConfiguration.executable = this.createSigningStub().toString();
+        codesignConfiguration.signNestedBinaries = true;
+        codesignConfiguration.threads = 2;
+        codesignConfiguration.cache = false;
+        File workDirectory = this.temporaryDirectory.resolve("work").toFile();
+
+        new SignatureGenerator(codesignConfiguration, new SystemStreamLog()).sign(appDirectory.toFile(), workDirectory);
+        List<String> signedFiles = this.readSignedFiles();
+        MatcherAssert.assertThat(signedFiles.size(), IsEqual.equalTo(5));
+        MatcherAssert.assertThat(signedFiles.get(0), IsEqual.equalTo(jvmLibraryFile.toString()));
+        MatcherAssert.assertThat(signedFiles.subList(1, 3).stream().sorted().collect(Collectors.toList()), IsEqual.equalTo(Arrays.asList(linkedLibraryFile.toString(), javaLibraryFile.toString()).stream().sorted().collect(Collectors.toList())));
+        MatcherAssert.assertThat(signedFiles.get(3), IsEqual.equalTo(launcherFile.toString()));
+        MatcherAssert.assertThat(signedFiles.get(4), IsEqual.equalTo(appDirectory.toString()));
+        MatcherAssert.assertThat(Files.size(linkedLibraryFile), IsEqual.equalTo((long)THIN_BINARY.length + 1));
+        MatcherAssert.assertThat(Files.size(externalLibraryFile), IsEqual.equalTo((long)THIN_BINARY.length));
+
+        // Nothing has changed, so only the app itself needs to be signed again
+        new SignatureGenerator(codesignConfiguration, new SystemStreamLog()).sign(appDirectory.toFile(), workDirectory);
+        MatcherAssert.assertThat(this.readSignedFiles(), IsEqual.equalTo(Collections.singletonList(appDirectory.toString())));
+
+        Files.write(javaLibraryFile, THIN_BINARY);
+        new SignatureGenerator(codesignConfiguration, new SystemStreamLog()).sign(appDirectory.toFile(), workDirectory);
+        MatcherAssert.assertThat(this.readSignedFiles(), IsEqual.equalTo(Arrays.asList(javaLibraryFile.toString(), appDirectory.toString())));
+
+        // Changing the identity invalidates all previous signatures
+        codesignConfiguration.identity = "Other";
+        new SignatureGenerator(codesignConfiguration, new SystemStreamLog()).sign(appDirectory.toFile(), workDirectory);
+        MatcherAssert.assertThat(this.readSignedFiles().size(), IsEqual.equalTo(5));
+
+    }
+
+    @Test
+    void signAppOnlyByDefault() throws Exception {
+        Assumptions.assumeTrue(File.separatorChar == '/', "The signing stub requires a POSIX shell");
+
+        Path appDirectory = this.temporaryDirectory.resolve("Test.app");
+        Path launcherFile = this.createFile(appDirectory.resolve("Contents/MacOS/JavaLauncher"), THIN_BINARY);
+        this.createFile(appDirectory.resolve("Contents/Runtime/Contents/Home/lib/libjava.dylib"), THIN_BINARY);
+
+        CodesignConfiguration codesignConfiguration = new CodesignConfiguration();
+        codesignConfiguration.identity = "-";
+        codesignConfiguration.executable = this.createSigningStub().toString();
+        new SignatureGenerator(codesignConfiguration, new SystemStreamLog()).sign(appDirectory.toFile(), this.temporaryDirectory.resolve("work").toFile());
+        MatcherAssert.assertThat(this.readSignedFiles(), IsEqual.equalTo(Collections.singletonList(appDirectory.toString())));
+        MatcherAssert.assertThat(Files.size(launcherFile), IsEqual.equalTo((long)THIN_BINARY.length));
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("work/signatures")), IsEqual.equalTo(false));
+    }
+
+    @Test
+    void signNestedBinariesUsingCache() throws Exception {
+        Assumptions.assumeTrue(File.separatorChar == '/', "The signing stub requires a POSIX shell");
+
+        CodesignConfiguration codesignConfiguration = new CodesignConfiguration();
+        codesignConfiguration.identity = "-";
+        codesignConfiguration.executable = this.createSigningStub().toString();
+        codesignConfiguration.signNestedBinaries = true;
+        codesignConfiguration.cache = true;
+        codesignConfiguration.cacheDirectory = this.temporaryDirectory.resolve("cache").toFile();
+
+        Path firstAppDirectory = this.temporaryDirectory.resolve("First.app");
+        Path firstLibraryFile = this.createFile(firstAppDirectory.resolve("Contents/Java/native/libtest.dylib"), THIN_BINARY);
+        new SignatureGenerator(codesignConfiguration, new SystemStreamLog()).sign(firstAppDirectory.toFile(), this.temporaryDirectory.resolve("work/first").toFile());
+        MatcherAssert.assertThat(this.readSignedFiles().size(), IsEqual.equalTo(2));
+        MatcherAssert.assertThat(Files.size(firstLibraryFile), IsEqual.equalTo((long)THIN_BINARY.length + 1));
+
+        // The same binary inside another app is restored from the cache, so only the app itself gets signed
+        Path secondAppDirectory = this.temporaryDirectory.resolve("Second.app");
+        Path secondLibraryFile = this.createFile(secondAppDirectory.resolve("Contents/Java/native/libtest.dylib"), THIN_BINARY);
+        Path renamedLibraryFile = this.createFile(secondAppDirectory.resolve("Contents/Java/native/librenamed.dylib"), THIN_BINARY);
+        new SignatureGenerator(codesignConfiguration, new SystemStreamLog()).sign(secondAppDirectory.toFile(), this.temporaryDirectory.resolve("work/second").toFile());
+        List<String> signedFiles = this.readSignedFiles();
+        MatcherAssert.assertThat(signedFiles.size(), IsEqual.equalTo(2));
+        MatcherAssert.assertThat(signedFiles.get(0).endsWith("/librenamed.dylib"), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(signedFiles.get(1), IsEqual.equalTo(secondAppDirectory.toString()));
+        MatcherAssert.assertThat(Files.readAllBytes(secondLibraryFile), IsEqual.equalTo(Files.readAllBytes(firstLibraryFile)));
+        MatcherAssert.assertThat(Files.size(renamedLibraryFile), IsEqual.equalTo((long)THIN_BINARY.length + 1));
+
+    }
+
+    private Path createFile(Path file, byte[] content) throws Exception {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, content);
+    }
+
+    /**
+     * Creates a script that records which file should be signed and appends a byte to it as its "signature".
+     */
+    private Path createSigningStub() throws Exception {
+        Path stubFile = this.temporaryDirectory.resolve("codesign-stub.sh");
+        List<String> stubLines = Arrays.asList(
+            "#!/bin/sh",
+            "for file; do :; done",
+            "echo \"$file\" >> \"" + this.temporaryDirectory.resolve("signed.log") + "\"",
+            "if [ -f \"$file\" ]; then printf S >> \"$file\"; fi"
+        );
+        Files.write(stubFile, stubLines, StandardCharsets.UTF_8);
+        Files.setPosixFilePermissions(stubFile, PosixFilePermissions.fromString("rwxr-xr-x"));
+        return stubFile;
+    }
+
+    private List<String> readSignedFiles() throws Exception {
+        Path logFile = this.temporaryDirectory.resolve("signed.log");
+        List<String> signedFiles = Files.readAllLines(logFile, StandardCharsets.UTF_8);
+        Files.delete(logFile);
+        return signedFiles;
+    }
+
+}
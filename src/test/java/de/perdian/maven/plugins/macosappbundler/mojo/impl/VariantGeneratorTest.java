@@ -0,0 +1,178 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.impl.support.XmlPlistWriter;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.AppCdsConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.LinkStrategy;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.NativeBinaryType;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.PlistConfiguration;
+import de.perdian.maven.plugins.macosappbundler.mojo.model.VariantConfiguration;
+
+public class VariantGeneratorTest {
+
+    private static final int CPU_TYPE_X86_64 = 0x01000007;
+    private static final int CPU_TYPE_ARM64 = 0x0100000C;
+    private static final String SHARED_ARCHIVE_FILE_OPTION = "-XX:SharedArchiveFile=Contents/Java/app.jsa";
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void generateVariants() throws Exception {
+        byte[] x86Slice = this.createSlice(CPU_TYPE_X86_64, 2000);
+        byte[] arm64Slice = this.createSlice(CPU_TYPE_ARM64, 1000);
+        Path sourceAppDirectory = this.temporaryDirectory.resolve("source/Test.app");
+        this.createFile(sourceAppDirectory.resolve("Contents/MacOS/JavaLauncher"), "JavaLauncher".getBytes(StandardCharsets.UTF_8));
+        this.createFile(sourceAppDirectory.resolve("Contents/Java/native/libtest.dylib"), this.createUniversalBinary(x86Slice, arm64Slice));
+        this.createFile(sourceAppDirectory.resolve("Contents/Java/app.jsa"), "archive".getBytes(StandardCharsets.UTF_8));
+        byte[] plistContent = this.createFile(sourceAppDirectory.resolve("Contents/Info.plist"), this.createPlist("-Xmx1g", SHARED_ARCHIVE_FILE_OPTION));
+
+        AppCdsConfiguration appCdsConfiguration = new AppCdsConfiguration();
+        appCdsConfiguration.enable = true;
+        PlistConfiguration plistConfiguration = new PlistConfiguration();
+        plistConfiguration.JVMOptions = new ArrayList<>(Arrays.asList("-Xmx1g", SHARED_ARCHIVE_FILE_OPTION));
+
+        // The archive has been created on arm64, so it can be used by the arm64 variant
+        VariantConfiguration arm64Variant = this.createVariant(NativeBinaryType.ARM_64, null);
+        File arm64AppDirectory = this.generateVariant(arm64Variant, appCdsConfiguration, plistConfiguration, sourceAppDirectory);
+        MatcherAssert.assertThat(this.readFile(arm64AppDirectory, "Contents/MacOS/JavaLauncher"), IsEqual.equalTo("JavaLauncher.arm64"));
+        MatcherAssert.assertThat(Files.readAllBytes(new File(arm64AppDirectory, "Contents/Java/native/libtest.dylib").toPath()), IsEqual.equalTo(arm64Slice));
+        MatcherAssert.assertThat(new File(arm64AppDirectory, "Contents/Java/app.jsa").exists(), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(Files.readAllBytes(new File(arm64AppDirectory, "Contents/Info.plist").toPath()), IsEqual.equalTo(plistContent));
+
+        // The x86_64 variant gets neither the archive nor the option pointing to it
+        VariantConfiguration x86Variant = this.createVariant(NativeBinaryType.X86_64, null);
+        File x86AppDirectory = this.generateVariant(x86Variant, appCdsConfiguration, plistConfiguration, sourceAppDirectory);
+        MatcherAssert.assertThat(this.readFile(x86AppDirectory, "Contents/MacOS/JavaLauncher"), IsEqual.equalTo("JavaLauncher.x86_64"));
+        MatcherAssert.assertThat(Files.readAllBytes(new File(x86AppDirectory, "Contents/Java/native/libtest.dylib").toPath()), IsEqual.equalTo(x86Slice));
+        MatcherAssert.assertThat(new File(x86AppDirectory, "Contents/Java/app.jsa").exists(), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(Files.readAllBytes(new File(x86AppDirectory, "Contents/Info.plist").toPath()), IsEqual.equalTo(this.createPlist("-Xmx1g")));
+        MatcherAssert.assertThat(plistConfiguration.JVMOptions, IsEqual.equalTo(Arrays.asList("-Xmx1g", SHARED_ARCHIVE_FILE_OPTION)));
+
+        // Without AppCDS the files of the source app are used again
+        File x86PlainAppDirectory = this.generateVariant(x86Variant, new AppCdsConfiguration(), plistConfiguration, sourceAppDirectory);
+        MatcherAssert.assertThat(x86PlainAppDirectory, IsEqual.equalTo(x86AppDirectory));
+        MatcherAssert.assertThat(new File(x86AppDirectory, "Contents/Java/app.jsa").exists(), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(Files.readAllBytes(new File(x86AppDirectory, "Contents/Info.plist").toPath()), IsEqual.equalTo(plistContent));
+        MatcherAssert.assertThat(Files.readAllBytes(sourceAppDirectory.resolve("Contents/Info.plist")), IsEqual.equalTo(plistContent));
+
+        // Universal variants keep both slices and are named after both architectures
+        VariantConfiguration universalVariant = this.createVariant(NativeBinaryType.UNIVERSAL, "universal");
+        universalVariant.slimNativeBinaries = false;
+        File universalAppDirectory = this.generateVariant(universalVariant, appCdsConfiguration, plistConfiguration, sourceAppDirectory);
+        MatcherAssert.assertThat(this.readFile(universalAppDirectory, "Contents/MacOS/JavaLauncher"), IsEqual.equalTo("JavaLauncher"));
+        MatcherAssert.assertThat(Files.readAllBytes(new File(universalAppDirectory, "Contents/Java/native/libtest.dylib").toPath()), IsEqual.equalTo(Files.readAllBytes(sourceAppDirectory.resolve("Contents/Java/native/libtest.dylib"))));
+        MatcherAssert.assertThat(universalAppDirectory.getParentFile().getName(), IsEqual.equalTo("universal"));
+        MatcherAssert.assertThat(this.createVariant(NativeBinaryType.UNIVERSAL, null).getName(), IsEqual.equalTo("arm64-x86_64"));
+        MatcherAssert.assertThat(arm64AppDirectory.getParentFile().getName(), IsEqual.equalTo("arm64"));
+        MatcherAssert.assertThat(x86AppDirectory.getParentFile().getName(), IsEqual.equalTo("x86_64"));
+    }
+
+    @Test
+    void resolveArchitecture() {
+        MatcherAssert.assertThat(VariantGenerator.resolveArchitecture("aarch64"), IsEqual.equalTo("arm64"));
+        MatcherAssert.assertThat(VariantGenerator.resolveArchitecture("amd64"), IsEqual.equalTo("x86_64"));
+        MatcherAssert.assertThat(VariantGenerator.resolveArchitecture("x86_64"), IsEqual.equalTo("x86_64"));
+    }
+
+    private File generateVariant(VariantConfiguration variantConfiguration, AppCdsConfiguration appCdsConfiguration, PlistConfiguration plistConfiguration, Path sourceAppDirectory) throws Exception {
+        File variantDirectory = this.temporaryDirectory.resolve("variants").resolve(variantConfiguration.getName()).toFile();
+        File appDirectory = new File(variantDirectory, sourceAppDirectory.getFileName().toString());
+        VariantGenerator variantGenerator = new VariantGenerator(variantConfiguration, plistConfiguration, new SystemStreamLog());
+        variantGenerator.setAppCdsConfiguration(appCdsConfiguration);
+        variantGenerator.setBuildArchitecture("arm64");
+        variantGenerator.setLinkStrategy(LinkStrategy.AUTO);
+        variantGenerator.generateVariant(sourceAppDirectory.toFile(), appDirectory, new File(variantDirectory, "Test.app.manifest"));
+        return appDirectory;
+    }
+
+    private VariantConfiguration createVariant(NativeBinaryType nativeBinary, String name) {
+        VariantConfiguration variantConfiguration = new VariantConfiguration();
+        variantConfiguration.nativeBinary = nativeBinary;
+        variantConfiguration.name = name;
+        return variantConfiguration;
+    }
+
+    private byte[] createPlist(String... jvmOptions) throws Exception {
+        ByteArrayOutputStream plistContent = new ByteArrayOutputStream();
+        try (Writer plistWriter = new OutputStreamWriter(plistContent, StandardCharsets.UTF_8)) {
+            XmlPlistWriter xmlPlistWriter = new XmlPlistWriter(plistWriter);
+            xmlPlistWriter.startDocument();
+            xmlPlistWriter.startDict();
+            xmlPlistWriter.key("CFBundleExecutable");
+            xmlPlistWriter.string("JavaLauncher");
+            xmlPlistWriter.key("JVMOptions");
+            xmlPlistWriter.startArray();
+            for (String jvmOption : jvmOptions) {
+                xmlPlistWriter.string(jvmOption);
+            }
+            xmlPlistWriter.endArray();
+            xmlPlistWriter.endDict();
+            xmlPlistWriter.endDocument();
+        }
+        return plistContent.toByteArray();
+    }
+
+    private byte[] createSlice(int cpuType, int length) {
+        byte[] slice = new byte[length];
+        Arrays.fill(slice, (byte)cpuType);
+        ByteBuffer.wrap(slice).putInt(0xCFFAEDFE).order(ByteOrder.LITTLE_ENDIAN).putInt(cpuType);
+        return slice;
+    }
+
+    private byte[] createUniversalBinary(byte[] x86Slice, byte[] arm64Slice) {
+        ByteBuffer binaryContent = ByteBuffer.allocate(4096 * 3);
+        binaryContent.putInt(0xCAFEBABE).putInt(2);
+        binaryContent.putInt(CPU_TYPE_X86_64).putInt(3).putInt(4096).putInt(x86Slice.length).putInt(12);
+        binaryContent.putInt(CPU_TYPE_ARM64).putInt(3).putInt(4096 * 2).putInt(arm64Slice.length).putInt(12);
+        binaryContent.position(4096);
+        binaryContent.put(x86Slice);
+        binaryContent.position(4096 * 2);
+        binaryContent.put(arm64Slice);
+        return binaryContent.array();
+    }
+
+    private byte[] createFile(Path file, byte[] content) throws Exception {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+        return content;
+    }
+
+    private String readFile(File directory, String fileName) throws Exception {
+        return new String(Files.readAllBytes(new File(directory, fileName).toPath()), StandardCharsets.UTF_8).trim();
+    }
+
+}
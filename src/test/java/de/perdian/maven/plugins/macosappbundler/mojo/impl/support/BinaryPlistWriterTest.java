@@ -0,0 +1,186 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.model.PlistConfigurationTest;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+public class BinaryPlistWriterTest {
+
+    @Test
+    void xmlRoundTripTest() throws Exception {
+        ByteArrayOutputStream binaryContent = new ByteArrayOutputStream();
+        XmlPlistReader.read(new ByteArrayInputStream(PlistConfigurationTest.EXPECTED_PLIST_XML.getBytes(StandardCharsets.UTF_8)), new BinaryPlistWriter(binaryContent));
+
+        MatcherAssert.assertThat(BinaryPlistReader.isBinaryPlist(binaryContent.toByteArray()), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(toXmlString(binaryContent.toByteArray()), IsEqual.equalTo(PlistConfigurationTest.EXPECTED_PLIST_XML));
+    }
+
+    @Test
+    void minimalEncodingTest() throws Exception {
+        byte[] binaryContent = toBinary(plistWriter -> {
+            plistWriter.startDict();
+            plistWriter.key("a");
+            plistWriter.string("a");
+            plistWriter.endDict();
+        });
+
+        ByteArrayOutputStream expectedContent = new ByteArrayOutputStream();
+        expectedContent.write("bplist00".getBytes(StandardCharsets.US_ASCII));
+        expectedContent.write(new byte[] { (byte)0xD1, 0x01, 0x01 }); // dict with key and value both referencing object 1
+        expectedContent.write(new byte[] { 0x51, 'a' });
+        expectedContent.write(new byte[] { 0x08, 0x0B }); // offset table
+        expectedContent.write(new byte[] { 0, 0, 0, 0, 0, 0, 1, 1 });
+        expectedContent.write(ByteBuffer.allocate(24).putLong(2).putLong(0).putLong(13).array());
+
+        MatcherAssert.assertThat(binaryContent, IsEqual.equalTo(expectedContent.toByteArray()));
+    }
+
+    @Test
+    void allValueTypesRoundTripTest() throws Exception {
+        byte[] largeData = new byte[70000];
+        for (int i = 0; i < largeData.length; i++) {
+            largeData[i] = (byte)i;
+        }
+        PlistContent plistContent = plistWriter -> {
+            plistWriter.startDict();
+            plistWriter.key("integers");
+            plistWriter.startArray();
+            for (long value : new long[] { 0, 14, 15, 255, 256, 65535, 65536, 4294967295L, 4294967296L, Long.MAX_VALUE, -1, Long.MIN_VALUE }) {
+                plistWriter.integer(value);
+            }
+            plistWriter.endArray();
+            plistWriter.key("real");
+            plistWriter.real(-1.25);
+            plistWriter.key("date");
+            plistWriter.date(Instant.parse("2019-05-01T12:34:56Z"));
+            plistWriter.key("booleans");
+            plistWriter.startArray();
+            plistWriter.bool(true);
+            plistWriter.bool(false);
+            plistWriter.endArray();
+            plistWriter.key("emptyData");
+            plistWriter.data(new byte[0]);
+            plistWriter.key("largeData");
+            plistWriter.data(largeData);
+            plistWriter.key("longString");
+            plistWriter.string("A string with more than fifteen characters");
+            plistWriter.key("unicode äöü");
+            plistWriter.string("日本語 😀");
+            plistWriter.key("emptyDict");
+            plistWriter.startDict();
+            plistWriter.endDict();
+            plistWriter.key("manyStrings");
+            plistWriter.startArray();
+            for (int i = 0; i < 300; i++) {
+                plistWriter.string("value-" + i);
+            }
+            plistWriter.endArray();
+            plistWriter.endDict();
+        };
+
+        byte[] binaryContent = toBinary(plistContent);
+        MatcherAssert.assertThat(binaryContent[binaryContent.length - 26], IsEqual.equalTo((byte)4)); // offset size
+        MatcherAssert.assertThat(binaryContent[binaryContent.length - 25], IsEqual.equalTo((byte)2)); // object reference size
+        MatcherAssert.assertThat(toXmlString(binaryContent), IsEqual.equalTo(toXmlString(plistContent)));
+    }
+
+    @Test
+    void duplicateValuesStoredOnceTest() throws Exception {
+        byte[] binaryContent = toBinary(plistWriter -> {
+            plistWriter.startArray();
+            for (int i = 0; i < 100; i++) {
+                plistWriter.startDict();
+                plistWriter.key("CFBundleTypeRole");
+                plistWriter.string("Editor");
+                plistWriter.key("LSIsAppleDefaultForType");
+                plistWriter.bool(true);
+                plistWriter.endDict();
+            }
+            plistWriter.endArray();
+        });
+
+        // One array, 100 dicts and the three shared values for the two keys, the string and the boolean
+        long objectCount = ByteBuffer.wrap(binaryContent, binaryContent.length - 24, 8).getLong();
+        MatcherAssert.assertThat(objectCount, IsEqual.equalTo(105L));
+    }
+
+    @Test
+    void invalidContentTest() throws Exception {
+        byte[] binaryContent = toBinary(plistWriter -> {
+            plistWriter.startArray();
+            plistWriter.string("value");
+            plistWriter.endArray();
+        });
+        Assertions.assertThrows(IOException.class, () -> BinaryPlistReader.read(Arrays.copyOf(binaryContent, binaryContent.length - 1), new XmlPlistWriter(new StringWriter())));
+        Assertions.assertThrows(IOException.class, () -> BinaryPlistReader.read("<plist/>".getBytes(StandardCharsets.US_ASCII), new XmlPlistWriter(new StringWriter())));
+    }
+
+    @Test
+    void invalidEventsTest() throws Exception {
+        Assertions.assertThrows(IOException.class, () -> toBinary(plistWriter -> {
+            plistWriter.startDict();
+            plistWriter.string("value without key");
+            plistWriter.endDict();
+        }));
+        Assertions.assertThrows(IOException.class, () -> toBinary(plistWriter -> plistWriter.startArray()));
+    }
+
+    private static byte[] toBinary(PlistContent plistContent) throws IOException {
+        ByteArrayOutputStream binaryContent = new ByteArrayOutputStream();
+        BinaryPlistWriter plistWriter = new BinaryPlistWriter(binaryContent);
+        plistWriter.startDocument();
+        plistContent.write(plistWriter);
+        plistWriter.endDocument();
+        return binaryContent.toByteArray();
+    }
+
+    private static String toXmlString(PlistContent plistContent) throws IOException {
+        StringWriter xmlContent = new StringWriter();
+        XmlPlistWriter plistWriter = new XmlPlistWriter(xmlContent);
+        plistWriter.startDocument();
+        plistContent.write(plistWriter);
+        plistWriter.endDocument();
+        return xmlContent.toString();
+    }
+
+    private static String toXmlString(byte[] binaryContent) throws IOException {
+        StringWriter xmlContent = new StringWriter();
+        BinaryPlistReader.read(binaryContent, new XmlPlistWriter(xmlContent));
+        return xmlContent.toString();
+    }
+
+    @FunctionalInterface
+    interface PlistContent {
+
+        void write(PlistWriter plistWriter) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.shared.utils.cli.Commandline;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class BuildEventsTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void test() throws IOException {
+        Path recordingFile = this.temporaryDirectory.resolve("test.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("de.perdian.macosappbundler.Stage");
+            recording.enable("de.perdian.macosappbundler.Process");
+            recording.start();
+            new BuildMetrics().runStage("copy", new File("Test.app"), stage -> stage.addFiles(2, 100));
+            Commandline commandLine = new Commandline();
+            commandLine.setExecutable("echo");
+            commandLine.createArg().setValue("test");
+            Processes.execute(commandLine, new SystemStreamLog());
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile).stream().filter(event -> event.getEventType().getName().startsWith("de.perdian.macosappbundler.")).collect(Collectors.toList());
+        MatcherAssert.assertThat(events.size(), IsEqual.equalTo(2));
+        MatcherAssert.assertThat(events.get(0).getString("stage"), IsEqual.equalTo("copy"));
+        MatcherAssert.assertThat(events.get(0).getString("target"), IsEqual.equalTo("Test.app"));
+        MatcherAssert.assertThat(events.get(0).getInt("fileCount"), IsEqual.equalTo(2));
+        MatcherAssert.assertThat(events.get(0).getLong("byteCount"), IsEqual.equalTo(100L));
+        MatcherAssert.assertThat(events.get(1).getString("executable"), IsEqual.equalTo("echo"));
+        MatcherAssert.assertThat(events.get(1).getString("arguments"), IsEqual.equalTo("test"));
+        MatcherAssert.assertThat(events.get(1).getInt("exitValue"), IsEqual.equalTo(0));
+        MatcherAssert.assertThat(events.get(1).getLong("outputBytes"), IsEqual.equalTo(5L));
+    }
+
+}
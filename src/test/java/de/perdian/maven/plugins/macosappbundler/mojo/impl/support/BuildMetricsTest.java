@@ -0,0 +1,76 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BuildMetricsTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void test() throws IOException {
+        BuildMetrics buildMetrics = new BuildMetrics();
+        buildMetrics.runStage("copy", new File("Test.app"), stage -> {
+            stage.addFiles(2, 100);
+            stage.addFiles(1, 50);
+        });
+        Assertions.assertThrows(IOException.class, () -> buildMetrics.runStage("sign \"app\"", new File("Test.app"), stage -> {
+            stage.addFiles(1, 0);
+            throw new IOException("Cannot sign");
+        }));
+
+        MatcherAssert.assertThat(buildMetrics.getStages().size(), IsEqual.equalTo(2));
+        MatcherAssert.assertThat(buildMetrics.getStages().get(0).getFileCount(), IsEqual.equalTo(3));
+        MatcherAssert.assertThat(buildMetrics.getStages().get(0).getByteCount(), IsEqual.equalTo(150L));
+        MatcherAssert.assertThat(buildMetrics.getStages().get(0).getTarget(), IsEqual.equalTo("Test.app"));
+        MatcherAssert.assertThat(buildMetrics.getStages().get(1).getFileCount(), IsEqual.equalTo(1));
+
+        BuildMetrics variantMetrics = buildMetrics.withStagePrefix("arm64/");
+        variantMetrics.runStage("sign", new File("Test.app"), stage -> stage.addFiles(1, 0));
+        MatcherAssert.assertThat(variantMetrics.getStages().size(), IsEqual.equalTo(3));
+        MatcherAssert.assertThat(buildMetrics.getStages().get(2).getName(), IsEqual.equalTo("arm64/sign"));
+
+        Path metricsFile = this.temporaryDirectory.resolve("target/metrics.json");
+        buildMetrics.writeJson(metricsFile);
+        String metricsJson = new String(Files.readAllBytes(metricsFile), StandardCharsets.UTF_8);
+        MatcherAssert.assertThat(metricsJson.matches("(?s)\\{\\n  \"totalMillis\": \\d+,\\n  \"stages\": \\[\\n"
+                + "    \\{ \"name\": \"copy\", \"millis\": \\d+, \"files\": 3, \"bytes\": 150 \\},\\n"
+                + "    \\{ \"name\": \"sign \\\\\"app\\\\\"\", \"millis\": \\d+, \"files\": 1, \"bytes\": 0 \\},\\n"
+                + "    \\{ \"name\": \"arm64/sign\", \"millis\": \\d+, \"files\": 1, \"bytes\": 0 \\}\\n"
+                + "  \\]\\n\\}\\n"), IsEqual.equalTo(true));
+
+        List<String> summaryLines = buildMetrics.createSummary();
+        MatcherAssert.assertThat(summaryLines.size(), IsEqual.equalTo(5));
+        MatcherAssert.assertThat(summaryLines.get(0).split("\\s+")[0], IsEqual.equalTo("Stage"));
+        MatcherAssert.assertThat(summaryLines.get(1).matches("copy\\s+\\d+\\s+3\\s+150"), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(summaryLines.get(4).matches("Total\\s+\\d+\\s+5\\s+150"), IsEqual.equalTo(true));
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BundleManifestTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void copyFile() throws Exception {
+        Path sourceFile = this.createFile("source/a.txt", "a");
+        Path appDirectory = this.temporaryDirectory.resolve("Test.app");
+        Path manifestFile = this.temporaryDirectory.resolve("Test.app.manifest");
+        Path targetFile = Files.createDirectories(appDirectory.resolve("Contents")).resolve("a.txt");
+
+        BundleManifest firstManifest = BundleManifest.load(appDirectory, manifestFile);
+        MatcherAssert.assertThat(firstManifest.copyFile(sourceFile, targetFile), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(firstManifest.getCopiedCount(), IsEqual.equalTo(1));
+        MatcherAssert.assertThat(firstManifest.getCopiedSize(), IsEqual.equalTo(1L));
+        firstManifest.save();
+        List<String> manifestLines = Files.readAllLines(manifestFile);
+        MatcherAssert.assertThat(manifestLines.get(0), IsEqual.equalTo("# macosappbundler manifest v1"));
+        MatcherAssert.assertThat(manifestLines.get(1).split("\t")[0], IsEqual.equalTo("Contents/a.txt"));
+
+        // Copying doesn't hash any content, so the first change of the modification time copies the file again
+        MatcherAssert.assertThat(manifestLines.get(1).split("\t")[4], IsEqual.equalTo("-"));
+        BundleManifest secondManifest = BundleManifest.load(appDirectory, manifestFile);
+        MatcherAssert.assertThat(secondManifest.copyFile(sourceFile, targetFile), IsEqual.equalTo(false));
+        Files.setLastModifiedTime(sourceFile, FileTime.fromMillis(Files.getLastModifiedTime(sourceFile).toMillis() - 60_000));
+        MatcherAssert.assertThat(secondManifest.copyFile(sourceFile, targetFile), IsEqual.equalTo(true));
+        secondManifest.save();
+        MatcherAssert.assertThat(Files.readAllLines(manifestFile).get(1).split("\t")[4], IsEqual.equalTo(IO.computeHash(sourceFile)));
+
+        // Once the hash of the source is known, changing only the modification time doesn't copy the file again
+        Files.setLastModifiedTime(sourceFile, FileTime.fromMillis(Files.getLastModifiedTime(sourceFile).toMillis() - 60_000));
+        BundleManifest touchedManifest = BundleManifest.load(appDirectory, manifestFile);
+        MatcherAssert.assertThat(touchedManifest.copyFile(sourceFile, targetFile), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(touchedManifest.getSkippedCount(), IsEqual.equalTo(1));
+        touchedManifest.save();
+
+        // Changed sources and missing targets are copied again
+        Files.write(sourceFile, "b".getBytes(StandardCharsets.UTF_8));
+        BundleManifest thirdManifest = BundleManifest.load(appDirectory, manifestFile);
+        MatcherAssert.assertThat(thirdManifest.copyFile(sourceFile, targetFile), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(new String(Files.readAllBytes(targetFile), StandardCharsets.UTF_8), IsEqual.equalTo("b"));
+        Files.delete(targetFile);
+        MatcherAssert.assertThat(thirdManifest.copyFile(sourceFile, targetFile), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(Files.exists(targetFile), IsEqual.equalTo(true));
+    }
+
+    @Test
+    void copyFileWithModifyingCopier() throws Exception {
+        Path sourceFile = this.createFile("source/a.txt", "a");
+        Path appDirectory = this.temporaryDirectory.resolve("Test.app");
+        Path manifestFile = this.temporaryDirectory.resolve("Test.app.manifest");
+        Path targetFile = Files.createDirectories(appDirectory).resolve("a.txt");
+        IO.FileCopier upperCaseCopier = (copySource, copyTarget) -> Files.write(copyTarget, new String(Files.readAllBytes(copySource), StandardCharsets.UTF_8).toUpperCase().getBytes(StandardCharsets.UTF_8));
+
+        for (int i = 0; i < 2; i++) {
+            BundleManifest manifest = BundleManifest.load(appDirectory, manifestFile);
+            MatcherAssert.assertThat(manifest.copyFile(sourceFile, targetFile, upperCaseCopier), IsEqual.equalTo(true));
+            manifest.save();
+            Files.setLastModifiedTime(sourceFile, FileTime.fromMillis(Files.getLastModifiedTime(sourceFile).toMillis() - 60_000));
+        }
+
+        // The recorded hash is the one of the source, so a target differing from its source can still be skipped
+        BundleManifest touchedManifest = BundleManifest.load(appDirectory, manifestFile);
+        MatcherAssert.assertThat(touchedManifest.copyFile(sourceFile, targetFile, upperCaseCopier), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(new String(Files.readAllBytes(targetFile), StandardCharsets.UTF_8), IsEqual.equalTo("A"));
+    }
+
+    @Test
+    void copyContent() throws Exception {
+        Path appDirectory = this.temporaryDirectory.resolve("Test.app");
+        Path manifestFile = this.temporaryDirectory.resolve("Test.app.manifest");
+        Path targetFile = Files.createDirectories(appDirectory).resolve("launcher");
+
+        BundleManifest firstManifest = BundleManifest.load(appDirectory, manifestFile);
+        MatcherAssert.assertThat(firstManifest.copyContent("launcher-a", "a".getBytes(StandardCharsets.UTF_8), targetFile), IsEqual.equalTo(true));
+        firstManifest.save();
+
+        BundleManifest secondManifest = BundleManifest.load(appDirectory, manifestFile);
+        MatcherAssert.assertThat(secondManifest.copyContent("launcher-a", "a".getBytes(StandardCharsets.UTF_8), targetFile), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(secondManifest.copyContent("launcher-b", "a".getBytes(StandardCharsets.UTF_8), targetFile), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(secondManifest.copyContent("launcher-b", "b".getBytes(StandardCharsets.UTF_8), targetFile), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(new String(Files.readAllBytes(targetFile), StandardCharsets.UTF_8), IsEqual.equalTo("b"));
+    }
+
+    @Test
+    void removeStaleFiles() throws Exception {
+        Path sourceFileA = this.createFile("source/a.txt", "a");
+        Path sourceFileB = this.createFile("source/b.txt", "b");
+        Path appDirectory = this.temporaryDirectory.resolve("Test.app");
+        Path manifestFile = this.temporaryDirectory.resolve("Test.app.manifest");
+        Path targetFileA = Files.createDirectories(appDirectory.resolve("Contents")).resolve("a.txt");
+        Path targetFileB = Files.createDirectories(appDirectory.resolve("Contents/Java/lib")).resolve("b.txt");
+
+        BundleManifest firstManifest = BundleManifest.load(appDirectory, manifestFile);
+        firstManifest.copyFile(sourceFileA, targetFileA);
+        firstManifest.copyFile(sourceFileB, targetFileB);
+        firstManifest.save();
+
+        // Files that aren't part of the next build are removed together with the directories that became empty
+        BundleManifest secondManifest = BundleManifest.load(appDirectory, manifestFile);
+        secondManifest.copyFile(sourceFileA, targetFileA);
+        secondManifest.removeStaleFiles();
+        secondManifest.save();
+        MatcherAssert.assertThat(secondManifest.getRemovedCount(), IsEqual.equalTo(1));
+        MatcherAssert.assertThat(Files.exists(targetFileA), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(Files.exists(targetFileB), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(Files.exists(appDirectory.resolve("Contents/Java")), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(Files.exists(appDirectory.resolve("Contents")), IsEqual.equalTo(true));
+
+        // Files that haven't been copied by the manifest are never removed
+        Path unknownFile = this.createFile("Test.app/Contents/unknown.txt", "unknown");
+        BundleManifest thirdManifest = BundleManifest.load(appDirectory, manifestFile);
+        thirdManifest.copyFile(sourceFileA, targetFileA);
+        thirdManifest.removeStaleFiles();
+        MatcherAssert.assertThat(Files.exists(unknownFile), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(Files.exists(targetFileA), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(thirdManifest.getRemovedCount(), IsEqual.equalTo(0));
+    }
+
+    @Test
+    void configurationInvalidatesManifest() throws Exception {
+        Path sourceFile = this.createFile("source/a.txt", "a");
+        Path appDirectory = this.temporaryDirectory.resolve("Test.app");
+        Path manifestFile = this.temporaryDirectory.resolve("Test.app.manifest");
+        Path targetFile = Files.createDirectories(appDirectory).resolve("a.txt");
+
+        BundleManifest firstManifest = BundleManifest.load(appDirectory, manifestFile);
+        firstManifest.setConfiguration("slimNativeBinaries=arm64");
+        firstManifest.copyFile(sourceFile, targetFile);
+        firstManifest.save();
+        MatcherAssert.assertThat(Files.readAllLines(manifestFile).get(1), IsEqual.equalTo("# configuration: slimNativeBinaries=arm64"));
+
+        BundleManifest sameManifest = BundleManifest.load(appDirectory, manifestFile);
+        sameManifest.setConfiguration("slimNativeBinaries=arm64");
+        MatcherAssert.assertThat(sameManifest.copyFile(sourceFile, targetFile), IsEqual.equalTo(false));
+
+        BundleManifest changedManifest = BundleManifest.load(appDirectory, manifestFile);
+        changedManifest.setConfiguration("slimNativeBinaries=x86_64");
+        MatcherAssert.assertThat(changedManifest.copyFile(sourceFile, targetFile), IsEqual.equalTo(true));
+        changedManifest.removeStaleFiles();
+        MatcherAssert.assertThat(Files.exists(targetFile), IsEqual.equalTo(true));
+    }
+
+    private Path createFile(String fileName, String content) throws Exception {
+        Path file = this.temporaryDirectory.resolve(fileName);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileCacheTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void use() throws IOException {
+        FileCache fileCache = new FileCache(this.temporaryDirectory, Long.MAX_VALUE, new SystemStreamLog());
+        AtomicInteger createCount = new AtomicInteger();
+        FileCache.EntryCreator entryCreator = entryDirectory -> {
+            createCount.incrementAndGet();
+            FileCacheTest.createFile(entryDirectory, 100);
+        };
+        Path firstDirectory = fileCache.use("a", entryCreator, entryDirectory -> entryDirectory);
+        Path secondDirectory = fileCache.use("a", entryCreator, entryDirectory -> entryDirectory);
+        MatcherAssert.assertThat(createCount.get(), IsEqual.equalTo(1));
+        MatcherAssert.assertThat(secondDirectory, IsEqual.equalTo(firstDirectory));
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("a/content")), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("a.lock")), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(Files.readAllLines(this.temporaryDirectory.resolve("a.size")).get(0), IsEqual.equalTo("100"));
+
+        Assertions.assertThrows(IOException.class, () -> fileCache.use("b", entryDirectory -> {
+            FileCacheTest.createFile(entryDirectory, 100);
+            throw new IOException("Cannot create entry");
+        }, entryDirectory -> entryDirectory));
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("b")), IsEqual.equalTo(false));
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() throws IOException {
+        FileCache fileCache = new FileCache(this.temporaryDirectory, 250, new SystemStreamLog());
+        fileCache.use("a", entryDirectory -> FileCacheTest.createFile(entryDirectory, 100), entryDirectory -> null);
+        fileCache.use("b", entryDirectory -> FileCacheTest.createFile(entryDirectory, 100), entryDirectory -> null);
+        Files.setLastModifiedTime(this.temporaryDirectory.resolve("a"), FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+        Files.setLastModifiedTime(this.temporaryDirectory.resolve("b"), FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+
+        // Using "a" again makes "b" the least recently used entry, which is removed once "c" exceeds the maximum size
+        fileCache.use("a", entryDirectory -> Assertions.fail("Entry should exist"), entryDirectory -> null);
+        fileCache.use("c", entryDirectory -> FileCacheTest.createFile(entryDirectory, 100), entryDirectory -> null);
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("a")), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("b")), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("b.size")), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("c")), IsEqual.equalTo(true));
+    }
+
+    @Test
+    void evictKeepsCurrentEntryExceedingMaximumSize() throws IOException {
+        FileCache fileCache = new FileCache(this.temporaryDirectory, 50, new SystemStreamLog());
+        fileCache.use("a", entryDirectory -> FileCacheTest.createFile(entryDirectory, 100), entryDirectory -> null);
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("a/content")), IsEqual.equalTo(true));
+        fileCache.use("b", entryDirectory -> FileCacheTest.createFile(entryDirectory, 100), entryDirectory -> null);
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("a")), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("b/content")), IsEqual.equalTo(true));
+        fileCache.evict();
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("b")), IsEqual.equalTo(false));
+    }
+
+    @Test
+    void evictSkipsEntriesInUse() throws Exception {
+        FileCache fileCache = new FileCache(this.temporaryDirectory, 150, new SystemStreamLog());
+        CountDownLatch entryUsed = new CountDownLatch(1);
+        CountDownLatch entryReleased = new CountDownLatch(1);
+        CompletableFuture<Void> entryUser = CompletableFuture.runAsync(() -> {
+            try {
+                fileCache.use("a", entryDirectory -> FileCacheTest.createFile(entryDirectory, 100), entryDirectory -> {
+                    entryUsed.countDown();
+                    try {
+                        entryReleased.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return null;
+                });
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        MatcherAssert.assertThat(entryUsed.await(30, TimeUnit.SECONDS), IsEqual.equalTo(true));
+        Files.setLastModifiedTime(this.temporaryDirectory.resolve("a"), FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+
+        // The entry is locked on the filesystem as well, so that builds in other processes cannot remove it
+        try (FileChannel lockChannel = FileChannel.open(this.temporaryDirectory.resolve("a.lock"), StandardOpenOption.WRITE)) {
+            Assertions.assertThrows(OverlappingFileLockException.class, () -> lockChannel.tryLock());
+        }
+
+        fileCache.use("b", entryDirectory -> FileCacheTest.createFile(entryDirectory, 100), entryDirectory -> null);
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("a")), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("b")), IsEqual.equalTo(true));
+
+        entryReleased.countDown();
+        entryUser.get(30, TimeUnit.SECONDS);
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("a")), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("b")), IsEqual.equalTo(false));
+    }
+
+    private static void createFile(Path entryDirectory, int size) throws IOException {
+        Files.createDirectories(entryDirectory);
+        Files.write(entryDirectory.resolve("content"), new byte[size]);
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.model.LinkStrategy;
+
+public class FileTransferTest {
+
+    private static final int REFLINK_MINIMUM_SIZE = 256 * 1024;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void hardlinkFallsBackToCopy() throws Exception {
+        for (LinkStrategy linkStrategy : Arrays.asList(LinkStrategy.HARDLINK, LinkStrategy.AUTO)) {
+            AtomicInteger hardlinkCount = new AtomicInteger();
+            FileTransfer fileTransfer = new FileTransfer(linkStrategy, new SystemStreamLog()) {
+                @Override
+                void createHardlink(Path sourceFile, Path targetFile) throws IOException {
+                    hardlinkCount.incrementAndGet();
+                    throw new FileSystemException(targetFile.toString(), sourceFile.toString(), "Operation not supported");
+                }
+            };
+            Path targetDirectory = Files.createDirectories(this.temporaryDirectory.resolve("target-" + linkStrategy));
+            for (int i = 0; i < 3; i++) {
+                Path sourceFile = this.createFile("source-" + linkStrategy + "/" + i + ".txt", 100);
+                Path targetFile = targetDirectory.resolve(i + ".txt");
+                fileTransfer.transfer(sourceFile, targetFile);
+                MatcherAssert.assertThat(Files.readAllBytes(targetFile), IsEqual.equalTo(Files.readAllBytes(sourceFile)));
+                MatcherAssert.assertThat(Files.isSameFile(sourceFile, targetFile), IsEqual.equalTo(false));
+            }
+
+            // Once linking has failed for a filesystem, all other files on it are copied directly
+            MatcherAssert.assertThat(linkStrategy.name(), hardlinkCount.get(), IsEqual.equalTo(1));
+        }
+    }
+
+    @Test
+    void reflinkMinimumSize() throws Exception {
+        AtomicInteger reflinkCount = new AtomicInteger();
+        FileTransfer fileTransfer = new FileTransfer(LinkStrategy.REFLINK, new SystemStreamLog()) {
+            @Override
+            boolean createReflink(Path sourceFile, Path targetFile, FileStore fileStore) throws IOException {
+                reflinkCount.incrementAndGet();
+                return false;
+            }
+        };
+        Path targetDirectory = Files.createDirectories(this.temporaryDirectory.resolve("target"));
+
+        // Small files are always copied, as running the clone command would be more expensive than the copy itself
+        Path smallFile = this.createFile("source/small.bin", REFLINK_MINIMUM_SIZE - 1);
+        fileTransfer.transfer(smallFile, targetDirectory.resolve("small.bin"));
+        MatcherAssert.assertThat(reflinkCount.get(), IsEqual.equalTo(0));
+        MatcherAssert.assertThat(Files.readAllBytes(targetDirectory.resolve("small.bin")), IsEqual.equalTo(Files.readAllBytes(smallFile)));
+
+        Path largeFile = this.createFile("source/large.bin", REFLINK_MINIMUM_SIZE);
+        fileTransfer.transfer(largeFile, targetDirectory.resolve("large.bin"));
+        MatcherAssert.assertThat(reflinkCount.get(), IsEqual.equalTo(1));
+        MatcherAssert.assertThat(Files.readAllBytes(targetDirectory.resolve("large.bin")), IsEqual.equalTo(Files.readAllBytes(largeFile)));
+
+        // Existing targets are replaced by the copy and the failed clone isn't tried again
+        fileTransfer.transfer(largeFile, targetDirectory.resolve("small.bin"));
+        MatcherAssert.assertThat(reflinkCount.get(), IsEqual.equalTo(1));
+        MatcherAssert.assertThat(Files.readAllBytes(targetDirectory.resolve("small.bin")), IsEqual.equalTo(Files.readAllBytes(largeFile)));
+    }
+
+    private Path createFile(String fileName, int size) throws Exception {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte)(i * 31 + fileName.length());
+        }
+        Path file = this.temporaryDirectory.resolve(fileName);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, content);
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.apache.maven.shared.model.fileset.FileSet;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class IOTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void copyFileSets() throws Exception {
+        Path sourceDirectory = Files.createDirectories(this.temporaryDirectory.resolve("resources/docs"));
+        Files.write(sourceDirectory.resolve("a.txt"), "a".getBytes(StandardCharsets.UTF_8));
+        Files.write(sourceDirectory.resolve("b.txt"), "b".getBytes(StandardCharsets.UTF_8));
+        Files.write(this.temporaryDirectory.resolve("resources/c.txt"), "c".getBytes(StandardCharsets.UTF_8));
+        Path appDirectory = Files.createDirectories(this.temporaryDirectory.resolve("Test.app"));
+        Files.write(appDirectory.resolve("other.txt"), "other".getBytes(StandardCharsets.UTF_8));
+        Path recordFile = this.temporaryDirectory.resolve("Test.app.resources");
+        FileSet fileSet = new FileSet();
+        fileSet.setDirectory(this.temporaryDirectory.resolve("resources").toString());
+        fileSet.setOutputDirectory("Contents/Resources");
+        List<FileSet> fileSets = Collections.singletonList(fileSet);
+
+        IO.CopyResult firstResult = IO.copyFileSets(appDirectory.toFile(), fileSets, 4, recordFile, null);
+        MatcherAssert.assertThat(firstResult.getCopiedFiles().size(), IsEqual.equalTo(3));
+        MatcherAssert.assertThat(firstResult.getSkippedCount(), IsEqual.equalTo(0));
+        MatcherAssert.assertThat(Files.readAllLines(appDirectory.resolve("Contents/Resources/docs/b.txt")), IsEqual.equalTo(List.of("b")));
+
+        // Normalizing the targets for reproducible builds must not cause them to be copied again
+        IO.normalizeFiles(appDirectory, Instant.parse("2020-01-01T00:00:00Z"));
+        IO.CopyResult normalizedResult = IO.copyFileSets(appDirectory.toFile(), fileSets, 4, recordFile, null);
+        MatcherAssert.assertThat(normalizedResult.getCopiedFiles().size(), IsEqual.equalTo(0));
+        MatcherAssert.assertThat(normalizedResult.getSkippedCount(), IsEqual.equalTo(3));
+
+        Files.write(sourceDirectory.resolve("a.txt"), "changed".getBytes(StandardCharsets.UTF_8));
+        Files.delete(sourceDirectory.resolve("b.txt"));
+        IO.CopyResult secondResult = IO.copyFileSets(appDirectory.toFile(), fileSets, 4, recordFile, null);
+        MatcherAssert.assertThat(secondResult.getCopiedFiles().size(), IsEqual.equalTo(1));
+        MatcherAssert.assertThat(secondResult.getSkippedCount(), IsEqual.equalTo(1));
+        MatcherAssert.assertThat(secondResult.getRemovedCount(), IsEqual.equalTo(1));
+        MatcherAssert.assertThat(secondResult.getTargetFiles().size(), IsEqual.equalTo(2));
+        MatcherAssert.assertThat(Files.readAllLines(appDirectory.resolve("Contents/Resources/docs/a.txt")), IsEqual.equalTo(List.of("changed")));
+        MatcherAssert.assertThat(Files.exists(appDirectory.resolve("Contents/Resources/docs/b.txt")), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(Files.exists(appDirectory.resolve("other.txt")), IsEqual.equalTo(true));
+
+        Files.delete(sourceDirectory.resolve("a.txt"));
+        IO.CopyResult thirdResult = IO.copyFileSets(appDirectory.toFile(), fileSets, 1, recordFile, null);
+        MatcherAssert.assertThat(thirdResult.getRemovedCount(), IsEqual.equalTo(1));
+        MatcherAssert.assertThat(Files.exists(appDirectory.resolve("Contents/Resources/docs")), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(Files.exists(appDirectory.resolve("Contents/Resources/c.txt")), IsEqual.equalTo(true));
+
+        IO.CopyResult configurationResult = IO.copyFileSets(appDirectory.toFile(), fileSets, 1, recordFile, "other");
+        MatcherAssert.assertThat(configurationResult.getCopiedFiles().size(), IsEqual.equalTo(1));
+        MatcherAssert.assertThat(configurationResult.getSkippedCount(), IsEqual.equalTo(0));
+
+        IO.CopyResult fullResult = IO.copyFileSets(appDirectory.toFile(), fileSets, 1, null, null);
+        MatcherAssert.assertThat(fullResult.getCopiedFiles().size(), IsEqual.equalTo(1));
+        MatcherAssert.assertThat(fullResult.getSkippedCount(), IsEqual.equalTo(0));
+    }
+
+    @Test
+    void copyFiles() throws Exception {
+        Map<Path, Path> sourceFilesByTargetFile = new TreeMap<>();
+        for (int i = 0; i < 40; i++) {
+            Path sourceFile = Files.createDirectories(this.temporaryDirectory.resolve("source/" + (i % 5))).resolve(i + ".txt");
+            Files.write(sourceFile, String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+            sourceFilesByTargetFile.put(this.temporaryDirectory.resolve("target/" + (i % 5) + "/nested/" + i + ".txt"), sourceFile);
+        }
+
+        // The copier doesn't create any directories, so all of them must exist before the first file is copied
+        IO.copyFiles(sourceFilesByTargetFile, 4, (sourceFile, targetFile) -> Files.copy(sourceFile, targetFile));
+        for (Map.Entry<Path, Path> sourceFileByTargetFile : sourceFilesByTargetFile.entrySet()) {
+            MatcherAssert.assertThat(Files.readAllBytes(sourceFileByTargetFile.getKey()), IsEqual.equalTo(Files.readAllBytes(sourceFileByTargetFile.getValue())));
+        }
+
+        // Failures in one batch don't stop the other batches and are reported together once all files have been copied
+        Path failedDirectory = this.temporaryDirectory.resolve("failed");
+        Map<Path, Path> failedSourceFilesByTargetFile = new TreeMap<>();
+        sourceFilesByTargetFile.forEach((targetFile, sourceFile) -> failedSourceFilesByTargetFile.put(failedDirectory.resolve(sourceFile.getFileName()), sourceFile));
+        IOException copyException = Assertions.assertThrows(IOException.class, () -> IO.copyFiles(failedSourceFilesByTargetFile, 4, (sourceFile, targetFile) -> {
+            if (sourceFile.getFileName().toString().startsWith("1")) {
+                throw new IOException("Cannot copy: " + sourceFile.getFileName());
+            }
+            Files.copy(sourceFile, targetFile);
+        }));
+        MatcherAssert.assertThat(copyException.getMessage(), IsEqual.equalTo("Cannot copy 11 of 40 files: Cannot copy: 1.txt"));
+        MatcherAssert.assertThat(copyException.getSuppressed().length, IsEqual.equalTo(11));
+        try (Stream<Path> copiedFiles = Files.list(failedDirectory)) {
+            MatcherAssert.assertThat(copiedFiles.count(), IsEqual.equalTo(29L));
+        }
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class IsoImageWriterTest {
+
+    @Test
+    void roundTripTest(@TempDir Path tempDirectory) throws Exception {
+        Path appDirectory = Files.createDirectories(tempDirectory.resolve("Test.app"));
+        Path javaDirectory = Files.createDirectories(appDirectory.resolve("Contents/Java"));
+        Files.write(javaDirectory.resolve("app.jar"), new byte[5000]);
+        Files.write(javaDirectory.resolve("Name with spaces.txt"), "content".getBytes(StandardCharsets.UTF_8));
+        Files.write(javaDirectory.resolve("empty.txt"), new byte[0]);
+        for (int i = 0; i < 120; i++) {
+            // Many similar names mapping to the same ISO 9660 name, spread across multiple directory sectors
+            Files.write(javaDirectory.resolve("resource-with-a-long-common-prefix-" + i + ".properties"), String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+        }
+        char[] longName = new char[240];
+        Arrays.fill(longName, 'x');
+        Files.write(javaDirectory.resolve(new String(longName)), "long".getBytes(StandardCharsets.UTF_8));
+        Path deepDirectory = Files.createDirectories(javaDirectory.resolve("a/b/c/d/e/f/g/h/i/j"));
+        Files.write(deepDirectory.resolve("deep.txt"), "deep".getBytes(StandardCharsets.UTF_8));
+        Files.createSymbolicLink(appDirectory.resolve("Contents/link"), Paths.get("Java/../Java/app.jar"));
+        Path bundleDirectory = Files.createDirectories(tempDirectory.resolve("bundle"));
+        Files.createSymbolicLink(bundleDirectory.resolve("Applications"), Paths.get("/Applications"));
+
+        IsoImageWriter imageWriter = new IsoImageWriter("Test Volume");
+        imageWriter.addDirectoryContent(bundleDirectory);
+        imageWriter.addDirectory("Test.app", appDirectory);
+        ByteArrayOutputStream imageContent = new ByteArrayOutputStream();
+        long imageSize = imageWriter.write(imageContent);
+        byte[] image = imageContent.toByteArray();
+        MatcherAssert.assertThat(imageSize, IsEqual.equalTo((long)image.length));
+
+        Map<String, String> expectedEntries = new TreeMap<>();
+        expectedEntries.put("Applications", "link:/Applications");
+        try (Stream<Path> appFiles = Files.walk(appDirectory)) {
+            for (Path appFile : appFiles.collect(Collectors.toList())) {
+                String entryName = "Test.app/" + appDirectory.relativize(appFile).toString();
+                if (Files.isSymbolicLink(appFile)) {
+                    expectedEntries.put(entryName, "link:" + Files.readSymbolicLink(appFile));
+                } else if (Files.isRegularFile(appFile)) {
+                    expectedEntries.put(entryName, new String(Files.readAllBytes(appFile), StandardCharsets.ISO_8859_1));
+                }
+            }
+        }
+        MatcherAssert.assertThat(IsoImageWriterTest.readEntries(image), IsEqual.equalTo(expectedEntries));
+    }
+
+    @Test
+    void reproducibleTest(@TempDir Path tempDirectory) throws Exception {
+        Path appDirectory = Files.createDirectories(tempDirectory.resolve("Test.app"));
+        Path javaDirectory = Files.createDirectories(appDirectory.resolve("Contents/Java"));
+        Files.write(javaDirectory.resolve("app.jar"), new byte[5000]);
+        Files.write(javaDirectory.resolve("test.txt"), "content".getBytes(StandardCharsets.UTF_8));
+        Instant timestamp = Instant.parse("2020-01-01T00:00:00Z");
+        byte[] firstImage = IsoImageWriterTest.writeImage(appDirectory, timestamp);
+        Thread.sleep(10);
+        Files.setLastModifiedTime(javaDirectory.resolve("test.txt"), FileTime.from(Instant.now()));
+        Files.setLastModifiedTime(javaDirectory, FileTime.from(Instant.now()));
+        byte[] secondImage = IsoImageWriterTest.writeImage(appDirectory, timestamp);
+        MatcherAssert.assertThat(Arrays.equals(firstImage, secondImage), IsEqual.equalTo(true));
+    }
+
+    private static byte[] writeImage(Path appDirectory, Instant timestamp) throws Exception {
+        IsoImageWriter imageWriter = new IsoImageWriter("Test Volume");
+        imageWriter.setTimestamp(timestamp);
+        imageWriter.addDirectory("Test.app", appDirectory);
+        ByteArrayOutputStream imageContent = new ByteArrayOutputStream();
+        imageWriter.write(imageContent);
+        return imageContent.toByteArray();
+    }
+
+    /**
+     * Reads all files and symbolic links from the image using their Rock Ridge names.
+     */
+    private static Map<String, String> readEntries(byte[] image) {
+        ByteBuffer imageBuffer = ByteBuffer.wrap(image).order(ByteOrder.LITTLE_ENDIAN);
+        int descriptorOffset = 16 * 2048;
+        MatcherAssert.assertThat(new String(image, descriptorOffset + 1, 5, StandardCharsets.US_ASCII), IsEqual.equalTo("CD001"));
+        MatcherAssert.assertThat(new String(image, descriptorOffset + 40, 11, StandardCharsets.US_ASCII), IsEqual.equalTo("Test Volume"));
+        MatcherAssert.assertThat(imageBuffer.getInt(descriptorOffset + 80) * 2048L, IsEqual.equalTo((long)image.length));
+        MatcherAssert.assertThat(image[descriptorOffset + 2048] & 0xFF, IsEqual.equalTo(255));
+
+        Map<String, String> entries = new TreeMap<>();
+        int rootRecordOffset = descriptorOffset + 156;
+        IsoImageWriterTest.readDirectory(image, imageBuffer.getInt(rootRecordOffset + 2), imageBuffer.getInt(rootRecordOffset + 10), "", entries);
+        return entries;
+    }
+
+    private static void readDirectory(byte[] image, int extent, int size, String path, Map<String, String> entries) {
+        ByteBuffer imageBuffer = ByteBuffer.wrap(image).order(ByteOrder.LITTLE_ENDIAN);
+        int offset = extent * 2048;
+        int end = offset + size;
+        while (offset < end) {
+            int recordLength = image[offset] & 0xFF;
+            if (recordLength == 0) {
+                offset = (offset / 2048 + 1) * 2048;
+                continue;
+            }
+            MatcherAssert.assertThat(recordLength % 2, IsEqual.equalTo(0));
+            int identifierLength = image[offset + 32] & 0xFF;
+            boolean special = identifierLength == 1 && (image[offset + 33] == 0 || image[offset + 33] == 1);
+            if (!special) {
+                RockRidgeEntry rockRidgeEntry = new RockRidgeEntry();
+                int systemUseOffset = offset + 33 + identifierLength + (identifierLength % 2 == 0 ? 1 : 0);
+                IsoImageWriterTest.readSystemUse(image, systemUseOffset, offset + recordLength, rockRidgeEntry);
+                String entryPath = path + new String(rockRidgeEntry.name.toByteArray(), StandardCharsets.UTF_8);
+                int entryExtent = imageBuffer.getInt(offset + 2);
+                int entrySize = imageBuffer.getInt(offset + 10);
+                if ((image[offset + 25] & 0x02) != 0) {
+                    MatcherAssert.assertThat(rockRidgeEntry.mode & 0170000, IsEqual.equalTo(040000));
+                    IsoImageWriterTest.readDirectory(image, entryExtent, entrySize, entryPath + "/", entries);
+                } else if (rockRidgeEntry.linkTarget != null) {
+                    MatcherAssert.assertThat(rockRidgeEntry.mode & 0170000, IsEqual.equalTo(0120000));
+                    entries.put(entryPath, "link:" + rockRidgeEntry.linkTarget);
+                } else {
+                    MatcherAssert.assertThat(rockRidgeEntry.mode & 0170000, IsEqual.equalTo(0100000));
+                    entries.put(entryPath, new String(image, entryExtent * 2048, entrySize, StandardCharsets.ISO_8859_1));
+                }
+            }
+            offset += recordLength;
+        }
+    }
+
+    private static void readSystemUse(byte[] image, int offset, int end, RockRidgeEntry rockRidgeEntry) {
+        ByteBuffer imageBuffer = ByteBuffer.wrap(image).order(ByteOrder.LITTLE_ENDIAN);
+        while (offset + 4 <= end && image[offset] != 0) {
+            String signature = new String(image, offset, 2, StandardCharsets.US_ASCII);
+            int entryLength = image[offset + 2] & 0xFF;
+            if ("NM".equals(signature)) {
+                rockRidgeEntry.name.write(image, offset + 5, entryLength - 5);
+            } else if ("PX".equals(signature)) {
+                rockRidgeEntry.mode = imageBuffer.getInt(offset + 4);
+            } else if ("SL".equals(signature)) {
+                StringBuilder linkTarget = new StringBuilder(rockRidgeEntry.linkTarget == null ? "" : rockRidgeEntry.linkTarget);
+                for (int componentOffset = offset + 5; componentOffset < offset + entryLength; componentOffset += 2 + (image[componentOffset + 1] & 0xFF)) {
+                    int componentFlags = image[componentOffset] & 0xFF;
+                    if (linkTarget.length() > 0 && linkTarget.charAt(linkTarget.length() - 1) != '/') {
+                        linkTarget.append('/');
+                    }
+                    if ((componentFlags & 0x08) != 0) {
+                        linkTarget.append('/');
+                    } else if ((componentFlags & 0x02) != 0) {
+                        linkTarget.append('.');
+                    } else if ((componentFlags & 0x04) != 0) {
+                        linkTarget.append("..");
+                    } else {
+                        linkTarget.append(new String(image, componentOffset + 2, image[componentOffset + 1] & 0xFF, StandardCharsets.UTF_8));
+                    }
+                }
+                rockRidgeEntry.linkTarget = linkTarget.toString();
+            } else if ("CE".equals(signature)) {
+                int continuationOffset = imageBuffer.getInt(offset + 4) * 2048 + imageBuffer.getInt(offset + 12);
+                MatcherAssert.assertThat(imageBuffer.getInt(offset + 12) + imageBuffer.getInt(offset + 20) <= 2048, IsEqual.equalTo(true));
+                IsoImageWriterTest.readSystemUse(image, continuationOffset, continuationOffset + imageBuffer.getInt(offset + 20), rockRidgeEntry);
+            }
+            offset += entryLength;
+        }
+    }
+
+    static class RockRidgeEntry {
+
+        ByteArrayOutputStream name = new ByteArrayOutputStream();
+        String linkTarget = null;
+        int mode = 0;
+
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JarEntryFilterTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void test() {
+        JarEntryFilter entryFilter = new JarEntryFilter(null, Arrays.asList("**/*.java", "META-INF/maven/**", "**/module-info.class"), new SystemStreamLog());
+        MatcherAssert.assertThat(entryFilter.test("Test.java"), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(entryFilter.test("test/Test.java"), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(entryFilter.test("test/Test.class"), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(entryFilter.test("module-info.class"), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(entryFilter.test("META-INF/versions/11/module-info.class"), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(entryFilter.test("META-INF/maven/"), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(entryFilter.test("META-INF/maven/test/test/pom.xml"), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(entryFilter.test("META-INF/MANIFEST.MF"), IsEqual.equalTo(true));
+
+        // Directories and the manifest are kept even if they don't match any of the include patterns
+        JarEntryFilter includeFilter = new JarEntryFilter(Collections.singletonList("test/**"), Collections.singletonList("**/*.txt"), new SystemStreamLog());
+        MatcherAssert.assertThat(includeFilter.test("test/Test.class"), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(includeFilter.test("test/readme.txt"), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(includeFilter.test("other/Test.class"), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(includeFilter.test("other/"), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(includeFilter.test("META-INF/MANIFEST.MF"), IsEqual.equalTo(true));
+    }
+
+    @Test
+    void filterFile() throws Exception {
+        Path sourceFile = this.createJar("test.jar", "META-INF/MANIFEST.MF", "META-INF/maven/test/test/pom.xml", "test/", "test/Test.class", "test/Test.java", "module-info.class");
+        Path targetFile = this.temporaryDirectory.resolve("target.jar");
+        JarEntryFilter entryFilter = new JarEntryFilter(null, Arrays.asList("**/*.java", "META-INF/maven/**", "**/module-info.class"), new SystemStreamLog());
+        MatcherAssert.assertThat(entryFilter.filterFile(sourceFile, targetFile), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(this.listEntries(targetFile), IsEqual.equalTo(Arrays.asList("META-INF/MANIFEST.MF", "test/", "test/Test.class")));
+        MatcherAssert.assertThat(Files.getLastModifiedTime(targetFile), IsEqual.equalTo(Files.getLastModifiedTime(sourceFile)));
+        MatcherAssert.assertThat(entryFilter.toString().startsWith("removed 3 entries from 1 JAR files"), IsEqual.equalTo(true));
+
+        // JAR files without any entries to remove and signed JAR files are left to the regular copy
+        Path unchangedFile = this.createJar("unchanged.jar", "META-INF/MANIFEST.MF", "test/Test.class");
+        Path signedFile = this.createJar("signed.jar", "META-INF/MANIFEST.MF", "META-INF/TEST.SF", "test/Test.java");
+        MatcherAssert.assertThat(entryFilter.filterFile(unchangedFile, this.temporaryDirectory.resolve("copy.jar")), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(entryFilter.filterFile(signedFile, this.temporaryDirectory.resolve("copy.jar")), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("copy.jar")), IsEqual.equalTo(false));
+    }
+
+    private List<String> listEntries(Path jarFile) throws Exception {
+        try (ZipFile zipFile = new ZipFile(jarFile.toFile())) {
+            return zipFile.stream().map(ZipEntry::getName).collect(Collectors.toList());
+        }
+    }
+
+    private Path createJar(String fileName, String... entryNames) throws Exception {
+        Path jarFile = this.temporaryDirectory.resolve(fileName);
+        try (OutputStream jarStream = Files.newOutputStream(jarFile); ZipOutputStream zipStream = new ZipOutputStream(jarStream)) {
+            for (String entryName : entryNames) {
+                zipStream.putNextEntry(new ZipEntry(entryName));
+                if (!entryName.endsWith("/")) {
+                    zipStream.write(entryName.getBytes(StandardCharsets.UTF_8));
+                }
+                zipStream.closeEntry();
+            }
+        }
+        return jarFile;
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JarMergerTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void merge() throws Exception {
+        Map<String, String> firstEntries = new LinkedHashMap<>();
+        firstEntries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\nMulti-Release: true\n\n");
+        firstEntries.put("META-INF/FIRST.SF", "signature");
+        firstEntries.put("META-INF/FIRST.RSA", "signature");
+        firstEntries.put("META-INF/maven/test/first/pom.xml", "<project/>");
+        firstEntries.put("META-INF/services/test.Service", "# first provider\ntest.FirstProvider\n");
+        firstEntries.put("module-info.class", "first module");
+        firstEntries.put("test/First.class", "first");
+        firstEntries.put("test/Shared.class", "shared from first");
+        Map<String, String> secondEntries = new LinkedHashMap<>();
+        secondEntries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n\n");
+        secondEntries.put("META-INF/services/test.Service", "test.SecondProvider\ntest.FirstProvider\n");
+        secondEntries.put("META-INF/services/test.OtherService", "test.OtherProvider");
+        secondEntries.put("test/Second.class", "second");
+        secondEntries.put("test/Shared.class", "shared from second");
+        Path firstFile = this.createJar("first.jar", firstEntries);
+        Path secondFile = this.createJar("second.jar", secondEntries);
+
+        Path mergedFile = this.temporaryDirectory.resolve("merged.jar");
+        List<String> indexLines = new JarMerger(true).merge(Arrays.asList(firstFile, secondFile), mergedFile);
+        MatcherAssert.assertThat(indexLines.size(), IsEqual.equalTo(2));
+        MatcherAssert.assertThat(indexLines.get(0), IsEqual.equalTo(firstFile + "\t2 entries copied\t0 duplicates skipped\t5 entries removed"));
+        MatcherAssert.assertThat(indexLines.get(1), IsEqual.equalTo(secondFile + "\t1 entries copied\t1 duplicates skipped\t1 entries removed"));
+
+        try (JarFile jarFile = new JarFile(mergedFile.toFile())) {
+            MatcherAssert.assertThat(jarFile.getManifest().getMainAttributes().getValue(Attributes.Name.MULTI_RELEASE), IsEqual.equalTo("true"));
+            MatcherAssert.assertThat(this.readEntry(jarFile, "test/First.class"), IsEqual.equalTo("first"));
+            MatcherAssert.assertThat(this.readEntry(jarFile, "test/Second.class"), IsEqual.equalTo("second"));
+            MatcherAssert.assertThat(this.readEntry(jarFile, "test/Shared.class"), IsEqual.equalTo("shared from first"));
+            MatcherAssert.assertThat(this.readEntry(jarFile, "META-INF/services/test.Service"), IsEqual.equalTo("test.FirstProvider\ntest.SecondProvider\n"));
+            MatcherAssert.assertThat(this.readEntry(jarFile, "META-INF/services/test.OtherService"), IsEqual.equalTo("test.OtherProvider\n"));
+            MatcherAssert.assertThat(jarFile.getEntry("META-INF/FIRST.SF"), IsEqual.equalTo(null));
+            MatcherAssert.assertThat(jarFile.getEntry("META-INF/FIRST.RSA"), IsEqual.equalTo(null));
+            MatcherAssert.assertThat(jarFile.getEntry("META-INF/maven/test/first/pom.xml"), IsEqual.equalTo(null));
+            MatcherAssert.assertThat(jarFile.getEntry("module-info.class"), IsEqual.equalTo(null));
+            MatcherAssert.assertThat(jarFile.getEntry("test/First.class").getMethod(), IsEqual.equalTo(ZipEntry.DEFLATED));
+        }
+
+        Path storedFile = this.temporaryDirectory.resolve("stored.jar");
+        new JarMerger(false).merge(Arrays.asList(firstFile, secondFile), storedFile);
+        try (ZipFile zipFile = new ZipFile(storedFile.toFile())) {
+            MatcherAssert.assertThat(zipFile.stream().allMatch(zipEntry -> zipEntry.getMethod() == ZipEntry.STORED), IsEqual.equalTo(true));
+            MatcherAssert.assertThat(this.readEntry(zipFile, "test/Shared.class"), IsEqual.equalTo("shared from first"));
+        }
+    }
+
+    private String readEntry(ZipFile zipFile, String entryName) throws Exception {
+        try (InputStream entryStream = zipFile.getInputStream(zipFile.getEntry(entryName))) {
+            return new String(entryStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private Path createJar(String fileName, Map<String, String> entries) throws Exception {
+        Path jarFile = this.temporaryDirectory.resolve(fileName);
+        try (OutputStream jarStream = Files.newOutputStream(jarFile); ZipOutputStream zipStream = new ZipOutputStream(jarStream)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zipStream.putNextEntry(new ZipEntry(entry.getKey()));
+                zipStream.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zipStream.closeEntry();
+            }
+        }
+        return jarFile;
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class NativeBinarySlimmerTest {
+
+    private static final int CPU_TYPE_X86 = 0x00000007;
+    private static final int CPU_TYPE_X86_64 = 0x01000007;
+    private static final int CPU_TYPE_ARM64 = 0x0100000C;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void slimFile() throws Exception {
+        byte[] x86Slice = this.createSlice(CPU_TYPE_X86_64, 4000);
+        byte[] arm64Slice = this.createSlice(CPU_TYPE_ARM64, 3000);
+        byte[] i386Slice = this.createSlice(CPU_TYPE_X86, 100);
+        Path sourceFile = Files.write(this.temporaryDirectory.resolve("libtest.dylib"), this.createUniversalBinary(Arrays.asList(x86Slice, arm64Slice, i386Slice), CPU_TYPE_X86_64, CPU_TYPE_ARM64, CPU_TYPE_X86));
+
+        Path arm64File = this.temporaryDirectory.resolve("libtest-arm64.dylib");
+        NativeBinarySlimmer arm64Slimmer = new NativeBinarySlimmer(Collections.singleton("arm64"), new SystemStreamLog());
+        MatcherAssert.assertThat(arm64Slimmer.slimFile(sourceFile, arm64File), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(Files.readAllBytes(arm64File), IsEqual.equalTo(arm64Slice));
+
+        // Universal apps keep both slices but drop the ones of all other architectures
+        Path universalFile = this.temporaryDirectory.resolve("libtest-universal.dylib");
+        NativeBinarySlimmer universalSlimmer = new NativeBinarySlimmer(new TreeSet<>(Arrays.asList("arm64", "x86_64")), new SystemStreamLog());
+        MatcherAssert.assertThat(universalSlimmer.slimFile(sourceFile, universalFile), IsEqual.equalTo(true));
+        byte[] universalContent = Files.readAllBytes(universalFile);
+        List<MachOFile.Slice> universalSlices = MachOFile.readSlices(universalContent, universalContent.length);
+        MatcherAssert.assertThat(universalSlices.size(), IsEqual.equalTo(2));
+        for (int i = 0; i < universalSlices.size(); i++) {
+            MachOFile.Slice slice = universalSlices.get(i);
+            MatcherAssert.assertThat(slice.getOffset() % 4096, IsEqual.equalTo(0L));
+            MatcherAssert.assertThat(Arrays.copyOfRange(universalContent, (int)slice.getOffset(), (int)(slice.getOffset() + slice.getSize())), IsEqual.equalTo(i == 0 ? x86Slice : arm64Slice));
+        }
+
+        // Binaries for a single architecture and binaries that don't need to be changed are left to the regular copy
+        MatcherAssert.assertThat(arm64Slimmer.slimFile(arm64File, this.temporaryDirectory.resolve("copy.dylib")), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(universalSlimmer.slimFile(universalFile, this.temporaryDirectory.resolve("copy.dylib")), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(Files.exists(this.temporaryDirectory.resolve("copy.dylib")), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(arm64Slimmer.slimContent(Files.readAllBytes(sourceFile)), IsEqual.equalTo(arm64Slice));
+    }
+
+    @Test
+    void slimJar() throws Exception {
+        byte[] x86Slice = this.createSlice(CPU_TYPE_X86_64, 2000);
+        byte[] arm64Slice = this.createSlice(CPU_TYPE_ARM64, 1000);
+        byte[] classContent = { (byte)0xCA, (byte)0xFE, (byte)0xBA, (byte)0xBE, 0x00, 0x00, 0x00, 0x34 };
+        Path sourceFile = this.createJar("test.jar",
+            "test/Test.class", classContent,
+            "native/linux/libtest.so", new byte[] { 0x7F, 'E', 'L', 'F', 2, 1, 1, 0 },
+            "native/windows/test.dll", new byte[] { 'M', 'Z', (byte)0x90, 0 },
+            "native/darwin-x86-64/libsingle.jnilib", x86Slice,
+            "native/darwin-aarch64/libsingle.jnilib", arm64Slice,
+            "native/darwin/libuniversal.dylib", this.createUniversalBinary(Arrays.asList(x86Slice, arm64Slice), CPU_TYPE_X86_64, CPU_TYPE_ARM64)
+        );
+
+        Path targetFile = this.temporaryDirectory.resolve("test-arm64.jar");
+        NativeBinarySlimmer slimmer = new NativeBinarySlimmer(Collections.singleton("arm64"), new SystemStreamLog());
+        MatcherAssert.assertThat(slimmer.slimFile(sourceFile, targetFile), IsEqual.equalTo(true));
+        try (ZipFile zipFile = new ZipFile(targetFile.toFile())) {
+            MatcherAssert.assertThat(Collections.list(zipFile.entries()).stream().map(ZipEntry::getName).collect(java.util.stream.Collectors.toList()), IsEqual.equalTo(Arrays.asList("test/Test.class", "native/darwin-aarch64/libsingle.jnilib", "native/darwin/libuniversal.dylib")));
+            MatcherAssert.assertThat(this.readEntry(zipFile, "test/Test.class"), IsEqual.equalTo(classContent));
+            MatcherAssert.assertThat(this.readEntry(zipFile, "native/darwin-aarch64/libsingle.jnilib"), IsEqual.equalTo(arm64Slice));
+            MatcherAssert.assertThat(this.readEntry(zipFile, "native/darwin/libuniversal.dylib"), IsEqual.equalTo(arm64Slice));
+        }
+
+        // Signed JAR files must not be modified
+        Path signedFile = this.createJar("signed.jar",
+            "META-INF/SIGNER.SF", "Signature-Version: 1.0\n".getBytes(StandardCharsets.UTF_8),
+            "native/linux/libtest.so", new byte[] { 0x7F, 'E', 'L', 'F', 2, 1, 1, 0 }
+        );
+        MatcherAssert.assertThat(slimmer.slimFile(signedFile, this.temporaryDirectory.resolve("signed-arm64.jar")), IsEqual.equalTo(false));
+        MatcherAssert.assertThat(slimmer.slimFile(this.createJar("plain.jar", "test/Test.class", classContent), this.temporaryDirectory.resolve("plain-arm64.jar")), IsEqual.equalTo(false));
+    }
+
+    private byte[] createSlice(int cpuType, int length) {
+        byte[] slice = new byte[length];
+        Arrays.fill(slice, (byte)cpuType);
+        ByteBuffer.wrap(slice).putInt(0xCFFAEDFE).order(java.nio.ByteOrder.LITTLE_ENDIAN).putInt(cpuType);
+        return slice;
+    }
+
+    private byte[] createUniversalBinary(List<byte[]> slices, int... cpuTypes) {
+        ByteArrayOutputStream binaryContent = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(4096);
+        header.putInt(0xCAFEBABE).putInt(slices.size());
+        for (int i = 0; i < slices.size(); i++) {
+            header.putInt(cpuTypes[i]).putInt(3).putInt(4096 * (i + 1)).putInt(slices.get(i).length).putInt(12);
+        }
+        binaryContent.write(header.array(), 0, 4096);
+        for (byte[] slice : slices) {
+            binaryContent.write(slice, 0, slice.length);
+            binaryContent.write(new byte[4096 - slice.length], 0, 4096 - slice.length);
+        }
+        return binaryContent.toByteArray();
+    }
+
+    private Path createJar(String fileName, Object... entries) throws Exception {
+        Path jarFile = this.temporaryDirectory.resolve(fileName);
+        try (OutputStream jarStream = Files.newOutputStream(jarFile); ZipOutputStream zipStream = new ZipOutputStream(jarStream)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                byte[] entryContent = (byte[])entries[i + 1];
+                ZipEntry zipEntry = new ZipEntry((String)entries[i]);
+                if (i % 4 == 2) {
+                    CRC32 checksum = new CRC32();
+                    checksum.update(entryContent);
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(entryContent.length);
+                    zipEntry.setCrc(checksum.getValue());
+                }
+                zipStream.putNextEntry(zipEntry);
+                zipStream.write(entryContent);
+                zipStream.closeEntry();
+            }
+        }
+        return jarFile;
+    }
+
+    private byte[] readEntry(ZipFile zipFile, String entryName) throws Exception {
+        try (InputStream entryStream = zipFile.getInputStream(zipFile.getEntry(entryName))) {
+            return entryStream.readAllBytes();
+        }
+    }
+
+}
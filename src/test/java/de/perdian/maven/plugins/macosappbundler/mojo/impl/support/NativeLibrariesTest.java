@@ -0,0 +1,89 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.perdian.maven.plugins.macosappbundler.mojo.model.NativeBinaryType;
+
+public class NativeLibrariesTest {
+
+    private static final byte[] X86_64_LIBRARY = { (byte)0xCF, (byte)0xFA, (byte)0xED, (byte)0xFE, 0x07, 0x00, 0x00, 0x01 };
+    private static final byte[] ARM64_LIBRARY = { (byte)0xCF, (byte)0xFA, (byte)0xED, (byte)0xFE, 0x0C, 0x00, 0x00, 0x01 };
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void collect() throws Exception {
+        byte[] universalLibrary = ByteBuffer.allocate(48).putInt(0xCAFEBABE).putInt(2).putInt(0x01000007).putInt(3).putInt(4096).putInt(8).putInt(12).putInt(0x0100000C).putInt(0).putInt(8192).putInt(8).putInt(14).array();
+        Path jnaJar = this.createJar("jna.jar",
+            "com/sun/jna/darwin-x86-64/libjnidispatch.jnilib", X86_64_LIBRARY,
+            "com/sun/jna/darwin-aarch64/libjnidispatch.jnilib", ARM64_LIBRARY,
+            "com/sun/jna/linux-x86-64/libjnidispatch.so", X86_64_LIBRARY
+        );
+        Path universalJar = this.createJar("universal.jar",
+            "libuniversal.dylib", universalLibrary,
+            "libinvalid.dylib", new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }
+        );
+        Path duplicateJar = this.createJar("duplicate.jar",
+            "other/libuniversal.dylib", X86_64_LIBRARY
+        );
+
+        Map<String, NativeLibraries.NativeLibrary> arm64Libraries = NativeLibraries.collect(Arrays.asList(jnaJar, universalJar, duplicateJar), NativeBinaryType.ARM_64.getArchitectures(), new SystemStreamLog());
+        MatcherAssert.assertThat(arm64Libraries.keySet(), IsEqual.equalTo(new TreeSet<>(Arrays.asList("libjnidispatch.jnilib", "libuniversal.dylib"))));
+        MatcherAssert.assertThat(arm64Libraries.get("libjnidispatch.jnilib").getEntryName(), IsEqual.equalTo("com/sun/jna/darwin-aarch64/libjnidispatch.jnilib"));
+        MatcherAssert.assertThat(arm64Libraries.get("libjnidispatch.jnilib").readContent(), IsEqual.equalTo(ARM64_LIBRARY));
+        MatcherAssert.assertThat(arm64Libraries.get("libuniversal.dylib").getJarFile(), IsEqual.equalTo(universalJar));
+        MatcherAssert.assertThat(arm64Libraries.get("libuniversal.dylib").getArchitectures(), IsEqual.equalTo(new TreeSet<>(Arrays.asList("arm64", "x86_64"))));
+
+        Map<String, NativeLibraries.NativeLibrary> x86Libraries = NativeLibraries.collect(Arrays.asList(jnaJar, universalJar, duplicateJar), NativeBinaryType.X86_64.getArchitectures(), new SystemStreamLog());
+        MatcherAssert.assertThat(x86Libraries.get("libjnidispatch.jnilib").getEntryName(), IsEqual.equalTo("com/sun/jna/darwin-x86-64/libjnidispatch.jnilib"));
+
+        // Separate libraries for both architectures cannot be used for a universal app
+        Map<String, NativeLibraries.NativeLibrary> universalLibraries = NativeLibraries.collect(Arrays.asList(duplicateJar, jnaJar, universalJar), NativeBinaryType.UNIVERSAL.getArchitectures(), new SystemStreamLog());
+        MatcherAssert.assertThat(universalLibraries.keySet(), IsEqual.equalTo(new TreeSet<>(Arrays.asList("libuniversal.dylib"))));
+        MatcherAssert.assertThat(universalLibraries.get("libuniversal.dylib").getJarFile(), IsEqual.equalTo(universalJar));
+    }
+
+    private Path createJar(String fileName, Object... entries) throws Exception {
+        Path jarFile = this.temporaryDirectory.resolve(fileName);
+        try (OutputStream jarStream = Files.newOutputStream(jarFile); ZipOutputStream zipStream = new ZipOutputStream(jarStream)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                zipStream.putNextEntry(new ZipEntry((String)entries[i]));
+                zipStream.write((byte[])entries[i + 1]);
+                zipStream.closeEntry();
+            }
+        }
+        return jarFile;
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TreeCopierTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void copyTree() throws Exception {
+        Assumptions.assumeTrue(File.separatorChar == '/', "Symbolic links and permissions require a POSIX filesystem");
+
+        Path sourceDirectory = this.temporaryDirectory.resolve("source/Test.app");
+        this.createFile(sourceDirectory.resolve("Contents/Info.plist"), "plist");
+        this.createFile(sourceDirectory.resolve("Contents/Java/lib/a.jar"), "a");
+        this.createFile(sourceDirectory.resolve("Contents/Java/lib/b.jar"), "bb");
+        Files.createDirectories(sourceDirectory.resolve("Contents/Runtime/Contents/Home"));
+        Files.createSymbolicLink(sourceDirectory.resolve("Contents/Runtime/Contents/MacOS"), Paths.get("Home"));
+        Files.createSymbolicLink(sourceDirectory.resolve("Contents/Java/current.jar"), Paths.get("lib/a.jar"));
+        Files.createSymbolicLink(sourceDirectory.resolve("Contents/Java/missing.jar"), Paths.get("lib/missing.jar"));
+
+        // Creating the files inside the target directories must not overwrite their modification times
+        Instant directoryTime = Instant.parse("2020-01-01T00:00:00Z");
+        Files.setLastModifiedTime(sourceDirectory.resolve("Contents/Java/lib"), FileTime.from(directoryTime));
+        Files.setLastModifiedTime(sourceDirectory.resolve("Contents/Java"), FileTime.from(directoryTime.plusSeconds(1)));
+        Files.setLastModifiedTime(sourceDirectory.resolve("Contents"), FileTime.from(directoryTime.plusSeconds(2)));
+        Files.setPosixFilePermissions(sourceDirectory.resolve("Contents/Java/lib"), PosixFilePermissions.fromString("r-xr-xr-x"));
+
+        Path targetDirectory = this.temporaryDirectory.resolve("target/Test.app");
+        TreeCopier treeCopier = new TreeCopier(1, (sourceFile, targetFile) -> {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            Files.copy(sourceFile, targetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        });
+        TreeCopier.Result result = treeCopier.copyTree(sourceDirectory, targetDirectory);
+
+        MatcherAssert.assertThat(new String(Files.readAllBytes(targetDirectory.resolve("Contents/Java/lib/b.jar")), StandardCharsets.UTF_8), IsEqual.equalTo("bb"));
+        MatcherAssert.assertThat(Files.isSymbolicLink(targetDirectory.resolve("Contents/Runtime/Contents/MacOS")), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(Files.readSymbolicLink(targetDirectory.resolve("Contents/Runtime/Contents/MacOS")), IsEqual.equalTo(Paths.get("Home")));
+        MatcherAssert.assertThat(Files.readSymbolicLink(targetDirectory.resolve("Contents/Java/current.jar")), IsEqual.equalTo(Paths.get("lib/a.jar")));
+        MatcherAssert.assertThat(Files.readSymbolicLink(targetDirectory.resolve("Contents/Java/missing.jar")), IsEqual.equalTo(Paths.get("lib/missing.jar")));
+        MatcherAssert.assertThat(Files.getLastModifiedTime(targetDirectory.resolve("Contents/Java/lib")).toInstant(), IsEqual.equalTo(directoryTime));
+        MatcherAssert.assertThat(Files.getLastModifiedTime(targetDirectory.resolve("Contents/Java")).toInstant(), IsEqual.equalTo(directoryTime.plusSeconds(1)));
+        MatcherAssert.assertThat(Files.getLastModifiedTime(targetDirectory.resolve("Contents")).toInstant(), IsEqual.equalTo(directoryTime.plusSeconds(2)));
+        MatcherAssert.assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(targetDirectory.resolve("Contents/Java/lib"))), IsEqual.equalTo("rwxr-xr-x"));
+
+        MatcherAssert.assertThat(result.getDirectoryCount(), IsEqual.equalTo(7));
+        MatcherAssert.assertThat(result.getFileCount(), IsEqual.equalTo(3));
+        MatcherAssert.assertThat(result.getSymbolicLinkCount(), IsEqual.equalTo(3));
+        MatcherAssert.assertThat(result.getByteCount(), IsEqual.equalTo(8L));
+        MatcherAssert.assertThat(result.getFilesMillis() >= 30, IsEqual.equalTo(true));
+        MatcherAssert.assertThat(result.getTotalMillis() >= result.getScanMillis() + result.getDirectoriesMillis() + result.getFilesMillis() + result.getAttributesMillis(), IsEqual.equalTo(true));
+        MatcherAssert.assertThat(result.toString().startsWith("3 files (0 MB), 7 directories, 3 symbolic links in "), IsEqual.equalTo(true));
+
+        // A second copy replaces the existing symbolic links
+        Files.setPosixFilePermissions(sourceDirectory.resolve("Contents/Java/lib"), PosixFilePermissions.fromString("rwxr-xr-x"));
+        Files.delete(sourceDirectory.resolve("Contents/Java/current.jar"));
+        Files.createSymbolicLink(sourceDirectory.resolve("Contents/Java/current.jar"), Paths.get("lib/b.jar"));
+        treeCopier.copyTree(sourceDirectory, targetDirectory);
+        MatcherAssert.assertThat(Files.readSymbolicLink(targetDirectory.resolve("Contents/Java/current.jar")), IsEqual.equalTo(Paths.get("lib/b.jar")));
+    }
+
+    private void createFile(Path file, String content) throws Exception {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
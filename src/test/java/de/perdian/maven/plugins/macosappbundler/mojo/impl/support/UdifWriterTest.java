@@ -0,0 +1,224 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class UdifWriterTest {
+
+    @Test
+    void roundTripTest() throws Exception {
+        byte[] rawImage = new byte[64 * 1024 * 7 + 1000];
+        Random random = new Random(42);
+        byte[] randomBytes = new byte[64 * 1024];
+        random.nextBytes(randomBytes);
+        System.arraycopy(randomBytes, 0, rawImage, 0, randomBytes.length); // incompressible chunk
+        for (int i = 64 * 1024; i < 64 * 1024 * 3; i++) {
+            rawImage[i] = (byte)(i % 7); // compressible chunks
+        }
+        // Two chunks of zeros followed by compressible data and a partial last sector
+        for (int i = 64 * 1024 * 5; i < rawImage.length; i++) {
+            rawImage[i] = (byte)(i % 13);
+        }
+
+        ByteArrayOutputStream udifContent = new ByteArrayOutputStream();
+        try (UdifWriter udifWriter = new UdifWriter(udifContent, 64 * 1024, 6, 3)) {
+            for (int offset = 0; offset < rawImage.length; offset += 10000) {
+                udifWriter.write(rawImage, offset, Math.min(10000, rawImage.length - offset));
+            }
+        }
+
+        DecodedImage decodedImage = UdifWriterTest.decode(udifContent.toByteArray());
+        byte[] expectedImage = Arrays.copyOf(rawImage, (rawImage.length + 511) / 512 * 512);
+        MatcherAssert.assertThat(decodedImage.content, IsEqual.equalTo(expectedImage));
+        MatcherAssert.assertThat(decodedImage.chunkTypes, IsEqual.equalTo(Arrays.asList(1, 0x80000005, 0x80000005, 0, 0x80000005, 0x80000005, 0x80000005)));
+    }
+
+    @Test
+    void emptyImageTest() throws Exception {
+        ByteArrayOutputStream udifContent = new ByteArrayOutputStream();
+        new UdifWriter(udifContent, 4096, 1, 1).close();
+        MatcherAssert.assertThat(UdifWriterTest.decode(udifContent.toByteArray()).content.length, IsEqual.equalTo(0));
+    }
+
+    @Test
+    void invalidSettingsTest() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new UdifWriter(new ByteArrayOutputStream(), 1000, 6, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new UdifWriter(new ByteArrayOutputStream(), 4096, 10, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new UdifWriter(new ByteArrayOutputStream(), 4096, 0, 1));
+    }
+
+    /**
+     * Decodes a UDIF image and verifies all checksums stored inside the image.
+     */
+    static DecodedImage decode(byte[] udifContent) throws IOException {
+        ByteBuffer koly = ByteBuffer.wrap(udifContent, udifContent.length - 512, 512).slice();
+        MatcherAssert.assertThat(new String(udifContent, udifContent.length - 512, 4, StandardCharsets.US_ASCII), IsEqual.equalTo("koly"));
+        MatcherAssert.assertThat(koly.getInt(4), IsEqual.equalTo(4));
+        MatcherAssert.assertThat(koly.getInt(8), IsEqual.equalTo(512));
+        long dataForkLength = koly.getLong(32);
+        long xmlOffset = koly.getLong(216);
+        long xmlLength = koly.getLong(224);
+        long sectorCount = koly.getLong(492);
+        MatcherAssert.assertThat(xmlOffset + xmlLength, IsEqual.equalTo((long)udifContent.length - 512));
+
+        CRC32 dataForkChecksum = new CRC32();
+        dataForkChecksum.update(udifContent, 0, (int)dataForkLength);
+        MatcherAssert.assertThat(koly.getInt(80), IsEqual.equalTo(2));
+        MatcherAssert.assertThat(koly.getInt(88), IsEqual.equalTo((int)dataForkChecksum.getValue()));
+
+        BlkxCollector blkxCollector = new BlkxCollector();
+        XmlPlistReader.read(new ByteArrayInputStream(udifContent, (int)xmlOffset, (int)xmlLength), blkxCollector);
+        ByteBuffer blkx = ByteBuffer.wrap(blkxCollector.blkxData);
+        MatcherAssert.assertThat(new String(blkxCollector.blkxData, 0, 4, StandardCharsets.US_ASCII), IsEqual.equalTo("mish"));
+        MatcherAssert.assertThat(blkx.getLong(16), IsEqual.equalTo(sectorCount));
+
+        DecodedImage decodedImage = new DecodedImage();
+        decodedImage.content = new byte[(int)(sectorCount * 512)];
+        int chunkCount = blkx.getInt(200);
+        MatcherAssert.assertThat(blkxCollector.blkxData.length, IsEqual.equalTo(204 + chunkCount * 40));
+        long nextSector = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            ByteBuffer chunk = ByteBuffer.wrap(blkxCollector.blkxData, 204 + i * 40, 40).slice();
+            int chunkType = chunk.getInt(0);
+            long chunkSector = chunk.getLong(8);
+            int chunkLength = (int)(chunk.getLong(16) * 512);
+            int compressedOffset = (int)chunk.getLong(24);
+            int compressedLength = (int)chunk.getLong(32);
+            MatcherAssert.assertThat(chunkSector, IsEqual.equalTo(nextSector));
+            if (chunkType == 0xFFFFFFFF) {
+                MatcherAssert.assertThat(i, IsEqual.equalTo(chunkCount - 1));
+                break;
+            }
+            decodedImage.chunkTypes.add(chunkType);
+            if (chunkType == 1) {
+                System.arraycopy(udifContent, compressedOffset, decodedImage.content, (int)(chunkSector * 512), chunkLength);
+            } else if (chunkType == 0x80000005) {
+                Inflater inflater = new Inflater();
+                inflater.setInput(udifContent, compressedOffset, compressedLength);
+                try {
+                    MatcherAssert.assertThat(inflater.inflate(decodedImage.content, (int)(chunkSector * 512), chunkLength), IsEqual.equalTo(chunkLength));
+                    MatcherAssert.assertThat(inflater.finished(), IsEqual.equalTo(true));
+                } catch (DataFormatException e) {
+                    throw new IOException(e);
+                } finally {
+                    inflater.end();
+                }
+            } else if (chunkType != 0) {
+                throw new IOException("Unexpected chunk type: " + Integer.toHexString(chunkType));
+            }
+            nextSector += chunkLength / 512;
+        }
+        MatcherAssert.assertThat(nextSector, IsEqual.equalTo(sectorCount));
+
+        CRC32 dataChecksum = new CRC32();
+        dataChecksum.update(decodedImage.content);
+        MatcherAssert.assertThat(blkx.getInt(72), IsEqual.equalTo((int)dataChecksum.getValue()));
+        CRC32 masterChecksum = new CRC32();
+        masterChecksum.update(ByteBuffer.allocate(4).putInt((int)dataChecksum.getValue()).array());
+        MatcherAssert.assertThat(koly.getInt(360), IsEqual.equalTo((int)masterChecksum.getValue()));
+        return decodedImage;
+    }
+
+    static class DecodedImage {
+
+        byte[] content = null;
+        List<Integer> chunkTypes = new ArrayList<>();
+
+    }
+
+    static class BlkxCollector implements PlistWriter {
+
+        private String currentKey = null;
+        private byte[] blkxData = null;
+
+        @Override
+        public void startDocument() {
+        }
+
+        @Override
+        public void endDocument() {
+        }
+
+        @Override
+        public void startDict() {
+        }
+
+        @Override
+        public void endDict() {
+        }
+
+        @Override
+        public void startArray() {
+        }
+
+        @Override
+        public void endArray() {
+        }
+
+        @Override
+        public void key(String key) {
+            this.currentKey = key;
+        }
+
+        @Override
+        public void string(String value) {
+        }
+
+        @Override
+        public void bool(boolean value) {
+        }
+
+        @Override
+        public void integer(long value) {
+        }
+
+        @Override
+        public void real(double value) {
+        }
+
+        @Override
+        public void date(Instant value) {
+        }
+
+        @Override
+        public void data(byte[] value) {
+            if ("Data".equals(this.currentKey)) {
+                this.blkxData = value;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * macOS app bundler Maven plugin
+ * Copyright 2019 Christian Seifert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.perdian.maven.plugins.macosappbundler.mojo.impl.support;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+public class XmlPlistWriterTest {
+
+    private static final String SPECIAL_CHARACTERS = "a&b<c>d\re\tf\ng\u0085h\u2028i\u00E4j\uD83D\uDE00k\uDBFF\uDFFF";
+
+    @Test
+    void escapeCharacters() throws Exception {
+        String expectedString = "a&amp;b&lt;c&gt;d&#13;e\tf\ng&#133;h\u2028i\u00E4j&#128512;k&#1114111;";
+        MatcherAssert.assertThat(this.writeString(SPECIAL_CHARACTERS), IsEqual.equalTo("<string>" + expectedString + "</string>"));
+        MatcherAssert.assertThat(this.writeString("\u0001\u001F\u007F\u009F"), IsEqual.equalTo("<string>&#1;&#31;&#127;&#159;</string>"));
+    }
+
+    @Test
+    void escapeCharactersLikeTransformer() throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element stringElement = document.createElement("string");
+        stringElement.setTextContent(SPECIAL_CHARACTERS);
+        document.appendChild(stringElement);
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        StringWriter transformerWriter = new StringWriter();
+        transformer.transform(new DOMSource(document), new StreamResult(transformerWriter));
+        MatcherAssert.assertThat(this.writeString(SPECIAL_CHARACTERS), IsEqual.equalTo(transformerWriter.toString().trim()));
+    }
+
+    @Test
+    void escapedCharactersRoundTrip() throws Exception {
+        StringWriter xmlWriter = new StringWriter();
+        XmlPlistWriter xmlPlistWriter = new XmlPlistWriter(xmlWriter);
+        xmlPlistWriter.startDocument();
+        xmlPlistWriter.startArray();
+        xmlPlistWriter.string(SPECIAL_CHARACTERS.replace("\r", ""));
+        xmlPlistWriter.endArray();
+        xmlPlistWriter.endDocument();
+
+        StringWriter copyWriter = new StringWriter();
+        XmlPlistReader.read(new ByteArrayInputStream(xmlWriter.toString().getBytes(StandardCharsets.UTF_8)), new XmlPlistWriter(copyWriter));
+        MatcherAssert.assertThat(copyWriter.toString(), IsEqual.equalTo(xmlWriter.toString()));
+    }
+
+    private String writeString(String value) throws Exception {
+        StringWriter xmlWriter = new StringWriter();
+        new XmlPlistWriter(xmlWriter).string(value);
+        return xmlWriter.toString().trim();
+    }
+
+}
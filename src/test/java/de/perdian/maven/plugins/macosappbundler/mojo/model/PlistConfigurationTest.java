@@ -80,6 +80,23 @@ public class PlistConfigurationTest {
         MatcherAssert.assertThat(plistXml, IsEqual.equalTo(EXPECTED_PLIST_XML));
     }
 
+    @Test
+    void additionalListValuePlistTest() throws Exception {
+        PlistConfiguration plist = generatePlist();
+
+        Map<String, Object> additionalProperties = new LinkedHashMap<>();
+        additionalProperties.put("CFBundleIconFile", "test.icns");
+        additionalProperties.put("JVMClasspath", Arrays.asList("classpath/a.jar", "classpath/b.jar"));
+        String plistXml = plist.toXmlString(additionalProperties);
+
+        String expectedClasspathXml = "        <key>JVMClasspath</key>\n" +
+                "        <array>\n" +
+                "            <string>classpath/a.jar</string>\n" +
+                "            <string>classpath/b.jar</string>\n" +
+                "        </array>\n";
+        MatcherAssert.assertThat(plistXml, IsEqual.equalTo(EXPECTED_PLIST_XML.replace("    </dict>\n</plist>\n", expectedClasspathXml + "    </dict>\n</plist>\n")));
+    }
+
     static PlistConfiguration generatePlist() throws Exception {
         PlistConfiguration plist = new PlistConfiguration();
         plist.CFBundleDisplayName = StringUtils.defaultIfEmpty(plist.CFBundleDisplayName, "Test bundle display name");